@@ -37,8 +37,11 @@ import android.util.Log;
 import androidx.annotation.VisibleForTesting;
 
 import com.android.settings.applications.ProcStatsData;
+import com.android.settings.core.PreferenceMetadataCache;
+import com.android.settings.dashboard.DashboardTileBindingStats;
 import com.android.settings.datausage.lib.DataUsageLib;
 import com.android.settings.network.MobileNetworkRepository;
+import com.android.settings.slices.SliceDataCache;
 import com.android.settingslib.net.DataUsageController;
 
 import org.json.JSONArray;
@@ -67,6 +70,12 @@ public class SettingsDumpService extends Service {
     @VisibleForTesting
     static final String KEY_ANOMALY_DETECTION = "anomaly_detection";
     @VisibleForTesting
+    static final String KEY_SLICE_DATA_CACHE = "slice_data_cache";
+    @VisibleForTesting
+    static final String KEY_PREFERENCE_METADATA_CACHE = "preference_metadata_cache";
+    @VisibleForTesting
+    static final String KEY_DASHBOARD_TILE_BINDING = "dashboard_tile_binding";
+    @VisibleForTesting
     static final Intent BROWSER_INTENT =
             new Intent("android.intent.action.VIEW", Uri.parse("http://"));
 
@@ -98,6 +107,11 @@ public class SettingsDumpService extends Service {
                 dump.put(KEY_DATAUSAGE, dumpDataUsage());
                 dump.put(KEY_MEMORY, dumpMemory());
                 dump.put(KEY_DEFAULT_BROWSER_APP, dumpDefaultBrowser());
+                dump.put(KEY_SLICE_DATA_CACHE, SliceDataCache.getInstance().dumpStats());
+                dump.put(KEY_PREFERENCE_METADATA_CACHE,
+                        PreferenceMetadataCache.getInstance(this).dumpStats());
+                dump.put(KEY_DASHBOARD_TILE_BINDING,
+                        DashboardTileBindingStats.getInstance().dumpStats());
             } catch (Exception e) {
                 Log.w(TAG, "exception in dump: ", e);
             }
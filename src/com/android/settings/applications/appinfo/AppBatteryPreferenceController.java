@@ -41,6 +41,7 @@ import com.android.settings.fuelgauge.BatteryUtils;
 import com.android.settings.fuelgauge.batteryusage.BatteryChartPreferenceController;
 import com.android.settings.fuelgauge.batteryusage.BatteryDiffEntry;
 import com.android.settings.fuelgauge.batteryusage.BatteryEntry;
+import com.android.settings.fuelgauge.batteryusage.BatteryUsageStatsCache;
 import com.android.settings.fuelgauge.batteryusage.BatteryUsageStatsLoader;
 import com.android.settingslib.applications.AppUtils;
 import com.android.settingslib.core.lifecycle.Lifecycle;
@@ -63,6 +64,7 @@ public class AppBatteryPreferenceController extends BasePreferenceController
     BatteryUtils mBatteryUtils;
     @VisibleForTesting
     BatteryUsageStats mBatteryUsageStats;
+    private BatteryUsageStatsCache.Snapshot mBatteryUsageStatsSnapshot;
     @VisibleForTesting
     UidBatteryConsumer mUidBatteryConsumer;
     @VisibleForTesting
@@ -162,7 +164,7 @@ public class AppBatteryPreferenceController extends BasePreferenceController
     public void onPause() {
         mParent.getLoaderManager().destroyLoader(
                 AppInfoDashboardFragment.LOADER_BATTERY_USAGE_STATS);
-        closeBatteryUsageStats();
+        clearBatteryUsageStats();
     }
 
     private void loadBatteryDiffEntries() {
@@ -241,35 +243,30 @@ public class AppBatteryPreferenceController extends BasePreferenceController
     }
 
     private class BatteryUsageStatsLoaderCallbacks
-            implements LoaderManager.LoaderCallbacks<BatteryUsageStats> {
+            implements LoaderManager.LoaderCallbacks<BatteryUsageStatsCache.Snapshot> {
         @Override
         @NonNull
-        public Loader<BatteryUsageStats> onCreateLoader(int id, Bundle args) {
+        public Loader<BatteryUsageStatsCache.Snapshot> onCreateLoader(int id, Bundle args) {
             return new BatteryUsageStatsLoader(mContext, /* includeBatteryHistory */ false);
         }
 
         @Override
-        public void onLoadFinished(Loader<BatteryUsageStats> loader,
-                BatteryUsageStats batteryUsageStats) {
-            closeBatteryUsageStats();
-            mBatteryUsageStats = batteryUsageStats;
+        public void onLoadFinished(Loader<BatteryUsageStatsCache.Snapshot> loader,
+                BatteryUsageStatsCache.Snapshot snapshot) {
+            // The loader owns the snapshot and closes it once it's replaced or reset.
+            mBatteryUsageStatsSnapshot = snapshot;
+            mBatteryUsageStats = snapshot == null ? null : snapshot.getBatteryUsageStats();
             AppBatteryPreferenceController.this.onLoadFinished();
         }
 
         @Override
-        public void onLoaderReset(Loader<BatteryUsageStats> loader) {
+        public void onLoaderReset(Loader<BatteryUsageStatsCache.Snapshot> loader) {
+            clearBatteryUsageStats();
         }
     }
 
-    private void closeBatteryUsageStats() {
-        if (mBatteryUsageStats != null) {
-            try {
-                mBatteryUsageStats.close();
-            } catch (Exception e) {
-                Log.e(TAG, "BatteryUsageStats.close() failed", e);
-            } finally {
-                mBatteryUsageStats = null;
-            }
-        }
+    private void clearBatteryUsageStats() {
+        mBatteryUsageStatsSnapshot = null;
+        mBatteryUsageStats = null;
     }
 }
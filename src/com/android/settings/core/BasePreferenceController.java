@@ -131,10 +131,16 @@ public abstract class BasePreferenceController extends AbstractPreferenceControl
     /**
      * Instantiate a controller as specified controller type and user-defined key.
      * <p/>
-     * This is done through reflection. Do not use this method unless you know what you are doing.
+     * This is done through the generated {@link PreferenceControllerFactory}, falling back to
+     * reflection. Do not use this method unless you know what you are doing.
      */
     public static BasePreferenceController createInstance(Context context,
             String controllerName, String key) {
+        final BasePreferenceController controller = PreferenceControllerRegistry.getFactory()
+                .create(context, controllerName, key);
+        if (controller != null) {
+            return controller;
+        }
         try {
             final Class<?> clazz = Class.forName(controllerName);
             final Constructor<?> preferenceConstructor =
@@ -151,9 +157,15 @@ public abstract class BasePreferenceController extends AbstractPreferenceControl
     /**
      * Instantiate a controller as specified controller type.
      * <p/>
-     * This is done through reflection. Do not use this method unless you know what you are doing.
+     * This is done through the generated {@link PreferenceControllerFactory}, falling back to
+     * reflection. Do not use this method unless you know what you are doing.
      */
     public static BasePreferenceController createInstance(Context context, String controllerName) {
+        final BasePreferenceController controller = PreferenceControllerRegistry.getFactory()
+                .create(context, controllerName);
+        if (controller != null) {
+            return controller;
+        }
         try {
             final Class<?> clazz = Class.forName(controllerName);
             final Constructor<?> preferenceConstructor = clazz.getConstructor(Context.class);
@@ -169,7 +181,8 @@ public abstract class BasePreferenceController extends AbstractPreferenceControl
     /**
      * Instantiate a controller as specified controller type and work profile
      * <p/>
-     * This is done through reflection. Do not use this method unless you know what you are doing.
+     * This is done through the generated {@link PreferenceControllerFactory}, falling back to
+     * reflection. Do not use this method unless you know what you are doing.
      *
      * @param context        application context
      * @param controllerName class name of the {@link BasePreferenceController}
@@ -178,20 +191,9 @@ public abstract class BasePreferenceController extends AbstractPreferenceControl
      */
     public static BasePreferenceController createInstance(Context context, String controllerName,
             String key, boolean isWorkProfile) {
-        try {
-            final Class<?> clazz = Class.forName(controllerName);
-            final Constructor<?> preferenceConstructor =
-                    clazz.getConstructor(Context.class, String.class);
-            final Object[] params = new Object[]{context, key};
-            final BasePreferenceController controller =
-                    (BasePreferenceController) preferenceConstructor.newInstance(params);
-            controller.setForWork(isWorkProfile);
-            return controller;
-        } catch (ClassNotFoundException | NoSuchMethodException | InstantiationException
-                | IllegalArgumentException | InvocationTargetException | IllegalAccessException e) {
-            throw new IllegalStateException(
-                    "Invalid preference controller: " + controllerName, e);
-        }
+        final BasePreferenceController controller = createInstance(context, controllerName, key);
+        controller.setForWork(isWorkProfile);
+        return controller;
     }
 
     public BasePreferenceController(Context context, String preferenceKey) {
@@ -415,6 +417,18 @@ public abstract class BasePreferenceController extends AbstractPreferenceControl
     public interface UiBlocker {
     }
 
+    /**
+     * Used for {@link BasePreferenceController} to declare that its availability check is IO
+     * bound, such as making binder calls to the system services. Otherwise the check is expected
+     * to be pure and cheap.
+     *
+     * The availability of such controllers is evaluated concurrently on worker threads by
+     * DashboardFragment, while the main thread waits for the results. So its
+     * {@link #getAvailabilityStatus()} must be thread safe and must not wait for the main thread.
+     */
+    public interface IoBoundAvailability {
+    }
+
     /**
      * Set the metrics category of the parent fragment.
      *
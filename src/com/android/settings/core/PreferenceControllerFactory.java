@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.core;
+
+import android.content.Context;
+
+/**
+ * Creates the preference controllers named in the preference XMLs with their constructors
+ * directly, instead of through reflection.
+ *
+ * The implementation is generated at build time from the preference XMLs and the compiled
+ * controllers, see {@link PreferenceControllerRegistry}. A controller which is not generated
+ * returns {@code null}, and the caller falls back to reflection.
+ */
+public interface PreferenceControllerFactory {
+
+    /**
+     * @return a new controller built with its {@code (Context)} constructor, or {@code null} if
+     * the controller doesn't have this constructor or isn't generated
+     */
+    BasePreferenceController create(Context context, String controllerName);
+
+    /**
+     * @return a new controller built with its {@code (Context, String)} constructor, or
+     * {@code null} if the controller doesn't have this constructor or isn't generated
+     */
+    BasePreferenceController create(Context context, String controllerName, String key);
+}
@@ -16,13 +16,8 @@
 
 package com.android.settings.core;
 
-import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_CONTROLLER;
-import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_FOR_WORK;
-import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_KEY;
-
 import android.annotation.XmlRes;
 import android.content.Context;
-import android.os.Bundle;
 import android.text.TextUtils;
 import android.util.Log;
 
@@ -55,9 +50,9 @@ public class PreferenceControllerListHelper {
     public static List<BasePreferenceController> getPreferenceControllersFromXml(Context context,
             @XmlRes int xmlResId) {
         final List<BasePreferenceController> controllers = new ArrayList<>();
-        List<Bundle> preferenceMetadata;
+        List<PreferenceMetadata> preferenceMetadata;
         try {
-            preferenceMetadata = PreferenceXmlParserUtils.extractMetadata(context, xmlResId,
+            preferenceMetadata = PreferenceXmlParserUtils.getMetadata(context, xmlResId,
                     MetadataFlag.FLAG_NEED_KEY | MetadataFlag.FLAG_NEED_PREF_CONTROLLER
                             | MetadataFlag.FLAG_INCLUDE_PREF_SCREEN  | MetadataFlag.FLAG_FOR_WORK);
         } catch (IOException | XmlPullParserException e) {
@@ -65,18 +60,24 @@ public class PreferenceControllerListHelper {
             return controllers;
         }
 
-        for (Bundle metadata : preferenceMetadata) {
-            final String controllerName = metadata.getString(METADATA_CONTROLLER);
+        final PreferenceControllerFactory factory = PreferenceControllerRegistry.getFactory();
+        for (PreferenceMetadata metadata : preferenceMetadata) {
+            final String controllerName = metadata.getController();
             if (TextUtils.isEmpty(controllerName)) {
                 continue;
             }
-            BasePreferenceController controller;
+            BasePreferenceController controller = createFromFactory(factory, context,
+                    controllerName, metadata);
+            if (controller != null) {
+                controllers.add(controller);
+                continue;
+            }
             try {
                 controller = BasePreferenceController.createInstance(context, controllerName);
             } catch (IllegalStateException e) {
                 Log.d(TAG, "Could not find Context-only controller for pref: " + controllerName);
-                final String key = metadata.getString(METADATA_KEY);
-                final boolean isWorkProfile = metadata.getBoolean(METADATA_FOR_WORK, false);
+                final String key = metadata.getKey();
+                final boolean isWorkProfile = metadata.isForWork();
                 if (TextUtils.isEmpty(key)) {
                     Log.w(TAG, "Controller requires key but it's not defined in xml: "
                             + controllerName);
@@ -95,6 +96,30 @@ public class PreferenceControllerListHelper {
         return controllers;
     }
 
+    /**
+     * Creates the controller with the generated factory, which avoids the reflection and the
+     * exception thrown for the controllers without a Context-only constructor.
+     *
+     * @return the controller, or {@code null} if the factory doesn't generate it
+     */
+    private static BasePreferenceController createFromFactory(PreferenceControllerFactory factory,
+            Context context, String controllerName, PreferenceMetadata metadata) {
+        final BasePreferenceController controller = factory.create(context, controllerName);
+        if (controller != null) {
+            return controller;
+        }
+        final String key = metadata.getKey();
+        if (TextUtils.isEmpty(key)) {
+            return null;
+        }
+        final BasePreferenceController keyedController =
+                factory.create(context, controllerName, key);
+        if (keyedController != null) {
+            keyedController.setForWork(metadata.isForWork());
+        }
+        return keyedController;
+    }
+
     /**
      * Checks if the given PreferenceScreen will be empty due to all preferences being unavailable.
      *
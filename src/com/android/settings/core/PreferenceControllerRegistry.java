@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.core;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.VisibleForTesting;
+
+/**
+ * Holds the {@link PreferenceControllerFactory} generated at build time.
+ *
+ * The generated factory is compiled into the Settings app rather than Settings-core, since it's
+ * generated from the compiled controllers of Settings-core. It's loaded once by name, and an empty
+ * factory is used when it's not built in, such as in the Robolectric tests.
+ */
+final class PreferenceControllerRegistry {
+
+    private static final String TAG = "PrefControllerRegistry";
+
+    @VisibleForTesting
+    static final String GENERATED_FACTORY_CLASS =
+            "com.android.settings.core.GeneratedPreferenceControllerFactory";
+
+    private static final PreferenceControllerFactory EMPTY_FACTORY =
+            new PreferenceControllerFactory() {
+                @Override
+                public BasePreferenceController create(Context context, String controllerName) {
+                    return null;
+                }
+
+                @Override
+                public BasePreferenceController create(Context context, String controllerName,
+                        String key) {
+                    return null;
+                }
+            };
+
+    private static volatile PreferenceControllerFactory sFactory;
+
+    private PreferenceControllerRegistry() {
+    }
+
+    /** @return the generated factory, or an empty factory if it's not built in */
+    static PreferenceControllerFactory getFactory() {
+        PreferenceControllerFactory factory = sFactory;
+        if (factory == null) {
+            factory = loadFactory();
+            sFactory = factory;
+        }
+        return factory;
+    }
+
+    @VisibleForTesting
+    static void setFactory(PreferenceControllerFactory factory) {
+        sFactory = factory;
+    }
+
+    private static PreferenceControllerFactory loadFactory() {
+        try {
+            return (PreferenceControllerFactory) Class.forName(GENERATED_FACTORY_CLASS)
+                    .getDeclaredConstructor()
+                    .newInstance();
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            Log.w(TAG, "Generated preference controller factory not found, using reflection");
+            return EMPTY_FACTORY;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.core;
+
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_APPEND;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_CONTROLLER;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_FOR_WORK;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_HIGHLIGHTABLE_MENU_KEY;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_ICON;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_KEY;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_KEYWORDS;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_PREF_TYPE;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_SEARCHABLE;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_SUMMARY;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_TITLE;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_UNAVAILABLE_SLICE_SUBTITLE;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_USER_RESTRICTION;
+
+import android.os.Bundle;
+
+import androidx.annotation.Nullable;
+
+import com.android.settings.core.PreferenceXmlParserUtils.MetadataFlag;
+
+/**
+ * The immutable metadata of a preference extracted from a preference XML, which holds the values
+ * requested by the {@link MetadataFlag}s it was extracted with.
+ *
+ * Unlike the {@link Bundle} returned by {@link PreferenceXmlParserUtils#extractMetadata}, it can
+ * be shared between the callers, see {@link PreferenceMetadataCache}.
+ */
+public final class PreferenceMetadata {
+
+    private final int mFlags;
+    private final String mType;
+    private final String mKey;
+    private final String mController;
+    private final String mTitle;
+    private final String mSummary;
+    private final int mIcon;
+    private final String mKeywords;
+    private final boolean mSearchable;
+    private final boolean mAppended;
+    private final String mUnavailableSliceSubtitle;
+    private final boolean mForWork;
+    private final String mHighlightableMenuKey;
+    private final String mUserRestriction;
+
+    /** Copies the metadata extracted with the flags. */
+    PreferenceMetadata(Bundle metadata, int flags) {
+        mFlags = flags;
+        mType = metadata.getString(METADATA_PREF_TYPE);
+        mKey = metadata.getString(METADATA_KEY);
+        mController = metadata.getString(METADATA_CONTROLLER);
+        mTitle = metadata.getString(METADATA_TITLE);
+        mSummary = metadata.getString(METADATA_SUMMARY);
+        mIcon = metadata.getInt(METADATA_ICON);
+        mKeywords = metadata.getString(METADATA_KEYWORDS);
+        mSearchable = metadata.getBoolean(METADATA_SEARCHABLE, true /* defaultValue */);
+        mAppended = metadata.getBoolean(METADATA_APPEND);
+        mUnavailableSliceSubtitle = metadata.getString(METADATA_UNAVAILABLE_SLICE_SUBTITLE);
+        mForWork = metadata.getBoolean(METADATA_FOR_WORK);
+        mHighlightableMenuKey = metadata.getString(METADATA_HIGHLIGHTABLE_MENU_KEY);
+        mUserRestriction = metadata.getString(METADATA_USER_RESTRICTION);
+    }
+
+    @Nullable
+    public String getType() {
+        return mType;
+    }
+
+    @Nullable
+    public String getKey() {
+        return mKey;
+    }
+
+    @Nullable
+    public String getController() {
+        return mController;
+    }
+
+    @Nullable
+    public String getTitle() {
+        return mTitle;
+    }
+
+    @Nullable
+    public String getSummary() {
+        return mSummary;
+    }
+
+    public int getIcon() {
+        return mIcon;
+    }
+
+    @Nullable
+    public String getKeywords() {
+        return mKeywords;
+    }
+
+    public boolean isSearchable() {
+        return mSearchable;
+    }
+
+    public boolean isAppended() {
+        return mAppended;
+    }
+
+    @Nullable
+    public String getUnavailableSliceSubtitle() {
+        return mUnavailableSliceSubtitle;
+    }
+
+    public boolean isForWork() {
+        return mForWork;
+    }
+
+    @Nullable
+    public String getHighlightableMenuKey() {
+        return mHighlightableMenuKey;
+    }
+
+    @Nullable
+    public String getUserRestriction() {
+        return mUserRestriction;
+    }
+
+    /**
+     * @return a new {@link Bundle} with the same entries as the one extracted by
+     * {@link PreferenceXmlParserUtils#extractMetadata}
+     */
+    public Bundle toBundle() {
+        final Bundle bundle = new Bundle();
+        if (hasFlag(MetadataFlag.FLAG_NEED_PREF_TYPE)) {
+            bundle.putString(METADATA_PREF_TYPE, mType);
+        }
+        if (hasFlag(MetadataFlag.FLAG_NEED_KEY)) {
+            bundle.putString(METADATA_KEY, mKey);
+        }
+        if (hasFlag(MetadataFlag.FLAG_NEED_PREF_CONTROLLER)) {
+            bundle.putString(METADATA_CONTROLLER, mController);
+        }
+        if (hasFlag(MetadataFlag.FLAG_NEED_PREF_TITLE)) {
+            bundle.putString(METADATA_TITLE, mTitle);
+        }
+        if (hasFlag(MetadataFlag.FLAG_NEED_PREF_SUMMARY)) {
+            bundle.putString(METADATA_SUMMARY, mSummary);
+        }
+        if (hasFlag(MetadataFlag.FLAG_NEED_PREF_ICON)) {
+            bundle.putInt(METADATA_ICON, mIcon);
+        }
+        if (hasFlag(MetadataFlag.FLAG_NEED_KEYWORDS)) {
+            bundle.putString(METADATA_KEYWORDS, mKeywords);
+        }
+        if (hasFlag(MetadataFlag.FLAG_NEED_SEARCHABLE)) {
+            bundle.putBoolean(METADATA_SEARCHABLE, mSearchable);
+        }
+        if (hasFlag(MetadataFlag.FLAG_NEED_PREF_APPEND)
+                && hasFlag(MetadataFlag.FLAG_INCLUDE_PREF_SCREEN)) {
+            bundle.putBoolean(METADATA_APPEND, mAppended);
+        }
+        if (hasFlag(MetadataFlag.FLAG_UNAVAILABLE_SLICE_SUBTITLE)) {
+            bundle.putString(METADATA_UNAVAILABLE_SLICE_SUBTITLE, mUnavailableSliceSubtitle);
+        }
+        if (hasFlag(MetadataFlag.FLAG_FOR_WORK)) {
+            bundle.putBoolean(METADATA_FOR_WORK, mForWork);
+        }
+        if (hasFlag(MetadataFlag.FLAG_NEED_HIGHLIGHTABLE_MENU_KEY)) {
+            bundle.putString(METADATA_HIGHLIGHTABLE_MENU_KEY, mHighlightableMenuKey);
+        }
+        if (hasFlag(MetadataFlag.FLAG_NEED_USER_RESTRICTION)) {
+            bundle.putString(METADATA_USER_RESTRICTION, mUserRestriction);
+        }
+        return bundle;
+    }
+
+    private boolean hasFlag(@MetadataFlag int flag) {
+        return (mFlags & flag) != 0;
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.core;
+
+import android.content.Context;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import android.util.LruCache;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A process-wide LRU cache of the {@link PreferenceMetadata} extracted from the preference XMLs,
+ * so a screen isn't parsed again each time it's opened, indexed or checked for availability.
+ *
+ * The metadata is keyed by the XML, the extraction flags and the configuration of the resources,
+ * so the localized values of another locale are never returned. The window configuration is left
+ * out of the key, since it doesn't select the resources. The cache is sized by the number of
+ * preferences, and the entries of a configuration no longer in use are evicted as least recently
+ * used.
+ */
+public final class PreferenceMetadataCache {
+
+    /** The max number of cached preferences, which holds the metadata of most screens. */
+    @VisibleForTesting
+    static final int MAX_SIZE = 1024;
+
+    private static PreferenceMetadataCache sInstance;
+
+    @Nullable
+    private final Context mApplicationContext;
+    private final LruCache<Key, List<PreferenceMetadata>> mCache;
+    private final AtomicLong mHitCount = new AtomicLong();
+    private final AtomicLong mMissCount = new AtomicLong();
+
+    @VisibleForTesting
+    PreferenceMetadataCache(@Nullable Context applicationContext, int maxSize) {
+        mApplicationContext = applicationContext;
+        mCache = new LruCache<Key, List<PreferenceMetadata>>(maxSize) {
+            @Override
+            protected int sizeOf(Key key, List<PreferenceMetadata> metadata) {
+                return metadata.size() + 1;
+            }
+        };
+    }
+
+    /** @return the cache of the app, which is created again for a new app such as in tests */
+    public static synchronized PreferenceMetadataCache getInstance(Context context) {
+        final Context applicationContext = context.getApplicationContext();
+        if (sInstance == null || (applicationContext != null
+                && sInstance.mApplicationContext != applicationContext)) {
+            sInstance = new PreferenceMetadataCache(applicationContext, MAX_SIZE);
+        }
+        return sInstance;
+    }
+
+    /**
+     * @return the cached metadata of the XML in the configuration of the context, and counts the
+     * hit or the miss
+     */
+    @Nullable
+    List<PreferenceMetadata> get(Context context, int xmlResId, int flags) {
+        final Key key = Key.create(context, xmlResId, flags);
+        final List<PreferenceMetadata> metadata = key == null ? null : mCache.get(key);
+        if (metadata == null) {
+            mMissCount.incrementAndGet();
+        } else {
+            mHitCount.incrementAndGet();
+        }
+        return metadata;
+    }
+
+    /** Caches the metadata, and returns it as an immutable list. */
+    List<PreferenceMetadata> put(Context context, int xmlResId, int flags,
+            List<PreferenceMetadata> metadata) {
+        final List<PreferenceMetadata> immutableMetadata = Collections.unmodifiableList(metadata);
+        final Key key = Key.create(context, xmlResId, flags);
+        if (key != null) {
+            mCache.put(key, immutableMetadata);
+        }
+        return immutableMetadata;
+    }
+
+    /** @return the counters of the cache for dumpsys */
+    public JSONObject dumpStats() throws JSONException {
+        final JSONObject obj = new JSONObject();
+        obj.put("size", mCache.size());
+        obj.put("maxSize", mCache.maxSize());
+        obj.put("hit", mHitCount.get());
+        obj.put("miss", mMissCount.get());
+        obj.put("eviction", mCache.evictionCount());
+        return obj;
+    }
+
+    @VisibleForTesting
+    long getHitCount() {
+        return mHitCount.get();
+    }
+
+    @VisibleForTesting
+    long getMissCount() {
+        return mMissCount.get();
+    }
+
+    private static final class Key {
+        private final int mXmlResId;
+        private final int mFlags;
+        private final Configuration mConfiguration;
+
+        private Key(int xmlResId, int flags, Configuration configuration) {
+            mXmlResId = xmlResId;
+            mFlags = flags;
+            mConfiguration = configuration;
+        }
+
+        /** @return the key, or {@code null} if the resources have no configuration to key on */
+        @Nullable
+        static Key create(Context context, int xmlResId, int flags) {
+            final Resources resources = context.getResources();
+            final Configuration configuration =
+                    resources == null ? null : resources.getConfiguration();
+            if (configuration == null) {
+                return null;
+            }
+            // The window bounds differ between the activities, but don't select the resources.
+            final Configuration resourcesConfiguration = new Configuration(configuration);
+            resourcesConfiguration.windowConfiguration.setToDefaults();
+            return new Key(xmlResId, flags, resourcesConfiguration);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) o;
+            return mXmlResId == other.mXmlResId
+                    && mFlags == other.mFlags
+                    && mConfiguration.equals(other.mConfiguration);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(mXmlResId, mFlags, mConfiguration);
+        }
+    }
+}
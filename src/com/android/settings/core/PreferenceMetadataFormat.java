@@ -0,0 +1,262 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary format of the preference metadata precompiled from the preference XMLs at build time.
+ *
+ * This class is shared by the build time generator and the runtime, so it must only depend on
+ * the Java standard library.
+ *
+ * Layout, all integers are big-endian:
+ * - Header: magic, version.
+ * - String pool: count, then the offset of each string, then the UTF-8 strings each prefixed
+ * with its length.
+ * - Screen table: count, then the name string index and the body offset of each screen.
+ * - Screen bodies: element count, then for each element the type string index followed by a
+ * kind byte and a string index of each attribute in {@link #ATTR_COUNT}.
+ */
+public final class PreferenceMetadataFormat {
+
+    public static final int MAGIC = 0x53504d49; // "SPMI"
+    public static final int VERSION = 1;
+
+    public static final int ATTR_KEY = 0;
+    public static final int ATTR_TITLE = 1;
+    public static final int ATTR_SUMMARY = 2;
+    public static final int ATTR_CONTROLLER = 3;
+    public static final int ATTR_ICON = 4;
+    public static final int ATTR_KEYWORDS = 5;
+    public static final int ATTR_SEARCHABLE = 6;
+    public static final int ATTR_STATIC_PREFERENCE_LOCATION = 7;
+    public static final int ATTR_UNAVAILABLE_SLICE_SUBTITLE = 8;
+    public static final int ATTR_FOR_WORK = 9;
+    public static final int ATTR_HIGHLIGHTABLE_MENU_KEY = 10;
+    public static final int ATTR_USER_RESTRICTION = 11;
+    public static final int ATTR_COUNT = 12;
+
+    /** The attribute is not set. */
+    public static final byte VALUE_ABSENT = 0;
+    /** The attribute is a literal value. */
+    public static final byte VALUE_LITERAL = 1;
+    /**
+     * The attribute is a resource reference in the form of "type/name", or "package:type/name"
+     * for a resource outside of the package of the XML.
+     */
+    public static final byte VALUE_REFERENCE = 2;
+
+    private static final List<String> SUPPORTED_PREF_TYPES = Arrays.asList(
+            "Preference", "PreferenceCategory", "PreferenceScreen", "SwitchPreferenceCompat",
+            "com.android.settings.widget.WorkOnlyCategory");
+
+    private PreferenceMetadataFormat() {
+    }
+
+    /** Whether the metadata of an element of a preference XML is extracted. */
+    public static boolean isPreferenceElement(String nodeName) {
+        return SUPPORTED_PREF_TYPES.contains(nodeName) || nodeName.endsWith("Preference");
+    }
+
+    /** An element of a preference XML with its raw attribute values. */
+    public static final class Element {
+        public final String mType;
+        public final byte[] mKinds = new byte[ATTR_COUNT];
+        public final String[] mValues = new String[ATTR_COUNT];
+
+        public Element(String type) {
+            mType = type;
+        }
+
+        /** Sets the value of the attribute, which is one of the ATTR constants. */
+        public void setValue(int attr, byte kind, String value) {
+            mKinds[attr] = kind;
+            mValues[attr] = value;
+        }
+    }
+
+    /** Encodes the elements of each preference XML. */
+    public static final class Writer {
+        private final Map<String, List<Element>> mScreens = new LinkedHashMap<>();
+        private final Map<String, Integer> mStringIndices = new HashMap<>();
+        private final List<String> mStrings = new ArrayList<>();
+
+        /** Adds the elements of a preference XML, named after the XML resource. */
+        public void addScreen(String name, List<Element> elements) {
+            mScreens.put(name, elements);
+        }
+
+        /** Encodes all added screens. */
+        public byte[] toByteArray() throws IOException {
+            // Encodes the screens first to collect the strings.
+            final ByteArrayOutputStream bodies = new ByteArrayOutputStream();
+            final DataOutputStream bodyOut = new DataOutputStream(bodies);
+            final int[] nameIndices = new int[mScreens.size()];
+            final int[] bodyOffsets = new int[mScreens.size()];
+            int screenIndex = 0;
+            for (Map.Entry<String, List<Element>> screen : mScreens.entrySet()) {
+                nameIndices[screenIndex] = indexOf(screen.getKey());
+                bodyOffsets[screenIndex] = bodyOut.size();
+                bodyOut.writeInt(screen.getValue().size());
+                for (Element element : screen.getValue()) {
+                    bodyOut.writeInt(indexOf(element.mType));
+                    for (int attr = 0; attr < ATTR_COUNT; attr++) {
+                        final byte kind = element.mKinds[attr];
+                        bodyOut.writeByte(kind);
+                        bodyOut.writeInt(
+                                kind == VALUE_ABSENT ? -1 : indexOf(element.mValues[attr]));
+                    }
+                }
+                screenIndex++;
+            }
+
+            final List<byte[]> encodedStrings = new ArrayList<>(mStrings.size());
+            for (String string : mStrings) {
+                encodedStrings.add(string.getBytes(StandardCharsets.UTF_8));
+            }
+
+            final ByteArrayOutputStream output = new ByteArrayOutputStream();
+            final DataOutputStream out = new DataOutputStream(output);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+
+            out.writeInt(encodedStrings.size());
+            int stringOffset = 4 * 2 + 4 + 4 * encodedStrings.size();
+            for (byte[] encodedString : encodedStrings) {
+                out.writeInt(stringOffset);
+                stringOffset += 4 + encodedString.length;
+            }
+            for (byte[] encodedString : encodedStrings) {
+                out.writeInt(encodedString.length);
+                out.write(encodedString);
+            }
+
+            final int bodyStart = out.size() + 4 + 8 * nameIndices.length;
+            out.writeInt(nameIndices.length);
+            for (int i = 0; i < nameIndices.length; i++) {
+                out.writeInt(nameIndices[i]);
+                out.writeInt(bodyStart + bodyOffsets[i]);
+            }
+            bodies.writeTo(out);
+            out.flush();
+            return output.toByteArray();
+        }
+
+        private int indexOf(String string) {
+            Integer index = mStringIndices.get(string);
+            if (index == null) {
+                index = mStrings.size();
+                mStrings.add(string);
+                mStringIndices.put(string, index);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Decodes the screens lazily from the encoded buffer, the strings and the elements of a screen
+     * are only decoded when the screen is requested.
+     */
+    public static final class Reader {
+        private final ByteBuffer mBuffer;
+        private final int mStringCount;
+        private final String[] mStrings;
+        private final Map<String, Integer> mScreenOffsets = new HashMap<>();
+
+        /** @throws IllegalArgumentException if the buffer is not in this format */
+        public Reader(ByteBuffer buffer) {
+            mBuffer = buffer.duplicate();
+            if (mBuffer.getInt(0) != MAGIC || mBuffer.getInt(4) != VERSION) {
+                throw new IllegalArgumentException("Unsupported preference metadata format");
+            }
+            mStringCount = mBuffer.getInt(8);
+            mStrings = new String[mStringCount];
+
+            // The screen table follows the last string.
+            int position = 12;
+            if (mStringCount > 0) {
+                final int lastStringOffset = getStringOffset(mStringCount - 1);
+                position = lastStringOffset + 4 + mBuffer.getInt(lastStringOffset);
+            }
+            final int screenCount = mBuffer.getInt(position);
+            position += 4;
+            for (int i = 0; i < screenCount; i++) {
+                mScreenOffsets.put(getString(mBuffer.getInt(position)),
+                        mBuffer.getInt(position + 4));
+                position += 8;
+            }
+        }
+
+        /** @return the names of all screens in the buffer */
+        public List<String> getScreenNames() {
+            return new ArrayList<>(mScreenOffsets.keySet());
+        }
+
+        /** @return the elements of the screen, or {@code null} if it's not precompiled */
+        public List<Element> getElements(String screenName) {
+            final Integer offset = mScreenOffsets.get(screenName);
+            if (offset == null) {
+                return null;
+            }
+            int position = offset;
+            final int elementCount = mBuffer.getInt(position);
+            position += 4;
+            final List<Element> elements = new ArrayList<>(elementCount);
+            for (int i = 0; i < elementCount; i++) {
+                final Element element = new Element(getString(mBuffer.getInt(position)));
+                position += 4;
+                for (int attr = 0; attr < ATTR_COUNT; attr++) {
+                    final byte kind = mBuffer.get(position);
+                    final int stringIndex = mBuffer.getInt(position + 1);
+                    position += 5;
+                    if (kind != VALUE_ABSENT) {
+                        element.setValue(attr, kind, getString(stringIndex));
+                    }
+                }
+                elements.add(element);
+            }
+            return elements;
+        }
+
+        private int getStringOffset(int index) {
+            return mBuffer.getInt(12 + 4 * index);
+        }
+
+        private synchronized String getString(int index) {
+            if (mStrings[index] == null) {
+                final int offset = getStringOffset(index);
+                final byte[] bytes = new byte[mBuffer.getInt(offset)];
+                for (int i = 0; i < bytes.length; i++) {
+                    bytes[i] = mBuffer.get(offset + 4 + i);
+                }
+                mStrings[index] = new String(bytes, StandardCharsets.UTF_8);
+            }
+            return mStrings[index];
+        }
+    }
+}
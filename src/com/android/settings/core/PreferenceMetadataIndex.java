@@ -0,0 +1,277 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.core;
+
+import static com.android.settings.core.PreferenceMetadataFormat.ATTR_CONTROLLER;
+import static com.android.settings.core.PreferenceMetadataFormat.ATTR_FOR_WORK;
+import static com.android.settings.core.PreferenceMetadataFormat.ATTR_HIGHLIGHTABLE_MENU_KEY;
+import static com.android.settings.core.PreferenceMetadataFormat.ATTR_ICON;
+import static com.android.settings.core.PreferenceMetadataFormat.ATTR_KEY;
+import static com.android.settings.core.PreferenceMetadataFormat.ATTR_KEYWORDS;
+import static com.android.settings.core.PreferenceMetadataFormat.ATTR_SEARCHABLE;
+import static com.android.settings.core.PreferenceMetadataFormat.ATTR_STATIC_PREFERENCE_LOCATION;
+import static com.android.settings.core.PreferenceMetadataFormat.ATTR_SUMMARY;
+import static com.android.settings.core.PreferenceMetadataFormat.ATTR_TITLE;
+import static com.android.settings.core.PreferenceMetadataFormat.ATTR_UNAVAILABLE_SLICE_SUBTITLE;
+import static com.android.settings.core.PreferenceMetadataFormat.ATTR_USER_RESTRICTION;
+import static com.android.settings.core.PreferenceMetadataFormat.VALUE_ABSENT;
+import static com.android.settings.core.PreferenceMetadataFormat.VALUE_REFERENCE;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_APPEND;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_CONTROLLER;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_FOR_WORK;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_HIGHLIGHTABLE_MENU_KEY;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_ICON;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_KEY;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_KEYWORDS;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_PREF_TYPE;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_SEARCHABLE;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_SUMMARY;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_TITLE;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_UNAVAILABLE_SLICE_SUBTITLE;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_USER_RESTRICTION;
+import static com.android.settings.core.PreferenceXmlParserUtils.PREF_SCREEN_TAG;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.os.Bundle;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import com.android.settings.R;
+import com.android.settings.core.PreferenceMetadataFormat.Element;
+import com.android.settings.core.PreferenceXmlParserUtils.MetadataFlag;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Looks up the metadata of the preference XMLs precompiled at build time by the
+ * SettingsPreferenceMetadataGenerator, so the XMLs don't need to be parsed on the device.
+ *
+ * The precompiled data only holds the raw values, the resource references such as the localized
+ * titles are resolved when a screen is requested, so the data is valid in any locale.
+ */
+final class PreferenceMetadataIndex {
+
+    private static final String TAG = "PreferenceMetadataIndex";
+
+    /** The java resource generated by the settings-preference-metadata genrule. */
+    @VisibleForTesting
+    static final String RESOURCE_NAME = "preference_metadata.bin";
+
+    private static final String APPEND_VALUE = "append";
+
+    private static PreferenceMetadataIndex sInstance;
+
+    @Nullable
+    private final PreferenceMetadataFormat.Reader mReader;
+    private final Map<String, Integer> mResourceIds = new ConcurrentHashMap<>();
+
+    @VisibleForTesting
+    PreferenceMetadataIndex(@Nullable ByteBuffer buffer) {
+        mReader = buffer == null ? null : new PreferenceMetadataFormat.Reader(buffer);
+    }
+
+    static synchronized PreferenceMetadataIndex getInstance(Context context) {
+        if (sInstance == null) {
+            try {
+                sInstance = new PreferenceMetadataIndex(loadBuffer(context));
+            } catch (IllegalArgumentException e) {
+                Log.w(TAG, "Invalid precompiled preference metadata", e);
+                sInstance = new PreferenceMetadataIndex(null /* buffer */);
+            }
+        }
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    static synchronized void setInstance(PreferenceMetadataIndex index) {
+        sInstance = index;
+    }
+
+    /**
+     * Extracts the precompiled metadata in the same way as
+     * {@link PreferenceXmlParserUtils#extractMetadata(Context, int, int)}.
+     *
+     * @return the metadata, or {@code null} if the XML is not precompiled
+     */
+    @Nullable
+    List<Bundle> extractMetadata(Context context, int xmlResId, int flags) {
+        if (mReader == null) {
+            return null;
+        }
+        final Resources resources = context.getResources();
+        try {
+            final List<Element> elements =
+                    mReader.getElements(resources.getResourceEntryName(xmlResId));
+            if (elements == null) {
+                return null;
+            }
+            final String packageName = resources.getResourcePackageName(xmlResId);
+            final boolean hasPrefScreenFlag =
+                    hasFlag(flags, MetadataFlag.FLAG_INCLUDE_PREF_SCREEN);
+
+            final List<Bundle> metadata = new ArrayList<>(elements.size());
+            for (Element element : elements) {
+                if (!hasPrefScreenFlag && PREF_SCREEN_TAG.equals(element.mType)) {
+                    continue;
+                }
+                final Bundle preferenceMetadata = new Bundle();
+                if (hasFlag(flags, MetadataFlag.FLAG_NEED_PREF_TYPE)) {
+                    preferenceMetadata.putString(METADATA_PREF_TYPE, element.mType);
+                }
+                if (hasFlag(flags, MetadataFlag.FLAG_NEED_KEY)) {
+                    preferenceMetadata.putString(METADATA_KEY,
+                            getString(resources, packageName, element, ATTR_KEY));
+                }
+                if (hasFlag(flags, MetadataFlag.FLAG_NEED_PREF_CONTROLLER)) {
+                    preferenceMetadata.putString(METADATA_CONTROLLER,
+                            getString(resources, packageName, element, ATTR_CONTROLLER));
+                }
+                if (hasFlag(flags, MetadataFlag.FLAG_NEED_PREF_TITLE)) {
+                    preferenceMetadata.putString(METADATA_TITLE,
+                            getString(resources, packageName, element, ATTR_TITLE));
+                }
+                if (hasFlag(flags, MetadataFlag.FLAG_NEED_PREF_SUMMARY)) {
+                    preferenceMetadata.putString(METADATA_SUMMARY,
+                            getString(resources, packageName, element, ATTR_SUMMARY));
+                }
+                if (hasFlag(flags, MetadataFlag.FLAG_NEED_PREF_ICON)) {
+                    preferenceMetadata.putInt(METADATA_ICON,
+                            getResourceId(resources, packageName, element, ATTR_ICON));
+                }
+                if (hasFlag(flags, MetadataFlag.FLAG_NEED_KEYWORDS)) {
+                    preferenceMetadata.putString(METADATA_KEYWORDS,
+                            getString(resources, packageName, element, ATTR_KEYWORDS));
+                }
+                if (hasFlag(flags, MetadataFlag.FLAG_NEED_SEARCHABLE)) {
+                    preferenceMetadata.putBoolean(METADATA_SEARCHABLE, getBoolean(resources,
+                            packageName, element, ATTR_SEARCHABLE, true /* defaultValue */));
+                }
+                if (hasFlag(flags, MetadataFlag.FLAG_NEED_PREF_APPEND) && hasPrefScreenFlag) {
+                    preferenceMetadata.putBoolean(METADATA_APPEND,
+                            APPEND_VALUE.equals(element.mValues[ATTR_STATIC_PREFERENCE_LOCATION]));
+                }
+                if (hasFlag(flags, MetadataFlag.FLAG_UNAVAILABLE_SLICE_SUBTITLE)) {
+                    preferenceMetadata.putString(METADATA_UNAVAILABLE_SLICE_SUBTITLE, getString(
+                            resources, packageName, element, ATTR_UNAVAILABLE_SLICE_SUBTITLE));
+                }
+                if (hasFlag(flags, MetadataFlag.FLAG_FOR_WORK)) {
+                    preferenceMetadata.putBoolean(METADATA_FOR_WORK, getBoolean(resources,
+                            packageName, element, ATTR_FOR_WORK, false /* defaultValue */));
+                }
+                if (hasFlag(flags, MetadataFlag.FLAG_NEED_HIGHLIGHTABLE_MENU_KEY)) {
+                    preferenceMetadata.putString(METADATA_HIGHLIGHTABLE_MENU_KEY,
+                            getString(resources, packageName, element,
+                                    ATTR_HIGHLIGHTABLE_MENU_KEY));
+                }
+                if (hasFlag(flags, MetadataFlag.FLAG_NEED_USER_RESTRICTION)) {
+                    preferenceMetadata.putString(METADATA_USER_RESTRICTION,
+                            getString(resources, packageName, element, ATTR_USER_RESTRICTION));
+                }
+                metadata.add(preferenceMetadata);
+            }
+            return metadata;
+        } catch (Resources.NotFoundException e) {
+            Log.w(TAG, "Precompiled metadata of " + xmlResId + " is out of date", e);
+            return null;
+        }
+    }
+
+    private String getString(Resources resources, String packageName, Element element,
+            int attr) {
+        final byte kind = element.mKinds[attr];
+        if (kind == VALUE_ABSENT) {
+            return null;
+        }
+        if (kind == VALUE_REFERENCE) {
+            return resources.getString(
+                    getResourceId(resources, packageName, element.mValues[attr]));
+        }
+        return element.mValues[attr];
+    }
+
+    private boolean getBoolean(Resources resources, String packageName, Element element, int attr,
+            boolean defaultValue) {
+        final byte kind = element.mKinds[attr];
+        if (kind == VALUE_ABSENT) {
+            return defaultValue;
+        }
+        if (kind == VALUE_REFERENCE) {
+            return resources.getBoolean(
+                    getResourceId(resources, packageName, element.mValues[attr]));
+        }
+        return Boolean.parseBoolean(element.mValues[attr]);
+    }
+
+    private int getResourceId(Resources resources, String packageName, Element element,
+            int attr) {
+        if (element.mKinds[attr] != VALUE_REFERENCE) {
+            return 0;
+        }
+        return getResourceId(resources, packageName, element.mValues[attr]);
+    }
+
+    private int getResourceId(Resources resources, String packageName, String reference) {
+        // A reference without a package belongs to the package of the XML.
+        final String name = reference.indexOf(':') < 0
+                ? packageName + ":" + reference : reference;
+        Integer resId = mResourceIds.get(name);
+        if (resId == null) {
+            resId = resources.getIdentifier(name, null /* defType */, null /* defPackage */);
+            if (resId == 0) {
+                throw new Resources.NotFoundException(name);
+            }
+            mResourceIds.put(name, resId);
+        }
+        return resId;
+    }
+
+    private static boolean hasFlag(int flags, @MetadataFlag int flag) {
+        return (flags & flag) != 0;
+    }
+
+    @Nullable
+    private static ByteBuffer loadBuffer(Context context) {
+        if (!context.getResources().getBoolean(
+                R.bool.config_use_precompiled_preference_metadata)) {
+            return null;
+        }
+        try (InputStream in = PreferenceMetadataIndex.class.getClassLoader()
+                .getResourceAsStream(RESOURCE_NAME)) {
+            if (in == null) {
+                Log.d(TAG, "No precompiled preference metadata");
+                return null;
+            }
+            final long startTime = System.currentTimeMillis();
+            final ByteBuffer buffer = ByteBuffer.wrap(in.readAllBytes());
+            Log.d(TAG, "Loading precompiled preference metadata took: "
+                    + (System.currentTimeMillis() - startTime));
+            return buffer;
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to load precompiled preference metadata", e);
+            return null;
+        }
+    }
+}
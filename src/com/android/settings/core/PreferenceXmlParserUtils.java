@@ -38,7 +38,7 @@ import java.io.IOException;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -48,9 +48,6 @@ public class PreferenceXmlParserUtils {
 
     private static final String TAG = "PreferenceXmlParserUtil";
     public static final String PREF_SCREEN_TAG = "PreferenceScreen";
-    private static final List<String> SUPPORTED_PREF_TYPES = Arrays.asList(
-            "Preference", "PreferenceCategory", "PreferenceScreen", "SwitchPreferenceCompat",
-            "com.android.settings.widget.WorkOnlyCategory");
     public static final int PREPEND_VALUE = 0;
     public static final int APPEND_VALUE = 1;
 
@@ -110,17 +107,73 @@ public class PreferenceXmlParserUtils {
     /**
      * Extracts metadata from preference xml and put them into a {@link Bundle}.
      *
+     * The metadata is cached by {@link PreferenceMetadataCache}, and each call returns new
+     * {@link Bundle}s which can be modified by the caller.
+     *
      * @param xmlResId xml res id of a preference screen
      * @param flags    Should be one or more of {@link MetadataFlag}.
      */
     @NonNull
     public static List<Bundle> extractMetadata(Context context, @XmlRes int xmlResId, int flags)
             throws IOException, XmlPullParserException {
-        final List<Bundle> metadata = new ArrayList<>();
         if (xmlResId <= 0) {
             Log.d(TAG, xmlResId + " is invalid.");
+            return new ArrayList<>();
+        }
+        final PreferenceMetadataCache cache = PreferenceMetadataCache.getInstance(context);
+        final List<PreferenceMetadata> cachedMetadata = cache.get(context, xmlResId, flags);
+        if (cachedMetadata != null) {
+            final List<Bundle> metadata = new ArrayList<>(cachedMetadata.size());
+            for (PreferenceMetadata preferenceMetadata : cachedMetadata) {
+                metadata.add(preferenceMetadata.toBundle());
+            }
             return metadata;
         }
+        final List<Bundle> metadata = parseMetadata(context, xmlResId, flags);
+        cache.put(context, xmlResId, flags, toPreferenceMetadata(metadata, flags));
+        return metadata;
+    }
+
+    /**
+     * Extracts metadata from preference xml like {@link #extractMetadata(Context, int, int)}, but
+     * returns the immutable metadata shared with the other callers instead of {@link Bundle}s.
+     *
+     * @param xmlResId xml res id of a preference screen
+     * @param flags    Should be one or more of {@link MetadataFlag}.
+     */
+    @NonNull
+    public static List<PreferenceMetadata> getMetadata(Context context, @XmlRes int xmlResId,
+            int flags) throws IOException, XmlPullParserException {
+        if (xmlResId <= 0) {
+            Log.d(TAG, xmlResId + " is invalid.");
+            return Collections.emptyList();
+        }
+        final PreferenceMetadataCache cache = PreferenceMetadataCache.getInstance(context);
+        final List<PreferenceMetadata> cachedMetadata = cache.get(context, xmlResId, flags);
+        if (cachedMetadata != null) {
+            return cachedMetadata;
+        }
+        final List<Bundle> metadata = parseMetadata(context, xmlResId, flags);
+        return cache.put(context, xmlResId, flags, toPreferenceMetadata(metadata, flags));
+    }
+
+    private static List<PreferenceMetadata> toPreferenceMetadata(List<Bundle> metadata,
+            int flags) {
+        final List<PreferenceMetadata> preferenceMetadata = new ArrayList<>(metadata.size());
+        for (Bundle bundle : metadata) {
+            preferenceMetadata.add(new PreferenceMetadata(bundle, flags));
+        }
+        return preferenceMetadata;
+    }
+
+    private static List<Bundle> parseMetadata(Context context, @XmlRes int xmlResId, int flags)
+            throws IOException, XmlPullParserException {
+        final List<Bundle> metadata = new ArrayList<>();
+        final List<Bundle> precompiledMetadata = PreferenceMetadataIndex.getInstance(context)
+                .extractMetadata(context, xmlResId, flags);
+        if (precompiledMetadata != null) {
+            return precompiledMetadata;
+        }
         final XmlResourceParser parser = context.getResources().getXml(xmlResId);
 
         int type;
@@ -138,7 +191,7 @@ public class PreferenceXmlParserUtils {
             if (!hasPrefScreenFlag && TextUtils.equals(PREF_SCREEN_TAG, nodeName)) {
                 continue;
             }
-            if (!SUPPORTED_PREF_TYPES.contains(nodeName) && !nodeName.endsWith("Preference")) {
+            if (!PreferenceMetadataFormat.isPreferenceElement(nodeName)) {
                 continue;
             }
             final Bundle preferenceMetadata = new Bundle();
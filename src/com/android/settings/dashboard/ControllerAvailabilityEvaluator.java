@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.dashboard;
+
+import android.util.ArrayMap;
+
+import androidx.annotation.VisibleForTesting;
+
+import com.android.settings.core.BasePreferenceController.IoBoundAvailability;
+import com.android.settingslib.core.AbstractPreferenceController;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Evaluates the availability of the preference controllers of a page before their states are
+ * applied in one pass.
+ *
+ * The controllers implementing {@link IoBoundAvailability} are evaluated concurrently on a worker
+ * pool shared by the pages, while the other controllers are evaluated on the calling thread. So
+ * the binder calls of a page don't add up on the main thread. The calling thread waits for all
+ * the results, like it did when evaluating them one by one.
+ */
+final class ControllerAvailabilityEvaluator {
+
+    @VisibleForTesting
+    static final int MAX_THREADS = 4;
+
+    private static final long KEEP_ALIVE_SECONDS = 10L;
+
+    private static ThreadPoolExecutor sExecutor;
+
+    private ControllerAvailabilityEvaluator() {
+    }
+
+    /** @return the availability of each controller */
+    static Map<AbstractPreferenceController, Boolean> evaluate(
+            List<AbstractPreferenceController> controllers) {
+        final Map<AbstractPreferenceController, Boolean> availability =
+                new ArrayMap<>(controllers.size());
+        final List<AbstractPreferenceController> ioBoundControllers = new ArrayList<>();
+        for (AbstractPreferenceController controller : controllers) {
+            if (controller instanceof IoBoundAvailability) {
+                ioBoundControllers.add(controller);
+            }
+        }
+        // A single IO bound controller is not worth the thread hop.
+        if (ioBoundControllers.size() <= 1) {
+            for (AbstractPreferenceController controller : controllers) {
+                availability.put(controller, controller.isAvailable());
+            }
+            return availability;
+        }
+
+        final ThreadPoolExecutor executor = getExecutor();
+        final List<Future<Boolean>> futures = new ArrayList<>(ioBoundControllers.size());
+        for (AbstractPreferenceController controller : ioBoundControllers) {
+            futures.add(executor.submit(controller::isAvailable));
+        }
+        for (AbstractPreferenceController controller : controllers) {
+            if (!(controller instanceof IoBoundAvailability)) {
+                availability.put(controller, controller.isAvailable());
+            }
+        }
+        for (int i = 0; i < ioBoundControllers.size(); i++) {
+            final AbstractPreferenceController controller = ioBoundControllers.get(i);
+            availability.put(controller, getResult(controller, futures.get(i)));
+        }
+        return availability;
+    }
+
+    private static boolean getResult(AbstractPreferenceController controller,
+            Future<Boolean> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return controller.isAvailable();
+        } catch (ExecutionException e) {
+            // Rethrow as if the controller were evaluated on the calling thread.
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    private static synchronized ThreadPoolExecutor getExecutor() {
+        if (sExecutor == null) {
+            final AtomicInteger threadCount = new AtomicInteger();
+            sExecutor = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS, KEEP_ALIVE_SECONDS,
+                    TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                    runnable -> new Thread(runnable,
+                            "ControllerAvailability-" + threadCount.incrementAndGet()));
+            // The pool is idle between the page builds.
+            sExecutor.allowCoreThreadTimeOut(true);
+        }
+        return sExecutor;
+    }
+}
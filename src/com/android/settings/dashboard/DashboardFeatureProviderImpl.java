@@ -96,12 +96,14 @@ public class DashboardFeatureProviderImpl implements DashboardFeatureProvider {
     private final MetricsFeatureProvider mMetricsFeatureProvider;
     private final CategoryManager mCategoryManager;
     private final PackageManager mPackageManager;
+    private final DynamicTileDataLoader mDynamicTileDataLoader;
 
     public DashboardFeatureProviderImpl(Context context) {
         mContext = context.getApplicationContext();
         mCategoryManager = CategoryManager.get(context);
         mMetricsFeatureProvider = FeatureFactory.getFeatureFactory().getMetricsFeatureProvider();
         mPackageManager = context.getPackageManager();
+        mDynamicTileDataLoader = new DynamicTileDataLoader();
     }
 
     @Override
@@ -283,14 +285,16 @@ public class DashboardFeatureProviderImpl implements DashboardFeatureProvider {
     }
 
     private void refreshTitle(Uri uri, Preference preference, DynamicDataObserver observer) {
-        ThreadUtils.postOnBackgroundThread(() -> {
-            final Map<String, IContentProvider> providerMap = new ArrayMap<>();
-            final String titleFromUri = TileUtils.getTextFromUri(
-                    mContext, uri, providerMap, META_DATA_PREFERENCE_TITLE);
-            if (!TextUtils.equals(titleFromUri, preference.getTitle())) {
-                observer.post(() -> preference.setTitle(titleFromUri));
-            }
-        });
+        mDynamicTileDataLoader.load(uri,
+                providerMap -> updateTitle(preference, observer, TileUtils.getTextFromUri(
+                        mContext, uri, providerMap, META_DATA_PREFERENCE_TITLE)));
+    }
+
+    private void updateTitle(Preference preference, DynamicDataObserver observer,
+            String titleFromUri) {
+        if (!TextUtils.equals(titleFromUri, preference.getTitle())) {
+            observer.post(() -> preference.setTitle(titleFromUri));
+        }
     }
 
     private DynamicDataObserver bindSummaryAndGetObserver(Preference preference, Tile tile) {
@@ -313,14 +317,16 @@ public class DashboardFeatureProviderImpl implements DashboardFeatureProvider {
     }
 
     private void refreshSummary(Uri uri, Preference preference, DynamicDataObserver observer) {
-        ThreadUtils.postOnBackgroundThread(() -> {
-            final Map<String, IContentProvider> providerMap = new ArrayMap<>();
-            final String summaryFromUri = TileUtils.getTextFromUri(
-                    mContext, uri, providerMap, META_DATA_PREFERENCE_SUMMARY);
-            if (!TextUtils.equals(summaryFromUri, preference.getSummary())) {
-                observer.post(() -> preference.setSummary(summaryFromUri));
-            }
-        });
+        mDynamicTileDataLoader.load(uri,
+                providerMap -> updateSummary(preference, observer, TileUtils.getTextFromUri(
+                        mContext, uri, providerMap, META_DATA_PREFERENCE_SUMMARY)));
+    }
+
+    private void updateSummary(Preference preference, DynamicDataObserver observer,
+            String summaryFromUri) {
+        if (!TextUtils.equals(summaryFromUri, preference.getSummary())) {
+            observer.post(() -> preference.setSummary(summaryFromUri));
+        }
     }
 
     private DynamicDataObserver bindSwitchAndGetObserver(Preference preference, Tile tile) {
@@ -365,14 +371,16 @@ public class DashboardFeatureProviderImpl implements DashboardFeatureProvider {
     }
 
     private void refreshSwitch(Uri uri, Preference preference, DynamicDataObserver observer) {
-        ThreadUtils.postOnBackgroundThread(() -> {
-            final Map<String, IContentProvider> providerMap = new ArrayMap<>();
-            final boolean checked = TileUtils.getBooleanFromUri(mContext, uri, providerMap,
-                    EXTRA_SWITCH_CHECKED_STATE);
-            observer.post(() -> {
-                setSwitchChecked(preference, checked);
-                setSwitchEnabled(preference, true);
-            });
+        mDynamicTileDataLoader.load(uri,
+                providerMap -> updateSwitch(preference, observer, TileUtils.getBooleanFromUri(
+                        mContext, uri, providerMap, EXTRA_SWITCH_CHECKED_STATE)));
+    }
+
+    private void updateSwitch(Preference preference, DynamicDataObserver observer,
+            boolean checked) {
+        observer.post(() -> {
+            setSwitchChecked(preference, checked);
+            setSwitchEnabled(preference, true);
         });
     }
 
@@ -54,6 +54,7 @@ import com.android.settingslib.core.lifecycle.Lifecycle;
 import com.android.settingslib.drawer.DashboardCategory;
 import com.android.settingslib.drawer.Tile;
 import com.android.settingslib.search.Indexable;
+import com.android.settingslib.utils.ThreadUtils;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -64,8 +65,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.TimeUnit;
 
 /**
  * Base fragment for dashboard style UI containing a list of static and dynamic setting items.
@@ -75,7 +74,8 @@ public abstract class DashboardFragment extends SettingsPreferenceFragment
         BasePreferenceController.UiBlockListener {
     public static final String CATEGORY = "category";
     private static final String TAG = "DashboardFragment";
-    private static final long TIMEOUT_MILLIS = 50L;
+    @VisibleForTesting
+    static final long FIRST_FRAME_DEADLINE_MILLIS = 50L;
 
     @VisibleForTesting
     final ArrayMap<String, List<DynamicDataObserver>> mDashboardTilePrefKeys = new ArrayMap<>();
@@ -391,29 +391,31 @@ public abstract class DashboardFragment extends SettingsPreferenceFragment
      */
     protected void updatePreferenceStates() {
         final PreferenceScreen screen = getPreferenceScreen();
-        Collection<List<AbstractPreferenceController>> controllerLists =
-                mPreferenceControllers.values();
-        for (List<AbstractPreferenceController> controllerList : controllerLists) {
-            for (AbstractPreferenceController controller : controllerList) {
-                if (!controller.isAvailable()) {
-                    continue;
-                }
+        final List<AbstractPreferenceController> controllers = new ArrayList<>();
+        for (List<AbstractPreferenceController> controllerList : mPreferenceControllers.values()) {
+            controllers.addAll(controllerList);
+        }
+        final Map<AbstractPreferenceController, Boolean> availability =
+                ControllerAvailabilityEvaluator.evaluate(controllers);
+        for (AbstractPreferenceController controller : controllers) {
+            if (!availability.get(controller)) {
+                continue;
+            }
 
-                final String key = controller.getPreferenceKey();
-                if (TextUtils.isEmpty(key)) {
-                    Log.d(TAG, String.format("Preference key is %s in Controller %s",
-                            key, controller.getClass().getSimpleName()));
-                    continue;
-                }
+            final String key = controller.getPreferenceKey();
+            if (TextUtils.isEmpty(key)) {
+                Log.d(TAG, String.format("Preference key is %s in Controller %s",
+                        key, controller.getClass().getSimpleName()));
+                continue;
+            }
 
-                final Preference preference = screen.findPreference(key);
-                if (preference == null) {
-                    Log.d(TAG, String.format("Cannot find preference with key %s in Controller %s",
-                            key, controller.getClass().getSimpleName()));
-                    continue;
-                }
-                controller.updateState(preference);
+            final Preference preference = screen.findPreference(key);
+            if (preference == null) {
+                Log.d(TAG, String.format("Cannot find preference with key %s in Controller %s",
+                        key, controller.getClass().getSimpleName()));
+                continue;
             }
+            controller.updateState(preference);
         }
     }
 
@@ -451,19 +453,19 @@ public abstract class DashboardFragment extends SettingsPreferenceFragment
         if (screen == null || mPreferenceControllers == null) {
             return;
         }
-        for (List<AbstractPreferenceController> controllerList : mPreferenceControllers.values()) {
-            for (AbstractPreferenceController controller : controllerList) {
-                final String key = controller.getPreferenceKey();
-                final Preference preference = findPreference(key);
-                if (preference == null) {
-                    continue;
-                }
-                final boolean available = controller.isAvailable();
-                if (available) {
-                    controller.updateState(preference);
-                }
-                preference.setVisible(available);
+        final List<AbstractPreferenceController> controllers = new ArrayList<>();
+        final List<Preference> preferences = new ArrayList<>();
+        collectControllersWithPreference(mPreferenceControllers, controllers, preferences);
+        final Map<AbstractPreferenceController, Boolean> availability =
+                ControllerAvailabilityEvaluator.evaluate(controllers);
+        for (int i = 0; i < controllers.size(); i++) {
+            final AbstractPreferenceController controller = controllers.get(i);
+            final Preference preference = preferences.get(i);
+            final boolean available = availability.get(controller);
+            if (available) {
+                controller.updateState(preference);
             }
+            preference.setVisible(available);
         }
     }
 
@@ -476,21 +478,39 @@ public abstract class DashboardFragment extends SettingsPreferenceFragment
         }
 
         final boolean visible = mBlockerController.isBlockerFinished();
+        final List<AbstractPreferenceController> controllers = new ArrayList<>();
+        final List<Preference> preferences = new ArrayList<>();
+        collectControllersWithPreference(preferenceControllers, controllers, preferences);
+        // The availability is not needed while the UI is blocked.
+        final Map<AbstractPreferenceController, Boolean> availability = visible
+                ? ControllerAvailabilityEvaluator.evaluate(controllers)
+                : Collections.emptyMap();
+        for (int i = 0; i < controllers.size(); i++) {
+            final AbstractPreferenceController controller = controllers.get(i);
+            final Preference preference = preferences.get(i);
+            if (controller instanceof BasePreferenceController.UiBlocker) {
+                final boolean prefVisible =
+                        ((BasePreferenceController) controller).getSavedPrefVisibility();
+                preference.setVisible(visible && availability.get(controller) && prefVisible);
+            } else {
+                preference.setVisible(visible && availability.get(controller));
+            }
+        }
+    }
+
+    /** Collects the controllers whose preference is on the screen, with their preferences. */
+    private void collectControllersWithPreference(
+            Map<Class, List<AbstractPreferenceController>> preferenceControllers,
+            List<AbstractPreferenceController> outControllers, List<Preference> outPreferences) {
         for (List<AbstractPreferenceController> controllerList :
                 preferenceControllers.values()) {
             for (AbstractPreferenceController controller : controllerList) {
-                final String key = controller.getPreferenceKey();
-                final Preference preference = findPreference(key);
+                final Preference preference = findPreference(controller.getPreferenceKey());
                 if (preference == null) {
                     continue;
                 }
-                if (controller instanceof BasePreferenceController.UiBlocker) {
-                    final boolean prefVisible =
-                            ((BasePreferenceController) controller).getSavedPrefVisibility();
-                    preference.setVisible(visible && controller.isAvailable() && prefVisible);
-                } else {
-                    preference.setVisible(visible && controller.isAvailable());
-                }
+                outControllers.add(controller);
+                outPreferences.add(preference);
             }
         }
     }
@@ -517,7 +537,7 @@ public abstract class DashboardFragment extends SettingsPreferenceFragment
 
         // Install dashboard tiles and collect pending observers.
         final boolean forceRoundedIcons = shouldForceRoundedIcon();
-        final List<DynamicDataObserver> pendingObservers = new ArrayList<>();
+        final Map<String, List<DynamicDataObserver>> pendingObservers = new ArrayMap<>();
 
         // Move group tiles to the beginning of the list to ensure they are created before the
         // other tiles.
@@ -569,8 +589,8 @@ public abstract class DashboardFragment extends SettingsPreferenceFragment
                 registerDynamicDataObservers(observers);
                 mDashboardTilePrefKeys.put(key, observers);
             }
-            if (observers != null) {
-                pendingObservers.addAll(observers);
+            if (observers != null && !observers.isEmpty()) {
+                pendingObservers.put(key, observers);
             }
             remove.remove(key);
         }
@@ -590,21 +610,37 @@ public abstract class DashboardFragment extends SettingsPreferenceFragment
             unregisterDynamicDataObservers(entry.getValue());
         }
 
-        // Wait for pending observers to update UI.
+        // Bind the dynamic data of the tiles without blocking the UI thread.
         if (!pendingObservers.isEmpty()) {
-            final CountDownLatch mainLatch = new CountDownLatch(1);
-            new Thread(() -> {
-                pendingObservers.forEach(observer ->
-                        awaitObserverLatch(observer.getCountDownLatch()));
-                mainLatch.countDown();
-            }).start();
-            Log.d(tag, "Start waiting observers");
-            awaitObserverLatch(mainLatch);
-            Log.d(tag, "Stop waiting observers");
-            pendingObservers.forEach(DynamicDataObserver::updateUi);
+            bindDynamicData(tag, pendingObservers);
         }
     }
 
+    /**
+     * Applies the dynamic data of the tiles as it arrives. The data loaded so far is applied right
+     * away, and the observers post the rest to the main thread once loaded in the background. The
+     * tiles whose data isn't loaded by the first frame deadline are counted, since they are
+     * updated after the page shows up.
+     */
+    private void bindDynamicData(String tag, Map<String, List<DynamicDataObserver>> tileObservers) {
+        tileObservers.values().forEach(observers ->
+                observers.forEach(DynamicDataObserver::updateUi));
+        ThreadUtils.getUiThreadHandler().postDelayed(() -> {
+            int missedTileCount = 0;
+            for (List<DynamicDataObserver> observers : tileObservers.values()) {
+                if (!observers.stream().allMatch(DynamicDataObserver::isDataLoaded)) {
+                    missedTileCount++;
+                }
+            }
+            DashboardTileBindingStats.getInstance().onTilesBound(tileObservers.size(),
+                    missedTileCount);
+            if (missedTileCount > 0) {
+                Log.d(tag, missedTileCount + " of " + tileObservers.size()
+                        + " tiles missed the first frame deadline");
+            }
+        }, FIRST_FRAME_DEADLINE_MILLIS);
+    }
+
     @Override
     public void onBlockerWorkFinished(BasePreferenceController controller) {
         mBlockerController.countDown(controller.getPreferenceKey());
@@ -665,12 +701,4 @@ public abstract class DashboardFragment extends SettingsPreferenceFragment
             resolver.unregisterContentObserver(observer);
         });
     }
-
-    private void awaitObserverLatch(CountDownLatch latch) {
-        try {
-            latch.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
-        } catch (InterruptedException e) {
-            // Do nothing
-        }
-    }
 }
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.dashboard;
+
+import androidx.annotation.VisibleForTesting;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide counters of the injected tiles bound with dynamic data, and of the ones whose data
+ * wasn't loaded by the first frame deadline, so they were updated after the page showed up.
+ */
+public final class DashboardTileBindingStats {
+
+    private static final DashboardTileBindingStats sInstance = new DashboardTileBindingStats();
+
+    private final AtomicLong mBoundTileCount = new AtomicLong();
+    private final AtomicLong mMissedDeadlineTileCount = new AtomicLong();
+
+    @VisibleForTesting
+    DashboardTileBindingStats() {
+    }
+
+    public static DashboardTileBindingStats getInstance() {
+        return sInstance;
+    }
+
+    /** Counts the tiles of a binding pass, and the ones which missed the first frame deadline. */
+    void onTilesBound(int boundTileCount, int missedDeadlineTileCount) {
+        mBoundTileCount.addAndGet(boundTileCount);
+        mMissedDeadlineTileCount.addAndGet(missedDeadlineTileCount);
+    }
+
+    /** @return the counters for dumpsys */
+    public JSONObject dumpStats() throws JSONException {
+        final JSONObject obj = new JSONObject();
+        obj.put("bound", mBoundTileCount.get());
+        obj.put("missedFirstFrameDeadline", mMissedDeadlineTileCount.get());
+        return obj;
+    }
+
+    @VisibleForTesting
+    long getBoundTileCount() {
+        return mBoundTileCount.get();
+    }
+
+    @VisibleForTesting
+    long getMissedDeadlineTileCount() {
+        return mMissedDeadlineTileCount.get();
+    }
+}
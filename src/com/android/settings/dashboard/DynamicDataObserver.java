@@ -54,11 +54,16 @@ public abstract class DynamicDataObserver extends ContentObserver {
         }
     }
 
-    /** Returns the count-down latch */
+    /** Returns the count-down latch, which is counted down once the data is loaded */
     public CountDownLatch getCountDownLatch() {
         return mCountDownLatch;
     }
 
+    /** Returns whether the data has been loaded at least once */
+    public boolean isDataLoaded() {
+        return mCountDownLatch.getCount() == 0;
+    }
+
     @Override
     public void onChange(boolean selfChange) {
         onDataChanged();
@@ -69,7 +74,7 @@ public abstract class DynamicDataObserver extends ContentObserver {
             ThreadUtils.postOnMainThread(runnable);
         } else {
             mUpdateRunnable = runnable;
-            mCountDownLatch.countDown();
         }
+        mCountDownLatch.countDown();
     }
 }
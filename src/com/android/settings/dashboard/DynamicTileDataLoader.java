@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.dashboard;
+
+import android.content.IContentProvider;
+import android.net.Uri;
+import android.util.ArrayMap;
+
+import androidx.annotation.VisibleForTesting;
+
+import com.android.settingslib.utils.ThreadUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * Loads the dynamic titles, summaries and switch states of the injected tiles, grouping the uris
+ * of an authority requested in the same main thread pass into one background task.
+ *
+ * <p>The loads of a group run one after another with the same provider map, so the provider of
+ * the authority is acquired once for all its tiles instead of once per tile.
+ */
+final class DynamicTileDataLoader {
+
+    private final Executor mFlushExecutor;
+    private final List<Request> mPendingRequests = new ArrayList<>();
+    private boolean mFlushScheduled;
+
+    DynamicTileDataLoader() {
+        this(ThreadUtils::postOnMainThread);
+    }
+
+    @VisibleForTesting
+    DynamicTileDataLoader(Executor flushExecutor) {
+        mFlushExecutor = flushExecutor;
+    }
+
+    /**
+     * Queues the loading of the uri, which is done in the background once the current main thread
+     * pass is over.
+     *
+     * @param loader loads the uri with the providers acquired for its authority
+     */
+    void load(Uri uri, Consumer<Map<String, IContentProvider>> loader) {
+        synchronized (mPendingRequests) {
+            mPendingRequests.add(new Request(uri, loader));
+            if (mFlushScheduled) {
+                return;
+            }
+            mFlushScheduled = true;
+        }
+        mFlushExecutor.execute(this::flush);
+    }
+
+    private void flush() {
+        final Map<String, List<Request>> requestsByAuthority = new ArrayMap<>();
+        synchronized (mPendingRequests) {
+            for (Request request : mPendingRequests) {
+                requestsByAuthority.computeIfAbsent(request.mUri.getAuthority(),
+                        authority -> new ArrayList<>()).add(request);
+            }
+            mPendingRequests.clear();
+            mFlushScheduled = false;
+        }
+        for (List<Request> requests : requestsByAuthority.values()) {
+            ThreadUtils.postOnBackgroundThread(() -> load(requests));
+        }
+    }
+
+    private static void load(List<Request> requests) {
+        final Map<String, IContentProvider> providerMap = new ArrayMap<>();
+        for (Request request : requests) {
+            request.mLoader.accept(providerMap);
+        }
+    }
+
+    private static final class Request {
+        private final Uri mUri;
+        private final Consumer<Map<String, IContentProvider>> mLoader;
+
+        Request(Uri uri, Consumer<Map<String, IContentProvider>> loader) {
+            mUri = uri;
+            mLoader = loader;
+        }
+    }
+}
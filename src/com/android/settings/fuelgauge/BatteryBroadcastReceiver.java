@@ -29,6 +29,7 @@ import androidx.annotation.IntDef;
 import androidx.annotation.VisibleForTesting;
 
 import com.android.settings.Utils;
+import com.android.settings.fuelgauge.batteryusage.BatteryUsageStatsCache;
 
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
@@ -138,27 +139,36 @@ public class BatteryBroadcastReceiver extends BroadcastReceiver {
                             + batteryHealth);
             if (!Utils.isBatteryPresent(intent)) {
                 Log.w(TAG, "Problem reading the battery meter.");
-                mBatteryListener.onBatteryChanged(BatteryUpdateType.BATTERY_NOT_PRESENT);
+                notifyBatteryChanged(BatteryUpdateType.BATTERY_NOT_PRESENT);
             } else if (forceUpdate) {
-                mBatteryListener.onBatteryChanged(BatteryUpdateType.MANUAL);
+                notifyBatteryChanged(BatteryUpdateType.MANUAL);
             } else if (chargingStatus != mChargingStatus) {
-                mBatteryListener.onBatteryChanged(BatteryUpdateType.CHARGING_STATUS);
+                notifyBatteryChanged(BatteryUpdateType.CHARGING_STATUS);
             } else if (batteryHealth != mBatteryHealth) {
-                mBatteryListener.onBatteryChanged(BatteryUpdateType.BATTERY_HEALTH);
+                notifyBatteryChanged(BatteryUpdateType.BATTERY_HEALTH);
             } else if (!batteryLevel.equals(mBatteryLevel)) {
-                mBatteryListener.onBatteryChanged(BatteryUpdateType.BATTERY_LEVEL);
+                notifyBatteryChanged(BatteryUpdateType.BATTERY_LEVEL);
             } else if (!batteryStatus.equals(mBatteryStatus)) {
-                mBatteryListener.onBatteryChanged(BatteryUpdateType.BATTERY_STATUS);
+                notifyBatteryChanged(BatteryUpdateType.BATTERY_STATUS);
             }
             mBatteryLevel = batteryLevel;
             mBatteryStatus = batteryStatus;
             mChargingStatus = chargingStatus;
             mBatteryHealth = batteryHealth;
         } else if (PowerManager.ACTION_POWER_SAVE_MODE_CHANGED.equals(action)) {
-            mBatteryListener.onBatteryChanged(BatteryUpdateType.BATTERY_SAVER);
+            notifyBatteryChanged(BatteryUpdateType.BATTERY_SAVER);
         } else if (BatteryUtils.BYPASS_DOCK_DEFENDER_ACTION.equals(action)
                 || UsbManager.ACTION_USB_PORT_COMPLIANCE_CHANGED.equals(action)) {
-            mBatteryListener.onBatteryChanged(BatteryUpdateType.BATTERY_STATUS);
+            notifyBatteryChanged(BatteryUpdateType.BATTERY_STATUS);
         }
     }
+
+    private void notifyBatteryChanged(@BatteryUpdateType int type) {
+        // The MANUAL type is sent when a screen registers the receiver. Keeps sharing the cached
+        // data across the battery screens until the battery state really changes.
+        if (type != BatteryUpdateType.MANUAL) {
+            BatteryUsageStatsCache.invalidate();
+        }
+        mBatteryListener.onBatteryChanged(type);
+    }
 }
@@ -21,7 +21,6 @@ import android.content.res.Resources;
 import android.os.AsyncTask;
 import android.os.BatteryManager;
 import android.os.BatteryStats.HistoryItem;
-import android.os.BatteryStatsManager;
 import android.os.BatteryUsageStats;
 import android.os.SystemClock;
 import android.provider.Settings;
@@ -35,6 +34,7 @@ import androidx.annotation.WorkerThread;
 
 import com.android.internal.os.BatteryStatsHistoryIterator;
 import com.android.settings.Utils;
+import com.android.settings.fuelgauge.batteryusage.BatteryUsageStatsCache;
 import com.android.settings.overlay.FeatureFactory;
 import com.android.settings.widget.UsageView;
 import com.android.settingslib.R;
@@ -180,31 +180,24 @@ public class BatteryInfo {
         new AsyncTask<Void, Void, BatteryInfo>() {
             @Override
             protected BatteryInfo doInBackground(Void... params) {
-                boolean shouldCloseBatteryUsageStats = false;
-                BatteryUsageStats stats;
                 if (batteryUsageStats != null) {
-                    stats = batteryUsageStats;
-                } else {
-                    try {
-                        stats =
-                                context.getSystemService(BatteryStatsManager.class)
-                                        .getBatteryUsageStats();
-                        shouldCloseBatteryUsageStats = true;
-                    } catch (RuntimeException e) {
-                        Log.e(TAG, "getBatteryInfo() from getBatteryUsageStats()", e);
-                        // Use default BatteryUsageStats.
-                        stats = new BatteryUsageStats.Builder(new String[0]).build();
-                    }
+                    return getBatteryInfo(context, batteryUsageStats, shortString);
                 }
-                final BatteryInfo batteryInfo = getBatteryInfo(context, stats, shortString);
-                if (shouldCloseBatteryUsageStats) {
-                    try {
-                        stats.close();
-                    } catch (Exception e) {
-                        Log.e(TAG, "BatteryUsageStats.close() failed", e);
-                    }
+                BatteryUsageStatsCache.Snapshot snapshot;
+                try {
+                    snapshot = BatteryUsageStatsCache.acquire(context, /* queryFlags= */ 0);
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "getBatteryInfo() from getBatteryUsageStats()", e);
+                    // Use default BatteryUsageStats.
+                    snapshot =
+                            BatteryUsageStatsCache.Snapshot.createUncached(
+                                    new BatteryUsageStats.Builder(new String[0]).build());
+                }
+                try {
+                    return getBatteryInfo(context, snapshot.getBatteryUsageStats(), shortString);
+                } finally {
+                    snapshot.close();
                 }
-                return batteryInfo;
             }
 
             @Override
@@ -25,9 +25,7 @@ import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
 import android.os.BatteryManager;
 import android.os.BatteryStats;
-import android.os.BatteryStatsManager;
 import android.os.BatteryUsageStats;
-import android.os.BatteryUsageStatsQuery;
 import android.os.Build;
 import android.os.SystemClock;
 import android.os.UidBatteryConsumer;
@@ -45,6 +43,7 @@ import androidx.annotation.WorkerThread;
 import com.android.internal.util.ArrayUtils;
 import com.android.settings.R;
 import com.android.settings.fuelgauge.batterytip.AnomalyDatabaseHelper;
+import com.android.settings.fuelgauge.batteryusage.BatteryUsageStatsCache;
 import com.android.settings.fuelgauge.batterytip.BatteryDatabaseManager;
 import com.android.settings.overlay.FeatureFactory;
 import com.android.settingslib.applications.AppUtils;
@@ -380,6 +379,27 @@ public class BatteryUtils {
         }
     }
 
+    /**
+     * Parses proto object from raw bytes.
+     *
+     * @param serializedProto the serialized proto bytes
+     * @param protoClass class of the proto
+     * @return instance of the proto class parsed from the bytes
+     */
+    @SuppressWarnings("unchecked")
+    public static <T extends MessageLite> T parseProtoFromBytes(
+            byte[] serializedProto, T protoClass) {
+        if (serializedProto == null || serializedProto.length == 0) {
+            return (T) protoClass.getDefaultInstanceForType();
+        }
+        try {
+            return (T) protoClass.getParserForType().parseFrom(serializedProto);
+        } catch (InvalidProtocolBufferException e) {
+            Log.e(TAG, "Failed to deserialize proto class", e);
+            return (T) protoClass.getDefaultInstanceForType();
+        }
+    }
+
     /** Sets force app standby mode */
     public void setForceAppStandby(int uid, String packageName, int mode) {
         final boolean isPreOApp = isPreOApp(packageName);
@@ -433,18 +453,19 @@ public class BatteryUtils {
 
     @WorkerThread
     public BatteryInfo getBatteryInfo(final String tag) {
-        final BatteryStatsManager systemService =
-                mContext.getSystemService(BatteryStatsManager.class);
-        BatteryUsageStats batteryUsageStats;
+        BatteryUsageStatsCache.Snapshot snapshot;
         try {
-            batteryUsageStats =
-                    systemService.getBatteryUsageStats(
-                            new BatteryUsageStatsQuery.Builder().includeBatteryHistory().build());
+            snapshot =
+                    BatteryUsageStatsCache.acquire(
+                            mContext, BatteryUsageStatsCache.FLAG_INCLUDE_HISTORY);
         } catch (RuntimeException e) {
             Log.e(TAG, "getBatteryInfo() error from getBatteryUsageStats()", e);
             // Use default BatteryUsageStats.
-            batteryUsageStats = new BatteryUsageStats.Builder(new String[0]).build();
+            snapshot =
+                    BatteryUsageStatsCache.Snapshot.createUncached(
+                            new BatteryUsageStats.Builder(new String[0]).build());
         }
+        final BatteryUsageStats batteryUsageStats = snapshot.getBatteryUsageStats();
 
         final long startTime = System.currentTimeMillis();
 
@@ -476,11 +497,7 @@ public class BatteryUtils {
                         false /* shortString */);
         BatteryUtils.logRuntime(tag, "BatteryInfoLoader.loadInBackground", startTime);
 
-        try {
-            batteryUsageStats.close();
-        } catch (Exception e) {
-            Log.e(TAG, "BatteryUsageStats.close() failed", e);
-        }
+        snapshot.close();
         return batteryInfo;
     }
 
@@ -119,6 +119,12 @@ public interface PowerUsageFeatureProvider {
     /** Returns {@code true} if delay the hourly job when device is booting */
     boolean delayHourlyJobWhenBooting();
 
+    /**
+     * Returns the horizon in milliseconds to compact the battery states older than it, or a
+     * non-positive value to disable the compaction.
+     */
+    long getBatteryStateCompactionHorizonMs();
+
     /** Returns {@link Bundle} for power anomaly detection result */
     @Nullable
     PowerAnomalyEventList detectPowerAnomaly(
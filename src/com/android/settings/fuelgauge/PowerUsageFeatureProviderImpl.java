@@ -36,6 +36,7 @@ import com.android.settings.fuelgauge.batteryusage.DetectRequestSourceType;
 import com.android.settings.fuelgauge.batteryusage.PowerAnomalyEventList;
 import com.android.settingslib.fuelgauge.Estimate;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -189,6 +190,11 @@ public class PowerUsageFeatureProviderImpl implements PowerUsageFeatureProvider
         return true;
     }
 
+    @Override
+    public long getBatteryStateCompactionHorizonMs() {
+        return Duration.ofHours(24).toMillis();
+    }
+
     @Override
     @Nullable
     public PowerAnomalyEventList detectPowerAnomaly(
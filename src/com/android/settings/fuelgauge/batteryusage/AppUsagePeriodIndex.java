@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.fuelgauge.batteryusage;
+
+import android.util.ArrayMap;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongPredicate;
+
+/**
+ * An index of the {@link AppUsagePeriod}s in a time slot. The periods of each user and package are
+ * sorted and merged into non-overlapping intervals stored in primitive arrays, together with the
+ * accumulated durations, so the foreground time is answered by a lookup instead of walking the
+ * period lists for every battery diff entry.
+ */
+final class AppUsagePeriodIndex {
+    private static final int INVALID_ENTRY = -1;
+
+    // Entry index of each user and package.
+    private final Map<Long, Map<String, Integer>> mEntryIndexMap = new ArrayMap<>();
+    private final List<Long> mEntryUserIds = new ArrayList<>();
+    // Intervals of the entry i are in [mEntryOffsets[i], mEntryOffsets[i + 1]).
+    private int[] mEntryOffsets;
+    private long[] mStartTimes;
+    private long[] mEndTimes;
+    // The total duration of the intervals before the index.
+    private long[] mAccumulatedDurations;
+
+    private AppUsagePeriodIndex() {}
+
+    /** Creates the index from the app usage periods of a time slot, keyed by user and package. */
+    @NonNull
+    static AppUsagePeriodIndex create(
+            @Nullable final Map<Long, Map<String, List<AppUsagePeriod>>> appUsageMap) {
+        final AppUsagePeriodIndex index = new AppUsagePeriodIndex();
+        final List<long[]> mergedIntervalsList = new ArrayList<>();
+        int intervalSize = 0;
+        if (appUsageMap != null) {
+            for (Map.Entry<Long, Map<String, List<AppUsagePeriod>>> userEntry :
+                    appUsageMap.entrySet()) {
+                if (userEntry.getValue() == null) {
+                    continue;
+                }
+                final Map<String, Integer> packageIndexMap = new ArrayMap<>();
+                for (Map.Entry<String, List<AppUsagePeriod>> packageEntry :
+                        userEntry.getValue().entrySet()) {
+                    final long[] mergedIntervals =
+                            mergeIntervals(toIntervals(packageEntry.getValue()));
+                    if (mergedIntervals.length == 0) {
+                        continue;
+                    }
+                    packageIndexMap.put(packageEntry.getKey(), mergedIntervalsList.size());
+                    index.mEntryUserIds.add(userEntry.getKey());
+                    mergedIntervalsList.add(mergedIntervals);
+                    intervalSize += mergedIntervals.length / 2;
+                }
+                if (!packageIndexMap.isEmpty()) {
+                    index.mEntryIndexMap.put(userEntry.getKey(), packageIndexMap);
+                }
+            }
+        }
+
+        index.mEntryOffsets = new int[mergedIntervalsList.size() + 1];
+        index.mStartTimes = new long[intervalSize];
+        index.mEndTimes = new long[intervalSize];
+        index.mAccumulatedDurations = new long[intervalSize + 1];
+        int offset = 0;
+        for (int entry = 0; entry < mergedIntervalsList.size(); entry++) {
+            index.mEntryOffsets[entry] = offset;
+            final long[] mergedIntervals = mergedIntervalsList.get(entry);
+            for (int i = 0; i < mergedIntervals.length; i += 2) {
+                index.mStartTimes[offset] = mergedIntervals[i];
+                index.mEndTimes[offset] = mergedIntervals[i + 1];
+                index.mAccumulatedDurations[offset + 1] =
+                        index.mAccumulatedDurations[offset]
+                                + mergedIntervals[i + 1]
+                                - mergedIntervals[i];
+                offset++;
+            }
+        }
+        index.mEntryOffsets[mergedIntervalsList.size()] = offset;
+        return index;
+    }
+
+    /** Returns the non-overlapping foreground time of the package. */
+    long getForegroundTime(final long userId, final String packageName) {
+        final int entry = getEntry(userId, packageName);
+        if (entry == INVALID_ENTRY) {
+            return 0;
+        }
+        return mAccumulatedDurations[mEntryOffsets[entry + 1]]
+                - mAccumulatedDurations[mEntryOffsets[entry]];
+    }
+
+    /** Returns the non-overlapping foreground time of all packages of the matched users. */
+    long getForegroundTimeOfUsers(final LongPredicate userFilter) {
+        final List<long[]> intervals = new ArrayList<>();
+        for (int entry = 0; entry < mEntryUserIds.size(); entry++) {
+            if (!userFilter.test(mEntryUserIds.get(entry))) {
+                continue;
+            }
+            for (int i = mEntryOffsets[entry]; i < mEntryOffsets[entry + 1]; i++) {
+                intervals.add(new long[] {mStartTimes[i], mEndTimes[i]});
+            }
+        }
+        return getDuration(mergeIntervals(intervals));
+    }
+
+    /** Returns the total duration of the periods without counting the overlapped time twice. */
+    static long getMergedDuration(@Nullable final List<AppUsagePeriod> periods) {
+        return getDuration(mergeIntervals(toIntervals(periods)));
+    }
+
+    private int getEntry(final long userId, final String packageName) {
+        final Map<String, Integer> packageIndexMap = mEntryIndexMap.get(userId);
+        if (packageIndexMap == null) {
+            return INVALID_ENTRY;
+        }
+        final Integer entry = packageIndexMap.get(packageName);
+        return entry == null ? INVALID_ENTRY : entry;
+    }
+
+    private static List<long[]> toIntervals(@Nullable final List<AppUsagePeriod> periods) {
+        final List<long[]> intervals = new ArrayList<>();
+        if (periods != null) {
+            for (AppUsagePeriod period : periods) {
+                intervals.add(new long[] {period.getStartTime(), period.getEndTime()});
+            }
+        }
+        return intervals;
+    }
+
+    // Returns the sorted and merged intervals in the {start0, end0, start1, end1, ...} format.
+    private static long[] mergeIntervals(final List<long[]> intervals) {
+        intervals.sort((x, y) -> Long.compare(x[0], y[0]));
+        final long[] mergedIntervals = new long[intervals.size() * 2];
+        int size = 0;
+        for (long[] interval : intervals) {
+            if (interval[1] <= interval[0]) {
+                continue;
+            }
+            if (size > 0 && interval[0] <= mergedIntervals[size - 1]) {
+                mergedIntervals[size - 1] = Math.max(mergedIntervals[size - 1], interval[1]);
+                continue;
+            }
+            mergedIntervals[size++] = interval[0];
+            mergedIntervals[size++] = interval[1];
+        }
+        return Arrays.copyOf(mergedIntervals, size);
+    }
+
+    private static long getDuration(final long[] mergedIntervals) {
+        long duration = 0;
+        for (int i = 0; i < mergedIntervals.length; i += 2) {
+            duration += mergedIntervals[i + 1] - mergedIntervals[i];
+        }
+        return duration;
+    }
+}
@@ -17,7 +17,10 @@
 package com.android.settings.fuelgauge.batteryusage;
 
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
 import android.net.Uri;
@@ -98,6 +101,7 @@ public class BatteryUsageContentProvider extends ContentProvider {
     }
 
     private Clock mClock;
+    private BatteryStateDatabase mDatabase;
     private BatteryStateDao mBatteryStateDao;
     private AppUsageEventDao mAppUsageEventDao;
     private BatteryEventDao mBatteryEventDao;
@@ -115,11 +119,11 @@ public class BatteryUsageContentProvider extends ContentProvider {
             return false;
         }
         mClock = Clock.systemUTC();
-        final BatteryStateDatabase database = BatteryStateDatabase.getInstance(getContext());
-        mBatteryStateDao = database.batteryStateDao();
-        mAppUsageEventDao = database.appUsageEventDao();
-        mBatteryEventDao = database.batteryEventDao();
-        mBatteryUsageSlotDao = database.batteryUsageSlotDao();
+        mDatabase = BatteryStateDatabase.getInstance(getContext());
+        mBatteryStateDao = mDatabase.batteryStateDao();
+        mAppUsageEventDao = mDatabase.appUsageEventDao();
+        mBatteryEventDao = mDatabase.batteryEventDao();
+        mBatteryUsageSlotDao = mDatabase.batteryUsageSlotDao();
         Log.w(TAG, "create content provider from " + getCallingPackage());
         return true;
     }
@@ -161,23 +165,9 @@ public class BatteryUsageContentProvider extends ContentProvider {
     @Nullable
     @Override
     public Uri insert(@NonNull Uri uri, @Nullable ContentValues contentValues) {
+        final int code = sUriMatcher.match(uri);
         try {
-            switch (sUriMatcher.match(uri)) {
-                case BATTERY_STATE_CODE:
-                    mBatteryStateDao.insert(BatteryState.create(contentValues));
-                    break;
-                case APP_USAGE_EVENT_CODE:
-                    mAppUsageEventDao.insert(AppUsageEventEntity.create(contentValues));
-                    break;
-                case BATTERY_EVENT_CODE:
-                    mBatteryEventDao.insert(BatteryEventEntity.create(contentValues));
-                    break;
-                case BATTERY_USAGE_SLOT_CODE:
-                    mBatteryUsageSlotDao.insert(BatteryUsageSlotEntity.create(contentValues));
-                    break;
-                default:
-                    throw new IllegalArgumentException("unknown URI: " + uri);
-            }
+            insertValues(uri, code, contentValues);
         } catch (RuntimeException e) {
             if (e instanceof IllegalArgumentException) {
                 throw e;
@@ -188,6 +178,70 @@ public class BatteryUsageContentProvider extends ContentProvider {
         return uri;
     }
 
+    /** Inserts all {@code valuesArray} rows in a single transaction. */
+    @Override
+    public int bulkInsert(@NonNull Uri uri, @NonNull ContentValues[] valuesArray) {
+        final int code = sUriMatcher.match(uri);
+        final long timestamp = mClock.millis();
+        try {
+            mDatabase.runInTransaction(
+                    () -> {
+                        for (ContentValues contentValues : valuesArray) {
+                            insertValues(uri, code, contentValues);
+                        }
+                    });
+        } catch (RuntimeException e) {
+            if (e instanceof IllegalArgumentException) {
+                throw e;
+            }
+            Log.e(TAG, "bulkInsert() from:" + uri + " error:", e);
+            return 0;
+        }
+        Log.d(
+                TAG,
+                String.format(
+                        "bulkInsert() from:%s size=%d in %d/ms",
+                        uri, valuesArray.length, mClock.millis() - timestamp));
+        return valuesArray.length;
+    }
+
+    /**
+     * Applies all insert {@code operations} in a single transaction, so a whole data snapshot
+     * across different tables is committed or rolled back together. Unlike {@link #insert}, a
+     * failing row is not swallowed: it rolls back the batch and is thrown to the caller.
+     */
+    @NonNull
+    @Override
+    public ContentProviderResult[] applyBatch(
+            @NonNull ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        for (ContentProviderOperation operation : operations) {
+            if (!operation.isInsert()) {
+                throw new OperationApplicationException("unsupported operation: " + operation);
+            }
+        }
+        final long timestamp = mClock.millis();
+        final ContentProviderResult[] results = new ContentProviderResult[operations.size()];
+        mDatabase.runInTransaction(
+                () -> {
+                    for (int index = 0; index < operations.size(); index++) {
+                        final ContentProviderOperation operation = operations.get(index);
+                        final Uri uri = operation.getUri();
+                        insertValues(
+                                uri,
+                                sUriMatcher.match(uri),
+                                operation.resolveValueBackReferences(results, index));
+                        results[index] = new ContentProviderResult(uri);
+                    }
+                });
+        Log.d(
+                TAG,
+                String.format(
+                        "applyBatch() size=%d in %d/ms",
+                        operations.size(), mClock.millis() - timestamp));
+        return results;
+    }
+
     @Override
     public int delete(@NonNull Uri uri, @Nullable String s, @Nullable String[] strings) {
         throw new UnsupportedOperationException("unsupported!");
@@ -202,6 +256,25 @@ public class BatteryUsageContentProvider extends ContentProvider {
         throw new UnsupportedOperationException("unsupported!");
     }
 
+    private void insertValues(Uri uri, int code, ContentValues contentValues) {
+        switch (code) {
+            case BATTERY_STATE_CODE:
+                mBatteryStateDao.insert(BatteryState.create(contentValues));
+                break;
+            case APP_USAGE_EVENT_CODE:
+                mAppUsageEventDao.insert(AppUsageEventEntity.create(contentValues));
+                break;
+            case BATTERY_EVENT_CODE:
+                mBatteryEventDao.insert(BatteryEventEntity.create(contentValues));
+                break;
+            case BATTERY_USAGE_SLOT_CODE:
+                mBatteryUsageSlotDao.insert(BatteryUsageSlotEntity.create(contentValues));
+                break;
+            default:
+                throw new IllegalArgumentException("unknown URI: " + uri);
+        }
+    }
+
     private Cursor getLastFullChargeTimestamp(Uri uri) {
         final long timestamp = mClock.millis();
         Cursor cursor = null;
@@ -69,18 +69,23 @@ public final class BatteryUsageDataLoader {
         }
         final long elapsedTime = System.currentTimeMillis() - currentTime;
         Log.d(TAG, String.format("getBatteryUsageStats() in %d/ms", elapsedTime));
+        BatteryEvent fullChargedEvent = null;
         if (isFullChargeStart) {
             DatabaseUtils.recordDateTime(context, DatabaseUtils.KEY_LAST_LOAD_FULL_CHARGE_TIME);
-            DatabaseUtils.sendBatteryEventData(
-                    context,
+            fullChargedEvent =
                     ConvertUtils.convertToBatteryEvent(
-                            currentTime, BatteryEventType.FULL_CHARGED, 100));
+                            currentTime, BatteryEventType.FULL_CHARGED, 100);
             DatabaseUtils.removeDismissedPowerAnomalyKeys(context);
         }
 
-        // Uploads the BatteryEntry data into database.
+        // Uploads the BatteryEntry data and the full charged event into database together.
         DatabaseUtils.sendBatteryEntryData(
-                context, currentTime, batteryEntryList, batteryUsageStats, isFullChargeStart);
+                context,
+                currentTime,
+                batteryEntryList,
+                batteryUsageStats,
+                isFullChargeStart,
+                fullChargedEvent);
         DataProcessor.closeBatteryUsageStats(batteryUsageStats);
     }
 
@@ -0,0 +1,265 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.fuelgauge.batteryusage;
+
+import android.content.Context;
+import android.os.BatteryStatsManager;
+import android.os.BatteryUsageStats;
+import android.os.BatteryUsageStatsQuery;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.ArrayMap;
+import android.util.Log;
+
+import androidx.annotation.GuardedBy;
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * A process-wide cache of the {@link BatteryUsageStats} shared by the battery screens.
+ *
+ * <p>A cached snapshot is only shared with the queries of the same flags, and is reused until it
+ * expires or {@link #invalidate()} is called. The queries including the battery history always
+ * load their own snapshot, since iterating the history is not thread-safe. The underlying {@link
+ * BatteryUsageStats} is closed once it is evicted and all acquired {@link Snapshot}s are closed.
+ */
+public final class BatteryUsageStatsCache {
+    private static final String TAG = "BatteryUsageStatsCache";
+
+    /** Includes the battery history into the {@link BatteryUsageStats}. */
+    public static final int FLAG_INCLUDE_HISTORY =
+            BatteryUsageStatsQuery.FLAG_BATTERY_USAGE_STATS_INCLUDE_HISTORY;
+
+    /** Includes the process state data into the {@link BatteryUsageStats}. */
+    public static final int FLAG_INCLUDE_PROCESS_STATE_DATA =
+            BatteryUsageStatsQuery.FLAG_BATTERY_USAGE_STATS_INCLUDE_PROCESS_STATE_DATA;
+
+    @VisibleForTesting static final long CACHE_EXPIRATION_MS = Duration.ofSeconds(30).toMillis();
+
+    @VisibleForTesting static LongSupplier sElapsedRealtimeSupplier = SystemClock::elapsedRealtime;
+
+    private static final Object sLock = new Object();
+    // Only one caller loads the BatteryUsageStats at a time, the others reuse its result.
+    private static final Object sLoadingLock = new Object();
+
+    @GuardedBy("sLock")
+    private static final Map<Integer, CachedEntry> sCachedEntries = new ArrayMap<>();
+
+    @GuardedBy("sLock")
+    private static long sGeneration;
+
+    private static Handler sHandler;
+
+    private BatteryUsageStatsCache() {}
+
+    /**
+     * Acquires a {@link Snapshot} containing the data of the query flags. The caller must close the
+     * returned snapshot and must not close the {@link BatteryUsageStats} directly.
+     *
+     * @throws RuntimeException if loading the {@link BatteryUsageStats} from system service fails
+     */
+    @WorkerThread
+    @NonNull
+    public static Snapshot acquire(@NonNull Context context, int queryFlags) {
+        if ((queryFlags & FLAG_INCLUDE_HISTORY) != 0) {
+            return Snapshot.createUncached(load(context, queryFlags));
+        }
+        synchronized (sLoadingLock) {
+            final long generation;
+            synchronized (sLock) {
+                final CachedEntry cachedEntry = getValidCachedEntryLocked(queryFlags);
+                if (cachedEntry != null) {
+                    return cachedEntry.acquire();
+                }
+                generation = sGeneration;
+            }
+
+            final CachedEntry newEntry =
+                    new CachedEntry(
+                            load(context, queryFlags),
+                            queryFlags,
+                            sElapsedRealtimeSupplier.getAsLong());
+            synchronized (sLock) {
+                final Snapshot snapshot = newEntry.acquire();
+                if (generation != sGeneration) {
+                    // Invalidated while loading, don't share the data with other callers.
+                    newEntry.mEvicted = true;
+                    return snapshot;
+                }
+                sCachedEntries.put(queryFlags, newEntry);
+            }
+            // Releases the data once it expires, even if no screen queries it anymore.
+            getHandler().postDelayed(() -> evict(newEntry), CACHE_EXPIRATION_MS);
+            return snapshot;
+        }
+    }
+
+    /** Evicts the cached {@link BatteryUsageStats}, the next call loads the data again. */
+    public static void invalidate() {
+        synchronized (sLock) {
+            sGeneration++;
+            for (int i = sCachedEntries.size() - 1; i >= 0; i--) {
+                evictLocked(sCachedEntries.valueAt(i));
+            }
+        }
+    }
+
+    private static BatteryUsageStats load(Context context, int queryFlags) {
+        final long start = System.currentTimeMillis();
+        final BatteryUsageStats batteryUsageStats =
+                context.getSystemService(BatteryStatsManager.class)
+                        .getBatteryUsageStats(buildQuery(queryFlags));
+        Log.d(
+                TAG,
+                String.format(
+                        "load() flags=%d in %d/ms",
+                        queryFlags, System.currentTimeMillis() - start));
+        return batteryUsageStats;
+    }
+
+    private static void evict(CachedEntry cachedEntry) {
+        synchronized (sLock) {
+            evictLocked(cachedEntry);
+        }
+    }
+
+    @GuardedBy("sLock")
+    private static CachedEntry getValidCachedEntryLocked(int queryFlags) {
+        final CachedEntry cachedEntry = sCachedEntries.get(queryFlags);
+        if (cachedEntry != null
+                && sElapsedRealtimeSupplier.getAsLong() - cachedEntry.mCreatedTime
+                        >= CACHE_EXPIRATION_MS) {
+            evictLocked(cachedEntry);
+            return null;
+        }
+        return cachedEntry;
+    }
+
+    @GuardedBy("sLock")
+    private static void evictLocked(CachedEntry cachedEntry) {
+        if (cachedEntry.mEvicted) {
+            return;
+        }
+        cachedEntry.mEvicted = true;
+        if (cachedEntry.mRefCount == 0) {
+            cachedEntry.close();
+        }
+        sCachedEntries.remove(cachedEntry.mQueryFlags);
+    }
+
+    private static synchronized Handler getHandler() {
+        if (sHandler == null) {
+            sHandler = new Handler(Looper.getMainLooper());
+        }
+        return sHandler;
+    }
+
+    private static BatteryUsageStatsQuery buildQuery(int queryFlags) {
+        final BatteryUsageStatsQuery.Builder builder = new BatteryUsageStatsQuery.Builder();
+        if ((queryFlags & FLAG_INCLUDE_HISTORY) != 0) {
+            builder.includeBatteryHistory();
+        }
+        if ((queryFlags & FLAG_INCLUDE_PROCESS_STATE_DATA) != 0) {
+            builder.includeProcessStateData();
+        }
+        return builder.build();
+    }
+
+    /** A reference to the shared {@link BatteryUsageStats}, which is released by close(). */
+    public static final class Snapshot implements AutoCloseable {
+        private final CachedEntry mCachedEntry;
+
+        @GuardedBy("sLock")
+        private boolean mClosed;
+
+        private Snapshot(CachedEntry cachedEntry) {
+            mCachedEntry = cachedEntry;
+        }
+
+        /** Creates a snapshot which is not shared and closes the data when it is closed. */
+        @NonNull
+        public static Snapshot createUncached(@NonNull BatteryUsageStats batteryUsageStats) {
+            final CachedEntry cachedEntry =
+                    new CachedEntry(
+                            batteryUsageStats,
+                            /* queryFlags= */ 0,
+                            sElapsedRealtimeSupplier.getAsLong());
+            synchronized (sLock) {
+                cachedEntry.mEvicted = true;
+                return cachedEntry.acquire();
+            }
+        }
+
+        /** Gets the {@link BatteryUsageStats}, which is valid until the snapshot is closed. */
+        @NonNull
+        public BatteryUsageStats getBatteryUsageStats() {
+            return mCachedEntry.mBatteryUsageStats;
+        }
+
+        @Override
+        public void close() {
+            synchronized (sLock) {
+                if (mClosed) {
+                    return;
+                }
+                mClosed = true;
+                mCachedEntry.mRefCount--;
+                if (mCachedEntry.mRefCount == 0 && mCachedEntry.mEvicted) {
+                    mCachedEntry.close();
+                }
+            }
+        }
+    }
+
+    private static final class CachedEntry {
+        final BatteryUsageStats mBatteryUsageStats;
+        final int mQueryFlags;
+        final long mCreatedTime;
+
+        @GuardedBy("sLock")
+        int mRefCount;
+
+        @GuardedBy("sLock")
+        boolean mEvicted;
+
+        CachedEntry(BatteryUsageStats batteryUsageStats, int queryFlags, long createdTime) {
+            mBatteryUsageStats = batteryUsageStats;
+            mQueryFlags = queryFlags;
+            mCreatedTime = createdTime;
+        }
+
+        @GuardedBy("sLock")
+        Snapshot acquire() {
+            mRefCount++;
+            return new Snapshot(this);
+        }
+
+        void close() {
+            try {
+                mBatteryUsageStats.close();
+            } catch (Exception e) {
+                Log.e(TAG, "BatteryUsageStats.close() failed", e);
+            }
+        }
+    }
+}
@@ -17,41 +17,48 @@
 package com.android.settings.fuelgauge.batteryusage;
 
 import android.content.Context;
-import android.os.BatteryStatsManager;
 import android.os.BatteryUsageStats;
-import android.os.BatteryUsageStatsQuery;
 import android.util.Log;
 
 import com.android.settingslib.utils.AsyncLoaderCompat;
 
-/** Loader to get new {@link BatteryUsageStats} in the background */
-public class BatteryUsageStatsLoader extends AsyncLoaderCompat<BatteryUsageStats> {
+/**
+ * Loader to get the shared {@link BatteryUsageStats} snapshot from {@link BatteryUsageStatsCache}
+ * in the background. The loader owns the loaded {@link BatteryUsageStatsCache.Snapshot} and closes
+ * it once it's replaced, canceled or reset, so the receiver must not close it.
+ */
+public class BatteryUsageStatsLoader extends AsyncLoaderCompat<BatteryUsageStatsCache.Snapshot> {
     private static final String TAG = "BatteryUsageStatsLoader";
-    private final BatteryStatsManager mBatteryStatsManager;
+    private final Context mContext;
     private final boolean mIncludeBatteryHistory;
 
     public BatteryUsageStatsLoader(Context context, boolean includeBatteryHistory) {
         super(context);
-        mBatteryStatsManager = context.getSystemService(BatteryStatsManager.class);
+        mContext = context;
         mIncludeBatteryHistory = includeBatteryHistory;
     }
 
     @Override
-    public BatteryUsageStats loadInBackground() {
-        final BatteryUsageStatsQuery.Builder builder = new BatteryUsageStatsQuery.Builder();
+    public BatteryUsageStatsCache.Snapshot loadInBackground() {
+        int queryFlags = BatteryUsageStatsCache.FLAG_INCLUDE_PROCESS_STATE_DATA;
         if (mIncludeBatteryHistory) {
-            builder.includeBatteryHistory();
+            queryFlags |= BatteryUsageStatsCache.FLAG_INCLUDE_HISTORY;
         }
         try {
-            return mBatteryStatsManager.getBatteryUsageStats(
-                    builder.includeProcessStateData().build());
+            return BatteryUsageStatsCache.acquire(mContext, queryFlags);
         } catch (RuntimeException e) {
             Log.e(TAG, "loadInBackground() for getBatteryUsageStats()", e);
             // Use default BatteryUsageStats.
-            return new BatteryUsageStats.Builder(new String[0]).build();
+            return BatteryUsageStatsCache.Snapshot.createUncached(
+                    new BatteryUsageStats.Builder(new String[0]).build());
         }
     }
 
     @Override
-    protected void onDiscardResult(BatteryUsageStats result) {}
+    protected void onDiscardResult(BatteryUsageStatsCache.Snapshot result) {
+        // Called for a snapshot which is canceled, replaced by a newer result or dropped on reset.
+        if (result != null) {
+            result.close();
+        }
+    }
 }
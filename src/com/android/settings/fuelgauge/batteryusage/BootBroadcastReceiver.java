@@ -87,6 +87,8 @@ public final class BootBroadcastReceiver extends BroadcastReceiver {
 
             // Refreshes the usage source from UsageStatsManager when booting.
             DatabaseUtils.removeUsageSource(context);
+            // Converts the legacy Base64 encoded rows into raw bytes after the schema upgrade.
+            DatabaseUtils.convertLegacyEncodedDataIfNeeded(context);
 
             BatteryUsageLogUtils.writeLog(context, Action.RECHECK_JOB, "delay:" + delayedTime);
         } else if (ACTION_SETUP_WIZARD_FINISHED.equals(action)) {
@@ -41,6 +41,8 @@ import com.android.settings.fuelgauge.batteryusage.db.AppUsageEventEntity;
 import com.android.settings.fuelgauge.batteryusage.db.BatteryEventEntity;
 import com.android.settings.fuelgauge.batteryusage.db.BatteryUsageSlotEntity;
 
+import com.google.protobuf.MessageLite;
+
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.util.ArrayList;
@@ -130,9 +132,7 @@ public final class ConvertUtils {
                         batteryStatus,
                         batteryHealth,
                         bootTimestamp);
-        values.put(
-                BatteryHistEntry.KEY_BATTERY_INFORMATION,
-                convertBatteryInformationToString(batteryInformation));
+        values.put(BatteryHistEntry.KEY_BATTERY_INFORMATION, batteryInformation.toByteArray());
         // Save the BatteryInformation unencoded string into database for debugging.
         if (Build.TYPE.equals("userdebug")) {
             values.put(
@@ -168,13 +168,14 @@ public final class ConvertUtils {
             final BatteryUsageSlot batteryUsageSlot) {
         final ContentValues values = new ContentValues(2);
         values.put(BatteryUsageSlotEntity.KEY_TIMESTAMP, batteryUsageSlot.getStartTimestamp());
-        values.put(
-                BatteryUsageSlotEntity.KEY_BATTERY_USAGE_SLOT,
-                Base64.encodeToString(batteryUsageSlot.toByteArray(), Base64.DEFAULT));
+        values.put(BatteryUsageSlotEntity.KEY_BATTERY_USAGE_SLOT, batteryUsageSlot.toByteArray());
         return values;
     }
 
-    /** Gets the encoded string from {@link BatteryInformation} instance. */
+    /**
+     * Gets the legacy Base64 encoded string from {@link BatteryInformation} instance, which is only
+     * kept for the rows that have not been migrated into raw bytes yet.
+     */
     public static String convertBatteryInformationToString(
             final BatteryInformation batteryInformation) {
         return Base64.encodeToString(batteryInformation.toByteArray(), Base64.DEFAULT);
@@ -185,7 +186,7 @@ public final class ConvertUtils {
             final ContentValues values, final String key) {
         final BatteryInformation defaultInstance = BatteryInformation.getDefaultInstance();
         if (values != null && values.containsKey(key)) {
-            return BatteryUtils.parseProtoFromString(values.getAsString(key), defaultInstance);
+            return BatteryUtils.parseProtoFromBytes(getProtoBytes(values, key), defaultInstance);
         }
         return defaultInstance;
     }
@@ -195,12 +196,31 @@ public final class ConvertUtils {
         final BatteryInformation defaultInstance = BatteryInformation.getDefaultInstance();
         final int columnIndex = cursor.getColumnIndex(key);
         if (columnIndex >= 0) {
-            return BatteryUtils.parseProtoFromString(
-                    cursor.getString(columnIndex), defaultInstance);
+            return parseProtoFromCursor(cursor, columnIndex, defaultInstance);
         }
         return defaultInstance;
     }
 
+    /**
+     * Gets the serialized proto bytes from {@link ContentValues}, which accepts both the raw bytes
+     * and the legacy Base64 encoded string.
+     */
+    @Nullable
+    public static byte[] getProtoBytes(final ContentValues values, final String key) {
+        final Object value = values.get(key);
+        if (value instanceof byte[]) {
+            return (byte[]) value;
+        }
+        if (value instanceof String) {
+            try {
+                return Base64.decode((String) value, Base64.DEFAULT);
+            } catch (IllegalArgumentException e) {
+                Log.e(TAG, "invalid Base64 content for key: " + key, e);
+            }
+        }
+        return null;
+    }
+
     /** Gets the encoded string from {@link BatteryReattribute} instance. */
     @NonNull
     public static String encodeBatteryReattribute(
@@ -363,7 +383,7 @@ public final class ConvertUtils {
                 cursor.getColumnIndex(BatteryUsageSlotEntity.KEY_BATTERY_USAGE_SLOT);
         return columnIndex < 0
                 ? defaultInstance
-                : BatteryUtils.parseProtoFromString(cursor.getString(columnIndex), defaultInstance);
+                : parseProtoFromCursor(cursor, columnIndex, defaultInstance);
     }
 
     /** Converts from {@link Map<Long, BatteryDiffData>} to {@link List<BatteryUsageSlot>} */
@@ -661,6 +681,14 @@ public final class ConvertUtils {
         return batteryInformationBuilder.build();
     }
 
+    private static <T extends MessageLite> T parseProtoFromCursor(
+            final Cursor cursor, final int columnIndex, final T defaultInstance) {
+        // Rows written before the BLOB migration still hold the Base64 encoded string.
+        return cursor.getType(columnIndex) == Cursor.FIELD_TYPE_STRING
+                ? BatteryUtils.parseProtoFromString(cursor.getString(columnIndex), defaultInstance)
+                : BatteryUtils.parseProtoFromBytes(cursor.getBlob(columnIndex), defaultInstance);
+    }
+
     private static int getIntegerFromCursor(final Cursor cursor, final String key) {
         final int columnIndex = cursor.getColumnIndex(key);
         if (columnIndex >= 0) {
@@ -71,7 +71,7 @@ import java.util.Set;
  */
 public class DataProcessManager {
     private static final String TAG = "DataProcessManager";
-    private static final List<BatteryEventType> POWER_CONNECTION_EVENTS =
+    static final List<BatteryEventType> POWER_CONNECTION_EVENTS =
             List.of(BatteryEventType.POWER_CONNECTED, BatteryEventType.POWER_DISCONNECTED);
 
     // For testing only.
@@ -278,10 +278,19 @@ public class DataProcessManager {
                 final long startTime = System.currentTimeMillis();
                 // Loads the current battery usage data from the battery stats service.
                 final Map<Long, UsageEvents> usageEventsMap = new ArrayMap<>();
-                for (int userId : mUserIdsSeries.getVisibleUserIds()) {
-                    final UsageEvents usageEventsForCurrentUser =
-                            DataProcessor.getCurrentAppUsageEventsForUser(
-                                    mContext, mUserIdsSeries, userId, mRawStartTimestamp);
+                final List<Integer> userIds = mUserIdsSeries.getVisibleUserIds();
+                final List<UsageEvents> usageEventsList =
+                        DataProcessor.loadPerUserConcurrently(
+                                userIds,
+                                userId ->
+                                        DataProcessor.getCurrentAppUsageEventsForUser(
+                                                mContext,
+                                                mUserIdsSeries,
+                                                userId,
+                                                mRawStartTimestamp));
+                for (int index = 0; index < userIds.size(); index++) {
+                    final int userId = userIds.get(index);
+                    final UsageEvents usageEventsForCurrentUser = usageEventsList.get(index);
                     if (usageEventsForCurrentUser == null) {
                         // If fail to load usage events for any user, return null directly and
                         // screen-on time will not be shown in the UI.
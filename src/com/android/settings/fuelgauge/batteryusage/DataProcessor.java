@@ -67,8 +67,15 @@ import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 /**
  * A utility class to process data loaded from database and make the data easy to use for battery
@@ -81,12 +88,19 @@ public final class DataProcessor {
     private static final int MIN_AVERAGE_POWER_THRESHOLD_MILLI_AMP = 10;
     private static final int MIN_DAILY_DATA_SIZE = 2;
     private static final int MAX_DIFF_SECONDS_OF_UPPER_TIMESTAMP = 5;
+    // Loads the app usage events a bit before the first slot to recompute, so the activities and
+    // the power connection state carried into the slot are known.
+    private static final long APP_USAGE_LOOKBACK_MS = DateUtils.HOUR_IN_MILLIS;
+    private static final int MAX_USER_LOADING_THREADS = 4;
+    private static final long USER_LOADING_KEEP_ALIVE_SECONDS = 10L;
     private static final String MEDIASERVER_PACKAGE_NAME = "mediaserver";
     private static final String ANDROID_CORE_APPS_SHARED_USER_ID = "android.uid.shared";
     private static final Map<String, BatteryHistEntry> EMPTY_BATTERY_MAP = new ArrayMap<>();
     private static final BatteryHistEntry EMPTY_BATTERY_HIST_ENTRY =
             new BatteryHistEntry(new ContentValues());
 
+    private static ThreadPoolExecutor sUserLoadingExecutor;
+
     @VisibleForTesting
     static final long DEFAULT_USAGE_DURATION_FOR_INCOMPLETE_INTERVAL =
             DateUtils.SECOND_IN_MILLIS * 30;
@@ -154,22 +168,138 @@ public final class DataProcessor {
                 mapEntry.setValue(currentBatteryHistoryMap);
             }
         }
-        return batteryLevelData == null
-                ? null
-                : generateBatteryUsageMap(
+        if (batteryLevelData == null) {
+            return null;
+        }
+        // Loads the completed slots stored by the periodic job to avoid recomputing them.
+        final Map<Long, BatteryUsageSlot> cachedBatteryUsageSlotMap =
+                getCachedBatteryUsageSlotMap(
+                        context, Collections.min(processedBatteryHistoryMap.keySet()));
+        final List<BatteryLevelData.PeriodBatteryLevelData> hourlyBatteryLevelsPerDay =
+                batteryLevelData.getHourlyBatteryLevelsPerDay();
+        // The stored slots include the app usage periods, so only the remaining slots need them.
+        final Long firstUncachedSlotTimestamp =
+                getFirstUncachedSlotTimestamp(hourlyBatteryLevelsPerDay, cachedBatteryUsageSlotMap);
+        final Map<Integer, Map<Integer, Map<Long, Map<String, List<AppUsagePeriod>>>>>
+                appUsagePeriodMap =
+                        firstUncachedSlotTimestamp == null
+                                ? null
+                                : loadAppUsagePeriodMap(
+                                        context,
+                                        userIdsSeries,
+                                        hourlyBatteryLevelsPerDay,
+                                        Math.max(
+                                                Collections.min(batteryHistoryMap.keySet()),
+                                                firstUncachedSlotTimestamp
+                                                        - APP_USAGE_LOOKBACK_MS));
+        return generateBatteryUsageMap(
+                context,
+                getBatteryDiffDataMap(
                         context,
-                        getBatteryDiffDataMap(
-                                context,
-                                userIdsSeries,
-                                batteryLevelData.getHourlyBatteryLevelsPerDay(),
-                                processedBatteryHistoryMap,
-                                /* appUsagePeriodMap= */ null,
-                                getSystemAppsPackageNames(context),
-                                getSystemAppsUids(context)),
-                        batteryLevelData);
+                        userIdsSeries,
+                        hourlyBatteryLevelsPerDay,
+                        processedBatteryHistoryMap,
+                        appUsagePeriodMap,
+                        cachedBatteryUsageSlotMap,
+                        getSystemAppsPackageNames(context),
+                        getSystemAppsUids(context)),
+                batteryLevelData);
+    }
+
+    /**
+     * Returns the start timestamp of the earliest hourly slot which is not in {@code
+     * cachedBatteryUsageSlotMap}, or null if every slot is cached.
+     */
+    @VisibleForTesting
+    @Nullable
+    static Long getFirstUncachedSlotTimestamp(
+            final List<BatteryLevelData.PeriodBatteryLevelData> hourlyBatteryLevelsPerDay,
+            @Nullable final Map<Long, BatteryUsageSlot> cachedBatteryUsageSlotMap) {
+        for (BatteryLevelData.PeriodBatteryLevelData hourlyBatteryLevels :
+                hourlyBatteryLevelsPerDay) {
+            if (hourlyBatteryLevels == null) {
+                continue;
+            }
+            final List<Long> hourlyTimestamps = hourlyBatteryLevels.getTimestamps();
+            for (int hourlyIndex = 0; hourlyIndex < hourlyTimestamps.size() - 1; hourlyIndex++) {
+                final long startTimestamp = hourlyTimestamps.get(hourlyIndex);
+                if (!isCachedSlot(
+                        cachedBatteryUsageSlotMap,
+                        startTimestamp,
+                        hourlyTimestamps.get(hourlyIndex + 1))) {
+                    return startTimestamp;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static boolean isCachedSlot(
+            @Nullable final Map<Long, BatteryUsageSlot> cachedBatteryUsageSlotMap,
+            final long startTimestamp,
+            final long endTimestamp) {
+        final BatteryUsageSlot cachedBatteryUsageSlot =
+                cachedBatteryUsageSlotMap == null
+                        ? null
+                        : cachedBatteryUsageSlotMap.get(startTimestamp);
+        return cachedBatteryUsageSlot != null
+                && cachedBatteryUsageSlot.getEndTimestamp() == endTimestamp;
+    }
+
+    /**
+     * Loads the app usage and power connection events since {@code rawStartTimestamp} from the
+     * usage stats service and the database, the same sources {@link DataProcessManager} uses, and
+     * distributes them into the app usage periods of each hourly slot.
+     */
+    @Nullable
+    private static Map<Integer, Map<Integer, Map<Long, Map<String, List<AppUsagePeriod>>>>>
+            loadAppUsagePeriodMap(
+                    Context context,
+                    final UserIdsSeries userIdsSeries,
+                    final List<BatteryLevelData.PeriodBatteryLevelData> hourlyBatteryLevelsPerDay,
+                    final long rawStartTimestamp) {
+        // If current user is locked, no need to load app usage data from service or database.
+        if (userIdsSeries.isCurrentUserLocked()) {
+            Log.d(TAG, "loadAppUsagePeriodMap() skipped, current user is locked");
+            return null;
+        }
+        final List<Integer> userIds = userIdsSeries.getVisibleUserIds();
+        final List<UsageEvents> usageEventsList =
+                loadPerUserConcurrently(
+                        userIds,
+                        userId ->
+                                getCurrentAppUsageEventsForUser(
+                                        context, userIdsSeries, userId, rawStartTimestamp));
+        final Map<Long, UsageEvents> usageEventsMap = new ArrayMap<>();
+        for (int index = 0; index < userIds.size(); index++) {
+            final int userId = userIds.get(index);
+            if (usageEventsList.get(index) != null) {
+                usageEventsMap.put(Long.valueOf(userId), usageEventsList.get(index));
+            } else if (userId == userIdsSeries.getCurrentUserId()) {
+                // Screen-on time is not shown if the events of the current user can't be loaded.
+                return null;
+            }
+        }
+        final List<AppUsageEvent> appUsageEventList =
+                generateAppUsageEventListFromUsageEvents(context, usageEventsMap);
+        appUsageEventList.addAll(
+                DatabaseUtils.getAppUsageEventForUsers(
+                        context, Calendar.getInstance(), userIds, rawStartTimestamp));
+        return generateAppUsagePeriodMap(
+                context,
+                hourlyBatteryLevelsPerDay,
+                appUsageEventList,
+                DatabaseUtils.getBatteryEvents(
+                        context,
+                        Calendar.getInstance(),
+                        rawStartTimestamp,
+                        DataProcessManager.POWER_CONNECTION_EVENTS));
     }
 
-    /** Gets the {@link BatteryUsageStats} from system service. */
+    /**
+     * Gets the {@link BatteryUsageStats} from system service directly. The periodic job uses it to
+     * record the latest data, the battery screens should use {@link BatteryUsageStatsCache}.
+     */
     @Nullable
     public static BatteryUsageStats getBatteryUsageStats(final Context context) {
         final BatteryUsageStatsQuery batteryUsageStatsQuery =
@@ -190,20 +320,31 @@ public final class DataProcessor {
         if (context == null) {
             return null;
         }
+        final Context parentContext = context;
         final Map<Long, UsageEvents> resultMap = new ArrayMap();
         final long sixDaysAgoTimestamp =
                 DatabaseUtils.getTimestampSixDaysAgo(Calendar.getInstance());
-        for (final int userId : userIdsSeries.getVisibleUserIds()) {
-            final UsageEvents events =
-                    getAppUsageEventsForUser(context, userIdsSeries, userId, sixDaysAgoTimestamp);
-            if (events != null) {
-                resultMap.put(Long.valueOf(userId), events);
+        final List<Integer> userIds = userIdsSeries.getVisibleUserIds();
+        final List<UsageEvents> eventsList =
+                loadPerUserConcurrently(
+                        userIds,
+                        userId ->
+                                getAppUsageEventsForUser(
+                                        parentContext,
+                                        userIdsSeries,
+                                        userId,
+                                        sixDaysAgoTimestamp));
+        for (int index = 0; index < userIds.size(); index++) {
+            if (eventsList.get(index) != null) {
+                resultMap.put(Long.valueOf(userIds.get(index)), eventsList.get(index));
             }
         }
         final long elapsedTime = System.currentTimeMillis() - start;
         Log.d(
                 TAG,
-                String.format("getAppUsageEvents() for all unlocked users in %d/ms", elapsedTime));
+                String.format(
+                        "getAppUsageEvents() for %d unlocked users in %d/ms",
+                        userIds.size(), elapsedTime));
         return resultMap.isEmpty() ? null : resultMap;
     }
 
@@ -274,6 +415,7 @@ public final class DataProcessor {
             Log.w(TAG, "appUsageEventList is empty");
             return null;
         }
+        final long start = System.currentTimeMillis();
         // Sorts the appUsageEventList and batteryEventList in ascending order based on the
         // timestamp before distribution.
         Collections.sort(appUsageEventList, APP_USAGE_EVENT_TIMESTAMP_COMPARATOR);
@@ -308,60 +450,51 @@ public final class DataProcessor {
                                 endTimestamp));
             }
         }
+        Log.d(
+                TAG,
+                String.format(
+                        "generateAppUsagePeriodMap() size=%d in %d/ms",
+                        appUsageEventList.size(), System.currentTimeMillis() - start));
         return resultMap;
     }
 
-    /** Generates the list of {@link AppUsageEvent} from the supplied {@link UsageEvents}. */
+    /**
+     * Generates the list of {@link AppUsageEvent} from the supplied {@link UsageEvents}. The events
+     * of each user are converted concurrently and merged in the ascending order of user ids.
+     */
     public static List<AppUsageEvent> generateAppUsageEventListFromUsageEvents(
             Context context, Map<Long, UsageEvents> usageEventsMap) {
-        final List<AppUsageEvent> appUsageEventList = new ArrayList<>();
-        long numEventsFetched = 0;
-        long numAllEventsFetched = 0;
+        final long start = System.currentTimeMillis();
         final Set<String> ignoreScreenOnTimeTaskRootSet =
                 FeatureFactory.getFeatureFactory()
                         .getPowerUsageFeatureProvider()
                         .getIgnoreScreenOnTimeTaskRootSet();
-        for (final long userId : usageEventsMap.keySet()) {
-            final UsageEvents usageEvents = usageEventsMap.get(userId);
-            while (usageEvents.hasNextEvent()) {
-                final Event event = new Event();
-                usageEvents.getNextEvent(event);
-                numAllEventsFetched++;
-                switch (event.getEventType()) {
-                    case Event.ACTIVITY_RESUMED:
-                    case Event.ACTIVITY_STOPPED:
-                    case Event.DEVICE_SHUTDOWN:
-                        final String taskRootClassName = event.getTaskRootClassName();
-                        if (!TextUtils.isEmpty(taskRootClassName)
-                                && ignoreScreenOnTimeTaskRootSet.contains(taskRootClassName)) {
-                            Log.w(
-                                    TAG,
-                                    String.format(
-                                            "Ignoring a usage event with task root class name %s, "
-                                                    + "(timestamp=%d, type=%d)",
-                                            taskRootClassName,
-                                            event.getTimeStamp(),
-                                            event.getEventType()));
-                            break;
-                        }
-                        final AppUsageEvent appUsageEvent =
-                                ConvertUtils.convertToAppUsageEvent(
-                                        context, sUsageStatsManager, event, userId);
-                        if (appUsageEvent != null) {
-                            numEventsFetched++;
-                            appUsageEventList.add(appUsageEvent);
-                        }
-                        break;
-                    default:
-                        break;
-                }
+        final List<Long> userIds = new ArrayList<>(usageEventsMap.keySet());
+        Collections.sort(userIds);
+        final AtomicLong numAllEventsFetched = new AtomicLong();
+        final List<List<AppUsageEvent>> appUsageEventLists =
+                loadPerUserConcurrently(
+                        userIds,
+                        userId ->
+                                generateAppUsageEventListForUser(
+                                        context,
+                                        userId,
+                                        usageEventsMap.get(userId),
+                                        ignoreScreenOnTimeTaskRootSet,
+                                        numAllEventsFetched));
+        final List<AppUsageEvent> appUsageEventList = new ArrayList<>();
+        for (List<AppUsageEvent> appUsageEventListForUser : appUsageEventLists) {
+            if (appUsageEventListForUser != null) {
+                appUsageEventList.addAll(appUsageEventListForUser);
             }
         }
         Log.w(
                 TAG,
                 String.format(
-                        "Read %d relevant events (%d total) from UsageStatsManager",
-                        numEventsFetched, numAllEventsFetched));
+                        "Read %d relevant events (%d total) from UsageStatsManager in %d/ms",
+                        appUsageEventList.size(),
+                        numAllEventsFetched.get(),
+                        System.currentTimeMillis() - start));
         return appUsageEventList;
     }
 
@@ -496,22 +629,26 @@ public final class DataProcessor {
         return BatteryStatus.isCharged(firstHistEntry.mBatteryStatus, firstHistEntry.mBatteryLevel);
     }
 
+    /**
+     * Searches the nearest lower and upper timestamps of the target in the ascending timestamps.
+     * Uses zero value to represent invalid searching result.
+     */
     @VisibleForTesting
-    static long[] findNearestTimestamp(final List<Long> timestamps, final long target) {
-        final long[] results = new long[] {Long.MIN_VALUE, Long.MAX_VALUE};
-        // Searches the nearest lower and upper timestamp value.
-        timestamps.forEach(
-                timestamp -> {
-                    if (timestamp <= target && timestamp > results[0]) {
-                        results[0] = timestamp;
-                    }
-                    if (timestamp >= target && timestamp < results[1]) {
-                        results[1] = timestamp;
-                    }
-                });
-        // Uses zero value to represent invalid searching result.
-        results[0] = results[0] == Long.MIN_VALUE ? 0 : results[0];
-        results[1] = results[1] == Long.MAX_VALUE ? 0 : results[1];
+    static long[] findNearestTimestamp(final List<Long> sortedTimestamps, final long target) {
+        final long[] results = new long[] {0, 0};
+        final int index = Collections.binarySearch(sortedTimestamps, target);
+        if (index >= 0) {
+            results[0] = target;
+            results[1] = target;
+            return results;
+        }
+        final int insertionPoint = -index - 1;
+        if (insertionPoint > 0) {
+            results[0] = sortedTimestamps.get(insertionPoint - 1);
+        }
+        if (insertionPoint < sortedTimestamps.size()) {
+            results[1] = sortedTimestamps.get(insertionPoint);
+        }
         return results;
     }
 
@@ -524,7 +661,35 @@ public final class DataProcessor {
                     appUsagePeriodMap,
             final @NonNull Set<String> systemAppsPackageNames,
             final @NonNull Set<Integer> systemAppsUids) {
+        return getBatteryDiffDataMap(
+                context,
+                userIdsSeries,
+                hourlyBatteryLevelsPerDay,
+                batteryHistoryMap,
+                appUsagePeriodMap,
+                /* cachedBatteryUsageSlotMap= */ null,
+                systemAppsPackageNames,
+                systemAppsUids);
+    }
+
+    /**
+     * Generates the {@link BatteryDiffData} for each hourly slot. The slot in {@code
+     * cachedBatteryUsageSlotMap} with the same start and end timestamps is completed and reused
+     * directly, only the remaining slots are computed from {@code batteryHistoryMap}.
+     */
+    static Map<Long, BatteryDiffData> getBatteryDiffDataMap(
+            Context context,
+            final UserIdsSeries userIdsSeries,
+            final List<BatteryLevelData.PeriodBatteryLevelData> hourlyBatteryLevelsPerDay,
+            final Map<Long, Map<String, BatteryHistEntry>> batteryHistoryMap,
+            final Map<Integer, Map<Integer, Map<Long, Map<String, List<AppUsagePeriod>>>>>
+                    appUsagePeriodMap,
+            @Nullable final Map<Long, BatteryUsageSlot> cachedBatteryUsageSlotMap,
+            final @NonNull Set<String> systemAppsPackageNames,
+            final @NonNull Set<Integer> systemAppsUids) {
+        final long start = System.currentTimeMillis();
         final Map<Long, BatteryDiffData> batteryDiffDataMap = new ArrayMap<>();
+        int cachedSlotCount = 0;
         // Each time slot usage diff data =
         //     sum(Math.abs(timestamp[i+1] data - timestamp[i] data));
         // since we want to aggregate every hour usage diff data into a single time slot.
@@ -537,6 +702,17 @@ public final class DataProcessor {
             for (int hourlyIndex = 0; hourlyIndex < hourlyTimestamps.size() - 1; hourlyIndex++) {
                 final Long startTimestamp = hourlyTimestamps.get(hourlyIndex);
                 final Long endTimestamp = hourlyTimestamps.get(hourlyIndex + 1);
+                if (isCachedSlot(cachedBatteryUsageSlotMap, startTimestamp, endTimestamp)) {
+                    batteryDiffDataMap.put(
+                            startTimestamp,
+                            ConvertUtils.convertToBatteryDiffData(
+                                    context,
+                                    cachedBatteryUsageSlotMap.get(startTimestamp),
+                                    systemAppsPackageNames,
+                                    systemAppsUids));
+                    cachedSlotCount++;
+                    continue;
+                }
                 final int startBatteryLevel =
                         hourlyBatteryLevelsPerDay.get(dailyIndex).getLevels().get(hourlyIndex);
                 final int endBatteryLevel =
@@ -554,6 +730,10 @@ public final class DataProcessor {
                 slotBatteryHistoryList.add(
                         batteryHistoryMap.getOrDefault(endTimestamp, EMPTY_BATTERY_MAP));
 
+                final Map<Long, Map<String, List<AppUsagePeriod>>> appUsageMap =
+                        appUsagePeriodMap == null || appUsagePeriodMap.get(dailyIndex) == null
+                                ? null
+                                : appUsagePeriodMap.get(dailyIndex).get(hourlyIndex);
                 final BatteryDiffData hourlyBatteryDiffData =
                         insertHourlyUsageDiffDataPerSlot(
                                 context,
@@ -565,17 +745,42 @@ public final class DataProcessor {
                                 slotDuration,
                                 systemAppsPackageNames,
                                 systemAppsUids,
-                                appUsagePeriodMap == null
-                                                || appUsagePeriodMap.get(dailyIndex) == null
+                                appUsageMap == null
                                         ? null
-                                        : appUsagePeriodMap.get(dailyIndex).get(hourlyIndex),
+                                        : AppUsagePeriodIndex.create(appUsageMap),
                                 slotBatteryHistoryList);
                 batteryDiffDataMap.put(startTimestamp, hourlyBatteryDiffData);
             }
         }
+        Log.d(
+                TAG,
+                String.format(
+                        "getBatteryDiffDataMap() size=%d cached=%d in %d/ms",
+                        batteryDiffDataMap.size(),
+                        cachedSlotCount,
+                        (System.currentTimeMillis() - start)));
         return batteryDiffDataMap;
     }
 
+    /**
+     * Returns the completed {@link BatteryUsageSlot} stored in the database after {@code
+     * startTimestamp}, keyed by the slot start timestamp.
+     */
+    @VisibleForTesting
+    static Map<Long, BatteryUsageSlot> getCachedBatteryUsageSlotMap(
+            Context context, final long startTimestamp) {
+        final Map<Long, BatteryUsageSlot> batteryUsageSlotMap = new ArrayMap<>();
+        for (BatteryUsageSlot batteryUsageSlot :
+                DatabaseUtils.getBatteryUsageSlots(
+                        context, Calendar.getInstance(), startTimestamp)) {
+            // Skips the invalid slot which is not loaded correctly.
+            if (batteryUsageSlot.getEndTimestamp() > batteryUsageSlot.getStartTimestamp()) {
+                batteryUsageSlotMap.put(batteryUsageSlot.getStartTimestamp(), batteryUsageSlot);
+            }
+        }
+        return batteryUsageSlotMap;
+    }
+
     /**
      * @return Returns the indexed battery usage data for each corresponding time slot.
      *     <p>There could be 2 cases of the returned value:
@@ -886,7 +1091,7 @@ public final class DataProcessor {
             return 0;
         }
 
-        return getScreenOnTime(appUsageMap.get(userId).get(packageName));
+        return AppUsagePeriodIndex.getMergedDuration(appUsageMap.get(userId).get(packageName));
     }
 
     static Map<Long, BatteryDiffData> getBatteryDiffDataMapFromStatsService(
@@ -1019,6 +1224,126 @@ public final class DataProcessor {
                 eventTime);
     }
 
+    /**
+     * Applies {@code loader} to each user on a thread pool shared by the loads and returns the
+     * results in the same order as {@code userIds}. A failure of the loader is rethrown as if the
+     * users were loaded on the calling thread.
+     */
+    @VisibleForTesting
+    static <K, T> List<T> loadPerUserConcurrently(
+            final List<K> userIds, final Function<K, T> loader) {
+        final List<T> results = new ArrayList<>(userIds.size());
+        if (userIds.size() <= 1) {
+            // Avoids the thread pool overhead for the most common single user case.
+            for (K userId : userIds) {
+                results.add(loader.apply(userId));
+            }
+            return results;
+        }
+        final ThreadPoolExecutor executor = getUserLoadingExecutor();
+        final List<Future<T>> futures = new ArrayList<>(userIds.size());
+        for (K userId : userIds) {
+            futures.add(executor.submit(() -> loader.apply(userId)));
+        }
+        try {
+            for (Future<T> future : futures) {
+                results.add(getUserLoadingResult(future));
+            }
+        } finally {
+            // Stops the remaining loads once any of them fails.
+            for (Future<T> future : futures) {
+                future.cancel(/* mayInterruptIfRunning= */ true);
+            }
+        }
+        return results;
+    }
+
+    private static <T> T getUserLoadingResult(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while loading data of users", e);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    private static synchronized ThreadPoolExecutor getUserLoadingExecutor() {
+        if (sUserLoadingExecutor == null) {
+            final AtomicInteger threadCount = new AtomicInteger();
+            sUserLoadingExecutor =
+                    new ThreadPoolExecutor(
+                            MAX_USER_LOADING_THREADS,
+                            MAX_USER_LOADING_THREADS,
+                            USER_LOADING_KEEP_ALIVE_SECONDS,
+                            TimeUnit.SECONDS,
+                            new LinkedBlockingQueue<>(),
+                            runnable ->
+                                    new Thread(
+                                            runnable,
+                                            "BatteryUserLoading-"
+                                                    + threadCount.incrementAndGet()));
+            // The pool is idle between the battery usage loads.
+            sUserLoadingExecutor.allowCoreThreadTimeOut(true);
+        }
+        return sUserLoadingExecutor;
+    }
+
+    private static List<AppUsageEvent> generateAppUsageEventListForUser(
+            final Context context,
+            final long userId,
+            final UsageEvents usageEvents,
+            final Set<String> ignoreScreenOnTimeTaskRootSet,
+            final AtomicLong numAllEventsFetched) {
+        final List<AppUsageEvent> appUsageEventList = new ArrayList<>();
+        if (usageEvents == null) {
+            return appUsageEventList;
+        }
+        long numAllEvents = 0;
+        while (usageEvents.hasNextEvent()) {
+            final Event event = new Event();
+            usageEvents.getNextEvent(event);
+            numAllEvents++;
+            switch (event.getEventType()) {
+                case Event.ACTIVITY_RESUMED:
+                case Event.ACTIVITY_STOPPED:
+                case Event.DEVICE_SHUTDOWN:
+                    final String taskRootClassName = event.getTaskRootClassName();
+                    if (!TextUtils.isEmpty(taskRootClassName)
+                            && ignoreScreenOnTimeTaskRootSet.contains(taskRootClassName)) {
+                        Log.w(
+                                TAG,
+                                String.format(
+                                        "Ignoring a usage event with task root class name %s, "
+                                                + "(timestamp=%d, type=%d)",
+                                        taskRootClassName,
+                                        event.getTimeStamp(),
+                                        event.getEventType()));
+                        break;
+                    }
+                    final AppUsageEvent appUsageEvent =
+                            ConvertUtils.convertToAppUsageEvent(
+                                    context, sUsageStatsManager, event, userId);
+                    if (appUsageEvent != null) {
+                        appUsageEventList.add(appUsageEvent);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        numAllEventsFetched.addAndGet(numAllEvents);
+        return appUsageEventList;
+    }
+
     @Nullable
     private static UsageEvents getAppUsageEventsForUser(
             Context context,
@@ -1068,12 +1393,15 @@ public final class DataProcessor {
     private static List<BatteryHistEntry> getBatteryHistListFromFromStatsService(
             final Context context) {
         List<BatteryHistEntry> batteryHistEntryList = null;
-        try {
-            final BatteryUsageStats batteryUsageStats = getBatteryUsageStats(context);
+        try (BatteryUsageStatsCache.Snapshot snapshot =
+                BatteryUsageStatsCache.acquire(
+                        context,
+                        BatteryUsageStatsCache.FLAG_INCLUDE_HISTORY
+                                | BatteryUsageStatsCache.FLAG_INCLUDE_PROCESS_STATE_DATA)) {
+            final BatteryUsageStats batteryUsageStats = snapshot.getBatteryUsageStats();
             final List<BatteryEntry> batteryEntryList =
                     generateBatteryEntryListFromBatteryUsageStats(context, batteryUsageStats);
             batteryHistEntryList = convertToBatteryHistEntry(batteryEntryList, batteryUsageStats);
-            closeBatteryUsageStats(batteryUsageStats);
         } catch (RuntimeException e) {
             Log.e(TAG, "load batteryUsageStats:", e);
         }
@@ -1323,24 +1651,15 @@ public final class DataProcessor {
             final long slotDuration,
             final Set<String> systemAppsPackageNames,
             final Set<Integer> systemAppsUids,
-            final Map<Long, Map<String, List<AppUsagePeriod>>> appUsageMap,
+            @Nullable final AppUsagePeriodIndex appUsagePeriodIndex,
             final List<Map<String, BatteryHistEntry>> slotBatteryHistoryList) {
         long slotScreenOnTime = 0L;
-        if (appUsageMap != null) {
-            final List<AppUsagePeriod> flatAppUsagePeriodList = new ArrayList<>();
-            for (final long userId : appUsageMap.keySet()) {
-                if (userIdsSeries.isFromOtherUsers(userId) || appUsageMap.get(userId) == null) {
-                    continue;
-                }
-                for (final String packageName : appUsageMap.get(userId).keySet()) {
-                    final List<AppUsagePeriod> appUsagePeriodList =
-                            appUsageMap.get(userId).get(packageName);
-                    if (appUsagePeriodList != null) {
-                        flatAppUsagePeriodList.addAll(appUsagePeriodList);
-                    }
-                }
-            }
-            slotScreenOnTime = Math.min(slotDuration, getScreenOnTime(flatAppUsagePeriodList));
+        if (appUsagePeriodIndex != null) {
+            slotScreenOnTime =
+                    Math.min(
+                            slotDuration,
+                            appUsagePeriodIndex.getForegroundTimeOfUsers(
+                                    userId -> !userIdsSeries.isFromOtherUsers(userId)));
         }
 
         final List<BatteryDiffEntry> appEntries = new ArrayList<>();
@@ -1482,10 +1801,11 @@ public final class DataProcessor {
             final long screenOnTime =
                     Math.min(
                             (long) slotDuration,
-                            getScreenOnTime(
-                                    appUsageMap,
-                                    selectedBatteryEntry.mUserId,
-                                    selectedBatteryEntry.mPackageName));
+                            appUsagePeriodIndex == null
+                                    ? 0
+                                    : appUsagePeriodIndex.getForegroundTime(
+                                            selectedBatteryEntry.mUserId,
+                                            selectedBatteryEntry.mPackageName));
             // Ensure the following value will not exceed the threshold.
             // value = background + foregroundService + screen-on
             backgroundUsageTimeInMs =
@@ -1534,49 +1854,6 @@ public final class DataProcessor {
                 /* isAccumulated= */ false);
     }
 
-    private static long getScreenOnTime(@Nullable final List<AppUsagePeriod> appUsagePeriodList) {
-        if (appUsagePeriodList == null || appUsagePeriodList.isEmpty()) {
-            return 0;
-        }
-        // Create a list of endpoints (the beginning or the end) of usage periods and order the list
-        // chronologically.
-        final List<AppUsageEndPoint> endPoints =
-                appUsagePeriodList.stream()
-                        .flatMap(
-                                foregroundUsage ->
-                                        Stream.of(
-                                                AppUsageEndPoint.newBuilder()
-                                                        .setTimestamp(
-                                                                foregroundUsage.getStartTime())
-                                                        .setType(AppUsageEndPointType.START)
-                                                        .build(),
-                                                AppUsageEndPoint.newBuilder()
-                                                        .setTimestamp(foregroundUsage.getEndTime())
-                                                        .setType(AppUsageEndPointType.END)
-                                                        .build()))
-                        .sorted((x, y) -> (int) (x.getTimestamp() - y.getTimestamp()))
-                        .collect(Collectors.toList());
-
-        // Traverse the list of endpoints in order to determine the non-overlapping usage duration.
-        int numberOfActiveAppUsagePeriods = 0;
-        long startOfCurrentContiguousAppUsagePeriod = 0;
-        long totalScreenOnTime = 0;
-        for (final AppUsageEndPoint endPoint : endPoints) {
-            if (endPoint.getType() == AppUsageEndPointType.START) {
-                if (numberOfActiveAppUsagePeriods++ == 0) {
-                    startOfCurrentContiguousAppUsagePeriod = endPoint.getTimestamp();
-                }
-            } else {
-                if (--numberOfActiveAppUsagePeriods == 0) {
-                    totalScreenOnTime +=
-                            (endPoint.getTimestamp() - startOfCurrentContiguousAppUsagePeriod);
-                }
-            }
-        }
-
-        return totalScreenOnTime;
-    }
-
     private static boolean isConsumedFromOtherUsers(
             final UserIdsSeries userIdsSeries,
             final BatteryHistEntry batteryHistEntry) {
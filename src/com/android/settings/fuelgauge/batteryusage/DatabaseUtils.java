@@ -20,6 +20,7 @@ import static com.android.settings.fuelgauge.batteryusage.ConvertUtils.utcToLoca
 
 import android.app.usage.IUsageStatsManager;
 import android.app.usage.UsageStatsManager;
+import android.content.ContentProviderOperation;
 import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.Context;
@@ -27,25 +28,31 @@ import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
 import android.database.Cursor;
+import android.database.CursorWrapper;
 import android.net.Uri;
 import android.os.AsyncTask;
 import android.os.BatteryManager;
 import android.os.BatteryUsageStats;
-import android.os.Handler;
-import android.os.Looper;
 import android.os.RemoteException;
 import android.os.SystemClock;
 import android.os.UserManager;
 import android.util.ArrayMap;
 import android.util.ArraySet;
+import android.util.Base64;
 import android.util.Log;
 
+import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
 
 import com.android.settings.fuelgauge.BatteryUsageHistoricalLogEntry.Action;
 import com.android.settings.fuelgauge.BatteryUtils;
 import com.android.settings.fuelgauge.batteryusage.bugreport.BatteryUsageLogUtils;
+import com.android.settings.fuelgauge.batteryusage.db.BatteryState;
+import com.android.settings.fuelgauge.batteryusage.db.BatteryStateDao;
 import com.android.settings.fuelgauge.batteryusage.db.BatteryStateDatabase;
+import com.android.settings.fuelgauge.batteryusage.db.BatteryUsageSlotDao;
+import com.android.settings.fuelgauge.batteryusage.db.BatteryUsageSlotEntity;
+import com.android.settings.overlay.FeatureFactory;
 import com.android.settingslib.fuelgauge.BatteryStatus;
 
 import java.io.PrintWriter;
@@ -58,6 +65,8 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.TimeZone;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
@@ -66,18 +75,15 @@ import java.util.stream.Collectors;
 public final class DatabaseUtils {
     private static final String TAG = "DatabaseUtils";
     private static final String SHARED_PREFS_FILE = "battery_usage_shared_prefs";
-    private static final boolean EXPLICIT_CLEAR_MEMORY_ENABLED = false;
-
-    /** Clear memory threshold for device booting phase. */
-    private static final long CLEAR_MEMORY_THRESHOLD_MS = Duration.ofMinutes(5).toMillis();
-    private static final long CLEAR_MEMORY_DELAYED_MS = Duration.ofSeconds(2).toMillis();
     private static final long INVALID_TIMESTAMP = 0L;
+    private static final int LEGACY_DATA_CONVERT_BATCH_SIZE = 500;
 
     static final int DATA_RETENTION_INTERVAL_DAY = 9;
     static final String KEY_LAST_LOAD_FULL_CHARGE_TIME = "last_load_full_charge_time";
     static final String KEY_LAST_UPLOAD_FULL_CHARGE_TIME = "last_upload_full_charge_time";
     static final String KEY_LAST_USAGE_SOURCE = "last_usage_source";
     static final String KEY_DISMISSED_POWER_ANOMALY_KEYS = "dismissed_power_anomaly_keys";
+    static final String KEY_LEGACY_ENCODED_DATA_CONVERTED = "legacy_encoded_data_converted";
 
     /** An authority name of the battery content provider. */
     public static final String AUTHORITY = "com.android.settings.battery.usage.provider";
@@ -357,21 +363,17 @@ public final class DatabaseUtils {
                         .appendQueryParameter(QUERY_KEY_TIMESTAMP, Long.toString(queryTimestamp))
                         .build();
 
-        final List<BatteryHistEntry> batteryHistEntryList =
-                loadListFromContentProvider(
-                        context, batteryStateUri, cursor -> new BatteryHistEntry(cursor));
         final Map<Long, Map<String, BatteryHistEntry>> resultMap = new ArrayMap();
-        for (final BatteryHistEntry entry : batteryHistEntryList) {
-            final long timestamp = entry.mTimestamp;
-            final String key = entry.getKey();
-            Map batteryHistEntryMap = resultMap.get(timestamp);
-            // Creates new one if there is no corresponding map.
-            if (batteryHistEntryMap == null) {
-                batteryHistEntryMap = new ArrayMap();
-                resultMap.put(timestamp, batteryHistEntryMap);
-            }
-            batteryHistEntryMap.put(key, entry);
-        }
+        // Groups each row into the result map directly without an intermediate list.
+        visitRowsFromContentProvider(
+                context,
+                batteryStateUri,
+                cursor -> {
+                    final BatteryHistEntry entry = new BatteryHistEntry(cursor);
+                    resultMap
+                            .computeIfAbsent(entry.mTimestamp, timestamp -> new ArrayMap<>())
+                            .put(entry.getKey(), entry);
+                });
 
         if (resultMap == null || resultMap.isEmpty()) {
             Log.d(TAG, "getBatteryHistoryMap() returns empty or null");
@@ -474,6 +476,88 @@ public final class DatabaseUtils {
                 });
     }
 
+    /**
+     * Converts the Base64 encoded protos written before the BLOB schema into raw bytes. It only
+     * runs once, the read path still accepts the legacy encoded rows in the meantime.
+     */
+    public static void convertLegacyEncodedDataIfNeeded(Context context) {
+        final SharedPreferences sharedPreferences = getSharedPreferences(context);
+        if (sharedPreferences == null
+                || sharedPreferences.getBoolean(KEY_LEGACY_ENCODED_DATA_CONVERTED, false)) {
+            return;
+        }
+        AsyncTask.execute(() -> ensureLegacyEncodedDataConverted(context));
+    }
+
+    /**
+     * Converts the legacy encoded rows in the caller thread if it is not done yet. The entities
+     * read through the DAOs hold the Base64 text of those rows as bytes, so it has to run before
+     * parsing their proto columns.
+     *
+     * @return whether all the rows are stored as raw bytes
+     */
+    public static boolean ensureLegacyEncodedDataConverted(Context context) {
+        final SharedPreferences sharedPreferences = getSharedPreferences(context);
+        if (sharedPreferences == null) {
+            return false;
+        }
+        if (sharedPreferences.getBoolean(KEY_LEGACY_ENCODED_DATA_CONVERTED, false)) {
+            return true;
+        }
+        try {
+            final long startTime = System.currentTimeMillis();
+            final int size =
+                    convertLegacyEncodedData(
+                            BatteryStateDatabase.getInstance(context.getApplicationContext()));
+            sharedPreferences.edit().putBoolean(KEY_LEGACY_ENCODED_DATA_CONVERTED, true).apply();
+            Log.d(
+                    TAG,
+                    String.format(
+                            "ensureLegacyEncodedDataConverted() size=%d in %d/ms",
+                            size, (System.currentTimeMillis() - startTime)));
+            return true;
+        } catch (RuntimeException e) {
+            Log.e(TAG, "ensureLegacyEncodedDataConverted() failed", e);
+            return false;
+        }
+    }
+
+    /**
+     * Compacts the full-resolution battery states older than the compaction horizon, whose hourly
+     * usage is already aggregated into {@link BatteryUsageSlot}s, into level-only snapshots.
+     */
+    public static void compactBatteryStatesIfNeeded(Context context) {
+        final long horizonMs =
+                FeatureFactory.getFeatureFactory()
+                        .getPowerUsageFeatureProvider()
+                        .getBatteryStateCompactionHorizonMs();
+        if (horizonMs <= 0) {
+            return;
+        }
+        AsyncTask.execute(
+                () -> {
+                    // The legacy encoded rows cannot be parsed from the entities.
+                    if (!ensureLegacyEncodedDataConverted(context)) {
+                        return;
+                    }
+                    try {
+                        final long startTime = System.currentTimeMillis();
+                        final int size =
+                                compactBatteryStates(
+                                        BatteryStateDatabase.getInstance(
+                                                context.getApplicationContext()),
+                                        startTime - horizonMs);
+                        Log.d(
+                                TAG,
+                                String.format(
+                                        "compactBatteryStatesIfNeeded() size=%d in %d/ms",
+                                        size, (System.currentTimeMillis() - startTime)));
+                    } catch (RuntimeException e) {
+                        Log.e(TAG, "compactBatteryStatesIfNeeded() failed", e);
+                    }
+                });
+    }
+
     /** Clears data after new updated time and refresh periodic job. */
     public static void clearDataAfterTimeChangedIfNeeded(Context context, Intent intent) {
         if ((intent.hasExtra(Intent.EXTRA_TIME_PREF_24_HOUR_FORMAT))) {
@@ -574,7 +658,6 @@ public final class DatabaseUtils {
                 String.format(
                         "sendAppUsageEventData() size=%d in %d/ms",
                         size, (System.currentTimeMillis() - startTime)));
-        clearMemory();
         return valuesList;
     }
 
@@ -594,7 +677,6 @@ public final class DatabaseUtils {
                 String.format(
                         "sendBatteryEventData() in %d/ms",
                         (System.currentTimeMillis() - startTime)));
-        clearMemory();
         return contentValues;
     }
 
@@ -628,7 +710,6 @@ public final class DatabaseUtils {
                 String.format(
                         "sendBatteryEventData() size=%d in %d/ms",
                         size, (System.currentTimeMillis() - startTime)));
-        clearMemory();
         return valuesList;
     }
 
@@ -662,7 +743,6 @@ public final class DatabaseUtils {
                 String.format(
                         "sendBatteryUsageSlotData() size=%d in %d/ms",
                         size, (System.currentTimeMillis() - startTime)));
-        clearMemory();
         return valuesList;
     }
 
@@ -672,11 +752,30 @@ public final class DatabaseUtils {
             final List<BatteryEntry> batteryEntryList,
             final BatteryUsageStats batteryUsageStats,
             final boolean isFullChargeStart) {
+        return sendBatteryEntryData(
+                context,
+                snapshotTimestamp,
+                batteryEntryList,
+                batteryUsageStats,
+                isFullChargeStart,
+                /* batteryEvent= */ null);
+    }
+
+    /**
+     * Inserts the battery states of a snapshot, and the {@code batteryEvent} recorded with it if
+     * any, into the battery provider in a single transaction.
+     */
+    static List<ContentValues> sendBatteryEntryData(
+            final Context context,
+            final long snapshotTimestamp,
+            final List<BatteryEntry> batteryEntryList,
+            final BatteryUsageStats batteryUsageStats,
+            final boolean isFullChargeStart,
+            @Nullable final BatteryEvent batteryEvent) {
         final long startTime = System.currentTimeMillis();
         final Intent intent = BatteryUtils.getBatteryIntent(context);
         if (intent == null) {
             Log.e(TAG, "sendBatteryEntryData(): cannot fetch battery intent");
-            clearMemory();
             return null;
         }
         final int batteryLevel = BatteryStatus.getBatteryLevel(intent);
@@ -727,25 +826,9 @@ public final class DatabaseUtils {
             }
         }
 
-        int size = 1;
-        final ContentResolver resolver = context.getContentResolver();
-        String errorMessage = "";
-        // Inserts all ContentValues into battery provider.
-        if (!valuesList.isEmpty()) {
-            final ContentValues[] valuesArray = new ContentValues[valuesList.size()];
-            valuesList.toArray(valuesArray);
-            try {
-                size = resolver.bulkInsert(BATTERY_CONTENT_URI, valuesArray);
-                Log.d(
-                        TAG,
-                        "insert() battery states data into database with isFullChargeStart:"
-                                + isFullChargeStart);
-            } catch (Exception e) {
-                Log.e(TAG, "bulkInsert() data into database error:", e);
-            }
-        } else {
+        if (valuesList.isEmpty()) {
             // Inserts one fake data into battery provider.
-            final ContentValues contentValues =
+            valuesList.add(
                     ConvertUtils.convertBatteryEntryToContentValues(
                             /* entry= */ null,
                             /* batteryUsageStats= */ null,
@@ -754,17 +837,39 @@ public final class DatabaseUtils {
                             batteryHealth,
                             snapshotBootTimestamp,
                             snapshotTimestamp,
-                            isFullChargeStart);
-            try {
-                resolver.insert(BATTERY_CONTENT_URI, contentValues);
-                Log.d(
-                        TAG,
-                        "insert() data into database with isFullChargeStart:" + isFullChargeStart);
+                            isFullChargeStart));
+        }
 
-            } catch (Exception e) {
-                Log.e(TAG, "insert() data into database error:", e);
-            }
-            valuesList.add(contentValues);
+        int size = 0;
+        final ContentResolver resolver = context.getContentResolver();
+        String errorMessage = "";
+        final ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        if (batteryEvent != null) {
+            operations.add(
+                    ContentProviderOperation.newInsert(BATTERY_EVENT_URI)
+                            .withValues(
+                                    ConvertUtils.convertBatteryEventToContentValues(batteryEvent))
+                            .build());
+        }
+        for (ContentValues values : valuesList) {
+            operations.add(
+                    ContentProviderOperation.newInsert(BATTERY_CONTENT_URI)
+                            .withValues(values)
+                            .build());
+        }
+        // Inserts all ContentValues into battery provider.
+        try {
+            resolver.applyBatch(AUTHORITY, operations);
+            size = valuesList.size();
+            Log.d(
+                    TAG,
+                    "insert() battery states data into database with isFullChargeStart:"
+                            + isFullChargeStart);
+        } catch (Exception e) {
+            Log.e(TAG, "applyBatch() data into database error:", e);
+        }
+        if (batteryEvent != null) {
+            resolver.notifyChange(BATTERY_EVENT_URI, /* observer= */ null);
         }
         resolver.notifyChange(BATTERY_CONTENT_URI, /* observer= */ null);
         BatteryUsageLogUtils.writeLog(
@@ -777,7 +882,6 @@ public final class DatabaseUtils {
         if (isFullChargeStart) {
             recordDateTime(context, KEY_LAST_UPLOAD_FULL_CHARGE_TIME);
         }
-        clearMemory();
         return valuesList;
     }
 
@@ -894,6 +998,167 @@ public final class DatabaseUtils {
         }
     }
 
+    @VisibleForTesting
+    static int convertLegacyEncodedData(BatteryStateDatabase database) {
+        final BatteryStateDao batteryStateDao = database.batteryStateDao();
+        final BatteryUsageSlotDao batteryUsageSlotDao = database.batteryUsageSlotDao();
+        int size = 0;
+        int batchSize;
+        do {
+            batchSize =
+                    database.runInTransaction(
+                            () ->
+                                    convertLegacyEncodedRows(
+                                            batteryStateDao.getLegacyEncodedRows(
+                                                    LEGACY_DATA_CONVERT_BATCH_SIZE),
+                                            batteryStateDao::updateBatteryInformation));
+            size += batchSize;
+        } while (batchSize == LEGACY_DATA_CONVERT_BATCH_SIZE);
+        do {
+            batchSize =
+                    database.runInTransaction(
+                            () ->
+                                    convertLegacyEncodedRows(
+                                            batteryUsageSlotDao.getLegacyEncodedRows(
+                                                    LEGACY_DATA_CONVERT_BATCH_SIZE),
+                                            batteryUsageSlotDao::updateBatteryUsageSlot));
+            size += batchSize;
+        } while (batchSize == LEGACY_DATA_CONVERT_BATCH_SIZE);
+        return size;
+    }
+
+    private static int convertLegacyEncodedRows(
+            final Cursor cursor, final BiConsumer<Long, byte[]> rowUpdater) {
+        if (cursor == null) {
+            return 0;
+        }
+        final List<Long> ids = new ArrayList<>();
+        final List<byte[]> contents = new ArrayList<>();
+        try (Cursor rows = cursor) {
+            while (rows.moveToNext()) {
+                final long id = rows.getLong(/* columnIndex= */ 0);
+                byte[] content;
+                try {
+                    content = Base64.decode(rows.getString(/* columnIndex= */ 1), Base64.DEFAULT);
+                } catch (IllegalArgumentException e) {
+                    // Stores an empty content to be parsed as the default instance.
+                    Log.e(TAG, "invalid Base64 content for row: " + id, e);
+                    content = new byte[0];
+                }
+                ids.add(id);
+                contents.add(content);
+            }
+        }
+        for (int index = 0; index < ids.size(); index++) {
+            rowUpdater.accept(ids.get(index), contents.get(index));
+        }
+        return ids.size();
+    }
+
+    /**
+     * Compacts the battery states covered by the contiguous {@link BatteryUsageSlot}s ending no
+     * later than {@code horizonTimestamp}, returns the number of compacted timestamps.
+     */
+    @VisibleForTesting
+    static int compactBatteryStates(BatteryStateDatabase database, long horizonTimestamp) {
+        long runStartTimestamp = 0;
+        long runEndTimestamp = 0;
+        int size = 0;
+        for (BatteryUsageSlotEntity entity : database.batteryUsageSlotDao().getAll()) {
+            final BatteryUsageSlot batteryUsageSlot =
+                    BatteryUtils.parseProtoFromBytes(
+                            entity.batteryUsageSlot, BatteryUsageSlot.getDefaultInstance());
+            final long startTimestamp = batteryUsageSlot.getStartTimestamp();
+            final long endTimestamp = batteryUsageSlot.getEndTimestamp();
+            if (endTimestamp <= startTimestamp || endTimestamp > horizonTimestamp) {
+                continue;
+            }
+            if (startTimestamp == runEndTimestamp) {
+                runEndTimestamp = endTimestamp;
+                continue;
+            }
+            size += compactBatteryStatesInRun(database, runStartTimestamp, runEndTimestamp);
+            runStartTimestamp = startTimestamp;
+            runEndTimestamp = endTimestamp;
+        }
+        size += compactBatteryStatesInRun(database, runStartTimestamp, runEndTimestamp);
+        return size;
+    }
+
+    private static int compactBatteryStatesInRun(
+            BatteryStateDatabase database, long runStartTimestamp, long runEndTimestamp) {
+        final BatteryStateDao batteryStateDao = database.batteryStateDao();
+        final List<Long> timestamps =
+                batteryStateDao.getDistinctTimestampsBetween(runStartTimestamp, runEndTimestamp);
+        // Keeps the first and the last snapshots in full resolution, since they are used to
+        // interpolate the boundaries shared with the periods which are not aggregated yet.
+        if (timestamps.size() <= 2) {
+            return 0;
+        }
+        final List<BatteryState> batteryStates =
+                batteryStateDao.getAllBetweenExcludingPackage(
+                        timestamps.get(1),
+                        timestamps.get(timestamps.size() - 2),
+                        ConvertUtils.FAKE_PACKAGE_NAME);
+        final Map<Long, BatteryState> compactedStateMap = new ArrayMap<>();
+        final Set<Long> invalidTimestamps = new ArraySet<>();
+        for (BatteryState batteryState : batteryStates) {
+            final BatteryState compactedState = compactedStateMap.get(batteryState.timestamp);
+            if (compactedState != null) {
+                if (batteryState.isFullChargeCycleStart && !compactedState.isFullChargeCycleStart) {
+                    compactedStateMap.put(
+                            batteryState.timestamp,
+                            createLevelOnlyBatteryState(
+                                    batteryState.timestamp,
+                                    /* isFullChargeCycleStart= */ true,
+                                    compactedState.batteryInformation));
+                }
+                continue;
+            }
+            final BatteryInformation batteryInformation =
+                    BatteryUtils.parseProtoFromBytes(
+                            batteryState.batteryInformation,
+                            BatteryInformation.getDefaultInstance());
+            if (!batteryInformation.hasDeviceBatteryState()) {
+                // Keeps the rows which cannot be parsed.
+                invalidTimestamps.add(batteryState.timestamp);
+                continue;
+            }
+            compactedStateMap.put(
+                    batteryState.timestamp,
+                    createLevelOnlyBatteryState(
+                            batteryState.timestamp,
+                            batteryState.isFullChargeCycleStart,
+                            BatteryInformation.newBuilder()
+                                    .setDeviceBatteryState(
+                                            batteryInformation.getDeviceBatteryState())
+                                    .setBootTimestamp(batteryInformation.getBootTimestamp())
+                                    .setZoneId(batteryInformation.getZoneId())
+                                    .build()
+                                    .toByteArray()));
+        }
+        compactedStateMap.keySet().removeAll(invalidTimestamps);
+        if (compactedStateMap.isEmpty()) {
+            return 0;
+        }
+        database.runInTransaction(
+                () -> {
+                    batteryStateDao.clearAllIn(new ArrayList<>(compactedStateMap.keySet()));
+                    batteryStateDao.insertAll(new ArrayList<>(compactedStateMap.values()));
+                });
+        return compactedStateMap.size();
+    }
+
+    private static BatteryState createLevelOnlyBatteryState(
+            long timestamp, boolean isFullChargeCycleStart, byte[] batteryInformation) {
+        return BatteryState.newBuilder()
+                .setPackageName(ConvertUtils.FAKE_PACKAGE_NAME)
+                .setTimestamp(timestamp)
+                .setIsFullChargeCycleStart(isFullChargeCycleStart)
+                .setBatteryInformation(batteryInformation)
+                .build();
+    }
+
     private static void clearDataAfterTimeChangedIfNeededInternal(Context context) {
         final long currentTime = System.currentTimeMillis();
         final String logInfo =
@@ -941,16 +1206,30 @@ public final class DatabaseUtils {
 
     private static <E> List<E> loadListFromContentProvider(
             Context context, Uri uri, Function<Cursor, E> converter) {
+        final List<E> list = new ArrayList<>();
+        visitRowsFromContentProvider(context, uri, cursor -> list.add(converter.apply(cursor)));
+        return list;
+    }
+
+    /**
+     * Hands each row loaded from the content provider to the {@code rowVisitor} as it is read, so
+     * callers can build their final structures in one pass. The column indices are cached for all
+     * rows of the same query.
+     */
+    @VisibleForTesting
+    static int visitRowsFromContentProvider(Context context, Uri uri, Consumer<Cursor> rowVisitor) {
         return loadFromContentProvider(
                 context,
                 uri,
-                new ArrayList<>(),
+                /* defaultValue= */ 0,
                 cursor -> {
-                    final List<E> list = new ArrayList<>();
-                    while (cursor.moveToNext()) {
-                        list.add(converter.apply(cursor));
+                    final Cursor cachedColumnIndexCursor = new CachedColumnIndexCursor(cursor);
+                    int size = 0;
+                    while (cachedColumnIndexCursor.moveToNext()) {
+                        rowVisitor.accept(cachedColumnIndexCursor);
+                        size++;
                     }
-                    return list;
+                    return size;
                 });
     }
 
@@ -976,19 +1255,22 @@ public final class DatabaseUtils {
         }
     }
 
-    private static void clearMemory() {
-        if (!EXPLICIT_CLEAR_MEMORY_ENABLED
-                || SystemClock.uptimeMillis() > CLEAR_MEMORY_THRESHOLD_MS) {
-            return;
+    /** A {@link CursorWrapper} which caches the column index lookup of each column name. */
+    private static final class CachedColumnIndexCursor extends CursorWrapper {
+        private final Map<String, Integer> mColumnIndexMap = new ArrayMap<>();
+
+        CachedColumnIndexCursor(Cursor cursor) {
+            super(cursor);
+        }
+
+        @Override
+        public int getColumnIndex(String columnName) {
+            Integer columnIndex = mColumnIndexMap.get(columnName);
+            if (columnIndex == null) {
+                columnIndex = super.getColumnIndex(columnName);
+                mColumnIndexMap.put(columnName, columnIndex);
+            }
+            return columnIndex;
         }
-        final Handler mainHandler = new Handler(Looper.getMainLooper());
-        mainHandler.postDelayed(
-                () -> {
-                    System.gc();
-                    System.runFinalization();
-                    System.gc();
-                    Log.w(TAG, "invoke clearMemory()");
-                },
-                CLEAR_MEMORY_DELAYED_MS);
     }
 }
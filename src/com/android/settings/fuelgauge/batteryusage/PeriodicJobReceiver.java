@@ -61,5 +61,6 @@ public final class PeriodicJobReceiver extends BroadcastReceiver {
         Log.d(TAG, "refresh periodic job from action=" + action);
         PeriodicJobManager.getInstance(context).refreshJob(/* fromBoot= */ false);
         DatabaseUtils.clearExpiredDataIfNeeded(context);
+        DatabaseUtils.compactBatteryStatesIfNeeded(context);
     }
 }
@@ -22,7 +22,6 @@ import android.content.Context;
 import android.os.BatteryUsageStats;
 import android.os.Bundle;
 import android.os.UserManager;
-import android.util.Log;
 
 import androidx.annotation.IntDef;
 import androidx.annotation.NonNull;
@@ -38,11 +37,10 @@ import java.lang.annotation.RetentionPolicy;
 
 /** Common base class for things that need to show the battery usage graph. */
 public abstract class PowerUsageBase extends DashboardFragment {
-    private static final String TAG = "PowerUsageBase";
-
     @VisibleForTesting static final String KEY_REFRESH_TYPE = "refresh_type";
     @VisibleForTesting static final String KEY_INCLUDE_HISTORY = "include_history";
     @VisibleForTesting BatteryUsageStats mBatteryUsageStats;
+    private BatteryUsageStatsCache.Snapshot mBatteryUsageStatsSnapshot;
 
     protected UserManager mUm;
     protected boolean mIsBatteryPresent = true;
@@ -96,7 +94,6 @@ public abstract class PowerUsageBase extends DashboardFragment {
     public void onStop() {
         super.onStop();
         mBatteryBroadcastReceiver.unRegister();
-        closeBatteryUsageStatsIfNeeded();
     }
 
     protected void restartBatteryStatsLoader(int refreshType) {
@@ -129,37 +126,29 @@ public abstract class PowerUsageBase extends DashboardFragment {
     protected abstract void refreshUi(@BatteryUpdateType int refreshType);
 
     private class BatteryUsageStatsLoaderCallbacks
-            implements LoaderManager.LoaderCallbacks<BatteryUsageStats> {
+            implements LoaderManager.LoaderCallbacks<BatteryUsageStatsCache.Snapshot> {
         private int mRefreshType;
 
         @Override
         @NonNull
-        public Loader<BatteryUsageStats> onCreateLoader(int id, Bundle args) {
+        public Loader<BatteryUsageStatsCache.Snapshot> onCreateLoader(int id, Bundle args) {
             mRefreshType = args.getInt(KEY_REFRESH_TYPE);
             return new BatteryUsageStatsLoader(getContext(), args.getBoolean(KEY_INCLUDE_HISTORY));
         }
 
         @Override
         public void onLoadFinished(
-                Loader<BatteryUsageStats> loader, BatteryUsageStats batteryUsageStats) {
-            closeBatteryUsageStatsIfNeeded();
-            mBatteryUsageStats = batteryUsageStats;
+                Loader<BatteryUsageStatsCache.Snapshot> loader,
+                BatteryUsageStatsCache.Snapshot snapshot) {
+            // The loader owns the snapshot and closes it once it's replaced or reset.
+            mBatteryUsageStatsSnapshot = snapshot;
+            mBatteryUsageStats = snapshot == null ? null : snapshot.getBatteryUsageStats();
             PowerUsageBase.this.onLoadFinished(mRefreshType);
         }
 
         @Override
-        public void onLoaderReset(Loader<BatteryUsageStats> loader) {}
-    }
-
-    private void closeBatteryUsageStatsIfNeeded() {
-        if (mBatteryUsageStats == null) {
-            return;
-        }
-        try {
-            mBatteryUsageStats.close();
-        } catch (Exception e) {
-            Log.e(TAG, "BatteryUsageStats.close() failed", e);
-        } finally {
+        public void onLoaderReset(Loader<BatteryUsageStatsCache.Snapshot> loader) {
+            mBatteryUsageStatsSnapshot = null;
             mBatteryUsageStats = null;
         }
     }
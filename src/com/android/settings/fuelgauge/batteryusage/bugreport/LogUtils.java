@@ -94,6 +94,7 @@ public final class LogUtils {
     }
 
     static void dumpBatteryStateDatabaseHist(Context context, PrintWriter writer) {
+        DatabaseUtils.ensureLegacyEncodedDataConverted(context);
         final BatteryStateDao dao = BatteryStateDatabase.getInstance(context).batteryStateDao();
         writer.println("\n\tBatteryState DatabaseHistory:");
         final List<BatteryState> stateList =
@@ -110,6 +111,7 @@ public final class LogUtils {
     }
 
     static void dumpBatteryUsageSlotDatabaseHist(Context context, PrintWriter writer) {
+        DatabaseUtils.ensureLegacyEncodedDataConverted(context);
         final BatteryUsageSlotDao dao =
                 BatteryStateDatabase.getInstance(context).batteryUsageSlotDao();
         writer.println("\n\tBattery Usage Slot TimeZone ID: " + TimeZone.getDefault().getID());
@@ -120,7 +122,7 @@ public final class LogUtils {
                 writer,
                 entities,
                 entity ->
-                        BatteryUtils.parseProtoFromString(
+                        BatteryUtils.parseProtoFromBytes(
                                 entity.batteryUsageSlot, BatteryUsageSlot.getDefaultInstance()));
     }
 
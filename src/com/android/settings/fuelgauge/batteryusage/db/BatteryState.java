@@ -19,6 +19,7 @@ package com.android.settings.fuelgauge.batteryusage.db;
 import android.content.ContentValues;
 
 import androidx.room.Entity;
+import androidx.room.Index;
 import androidx.room.PrimaryKey;
 
 import com.android.settings.fuelgauge.BatteryUtils;
@@ -30,7 +31,7 @@ import com.google.errorprone.annotations.CanIgnoreReturnValue;
 import java.util.Locale;
 
 /** A {@link Entity} class to save battery states snapshot into database. */
-@Entity
+@Entity(indices = {@Index(value = {"timestamp"})})
 public class BatteryState {
     @PrimaryKey(autoGenerate = true)
     private long mId;
@@ -42,7 +43,7 @@ public class BatteryState {
     public final long timestamp;
     public final int consumerType;
     public final boolean isFullChargeCycleStart;
-    public final String batteryInformation;
+    public final byte[] batteryInformation;
 
     /**
      * This field is filled only when build type is "userdebug".
@@ -64,7 +65,7 @@ public class BatteryState {
             long timestamp,
             int consumerType,
             boolean isFullChargeCycleStart,
-            String batteryInformation,
+            byte[] batteryInformation,
             String batteryInformationDebug) {
         // Records the app relative information.
         this.uid = uid;
@@ -90,8 +91,10 @@ public class BatteryState {
     @Override
     public String toString() {
         final String recordAtDateTime = ConvertUtils.utcToLocalTimeForLogging(timestamp);
+        // Legacy encoded rows are converted before dumping, see
+        // DatabaseUtils#ensureLegacyEncodedDataConverted().
         final BatteryInformation batteryInformationInstance =
-                BatteryUtils.parseProtoFromString(
+                BatteryUtils.parseProtoFromBytes(
                         batteryInformation, BatteryInformation.getDefaultInstance());
         final StringBuilder builder =
                 new StringBuilder()
@@ -137,7 +140,8 @@ public class BatteryState {
             builder.setIsFullChargeCycleStart(contentValues.getAsBoolean("isFullChargeCycleStart"));
         }
         if (contentValues.containsKey("batteryInformation")) {
-            builder.setBatteryInformation(contentValues.getAsString("batteryInformation"));
+            builder.setBatteryInformation(
+                    ConvertUtils.getProtoBytes(contentValues, "batteryInformation"));
         }
         if (contentValues.containsKey("batteryInformationDebug")) {
             builder.setBatteryInformationDebug(
@@ -159,7 +163,7 @@ public class BatteryState {
         private long mTimestamp;
         private int mConsumerType;
         private boolean mIsFullChargeCycleStart;
-        private String mBatteryInformation;
+        private byte[] mBatteryInformation;
         private String mBatteryInformationDebug;
 
         /** Sets the uid. */
@@ -206,7 +210,7 @@ public class BatteryState {
 
         /** Sets the battery information. */
         @CanIgnoreReturnValue
-        public Builder setBatteryInformation(String batteryInformation) {
+        public Builder setBatteryInformation(byte[] batteryInformation) {
             this.mBatteryInformation = batteryInformation;
             return this;
         }
@@ -57,10 +57,38 @@ public interface BatteryStateDao {
     @Query("SELECT DISTINCT timestamp FROM BatteryState WHERE timestamp > :timestamp")
     List<Long> getDistinctTimestamps(long timestamp);
 
+    /** Lists all distinct timestamps in the specific time range in ascending order. */
+    @Query(
+            "SELECT DISTINCT timestamp FROM BatteryState WHERE timestamp >= :startTimestamp"
+                    + " AND timestamp <= :endTimestamp ORDER BY timestamp ASC")
+    List<Long> getDistinctTimestampsBetween(long startTimestamp, long endTimestamp);
+
+    /** Lists all recorded data of the specific package in the time range. */
+    @Query(
+            "SELECT * FROM BatteryState WHERE timestamp >= :startTimestamp"
+                    + " AND timestamp <= :endTimestamp AND packageName != :packageName"
+                    + " ORDER BY timestamp ASC")
+    List<BatteryState> getAllBetweenExcludingPackage(
+            long startTimestamp, long endTimestamp, String packageName);
+
+    /** Gets the {@link Cursor} of rows whose battery information is still Base64 encoded. */
+    @Query(
+            "SELECT mId, batteryInformation FROM BatteryState"
+                    + " WHERE typeof(batteryInformation) = 'text' LIMIT :limit")
+    Cursor getLegacyEncodedRows(int limit);
+
+    /** Updates the battery information of a specific row. */
+    @Query("UPDATE BatteryState SET batteryInformation = :batteryInformation WHERE mId = :id")
+    void updateBatteryInformation(long id, byte[] batteryInformation);
+
     /** Deletes all recorded data before a specific timestamp. */
     @Query("DELETE FROM BatteryState WHERE timestamp <= :timestamp")
     void clearAllBefore(long timestamp);
 
+    /** Deletes all recorded data in the specific timestamps. */
+    @Query("DELETE FROM BatteryState WHERE timestamp IN (:timestamps)")
+    void clearAllIn(List<Long> timestamps);
+
     /** Deletes all recorded data after a specific timestamp. */
     @Query("DELETE FROM BatteryState WHERE timestamp >= :timestamp")
     void clearAllAfter(long timestamp);
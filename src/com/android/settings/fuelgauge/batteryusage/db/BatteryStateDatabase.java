@@ -23,6 +23,8 @@ import androidx.annotation.NonNull;
 import androidx.room.Database;
 import androidx.room.Room;
 import androidx.room.RoomDatabase;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
 
 /** A {@link RoomDatabase} for battery usage states history. */
 @Database(
@@ -33,13 +35,80 @@ import androidx.room.RoomDatabase;
             BatteryUsageSlotEntity.class,
             BatteryReattributeEntity.class
         },
-        version = 2)
+        version = 4)
 public abstract class BatteryStateDatabase extends RoomDatabase {
     private static final String TAG = "BatteryStateDatabase";
     private static final String DB_FILE_NAME = "battery-usage-db-v10";
 
     private static BatteryStateDatabase sBatteryStateDatabase;
 
+    /**
+     * Changes the serialized proto columns from Base64 encoded TEXT into BLOB. The existing rows
+     * are copied as-is and converted into raw bytes later in the background, see {@link
+     * com.android.settings.fuelgauge.batteryusage.DatabaseUtils#convertLegacyEncodedDataIfNeeded}.
+     */
+    static final Migration MIGRATION_2_3 =
+            new Migration(2, 3) {
+                @Override
+                public void migrate(@NonNull SupportSQLiteDatabase database) {
+                    database.execSQL(
+                            "CREATE TABLE IF NOT EXISTS `BatteryState_new` (`mId` INTEGER PRIMARY"
+                                    + " KEY AUTOINCREMENT NOT NULL, `uid` INTEGER NOT NULL,"
+                                    + " `userId` INTEGER NOT NULL, `packageName` TEXT,"
+                                    + " `timestamp` INTEGER NOT NULL, `consumerType` INTEGER NOT"
+                                    + " NULL, `isFullChargeCycleStart` INTEGER NOT NULL,"
+                                    + " `batteryInformation` BLOB, `batteryInformationDebug`"
+                                    + " TEXT)");
+                    database.execSQL(
+                            "INSERT INTO `BatteryState_new` SELECT `mId`, `uid`, `userId`,"
+                                    + " `packageName`, `timestamp`, `consumerType`,"
+                                    + " `isFullChargeCycleStart`, `batteryInformation`,"
+                                    + " `batteryInformationDebug` FROM `BatteryState`");
+                    database.execSQL("DROP TABLE `BatteryState`");
+                    database.execSQL("ALTER TABLE `BatteryState_new` RENAME TO `BatteryState`");
+
+                    database.execSQL(
+                            "CREATE TABLE IF NOT EXISTS `BatteryUsageSlotEntity_new` (`mId`"
+                                    + " INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, `timestamp`"
+                                    + " INTEGER NOT NULL, `batteryUsageSlot` BLOB)");
+                    database.execSQL(
+                            "INSERT INTO `BatteryUsageSlotEntity_new` SELECT `mId`, `timestamp`,"
+                                    + " `batteryUsageSlot` FROM `BatteryUsageSlotEntity`");
+                    database.execSQL("DROP TABLE `BatteryUsageSlotEntity`");
+                    database.execSQL(
+                            "ALTER TABLE `BatteryUsageSlotEntity_new` RENAME TO"
+                                    + " `BatteryUsageSlotEntity`");
+                }
+            };
+
+    /** Adds the timestamp indices used by the range queries and deletions of each DAO. */
+    static final Migration MIGRATION_3_4 =
+            new Migration(3, 4) {
+                @Override
+                public void migrate(@NonNull SupportSQLiteDatabase database) {
+                    database.execSQL(
+                            "CREATE INDEX IF NOT EXISTS `index_AppUsageEventEntity_timestamp`"
+                                    + " ON `AppUsageEventEntity` (`timestamp`)");
+                    database.execSQL(
+                            "CREATE INDEX IF NOT EXISTS"
+                                    + " `index_AppUsageEventEntity_userId_timestamp`"
+                                    + " ON `AppUsageEventEntity` (`userId`, `timestamp`)");
+                    database.execSQL(
+                            "CREATE INDEX IF NOT EXISTS `index_BatteryEventEntity_timestamp`"
+                                    + " ON `BatteryEventEntity` (`timestamp`)");
+                    database.execSQL(
+                            "CREATE INDEX IF NOT EXISTS"
+                                    + " `index_BatteryEventEntity_batteryEventType_timestamp`"
+                                    + " ON `BatteryEventEntity` (`batteryEventType`, `timestamp`)");
+                    database.execSQL(
+                            "CREATE INDEX IF NOT EXISTS `index_BatteryState_timestamp`"
+                                    + " ON `BatteryState` (`timestamp`)");
+                    database.execSQL(
+                            "CREATE INDEX IF NOT EXISTS `index_BatteryUsageSlotEntity_timestamp`"
+                                    + " ON `BatteryUsageSlotEntity` (`timestamp`)");
+                }
+            };
+
     /** Provides DAO for app usage event table. */
     public abstract AppUsageEventDao appUsageEventDao();
 
@@ -63,6 +132,7 @@ public abstract class BatteryStateDatabase extends RoomDatabase {
                     Room.databaseBuilder(context, BatteryStateDatabase.class, DB_FILE_NAME)
                             // Allows accessing data in the main thread for dumping bugreport.
                             .allowMainThreadQueries()
+                            .addMigrations(MIGRATION_2_3, MIGRATION_3_4)
                             .fallbackToDestructiveMigration()
                             .build();
             Log.d(TAG, "initialize battery states database");
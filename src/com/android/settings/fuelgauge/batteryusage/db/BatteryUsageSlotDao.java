@@ -48,6 +48,18 @@ public interface BatteryUsageSlotDao {
                     + " ORDER BY timestamp DESC")
     List<BatteryUsageSlotEntity> getAllAfterForLog(long timestamp);
 
+    /** Gets the {@link Cursor} of rows whose battery usage slot is still Base64 encoded. */
+    @Query(
+            "SELECT mId, batteryUsageSlot FROM BatteryUsageSlotEntity"
+                    + " WHERE typeof(batteryUsageSlot) = 'text' LIMIT :limit")
+    Cursor getLegacyEncodedRows(int limit);
+
+    /** Updates the battery usage slot of a specific row. */
+    @Query(
+            "UPDATE BatteryUsageSlotEntity SET batteryUsageSlot = :batteryUsageSlot"
+                    + " WHERE mId = :id")
+    void updateBatteryUsageSlot(long id, byte[] batteryUsageSlot);
+
     /** Deletes all recorded data before a specific timestamp. */
     @Query("DELETE FROM BatteryUsageSlotEntity WHERE timestamp <= :timestamp")
     void clearAllBefore(long timestamp);
@@ -19,6 +19,7 @@ package com.android.settings.fuelgauge.batteryusage.db;
 import android.content.ContentValues;
 
 import androidx.room.Entity;
+import androidx.room.Index;
 import androidx.room.PrimaryKey;
 
 import com.android.settings.fuelgauge.batteryusage.ConvertUtils;
@@ -28,7 +29,7 @@ import com.google.errorprone.annotations.CanIgnoreReturnValue;
 import java.util.Locale;
 
 /** A {@link Entity} class to save battery usage slot into database. */
-@Entity
+@Entity(indices = {@Index(value = {"timestamp"})})
 public class BatteryUsageSlotEntity {
     /** Keys for accessing {@link ContentValues}. */
     public static final String KEY_TIMESTAMP = "timestamp";
@@ -39,9 +40,9 @@ public class BatteryUsageSlotEntity {
     private long mId;
 
     public final long timestamp;
-    public final String batteryUsageSlot;
+    public final byte[] batteryUsageSlot;
 
-    public BatteryUsageSlotEntity(final long timestamp, final String batteryUsageSlot) {
+    public BatteryUsageSlotEntity(final long timestamp, final byte[] batteryUsageSlot) {
         this.timestamp = timestamp;
         this.batteryUsageSlot = batteryUsageSlot;
     }
@@ -65,9 +66,9 @@ public class BatteryUsageSlotEntity {
                         .append(
                                 String.format(
                                         Locale.US,
-                                        "\n\ttimestamp=%s|batteryUsageSlot=%s",
+                                        "\n\ttimestamp=%s|batteryUsageSlotSize=%d",
                                         recordAtDateTime,
-                                        batteryUsageSlot))
+                                        batteryUsageSlot == null ? 0 : batteryUsageSlot.length))
                         .append("\n}");
         return builder.toString();
     }
@@ -79,7 +80,8 @@ public class BatteryUsageSlotEntity {
             builder.setTimestamp(contentValues.getAsLong(KEY_TIMESTAMP));
         }
         if (contentValues.containsKey(KEY_BATTERY_USAGE_SLOT)) {
-            builder.setBatteryUsageSlot(contentValues.getAsString(KEY_BATTERY_USAGE_SLOT));
+            builder.setBatteryUsageSlot(
+                    ConvertUtils.getProtoBytes(contentValues, KEY_BATTERY_USAGE_SLOT));
         }
         return builder.build();
     }
@@ -92,7 +94,7 @@ public class BatteryUsageSlotEntity {
     /** A convenience builder class to improve readability. */
     public static class Builder {
         private long mTimestamp;
-        private String mBatteryUsageSlot;
+        private byte[] mBatteryUsageSlot;
 
         /** Sets the timestamp. */
         @CanIgnoreReturnValue
@@ -103,7 +105,7 @@ public class BatteryUsageSlotEntity {
 
         /** Sets the battery usage slot. */
         @CanIgnoreReturnValue
-        public Builder setBatteryUsageSlot(final String batteryUsageSlot) {
+        public Builder setBatteryUsageSlot(final byte[] batteryUsageSlot) {
             mBatteryUsageSlot = batteryUsageSlot;
             return this;
         }
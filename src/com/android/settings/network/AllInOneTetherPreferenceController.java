@@ -57,7 +57,8 @@ import java.util.concurrent.atomic.AtomicReference;
  * preference. It updates the preference summary text based on tethering state.
  */
 public class AllInOneTetherPreferenceController extends BasePreferenceController implements
-        LifecycleObserver, TetherEnabler.OnTetherStateUpdateListener {
+        LifecycleObserver, TetherEnabler.OnTetherStateUpdateListener,
+        BasePreferenceController.IoBoundAvailability {
     private static final String TAG = "AllInOneTetherPreferenceController";
 
     private int mTetheringState;
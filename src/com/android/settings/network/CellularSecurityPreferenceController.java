@@ -42,7 +42,8 @@ import com.android.settings.network.telephony.CellularSecuritySettingsFragment;
  * {@link BasePreferenceController} for accessing Cellular Security settings from Network &
  * Internet Settings menu.
  */
-public class CellularSecurityPreferenceController extends BasePreferenceController {
+public class CellularSecurityPreferenceController extends BasePreferenceController
+        implements BasePreferenceController.IoBoundAvailability {
 
     private static final String LOG_TAG = "CellularSecurityPreferenceController";
 
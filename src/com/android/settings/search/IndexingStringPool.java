@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.search;
+
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_CONTROLLER;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_HIGHLIGHTABLE_MENU_KEY;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_PREF_TYPE;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_UNAVAILABLE_SLICE_SUBTITLE;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_USER_RESTRICTION;
+
+import android.os.Bundle;
+
+import com.android.settingslib.search.SearchIndexableRaw;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A pool of the strings of an indexing pass, so the many rows of a page share one instance of each
+ * repeated value, such as the class names, the screen titles and the intent targets.
+ *
+ * <p>Unlike {@link String#intern()}, the strings are released with the pool at the end of the
+ * pass. The pool is thread safe, since the providers may be indexed in parallel.
+ */
+public final class IndexingStringPool {
+
+    /** The metadata values shared by many preferences, unlike their keys and titles. */
+    private static final String[] REPEATED_METADATA = {
+            METADATA_PREF_TYPE,
+            METADATA_CONTROLLER,
+            METADATA_UNAVAILABLE_SLICE_SUBTITLE,
+            METADATA_HIGHLIGHTABLE_MENU_KEY,
+            METADATA_USER_RESTRICTION,
+    };
+
+    private final ConcurrentMap<String, String> mStrings = new ConcurrentHashMap<>();
+
+    /** @return the pooled instance equal to the value, or {@code null} if the value is null */
+    public String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+        final String pooled = mStrings.putIfAbsent(value, value);
+        return pooled == null ? value : pooled;
+    }
+
+    /**
+     * Interns the repeated values of the metadata parsed from a preference XML, such as the
+     * preference types and the controllers, but not the keys and the texts.
+     */
+    public void internMetadata(List<Bundle> metadata) {
+        for (Bundle bundle : metadata) {
+            for (String key : REPEATED_METADATA) {
+                final String value = bundle.getString(key);
+                if (value != null) {
+                    bundle.putString(key, intern(value));
+                }
+            }
+        }
+    }
+
+    /** Interns the string fields of the raw data, except the title and the key. */
+    public void internRaw(SearchIndexableRaw raw) {
+        raw.summaryOn = intern(raw.summaryOn);
+        raw.summaryOff = intern(raw.summaryOff);
+        raw.entries = intern(raw.entries);
+        raw.keywords = intern(raw.keywords);
+        raw.screenTitle = intern(raw.screenTitle);
+        raw.className = intern(raw.className);
+        raw.intentAction = intern(raw.intentAction);
+        raw.intentTargetPackage = intern(raw.intentTargetPackage);
+        raw.intentTargetClass = intern(raw.intentTargetClass);
+    }
+
+    /** @return the number of distinct strings in the pool */
+    public int size() {
+        return mStrings.size();
+    }
+}
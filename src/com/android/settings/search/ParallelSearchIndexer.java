@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.search;
+
+import android.util.Log;
+
+import androidx.annotation.VisibleForTesting;
+
+import com.android.settingslib.search.SearchIndexableData;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Fans the calls of the search index providers out over a bounded worker pool shared by the
+ * queries, and collects the results in the order of the {@link SearchIndexableData}, so the output
+ * is deterministic.
+ *
+ * <p>Each provider gets its own timeout, measured from when it starts. A provider still queued
+ * when its result is collected is run on the calling thread instead. With {@link #collect}, a
+ * provider which does not return within its timeout is skipped. With {@link #collectAll}, every
+ * provider is waited for. An exception thrown by a provider is rethrown to the caller, so the
+ * caller isolates the providers by catching it in the loader.
+ */
+final class ParallelSearchIndexer {
+    private static final String TAG = "ParallelSearchIndexer";
+    private static final boolean DEBUG = SettingsSearchIndexablesProvider.DEBUG;
+
+    @VisibleForTesting static final int MAX_THREADS = 4;
+
+    private static final long KEEP_ALIVE_SECONDS = 10L;
+
+    @VisibleForTesting static long sProviderTimeoutMs = Duration.ofSeconds(5).toMillis();
+
+    private static ThreadPoolExecutor sExecutor;
+
+    private ParallelSearchIndexer() {}
+
+    /**
+     * Loads the results of each {@link SearchIndexableData} concurrently, and concatenates them in
+     * the order of the bundles. The loader can return null when there is no result. The providers
+     * not returning within the timeout are skipped.
+     */
+    static <T> List<T> collect(
+            String name,
+            Collection<SearchIndexableData> bundles,
+            Function<SearchIndexableData, List<T>> loader) {
+        return collect(name, bundles, loader, /* waitForAll= */ false);
+    }
+
+    /**
+     * Like {@link #collect}, but never skips a provider, for the results which must be complete,
+     * such as the keys hidden from search.
+     */
+    static <T> List<T> collectAll(
+            String name,
+            Collection<SearchIndexableData> bundles,
+            Function<SearchIndexableData, List<T>> loader) {
+        return collect(name, bundles, loader, /* waitForAll= */ true);
+    }
+
+    private static <T> List<T> collect(
+            String name,
+            Collection<SearchIndexableData> bundles,
+            Function<SearchIndexableData, List<T>> loader,
+            boolean waitForAll) {
+        final long startTime = System.currentTimeMillis();
+        final List<T> results = new ArrayList<>();
+        if (bundles.size() <= 1) {
+            for (SearchIndexableData bundle : bundles) {
+                addAllIfNotNull(results, loader.apply(bundle));
+            }
+            return results;
+        }
+
+        final ThreadPoolExecutor executor = getExecutor();
+        final List<ProviderTask<T>> tasks = new ArrayList<>(bundles.size());
+        for (SearchIndexableData bundle : bundles) {
+            final ProviderTask<T> task = new ProviderTask<>(bundle, loader);
+            task.mFuture = executor.submit(task);
+            tasks.add(task);
+        }
+        try {
+            for (ProviderTask<T> task : tasks) {
+                addAllIfNotNull(results, getResult(name, task, waitForAll));
+            }
+        } finally {
+            for (ProviderTask<T> task : tasks) {
+                task.mFuture.cancel(/* mayInterruptIfRunning= */ true);
+            }
+        }
+        if (DEBUG) {
+            Log.d(TAG, name + "() " + bundles.size() + " providers, total time "
+                    + (System.currentTimeMillis() - startTime));
+        }
+        return results;
+    }
+
+    /**
+     * Gets the result of the task, running it on the calling thread if no worker has started it
+     * yet. Otherwise waits for it, and returns null if it does not return within the timeout,
+     * unless {@code waitForAll} is set.
+     */
+    private static <T> List<T> getResult(String name, ProviderTask<T> task, boolean waitForAll) {
+        if (task.claim()) {
+            return task.load();
+        }
+        final Future<List<T>> future = task.mFuture;
+        try {
+            if (waitForAll) {
+                return future.get();
+            }
+            final long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(sProviderTimeoutMs);
+            final long elapsedNanos = System.nanoTime() - task.getStartTimeNanos();
+            return future.get(Math.max(0, timeoutNanos - elapsedNanos), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(/* mayInterruptIfRunning= */ true);
+            Log.w(TAG, name + "() timed out in: " + task.getTargetClassName());
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (waitForAll) {
+                // Interrupted while the provider is running, can't skip it nor run it twice.
+                throw new IllegalStateException("Interrupted in: " + task.getTargetClassName(),
+                        e);
+            }
+            future.cancel(/* mayInterruptIfRunning= */ true);
+            Log.w(TAG, name + "() interrupted in: " + task.getTargetClassName());
+            return null;
+        } catch (ExecutionException e) {
+            throw rethrow(e);
+        }
+    }
+
+    private static RuntimeException rethrow(ExecutionException e) {
+        final Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        throw new RuntimeException(cause);
+    }
+
+    private static <T> void addAllIfNotNull(List<T> results, List<T> values) {
+        if (values != null) {
+            results.addAll(values);
+        }
+    }
+
+    private static synchronized ThreadPoolExecutor getExecutor() {
+        if (sExecutor == null) {
+            final AtomicInteger threadCount = new AtomicInteger();
+            sExecutor = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS, KEEP_ALIVE_SECONDS,
+                    TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                    runnable -> new Thread(runnable,
+                            "SearchIndexer-" + threadCount.incrementAndGet()));
+            // The pool is idle between the indexing passes.
+            sExecutor.allowCoreThreadTimeOut(true);
+        }
+        return sExecutor;
+    }
+
+    /**
+     * The call of one provider, run by whichever of a worker and the calling thread claims it
+     * first, so it never runs twice.
+     */
+    private static final class ProviderTask<T> implements Callable<List<T>> {
+        private static final long NOT_STARTED = Long.MIN_VALUE;
+
+        private final SearchIndexableData mBundle;
+        private final Function<SearchIndexableData, List<T>> mLoader;
+        private final AtomicLong mStartTimeNanos = new AtomicLong(NOT_STARTED);
+        Future<List<T>> mFuture;
+
+        ProviderTask(SearchIndexableData bundle, Function<SearchIndexableData, List<T>> loader) {
+            mBundle = bundle;
+            mLoader = loader;
+        }
+
+        @Override
+        public List<T> call() {
+            return claim() ? load() : null;
+        }
+
+        /** Claims the task for the calling thread, returns false if it's already started. */
+        boolean claim() {
+            return mStartTimeNanos.compareAndSet(NOT_STARTED, System.nanoTime());
+        }
+
+        List<T> load() {
+            return mLoader.apply(mBundle);
+        }
+
+        long getStartTimeNanos() {
+            return mStartTimeNanos.get();
+        }
+
+        String getTargetClassName() {
+            return mBundle.getTargetClass().getName();
+        }
+    }
+}
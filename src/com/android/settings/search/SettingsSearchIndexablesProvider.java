@@ -172,13 +172,14 @@ public class SettingsSearchIndexablesProvider extends SearchIndexablesProvider {
     @Override
     public Cursor queryDynamicRawData(String[] projection) {
         final Context context = getContext();
-        final List<SearchIndexableRaw> rawList = new ArrayList<>();
         final Collection<SearchIndexableData> bundles = FeatureFactory.getFeatureFactory()
                 .getSearchFeatureProvider().getSearchIndexableResources().getProviderValues();
+        final IndexingStringPool stringPool = new IndexingStringPool();
+        final List<SearchIndexableRaw> rawList = ParallelSearchIndexer.collect(
+                "getDynamicRawDataToIndex", bundles,
+                bundle -> getDynamicSearchIndexableRawData(context, bundle, stringPool));
 
         for (SearchIndexableData bundle : bundles) {
-            rawList.addAll(getDynamicSearchIndexableRawData(context, bundle));
-
             // Refresh the search enabled state for indexing injection raw data
             final Indexable.SearchIndexProvider provider = bundle.getSearchIndexProvider();
             if (provider instanceof BaseSearchIndexProvider) {
@@ -274,65 +275,64 @@ public class SettingsSearchIndexablesProvider extends SearchIndexablesProvider {
         final Collection<SearchIndexableData> bundles = FeatureFactory.getFeatureFactory()
                 .getSearchFeatureProvider().getSearchIndexableResources().getProviderValues();
 
-        final List<String> nonIndexableKeys = new ArrayList<>();
-
-        for (SearchIndexableData bundle : bundles) {
-            final long startTime = System.currentTimeMillis();
-            Indexable.SearchIndexProvider provider = bundle.getSearchIndexProvider();
-            List<String> providerNonIndexableKeys;
-            try {
-                providerNonIndexableKeys = provider.getNonIndexableKeys(context);
-            } catch (Exception e) {
-                // Catch a generic crash. In the absence of the catch, the background thread will
-                // silently fail anyway, so we aren't losing information by catching the exception.
-                // We crash when the system property exists so that we can test if crashes need to
-                // be fixed.
-                // The gain is that if there is a crash in a specific controller, we don't lose all
-                // non-indexable keys, but we can still find specific crashes in development.
-                if (System.getProperty(SYSPROP_CRASH_ON_ERROR) != null) {
-                    throw new RuntimeException(e);
-                }
-                Log.e(TAG, "Error trying to get non-indexable keys from: "
-                        + bundle.getTargetClass().getName(), e);
-                continue;
-            }
-
-            if (providerNonIndexableKeys == null || providerNonIndexableKeys.isEmpty()) {
-                if (DEBUG) {
-                    final long totalTime = System.currentTimeMillis() - startTime;
-                    Log.d(TAG, "No indexable, total time " + totalTime);
-                }
-                continue;
-            }
+        return ParallelSearchIndexer.collectAll("getNonIndexableKeys", bundles,
+                bundle -> getNonIndexableKeysFromProvider(context, bundle));
+    }
 
-            if (providerNonIndexableKeys.removeAll(INVALID_KEYS)) {
-                Log.v(TAG, provider + " tried to add an empty non-indexable key");
+    @Nullable
+    private List<String> getNonIndexableKeysFromProvider(Context context,
+            SearchIndexableData bundle) {
+        final long startTime = System.currentTimeMillis();
+        Indexable.SearchIndexProvider provider = bundle.getSearchIndexProvider();
+        List<String> providerNonIndexableKeys;
+        try {
+            providerNonIndexableKeys = provider.getNonIndexableKeys(context);
+        } catch (Exception e) {
+            // Catch a generic crash. In the absence of the catch, the background thread will
+            // silently fail anyway, so we aren't losing information by catching the exception.
+            // We crash when the system property exists so that we can test if crashes need to
+            // be fixed.
+            // The gain is that if there is a crash in a specific controller, we don't lose all
+            // non-indexable keys, but we can still find specific crashes in development.
+            if (System.getProperty(SYSPROP_CRASH_ON_ERROR) != null) {
+                throw new RuntimeException(e);
             }
+            Log.e(TAG, "Error trying to get non-indexable keys from: "
+                    + bundle.getTargetClass().getName(), e);
+            return null;
+        }
 
+        if (providerNonIndexableKeys == null || providerNonIndexableKeys.isEmpty()) {
             if (DEBUG) {
                 final long totalTime = System.currentTimeMillis() - startTime;
-                Log.d(TAG, "Non-indexables " + providerNonIndexableKeys.size() + ", total time "
-                        + totalTime);
+                Log.d(TAG, "No indexable, total time " + totalTime);
             }
+            return null;
+        }
 
-            nonIndexableKeys.addAll(providerNonIndexableKeys);
+        if (providerNonIndexableKeys.removeAll(INVALID_KEYS)) {
+            Log.v(TAG, provider + " tried to add an empty non-indexable key");
         }
 
-        return nonIndexableKeys;
+        if (DEBUG) {
+            final long totalTime = System.currentTimeMillis() - startTime;
+            Log.d(TAG, "Non-indexables " + providerNonIndexableKeys.size() + ", total time "
+                    + totalTime);
+        }
+        return providerNonIndexableKeys;
     }
 
     private List<SearchIndexableResource> getSearchIndexableResourcesFromProvider(Context context) {
         final Collection<SearchIndexableData> bundles = FeatureFactory.getFeatureFactory()
                 .getSearchFeatureProvider().getSearchIndexableResources().getProviderValues();
-        List<SearchIndexableResource> resourceList = new ArrayList<>();
 
-        for (SearchIndexableData bundle : bundles) {
+        return ParallelSearchIndexer.collect("getXmlResourcesToIndex", bundles, bundle -> {
             Indexable.SearchIndexProvider provider = bundle.getSearchIndexProvider();
             final List<SearchIndexableResource> resList =
                     provider.getXmlResourcesToIndex(context, true);
 
             if (resList == null) {
-                continue;
+                return null;
             }
 
             for (SearchIndexableResource item : resList) {
@@ -340,40 +340,36 @@ public class SettingsSearchIndexablesProvider extends SearchIndexablesProvider {
                         ? bundle.getTargetClass().getName()
                         : item.className;
             }
-
-            resourceList.addAll(resList);
-        }
-
-        return resourceList;
+            return resList;
+        });
     }
 
     private List<SearchIndexableRaw> getSearchIndexableRawFromProvider(Context context) {
         final Collection<SearchIndexableData> bundles = FeatureFactory.getFeatureFactory()
                 .getSearchFeatureProvider().getSearchIndexableResources().getProviderValues();
-        final List<SearchIndexableRaw> rawList = new ArrayList<>();
+        final IndexingStringPool stringPool = new IndexingStringPool();
 
-        for (SearchIndexableData bundle : bundles) {
+        return ParallelSearchIndexer.collect("getRawDataToIndex", bundles, bundle -> {
             Indexable.SearchIndexProvider provider = bundle.getSearchIndexProvider();
             final List<SearchIndexableRaw> providerRaws = provider.getRawDataToIndex(context,
                     true /* enabled */);
 
             if (providerRaws == null) {
-                continue;
+                return null;
             }
 
             for (SearchIndexableRaw raw : providerRaws) {
                 // The classname and intent information comes from the PreIndexData
                 // This will be more clear when provider conversion is done at PreIndex time.
                 raw.className = bundle.getTargetClass().getName();
+                stringPool.internRaw(raw);
             }
-            rawList.addAll(providerRaws);
-        }
-
-        return rawList;
+            return providerRaws;
+        });
     }
 
     private List<SearchIndexableRaw> getDynamicSearchIndexableRawData(Context context,
-            SearchIndexableData bundle) {
+            SearchIndexableData bundle, IndexingStringPool stringPool) {
         final Indexable.SearchIndexProvider provider = bundle.getSearchIndexProvider();
         final List<SearchIndexableRaw> providerRaws =
                 provider.getDynamicRawDataToIndex(context, true /* enabled */);
@@ -385,6 +381,7 @@ public class SettingsSearchIndexablesProvider extends SearchIndexablesProvider {
             // The classname and intent information comes from the PreIndexData
             // This will be more clear when provider conversion is done at PreIndex time.
             raw.className = bundle.getTargetClass().getName();
+            stringPool.internRaw(raw);
         }
         return providerRaws;
     }
@@ -27,6 +27,7 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.pm.PackageManager;
+import android.database.ContentObserver;
 import android.net.Uri;
 import android.os.Binder;
 import android.os.StrictMode;
@@ -63,7 +64,8 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.WeakHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 /**
@@ -78,7 +80,7 @@ import java.util.stream.Collectors;
  * return an stub {@link Slice} with the correct {@link Uri} immediately. In the background, the
  * data corresponding to the key in the {@link Uri} is read by {@link SlicesDatabaseAccessor}, and
  * the entire row is converted into a {@link SliceData}. Once complete, it is stored in
- * {@link #mSliceWeakDataCache}, and then an update sent via the Slice framework to the Slice.
+ * {@link #mSliceDataCache}, and then an update sent via the Slice framework to the Slice.
  * The {@link Slice} displayed by the Slice-presenter will re-query this Slice-provider and find
  * the {@link SliceData} cached to build the full {@link Slice}.
  *
@@ -136,11 +138,21 @@ public class SettingsSliceProvider extends SliceProvider {
     SlicesDatabaseAccessor mSlicesDatabaseAccessor;
 
     @VisibleForTesting
-    Map<Uri, SliceData> mSliceWeakDataCache;
+    SliceDataCache mSliceDataCache;
 
     @VisibleForTesting
     final Map<Uri, SliceBackgroundWorker> mPinnedWorkers = new ArrayMap<>();
 
+    @VisibleForTesting
+    Executor mBackgroundExecutor = ThreadUtils::postOnBackgroundThread;
+
+    private final Set<Uri> mPendingLoadUris = new ArraySet<>();
+
+    // Bumped when the blocked slices setting changes, so that the cached keys are parsed again.
+    private final AtomicInteger mBlockedKeysVersion = new AtomicInteger();
+    private volatile Pair<Integer, Set<String>> mBlockedKeys;
+    private volatile ContentObserver mBlockedKeysObserver;
+
     private Boolean mNightMode;
     private boolean mFirstSlicePinned;
     private boolean mFirstSliceBound;
@@ -154,7 +166,7 @@ public class SettingsSliceProvider extends SliceProvider {
     public boolean onCreateSliceProvider() {
         Log.d(TAG, "onCreateSliceProvider");
         mSlicesDatabaseAccessor = new SlicesDatabaseAccessor(getContext());
-        mSliceWeakDataCache = new WeakHashMap<>();
+        mSliceDataCache = SliceDataCache.getInstance();
         return true;
     }
 
@@ -197,7 +209,7 @@ public class SettingsSliceProvider extends SliceProvider {
 
     @Override
     public void onSliceUnpinned(Uri sliceUri) {
-        mSliceWeakDataCache.remove(sliceUri);
+        mSliceDataCache.remove(sliceUri);
         final Context context = getContext();
         if (!VolumeSliceHelper.unregisterUri(context, sliceUri)) {
             SliceBroadcastRelay.unregisterReceivers(context, sliceUri);
@@ -272,7 +284,7 @@ public class SettingsSliceProvider extends SliceProvider {
                         .createWifiCallingPreferenceSlice(sliceUri);
             }
 
-            final SliceData cachedSliceData = mSliceWeakDataCache.get(sliceUri);
+            final SliceData cachedSliceData = mSliceDataCache.get(sliceUri);
             if (cachedSliceData == null) {
                 loadSliceInBackground(sliceUri);
                 return getSliceStub(sliceUri);
@@ -402,20 +414,59 @@ public class SettingsSliceProvider extends SliceProvider {
 
     @VisibleForTesting
     void loadSlice(Uri uri) {
-        if (mSliceWeakDataCache.containsKey(uri)) {
-            Log.d(TAG, uri + " loaded from cache");
+        loadSlices(Collections.singletonList(uri));
+    }
+
+    /**
+     * Loads the {@link SliceData} of all the {@param uris} which are not cached with one query of
+     * the slices database.
+     */
+    @VisibleForTesting
+    void loadSlices(Collection<Uri> uris) {
+        final List<Uri> uncachedUris = new ArrayList<>(uris.size());
+        for (Uri uri : uris) {
+            if (mSliceDataCache.contains(uri)) {
+                Log.d(TAG, uri + " loaded from cache");
+            } else {
+                uncachedUris.add(uri);
+            }
+        }
+        if (uncachedUris.isEmpty()) {
             return;
         }
         long startBuildTime = System.currentTimeMillis();
+        final int cacheGeneration = mSliceDataCache.getGeneration();
 
-        final SliceData sliceData;
+        final Map<Uri, SliceData> sliceDataMap;
         try {
-            sliceData = mSlicesDatabaseAccessor.getSliceDataFromUri(uri);
+            sliceDataMap = mSlicesDatabaseAccessor.getSliceDataFromUris(uncachedUris);
         } catch (IllegalStateException e) {
-            Log.d(TAG, "Could not create slicedata for uri: " + uri, e);
+            Log.d(TAG, "Could not create slicedata for uris: " + uncachedUris, e);
             return;
         }
+        // The query time is shared by all the slices loaded together.
+        final long loadTime = (System.currentTimeMillis() - startBuildTime) / uncachedUris.size();
+
+        for (Uri uri : uncachedUris) {
+            final SliceData sliceData = sliceDataMap.get(uri);
+            if (sliceData == null) {
+                Log.d(TAG, "Could not create slicedata for uri: " + uri);
+                continue;
+            }
+            try {
+                onSliceDataLoaded(uri, sliceData, cacheGeneration, loadTime);
+            } catch (IllegalStateException e) {
+                // Keeps loading the other slices of the batch.
+                Log.d(TAG, "Could not load slice for uri: " + uri, e);
+            }
+        }
 
+        Log.d(TAG, "Built " + sliceDataMap.size() + " slices (" + uncachedUris + ") in: "
+                + (System.currentTimeMillis() - startBuildTime));
+    }
+
+    private void onSliceDataLoaded(Uri uri, SliceData sliceData, int cacheGeneration,
+            long loadTime) {
         final BasePreferenceController controller = SliceBuilderUtils.getPreferenceController(
                 getContext(), sliceData);
 
@@ -432,16 +483,33 @@ public class SettingsSliceProvider extends SliceProvider {
 
         ThreadUtils.postOnMainThread(() -> startBackgroundWorker(controller, uri));
 
-        mSliceWeakDataCache.put(uri, sliceData);
+        mSliceDataCache.put(uri, sliceData, cacheGeneration, loadTime);
         getContext().getContentResolver().notifyChange(uri, null /* content observer */);
-
-        Log.d(TAG, "Built slice (" + uri + ") in: " +
-                (System.currentTimeMillis() - startBuildTime));
     }
 
+    /**
+     * Queues the {@param uri} to be loaded in the background. The slices pinned or bound together,
+     * such as the slices of a panel, are queued before the background thread runs and are loaded
+     * in one batch.
+     */
     @VisibleForTesting
     void loadSliceInBackground(Uri uri) {
-        ThreadUtils.postOnBackgroundThread(() -> loadSlice(uri));
+        synchronized (mPendingLoadUris) {
+            final boolean isBatchScheduled = !mPendingLoadUris.isEmpty();
+            if (!mPendingLoadUris.add(uri) || isBatchScheduled) {
+                return;
+            }
+        }
+        mBackgroundExecutor.execute(this::loadPendingSlices);
+    }
+
+    private void loadPendingSlices() {
+        final List<Uri> uris;
+        synchronized (mPendingLoadUris) {
+            uris = new ArrayList<>(mPendingLoadUris);
+            mPendingLoadUris.clear();
+        }
+        loadSlices(uris);
     }
 
     @VisibleForTesting
@@ -454,8 +522,25 @@ public class SettingsSliceProvider extends SliceProvider {
                 intentFilter);
     }
 
+    /**
+     * @return the keys of the slices blocked by {@link Settings.Global#BLOCKED_SLICES}. The parsed
+     * set is cached and only parsed again after the setting changes.
+     */
     @VisibleForTesting
     Set<String> getBlockedKeys() {
+        registerBlockedKeysObserver();
+        final int version = mBlockedKeysVersion.get();
+        final Pair<Integer, Set<String>> cachedBlockedKeys = mBlockedKeys;
+        if (cachedBlockedKeys != null && cachedBlockedKeys.first == version) {
+            return cachedBlockedKeys.second;
+        }
+
+        final Set<String> blockedKeys = Collections.unmodifiableSet(parseBlockedKeys());
+        mBlockedKeys = Pair.create(version, blockedKeys);
+        return blockedKeys;
+    }
+
+    private Set<String> parseBlockedKeys() {
         final String value = Settings.Global.getString(getContext().getContentResolver(),
                 Settings.Global.BLOCKED_SLICES);
         final Set<String> set = new ArraySet<>();
@@ -472,6 +557,27 @@ public class SettingsSliceProvider extends SliceProvider {
         return set;
     }
 
+    private void registerBlockedKeysObserver() {
+        if (mBlockedKeysObserver != null) {
+            return;
+        }
+        synchronized (this) {
+            if (mBlockedKeysObserver != null) {
+                return;
+            }
+            final ContentObserver observer = new ContentObserver(null /* handler */) {
+                @Override
+                public void onChange(boolean selfChange) {
+                    mBlockedKeysVersion.incrementAndGet();
+                }
+            };
+            getContext().getContentResolver().registerContentObserver(
+                    Settings.Global.getUriFor(Settings.Global.BLOCKED_SLICES),
+                    false /* notifyForDescendants */, observer);
+            mBlockedKeysObserver = observer;
+        }
+    }
+
     @VisibleForTesting
     boolean isPrivateSlicesNeeded(Uri uri) {
         final Context context = getContext();
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.settings.slices;
+
+import android.net.Uri;
+import android.util.LruCache;
+
+import androidx.annotation.VisibleForTesting;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded LRU cache of the {@link SliceData} read from the slices database, which is shared by
+ * the slice binds of the process and sized by the estimated memory of the data.
+ *
+ * The cache is invalidated when the slices database is indexed again, and the data loaded before
+ * the invalidation is not cached.
+ */
+public final class SliceDataCache {
+
+    @VisibleForTesting
+    static final int MAX_SIZE_BYTES = 256 * 1024;
+
+    // Rough overhead of a SliceData, its Uri and the cache entry.
+    private static final int ENTRY_OVERHEAD_BYTES = 256;
+
+    private static final SliceDataCache sInstance = new SliceDataCache(MAX_SIZE_BYTES);
+
+    private final LruCache<Uri, SliceData> mCache;
+    private final AtomicInteger mGeneration = new AtomicInteger();
+    private final AtomicLong mHitCount = new AtomicLong();
+    private final AtomicLong mMissCount = new AtomicLong();
+    private final AtomicLong mLoadCount = new AtomicLong();
+    private final AtomicLong mTotalLoadTimeMs = new AtomicLong();
+
+    @VisibleForTesting
+    SliceDataCache(int maxSizeBytes) {
+        mCache = new LruCache<Uri, SliceData>(maxSizeBytes) {
+            @Override
+            protected int sizeOf(Uri uri, SliceData sliceData) {
+                return getSizeBytes(uri, sliceData);
+            }
+        };
+    }
+
+    /** @return the cache shared by the process */
+    public static SliceDataCache getInstance() {
+        return sInstance;
+    }
+
+    /** @return the cached {@link SliceData} of the uri, and counts the hit or the miss */
+    SliceData get(Uri uri) {
+        final SliceData sliceData = mCache.get(uri);
+        if (sliceData == null) {
+            mMissCount.incrementAndGet();
+        } else {
+            mHitCount.incrementAndGet();
+        }
+        return sliceData;
+    }
+
+    /** @return whether the {@link SliceData} of the uri is cached, without counting a hit */
+    boolean contains(Uri uri) {
+        return mCache.get(uri) != null;
+    }
+
+    /**
+     * @return the generation of the cache, which is passed to {@link #put} so the data loaded
+     * before an invalidation is dropped
+     */
+    int getGeneration() {
+        return mGeneration.get();
+    }
+
+    /** Caches the {@link SliceData} loaded in the generation, and records the load time. */
+    void put(Uri uri, SliceData sliceData, int generation, long loadTimeMs) {
+        mLoadCount.incrementAndGet();
+        mTotalLoadTimeMs.addAndGet(loadTimeMs);
+        synchronized (mCache) {
+            if (generation == mGeneration.get()) {
+                mCache.put(uri, sliceData);
+            }
+        }
+    }
+
+    void remove(Uri uri) {
+        mCache.remove(uri);
+    }
+
+    /** Evicts all cached data, should be called when the slices database is indexed again. */
+    void invalidate() {
+        synchronized (mCache) {
+            mGeneration.incrementAndGet();
+            mCache.evictAll();
+        }
+    }
+
+    /** @return the counters of the cache for dumpsys */
+    public JSONObject dumpStats() throws JSONException {
+        final JSONObject obj = new JSONObject();
+        obj.put("size", mCache.size());
+        obj.put("maxSize", mCache.maxSize());
+        obj.put("hit", mHitCount.get());
+        obj.put("miss", mMissCount.get());
+        obj.put("eviction", mCache.evictionCount());
+        obj.put("load", mLoadCount.get());
+        obj.put("loadTimeMs", mTotalLoadTimeMs.get());
+        return obj;
+    }
+
+    @VisibleForTesting
+    long getHitCount() {
+        return mHitCount.get();
+    }
+
+    @VisibleForTesting
+    long getMissCount() {
+        return mMissCount.get();
+    }
+
+    private static int getSizeBytes(Uri uri, SliceData sliceData) {
+        return ENTRY_OVERHEAD_BYTES
+                + 2 * (length(uri.toString())
+                        + length(sliceData.getKey())
+                        + length(sliceData.getTitle())
+                        + length(sliceData.getSummary())
+                        + length(sliceData.getScreenTitle())
+                        + length(sliceData.getKeywords())
+                        + length(sliceData.getFragmentClassName())
+                        + length(sliceData.getPreferenceController())
+                        + length(sliceData.getUnavailableSliceSubtitle())
+                        + length(sliceData.getUserRestriction()));
+    }
+
+    private static int length(CharSequence value) {
+        return value == null ? 0 : value.length();
+    }
+}
@@ -55,6 +55,7 @@ import com.android.settings.core.PreferenceXmlParserUtils.MetadataFlag;
 import com.android.settings.dashboard.DashboardFragment;
 import com.android.settings.notification.RingerModeAffectedVolumePreferenceController;
 import com.android.settings.overlay.FeatureFactory;
+import com.android.settings.search.IndexingStringPool;
 import com.android.settingslib.core.instrumentation.MetricsFeatureProvider;
 import com.android.settingslib.search.Indexable.SearchIndexProvider;
 import com.android.settingslib.search.SearchIndexableData;
@@ -100,6 +101,26 @@ class SliceDataConverter {
     public List<SliceData> getSliceData() {
         List<SliceData> sliceData = new ArrayList<>();
 
+        for (SliceDataSource source : getSliceDataSources()) {
+            sliceData.addAll(getSliceData(source));
+        }
+
+        final List<SliceData> a11ySliceData = getAccessibilitySliceData();
+        sliceData.addAll(a11ySliceData);
+        return sliceData;
+    }
+
+    /**
+     * @return a list of {@link SliceDataSource} with the parsed XML metadata of each fragment
+     * indexed by settings search, without instantiating any preference controller.
+     *
+     * The metadata of all fragments is kept for the whole indexing pass, so their strings are
+     * interned in a pool shared by the sources.
+     */
+    List<SliceDataSource> getSliceDataSources() {
+        final List<SliceDataSource> sources = new ArrayList<>();
+        final IndexingStringPool stringPool = new IndexingStringPool();
+
         final Collection<SearchIndexableData> bundles = FeatureFactory.getFeatureFactory()
                 .getSearchFeatureProvider().getSearchIndexableResources().getProviderValues();
 
@@ -114,25 +135,33 @@ class SliceDataConverter {
                 continue;
             }
 
-            final List<SliceData> providerSliceData = getSliceDataFromProvider(provider,
-                    fragmentName);
-            sliceData.addAll(providerSliceData);
+            sources.add(getSliceDataSourceFromProvider(provider, fragmentName, stringPool));
         }
+        return sources;
+    }
 
-        final List<SliceData> a11ySliceData = getAccessibilitySliceData();
-        sliceData.addAll(a11ySliceData);
+    /**
+     * @return a list of {@link SliceData} converted from the XML metadata of the source, which
+     * instantiates the preference controllers to check if the slices are available.
+     */
+    List<SliceData> getSliceData(SliceDataSource source) {
+        final List<SliceData> sliceData = new ArrayList<>();
+        for (int i = 0; i < source.mXmlResIds.size(); i++) {
+            sliceData.addAll(getSliceDataFromMetadata(source.mMetadataList.get(i),
+                    source.mFragmentName));
+        }
         return sliceData;
     }
 
-    private List<SliceData> getSliceDataFromProvider(SearchIndexProvider provider,
-            String fragmentName) {
-        final List<SliceData> sliceData = new ArrayList<>();
+    private SliceDataSource getSliceDataSourceFromProvider(SearchIndexProvider provider,
+            String fragmentName, IndexingStringPool stringPool) {
+        final SliceDataSource source = new SliceDataSource(fragmentName);
 
         final List<SearchIndexableResource> resList =
                 provider.getXmlResourcesToIndex(mContext, true /* enabled */);
 
         if (resList == null) {
-            return sliceData;
+            return source;
         }
 
         // TODO (b/67996923) get a list of permanent NIKs and skip the invalid keys.
@@ -144,23 +173,22 @@ class SliceDataConverter {
                 continue;
             }
 
-            List<SliceData> xmlSliceData = getSliceDataFromXML(xmlResId, fragmentName);
-            sliceData.addAll(xmlSliceData);
+            final List<Bundle> metadata = getMetadataFromXml(xmlResId, fragmentName);
+            if (metadata != null) {
+                stringPool.internMetadata(metadata);
+                source.addMetadata(xmlResId, metadata);
+            }
         }
 
-        return sliceData;
+        return source;
     }
 
-    private List<SliceData> getSliceDataFromXML(int xmlResId, String fragmentName) {
-        final List<SliceData> xmlSliceData = new ArrayList<>();
-        String controllerClassName = "";
-        @NonNull String screenTitle = "";
-
+    private List<Bundle> getMetadataFromXml(int xmlResId, String fragmentName) {
         try {
             // TODO (b/67996923) Investigate if we need headers for Slices, since they never
             // correspond to an actual setting.
 
-            final List<Bundle> metadata = PreferenceXmlParserUtils.extractMetadata(mContext,
+            return PreferenceXmlParserUtils.extractMetadata(mContext,
                     xmlResId,
                     MetadataFlag.FLAG_INCLUDE_PREF_SCREEN
                             | MetadataFlag.FLAG_NEED_KEY
@@ -171,7 +199,30 @@ class SliceDataConverter {
                             | MetadataFlag.FLAG_NEED_PREF_SUMMARY
                             | MetadataFlag.FLAG_UNAVAILABLE_SLICE_SUBTITLE
                             | MetadataFlag.FLAG_NEED_USER_RESTRICTION);
+        } catch (XmlPullParserException | IOException | Resources.NotFoundException e) {
+            Log.w(TAG, "Error parsing PreferenceScreen: ", e);
+            mMetricsFeatureProvider.action(SettingsEnums.PAGE_UNKNOWN,
+                    SettingsEnums.ACTION_VERIFY_SLICE_PARSING_ERROR,
+                    SettingsEnums.PAGE_UNKNOWN,
+                    fragmentName,
+                    1);
+        } catch (Exception e) {
+            Log.w(TAG, "Get slice data from XML failed ", e);
+            mMetricsFeatureProvider.action(SettingsEnums.PAGE_UNKNOWN,
+                    SettingsEnums.ACTION_VERIFY_SLICE_OTHER_EXCEPTION,
+                    SettingsEnums.PAGE_UNKNOWN,
+                    fragmentName + "_",
+                    1);
+        }
+        return null;
+    }
 
+    private List<SliceData> getSliceDataFromMetadata(List<Bundle> metadata, String fragmentName) {
+        final List<SliceData> xmlSliceData = new ArrayList<>();
+        String controllerClassName = "";
+        @NonNull String screenTitle = "";
+
+        try {
             for (Bundle bundle : metadata) {
                 final String title = bundle.getString(METADATA_TITLE);
                 if (PREF_SCREEN_TAG.equals(bundle.getString(METADATA_PREF_TYPE))) {
@@ -232,13 +283,6 @@ class SliceDataConverter {
                     SettingsEnums.PAGE_UNKNOWN,
                     controllerClassName,
                     1);
-        } catch (XmlPullParserException | IOException | Resources.NotFoundException e) {
-            Log.w(TAG, "Error parsing PreferenceScreen: ", e);
-            mMetricsFeatureProvider.action(SettingsEnums.PAGE_UNKNOWN,
-                    SettingsEnums.ACTION_VERIFY_SLICE_PARSING_ERROR,
-                    SettingsEnums.PAGE_UNKNOWN,
-                    fragmentName,
-                    1);
         } catch (Exception e) {
             Log.w(TAG, "Get slice data from XML failed ", e);
             mMetricsFeatureProvider.action(SettingsEnums.PAGE_UNKNOWN,
@@ -250,7 +294,7 @@ class SliceDataConverter {
         return xmlSliceData;
     }
 
-    private List<SliceData> getAccessibilitySliceData() {
+    List<SliceData> getAccessibilitySliceData() {
         final List<SliceData> sliceData = new ArrayList<>();
 
         final String accessibilityControllerClassName =
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.settings.slices;
+
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_CONTROLLER;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_ICON;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_KEY;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_PREF_TYPE;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_SUMMARY;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_TITLE;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_UNAVAILABLE_SLICE_SUBTITLE;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_USER_RESTRICTION;
+
+import android.os.Bundle;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The parsed XML metadata of a fragment indexed by settings search, which is the source of the
+ * {@link SliceData} of the fragment.
+ *
+ * The metadata is hashed, so the indexer can tell if the fragment changed since the last time it
+ * was indexed, such as when the locale changes.
+ */
+class SliceDataSource {
+
+    private static final String HASH_ALGORITHM = "SHA-256";
+    private static final String SEPARATOR = "\u0000";
+
+    final String mFragmentName;
+    final List<Integer> mXmlResIds = new ArrayList<>();
+    final List<List<Bundle>> mMetadataList = new ArrayList<>();
+
+    SliceDataSource(String fragmentName) {
+        mFragmentName = fragmentName;
+    }
+
+    void addMetadata(int xmlResId, List<Bundle> metadata) {
+        mXmlResIds.add(xmlResId);
+        mMetadataList.add(metadata);
+    }
+
+    String getHash() {
+        final MessageDigest digest = newDigest();
+        for (int i = 0; i < mXmlResIds.size(); i++) {
+            update(digest, String.valueOf(mXmlResIds.get(i)));
+            for (Bundle bundle : mMetadataList.get(i)) {
+                update(digest, bundle.getString(METADATA_KEY));
+                update(digest, bundle.getString(METADATA_CONTROLLER));
+                update(digest, bundle.getString(METADATA_PREF_TYPE));
+                update(digest, String.valueOf(bundle.getInt(METADATA_ICON)));
+                update(digest, bundle.getString(METADATA_USER_RESTRICTION));
+                update(digest, bundle.getString(METADATA_TITLE));
+                update(digest, bundle.getString(METADATA_SUMMARY));
+                update(digest, bundle.getString(METADATA_UNAVAILABLE_SLICE_SUBTITLE));
+            }
+        }
+        return toHexString(digest.digest());
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(HASH_ALGORITHM + " is not supported", e);
+        }
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        if (value != null) {
+            digest.update(value.getBytes(StandardCharsets.UTF_8));
+        }
+        digest.update(SEPARATOR.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String toHexString(byte[] bytes) {
+        final StringBuilder builder = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            builder.append(String.format("%02x", b));
+        }
+        return builder.toString();
+    }
+}
@@ -24,6 +24,9 @@ import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
 import android.os.Binder;
 import android.text.TextUtils;
+import android.util.ArrayMap;
+import android.util.ArraySet;
+import android.util.Log;
 import android.util.Pair;
 
 import androidx.slice.Slice;
@@ -32,13 +35,18 @@ import com.android.settings.overlay.FeatureFactory;
 import com.android.settings.slices.SlicesDatabaseHelper.IndexColumns;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Class used to map a {@link Uri} from {@link SettingsSliceProvider} to a Slice.
  */
 public class SlicesDatabaseAccessor {
 
+    private static final String TAG = "SlicesDatabaseAccessor";
+
     public static final String[] SELECT_COLUMNS_ALL = {
             IndexColumns.KEY,
             IndexColumns.TITLE,
@@ -54,6 +62,9 @@ public class SlicesDatabaseAccessor {
             IndexColumns.USER_RESTRICTION,
     };
 
+    // Stays below the default limit of SQLite on the number of bound arguments.
+    private static final int MAX_KEYS_PER_QUERY = 500;
+
     private final Context mContext;
     private final SlicesDatabaseHelper mHelper;
 
@@ -78,6 +89,62 @@ public class SlicesDatabaseAccessor {
         }
     }
 
+    /**
+     * Query the slices database once for all the {@param uris} and return a map from each
+     * {@link Uri} to its {@link SliceData}. Unlike {@link #getSliceDataFromUri(Uri)}, a
+     * {@link Uri} which is invalid or doesn't match exactly one row is left out of the map.
+     * Used when building several {@link Slice}s at once.
+     */
+    public Map<Uri, SliceData> getSliceDataFromUris(Collection<Uri> uris) {
+        final Map<Uri, SliceData> sliceDataMap = new ArrayMap<>();
+        final Map<String, List<Uri>> keyUris = new ArrayMap<>();
+        for (Uri uri : uris) {
+            final Pair<Boolean, String> pathData = SliceBuilderUtils.getPathData(uri);
+            if (pathData != null) {
+                keyUris.computeIfAbsent(pathData.second /* key */, k -> new ArrayList<>())
+                        .add(uri);
+            }
+        }
+        if (keyUris.isEmpty()) {
+            return sliceDataMap;
+        }
+
+        verifyIndexing();
+        final SQLiteDatabase database = mHelper.getReadableDatabase();
+        final List<String> keys = new ArrayList<>(keyUris.keySet());
+        final Set<String> matchedKeys = new ArraySet<>();
+        for (int start = 0; start < keys.size(); start += MAX_KEYS_PER_QUERY) {
+            final String[] selection = keys.subList(start,
+                    Math.min(keys.size(), start + MAX_KEYS_PER_QUERY)).toArray(new String[0]);
+            try (Cursor cursor = database.query(TABLE_SLICES_INDEX, SELECT_COLUMNS_ALL,
+                    buildKeysMatchWhereClause(selection.length), selection, null /* groupBy */,
+                    null /* having */, null /* orderBy */)) {
+                while (cursor.moveToNext()) {
+                    final String key = cursor.getString(cursor.getColumnIndex(IndexColumns.KEY));
+                    final boolean isDuplicate = !matchedKeys.add(key);
+                    for (Uri uri : keyUris.get(key)) {
+                        if (isDuplicate) {
+                            sliceDataMap.remove(uri);
+                        } else {
+                            putSliceData(sliceDataMap, cursor, uri);
+                        }
+                    }
+                }
+            }
+        }
+        return sliceDataMap;
+    }
+
+    private static void putSliceData(Map<Uri, SliceData> sliceDataMap, Cursor cursor, Uri uri) {
+        try {
+            sliceDataMap.put(uri, buildSliceData(cursor, uri,
+                    SliceBuilderUtils.getPathData(uri).first /* isIntentOnly */));
+        } catch (SliceData.InvalidSliceDataException e) {
+            // Leaves the invalid row out instead of failing the other uris.
+            Log.d(TAG, "Invalid slice data for uri: " + uri, e);
+        }
+    }
+
     /**
      * Query the slices database and return a {@link SliceData} object corresponding to the row
      * matching the {@param key}.
@@ -149,6 +216,15 @@ public class SlicesDatabaseAccessor {
                 .toString();
     }
 
+    private String buildKeysMatchWhereClause(int keyCount) {
+        final StringBuilder builder = new StringBuilder(IndexColumns.KEY)
+                .append(" IN (");
+        for (int i = 0; i < keyCount; i++) {
+            builder.append(i == 0 ? "?" : ", ?");
+        }
+        return builder.append(")").toString();
+    }
+
     private static SliceData buildSliceData(Cursor cursor, Uri uri, boolean isIntentOnly) {
         final String key = cursor.getString(cursor.getColumnIndex(IndexColumns.KEY));
         final String title = cursor.getString(cursor.getColumnIndex(IndexColumns.TITLE));
@@ -191,10 +267,24 @@ public class SlicesDatabaseAccessor {
                 .build();
     }
 
+    /**
+     * Makes sure the slices database can be read. If only the locale changed since the last
+     * indexing, the previous index is read while it's updated in the background. Otherwise it's
+     * indexed synchronously, since the indexed preference controllers may no longer exist.
+     */
     private void verifyIndexing() {
+        if (mHelper.isSliceDataIndexed()) {
+            return;
+        }
         final long uidToken = Binder.clearCallingIdentity();
         try {
-            FeatureFactory.getFeatureFactory().getSlicesFeatureProvider().indexSliceData(mContext);
+            final SlicesFeatureProvider provider =
+                    FeatureFactory.getFeatureFactory().getSlicesFeatureProvider();
+            if (mHelper.isBuildIndexed()) {
+                provider.indexSliceDataAsync(mContext);
+            } else {
+                provider.indexSliceData(mContext);
+            }
         } finally {
             Binder.restoreCallingIdentity(uidToken);
         }
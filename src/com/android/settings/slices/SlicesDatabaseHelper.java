@@ -36,10 +36,11 @@ public class SlicesDatabaseHelper extends SQLiteOpenHelper {
     private static final String DATABASE_NAME = "slices_index.db";
     private static final String SHARED_PREFS_TAG = "slices_shared_prefs";
 
-    private static final int DATABASE_VERSION = 10;
+    private static final int DATABASE_VERSION = 12;
 
     public interface Tables {
         String TABLE_SLICES_INDEX = "slices_index";
+        String TABLE_SLICES_INDEX_SOURCES = "slices_index_sources";
     }
 
     public interface IndexColumns {
@@ -115,6 +116,18 @@ public class SlicesDatabaseHelper extends SQLiteOpenHelper {
         String USER_RESTRICTION = "user_restriction";
     }
 
+    public interface SourceColumns {
+        /**
+         * Primary key of the table. Classname of the fragment which is the source of the slices.
+         */
+        String FRAGMENT = "fragment";
+
+        /**
+         * Hash of the XML metadata of the fragment, including the localized texts.
+         */
+        String HASH = "hash";
+    }
+
     private static final String CREATE_SLICES_TABLE =
             "CREATE VIRTUAL TABLE " + Tables.TABLE_SLICES_INDEX + " USING fts4"
                     + "("
@@ -148,6 +161,15 @@ public class SlicesDatabaseHelper extends SQLiteOpenHelper {
                     + " INTEGER DEFAULT 0 "
                     + ");";
 
+    private static final String CREATE_SOURCES_TABLE =
+            "CREATE TABLE " + Tables.TABLE_SLICES_INDEX_SOURCES
+                    + "("
+                    + SourceColumns.FRAGMENT
+                    + " TEXT PRIMARY KEY, "
+                    + SourceColumns.HASH
+                    + " TEXT"
+                    + ");";
+
     private final Context mContext;
 
     private static SlicesDatabaseHelper sSingleton;
@@ -162,6 +184,9 @@ public class SlicesDatabaseHelper extends SQLiteOpenHelper {
     private SlicesDatabaseHelper(Context context) {
         super(context, DATABASE_NAME, null /* CursorFactor */, DATABASE_VERSION);
         mContext = context;
+        // Slices are bound concurrently by several apps. Write-ahead logging gives the readers a
+        // pool of connections, which keep reading the last committed index while it's rebuilt.
+        setWriteAheadLoggingEnabled(true);
     }
 
     @Override
@@ -196,8 +221,13 @@ public class SlicesDatabaseHelper extends SQLiteOpenHelper {
      * a full index of the TABLE_SLICES_INDEX.
      */
     public void setIndexedState() {
-        setBuildIndexed();
-        setLocaleIndexed();
+        // Clears the previous locale, since the texts of the slices are replaced by the new one.
+        mContext.getSharedPreferences(SHARED_PREFS_TAG, Context.MODE_PRIVATE)
+                .edit()
+                .clear()
+                .putBoolean(getBuildTag(), true /* value */)
+                .putBoolean(Locale.getDefault().toString(), true /* value */)
+                .apply();
     }
 
     /**
@@ -209,33 +239,25 @@ public class SlicesDatabaseHelper extends SQLiteOpenHelper {
         return isBuildIndexed() && isLocaleIndexed();
     }
 
+    /**
+     * Indicates if the slice data was indexed on the current build, so only the locale changed
+     * if {@link #isSliceDataIndexed()} returns {@code false}.
+     */
+    boolean isBuildIndexed() {
+        return mContext.getSharedPreferences(SHARED_PREFS_TAG,
+                Context.MODE_PRIVATE)
+                .getBoolean(getBuildTag(), false /* default */);
+    }
+
     private void createDatabases(SQLiteDatabase db) {
         db.execSQL(CREATE_SLICES_TABLE);
+        db.execSQL(CREATE_SOURCES_TABLE);
         Log.d(TAG, "Created databases");
     }
 
     private void dropTables(SQLiteDatabase db) {
         db.execSQL("DROP TABLE IF EXISTS " + Tables.TABLE_SLICES_INDEX);
-    }
-
-    private void setBuildIndexed() {
-        mContext.getSharedPreferences(SHARED_PREFS_TAG, 0 /* mode */)
-                .edit()
-                .putBoolean(getBuildTag(), true /* value */)
-                .apply();
-    }
-
-    private void setLocaleIndexed() {
-        mContext.getSharedPreferences(SHARED_PREFS_TAG, Context.MODE_PRIVATE)
-                .edit()
-                .putBoolean(Locale.getDefault().toString(), true /* value */)
-                .apply();
-    }
-
-    private boolean isBuildIndexed() {
-        return mContext.getSharedPreferences(SHARED_PREFS_TAG,
-                Context.MODE_PRIVATE)
-                .getBoolean(getBuildTag(), false /* default */);
+        db.execSQL("DROP TABLE IF EXISTS " + Tables.TABLE_SLICES_INDEX_SOURCES);
     }
 
     private boolean isLocaleIndexed() {
@@ -85,7 +85,7 @@ public class SlicesFeatureProviderImpl implements SlicesFeatureProvider {
         return sliceable;
     }
 
-    private SlicesIndexer getSliceIndexer(Context context) {
+    private synchronized SlicesIndexer getSliceIndexer(Context context) {
         if (mSlicesIndexer == null) {
             mSlicesIndexer = new SlicesIndexer(context.getApplicationContext());
         }
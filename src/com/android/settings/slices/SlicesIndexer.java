@@ -18,18 +18,25 @@ package com.android.settings.slices;
 
 import android.content.ContentValues;
 import android.content.Context;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 import android.util.Log;
 
 import androidx.annotation.VisibleForTesting;
 
+import com.android.settings.accessibility.AccessibilitySlicePreferenceController;
 import com.android.settings.core.BasePreferenceController;
 import com.android.settings.dashboard.DashboardFragment;
 import com.android.settings.overlay.FeatureFactory;
 import com.android.settings.slices.SlicesDatabaseHelper.IndexColumns;
+import com.android.settings.slices.SlicesDatabaseHelper.SourceColumns;
 import com.android.settings.slices.SlicesDatabaseHelper.Tables;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Manages the conversion of {@link DashboardFragment} and {@link BasePreferenceController} to
@@ -39,6 +46,44 @@ class SlicesIndexer implements Runnable {
 
     private static final String TAG = "SlicesIndexer";
 
+    private static final String ACCESSIBILITY_CONTROLLER =
+            AccessibilitySlicePreferenceController.class.getName();
+
+    private static final String INSERT_SLICE_DATA =
+            "INSERT OR REPLACE INTO " + Tables.TABLE_SLICES_INDEX
+                    + "("
+                    + IndexColumns.KEY
+                    + ", "
+                    + IndexColumns.SLICE_URI
+                    + ", "
+                    + IndexColumns.TITLE
+                    + ", "
+                    + IndexColumns.SUMMARY
+                    + ", "
+                    + IndexColumns.SCREENTITLE
+                    + ", "
+                    + IndexColumns.KEYWORDS
+                    + ", "
+                    + IndexColumns.ICON_RESOURCE
+                    + ", "
+                    + IndexColumns.FRAGMENT
+                    + ", "
+                    + IndexColumns.CONTROLLER
+                    + ", "
+                    + IndexColumns.SLICE_TYPE
+                    + ", "
+                    + IndexColumns.UNAVAILABLE_SLICE_SUBTITLE
+                    + ", "
+                    + IndexColumns.PUBLIC_SLICE
+                    + ", "
+                    + IndexColumns.HIGHLIGHT_MENU_RESOURCE
+                    + ", "
+                    + IndexColumns.USER_RESTRICTION
+                    + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    // Shared by all indexers, so the database is never indexed twice concurrently.
+    private static final ReentrantLock sIndexingLock = new ReentrantLock();
+
     private Context mContext;
 
     private SlicesDatabaseHelper mHelper;
@@ -49,18 +94,44 @@ class SlicesIndexer implements Runnable {
     }
 
     /**
-     * Asynchronously index slice data from {@link #indexSliceData()}.
+     * Asynchronously index slice data from {@link #indexSliceData()}. Returns immediately if the
+     * slice data is being indexed on another thread.
      */
     @Override
     public void run() {
-        indexSliceData();
+        if (!sIndexingLock.tryLock()) {
+            Log.d(TAG, "Slices already being indexed - returning.");
+            return;
+        }
+        try {
+            indexSliceDataLocked();
+        } finally {
+            sIndexingLock.unlock();
+        }
     }
 
     /**
      * Synchronously takes data obtained from {@link SliceDataConverter} and indexes it into a
-     * SQLite database
+     * SQLite database.
+     *
+     * The database is fully rebuilt on a new build, since the preference controllers may have
+     * changed. Otherwise only the fragments whose XML metadata changed are indexed again, such as
+     * when the locale changes. The slices of an unchanged fragment are kept, so the availability
+     * of its preference controllers is evaluated again on the next build or metadata change.
+     *
+     * The new index is written in one transaction, so the readers keep reading the previous index
+     * until it's committed.
      */
     protected void indexSliceData() {
+        sIndexingLock.lock();
+        try {
+            indexSliceDataLocked();
+        } finally {
+            sIndexingLock.unlock();
+        }
+    }
+
+    private void indexSliceDataLocked() {
         if (mHelper.isSliceDataIndexed()) {
             Log.d(TAG, "Slices already indexed - returning.");
             return;
@@ -71,11 +142,16 @@ class SlicesIndexer implements Runnable {
         long startTime = System.currentTimeMillis();
         database.beginTransaction();
         try {
-            mHelper.reconstruct(database);
-            List<SliceData> indexData = getSliceData();
-            insertSliceData(database, indexData);
-
-            mHelper.setIndexedState();
+            if (mHelper.isBuildIndexed()) {
+                updateSliceData(database);
+            } else {
+                mHelper.reconstruct(database);
+                for (SliceDataSource source : getSliceDataSources()) {
+                    insertSliceData(database, getSliceData(source));
+                    insertSourceHash(database, source, source.getHash());
+                }
+                insertSliceData(database, getAccessibilitySliceData());
+            }
 
             // TODO (b/71503044) Log indexing time.
             Log.d(TAG,
@@ -84,43 +160,139 @@ class SlicesIndexer implements Runnable {
         } finally {
             database.endTransaction();
         }
+        // Only marked as indexed once committed, so a failed indexing is retried.
+        mHelper.setIndexedState();
+        // The cached slice data may be stale once the new index is committed.
+        SliceDataCache.getInstance().invalidate();
     }
 
     @VisibleForTesting
-    List<SliceData> getSliceData() {
+    List<SliceDataSource> getSliceDataSources() {
+        return getSliceDataConverter().getSliceDataSources();
+    }
+
+    @VisibleForTesting
+    List<SliceData> getSliceData(SliceDataSource source) {
+        return getSliceDataConverter().getSliceData(source);
+    }
+
+    @VisibleForTesting
+    List<SliceData> getAccessibilitySliceData() {
+        return getSliceDataConverter().getAccessibilitySliceData();
+    }
+
+    private SliceDataConverter getSliceDataConverter() {
         return FeatureFactory.getFeatureFactory()
                 .getSlicesFeatureProvider()
-                .getSliceDataConverter(mContext)
-                .getSliceData();
+                .getSliceDataConverter(mContext);
     }
 
+    /**
+     * Indexes the delta between the XML metadata and the indexed data:
+     * - A new fragment, or a fragment whose metadata hash changed, is converted again through its
+     * preference controllers and its slices are replaced, so the availability, slice type and
+     * public state of the slices are evaluated again along with the new texts.
+     * - The slices of a fragment which is no longer indexable are deleted.
+     * - The accessibility slices are always indexed again.
+     */
+    private void updateSliceData(SQLiteDatabase database) {
+        final Map<String, String> indexedHashes = getSourceHashes(database);
+        int reindexedCount = 0;
+
+        for (SliceDataSource source : getSliceDataSources()) {
+            final String hash = source.getHash();
+            if (hash.equals(indexedHashes.remove(source.mFragmentName))) {
+                continue;
+            }
+            deleteSliceData(database, source.mFragmentName);
+            insertSliceData(database, getSliceData(source));
+            insertSourceHash(database, source, hash);
+            reindexedCount++;
+        }
+
+        for (String staleFragment : indexedHashes.keySet()) {
+            deleteSliceData(database, staleFragment);
+            database.delete(Tables.TABLE_SLICES_INDEX_SOURCES, SourceColumns.FRAGMENT + " = ?",
+                    new String[]{staleFragment});
+        }
+
+        database.delete(Tables.TABLE_SLICES_INDEX, IndexColumns.CONTROLLER + " = ?",
+                new String[]{ACCESSIBILITY_CONTROLLER});
+        insertSliceData(database, getAccessibilitySliceData());
+
+        Log.d(TAG, "Re-indexed " + reindexedCount + ", deleted " + indexedHashes.size()
+                + " fragments");
+    }
+
+    private Map<String, String> getSourceHashes(SQLiteDatabase database) {
+        final Map<String, String> hashes = new HashMap<>();
+        try (Cursor cursor = database.query(Tables.TABLE_SLICES_INDEX_SOURCES,
+                new String[]{SourceColumns.FRAGMENT, SourceColumns.HASH},
+                null /* selection */, null /* selectionArgs */, null /* groupBy */,
+                null /* having */, null /* orderBy */)) {
+            while (cursor.moveToNext()) {
+                hashes.put(cursor.getString(0), cursor.getString(1));
+            }
+        }
+        return hashes;
+    }
+
+    private void deleteSliceData(SQLiteDatabase database, String fragmentName) {
+        // The accessibility slices share the fragment of AccessibilitySettings.
+        database.delete(Tables.TABLE_SLICES_INDEX,
+                IndexColumns.FRAGMENT + " = ? AND " + IndexColumns.CONTROLLER + " != ?",
+                new String[]{fragmentName, ACCESSIBILITY_CONTROLLER});
+    }
+
+    private void insertSourceHash(SQLiteDatabase database, SliceDataSource source, String hash) {
+        final ContentValues values = new ContentValues();
+        values.put(SourceColumns.FRAGMENT, source.mFragmentName);
+        values.put(SourceColumns.HASH, hash);
+        database.replaceOrThrow(Tables.TABLE_SLICES_INDEX_SOURCES, null /* nullColumnHack */,
+                values);
+    }
+
+    /**
+     * Inserts the slice data with one compiled statement, which is bound again for every row
+     * within the transaction of the caller.
+     */
     @VisibleForTesting
     void insertSliceData(SQLiteDatabase database, List<SliceData> indexData) {
-        ContentValues values;
-
-        for (SliceData dataRow : indexData) {
-            values = new ContentValues();
-            values.put(IndexColumns.KEY, dataRow.getKey());
-            values.put(IndexColumns.SLICE_URI, dataRow.getUri().toString());
-            values.put(IndexColumns.TITLE, dataRow.getTitle());
-            values.put(IndexColumns.SUMMARY, dataRow.getSummary());
-            final CharSequence screenTitle = dataRow.getScreenTitle();
-            if (screenTitle != null) {
-                values.put(IndexColumns.SCREENTITLE, screenTitle.toString());
+        if (indexData.isEmpty()) {
+            return;
+        }
+
+        try (SQLiteStatement statement = database.compileStatement(INSERT_SLICE_DATA)) {
+            for (SliceData dataRow : indexData) {
+                int index = 1;
+                bindStringOrNull(statement, index++, dataRow.getKey());
+                bindStringOrNull(statement, index++, dataRow.getUri().toString());
+                bindStringOrNull(statement, index++, dataRow.getTitle());
+                bindStringOrNull(statement, index++, dataRow.getSummary());
+                final CharSequence screenTitle = dataRow.getScreenTitle();
+                bindStringOrNull(statement, index++,
+                        screenTitle == null ? null : screenTitle.toString());
+                bindStringOrNull(statement, index++, dataRow.getKeywords());
+                statement.bindLong(index++, dataRow.getIconResource());
+                bindStringOrNull(statement, index++, dataRow.getFragmentClassName());
+                bindStringOrNull(statement, index++, dataRow.getPreferenceController());
+                statement.bindLong(index++, dataRow.getSliceType());
+                bindStringOrNull(statement, index++, dataRow.getUnavailableSliceSubtitle());
+                statement.bindLong(index++, dataRow.isPublicSlice() ? 1 : 0);
+                statement.bindLong(index++, dataRow.getHighlightMenuRes());
+                bindStringOrNull(statement, index, dataRow.getUserRestriction());
+
+                statement.executeInsert();
+                statement.clearBindings();
             }
-            values.put(IndexColumns.KEYWORDS, dataRow.getKeywords());
-            values.put(IndexColumns.ICON_RESOURCE, dataRow.getIconResource());
-            values.put(IndexColumns.FRAGMENT, dataRow.getFragmentClassName());
-            values.put(IndexColumns.CONTROLLER, dataRow.getPreferenceController());
-            values.put(IndexColumns.SLICE_TYPE, dataRow.getSliceType());
-            values.put(IndexColumns.UNAVAILABLE_SLICE_SUBTITLE,
-                    dataRow.getUnavailableSliceSubtitle());
-            values.put(IndexColumns.PUBLIC_SLICE, dataRow.isPublicSlice());
-            values.put(IndexColumns.HIGHLIGHT_MENU_RESOURCE, dataRow.getHighlightMenuRes());
-            values.put(IndexColumns.USER_RESTRICTION, dataRow.getUserRestriction());
-
-            database.replaceOrThrow(Tables.TABLE_SLICES_INDEX, null /* nullColumnHack */,
-                    values);
+        }
+    }
+
+    private static void bindStringOrNull(SQLiteStatement statement, int index, String value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, value);
         }
     }
 }
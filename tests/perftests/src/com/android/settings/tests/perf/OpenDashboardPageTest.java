@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.settings.tests.perf;
+
+import static androidx.test.platform.app.InstrumentationRegistry.getInstrumentation;
+
+import static junit.framework.TestCase.fail;
+
+import android.os.Bundle;
+
+import androidx.test.runner.AndroidJUnit4;
+import androidx.test.uiautomator.UiDevice;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Measures opening the dashboard pages with many preference controllers in a warm process, which
+ * is dominated by creating and initializing the controllers of the page in onAttach.
+ */
+@RunWith(AndroidJUnit4.class)
+public class OpenDashboardPageTest {
+    private static final String TAG = "OpenDashboardPageTest";
+    private static final int TIME_OUT = 5000;
+    private static final int WARM_UP_TIME = 2;
+    private static final int TEST_TIME = 20;
+    private static final Pattern PATTERN = Pattern.compile("TotalTime:\\s([0-9]+)");
+    // FLAG_ACTIVITY_NEW_TASK | FLAG_ACTIVITY_CLEAR_TASK, to create the fragment again each time.
+    private static final String NEW_TASK_FLAGS = "0x10008000";
+
+    private static final Map<String, String> PAGES = new LinkedHashMap<>();
+
+    static {
+        // NetworkDashboardFragment
+        PAGES.put("NetworkDashboard", "-a android.settings.WIRELESS_SETTINGS");
+        // AppInfoDashboardFragment
+        PAGES.put("AppInfoDashboard", "-a android.settings.APPLICATION_DETAILS_SETTINGS"
+                + " -d package:com.android.settings");
+    }
+
+    private UiDevice mDevice;
+    private Map<String, List<Integer>> mResult;
+
+    @Before
+    public void setUp() throws Exception {
+        mDevice = UiDevice.getInstance(getInstrumentation());
+        mResult = new LinkedHashMap<>();
+        mDevice.executeShellCommand("am force-stop com.android.settings");
+        mDevice.pressHome();
+        mDevice.waitForIdle(TIME_OUT);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        final Bundle bundle = new Bundle();
+        for (Map.Entry<String, List<Integer>> entry : mResult.entrySet()) {
+            final List<Integer> times = entry.getValue();
+            Collections.sort(times);
+            bundle.putString(String.format("%s_%s_min", TAG, entry.getKey()),
+                    String.valueOf(times.get(0)));
+            bundle.putString(String.format("%s_%s_median", TAG, entry.getKey()),
+                    String.valueOf(times.get(times.size() / 2)));
+            bundle.putString(String.format("%s_%s_max", TAG, entry.getKey()),
+                    String.valueOf(times.get(times.size() - 1)));
+            bundle.putString(String.format("%s_%s_all_results", TAG, entry.getKey()),
+                    times.toString());
+        }
+        getInstrumentation().sendStatus(0, bundle);
+        mDevice.executeShellCommand("am force-stop com.android.settings");
+    }
+
+    @Test
+    public void openDashboardPagePerformanceTest() throws Exception {
+        for (Map.Entry<String, String> page : PAGES.entrySet()) {
+            final List<Integer> times = new ArrayList<>();
+            for (int i = 0; i < WARM_UP_TIME + TEST_TIME; i++) {
+                final int time = openPage(page.getKey(), page.getValue());
+                if (i >= WARM_UP_TIME) {
+                    times.add(time);
+                }
+            }
+            mResult.put(page.getKey(), times);
+        }
+    }
+
+    /** @return the time to open the page, as reported by the activity manager */
+    private int openPage(String name, String intentArgs) throws Exception {
+        final String result = mDevice.executeShellCommand(
+                "am start -W -f " + NEW_TASK_FLAGS + " " + intentArgs);
+        mDevice.waitForIdle(TIME_OUT);
+        mDevice.pressHome();
+        mDevice.waitForIdle(TIME_OUT);
+
+        final Matcher matcher = PATTERN.matcher(result);
+        if (!matcher.find()) {
+            fail(String.format("Not found %s.\n %s", name, result));
+        }
+        return Integer.parseInt(matcher.group(1));
+    }
+}
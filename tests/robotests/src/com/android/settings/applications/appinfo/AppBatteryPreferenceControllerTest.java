@@ -20,6 +20,7 @@ import static com.google.common.truth.Truth.assertThat;
 
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -40,6 +41,7 @@ import androidx.preference.PreferenceScreen;
 import com.android.settings.SettingsActivity;
 import com.android.settings.fuelgauge.BatteryUtils;
 import com.android.settings.fuelgauge.batteryusage.BatteryDiffEntry;
+import com.android.settings.fuelgauge.batteryusage.BatteryUsageStatsCache;
 import com.android.settingslib.applications.ApplicationsState;
 
 import org.junit.Before;
@@ -222,4 +224,38 @@ public class AppBatteryPreferenceControllerTest {
 
         verify(mLoaderManager).destroyLoader(AppInfoDashboardFragment.LOADER_BATTERY_USAGE_STATS);
     }
+
+    @Test
+    public void onLoadFinished_keepsSnapshotOpen() throws Exception {
+        final AppBatteryPreferenceController controller = createController();
+
+        controller.mBatteryUsageStatsLoaderCallbacks.onLoadFinished(/* loader */ null,
+                BatteryUsageStatsCache.Snapshot.createUncached(mBatteryUsageStats));
+
+        assertThat(controller.mBatteryUsageStats).isSameInstanceAs(mBatteryUsageStats);
+        verify(mBatteryUsageStats, never()).close();
+    }
+
+    @Test
+    public void onPause_clearsStatsAndLeavesSnapshotToLoader() throws Exception {
+        doReturn(mLoaderManager).when(mFragment).getLoaderManager();
+        final AppBatteryPreferenceController controller = createController();
+        controller.mBatteryUsageStatsLoaderCallbacks.onLoadFinished(/* loader */ null,
+                BatteryUsageStatsCache.Snapshot.createUncached(mBatteryUsageStats));
+
+        controller.onPause();
+
+        assertThat(controller.mBatteryUsageStats).isNull();
+        verify(mBatteryUsageStats, never()).close();
+    }
+
+    private AppBatteryPreferenceController createController() {
+        // Not a spy, the loader callbacks update the fields of the instance which created them.
+        return new AppBatteryPreferenceController(
+                RuntimeEnvironment.application,
+                mFragment,
+                "package1" /* packageName */,
+                0 /* uId */,
+                null /* lifecycle */);
+    }
 }
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.core;
+
+import static androidx.test.core.app.ApplicationProvider.getApplicationContext;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth.assertWithMessage;
+
+import android.content.Context;
+import android.os.Bundle;
+
+import com.android.settings.R;
+import com.android.settings.core.PreferenceXmlParserUtils.MetadataFlag;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Checks the metadata precompiled by PreferenceMetadataGenerator from res/xml against the
+ * metadata parsed from the same XMLs.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class PrecompiledPreferenceMetadataTest {
+
+    private static final int ALL_FLAGS = MetadataFlag.FLAG_INCLUDE_PREF_SCREEN
+            | MetadataFlag.FLAG_NEED_KEY
+            | MetadataFlag.FLAG_NEED_PREF_TYPE
+            | MetadataFlag.FLAG_NEED_PREF_CONTROLLER
+            | MetadataFlag.FLAG_NEED_PREF_TITLE
+            | MetadataFlag.FLAG_NEED_PREF_SUMMARY
+            | MetadataFlag.FLAG_NEED_PREF_ICON
+            | MetadataFlag.FLAG_NEED_KEYWORDS
+            | MetadataFlag.FLAG_NEED_SEARCHABLE
+            | MetadataFlag.FLAG_NEED_PREF_APPEND
+            | MetadataFlag.FLAG_UNAVAILABLE_SLICE_SUBTITLE
+            | MetadataFlag.FLAG_FOR_WORK
+            | MetadataFlag.FLAG_NEED_HIGHLIGHTABLE_MENU_KEY
+            | MetadataFlag.FLAG_NEED_USER_RESTRICTION;
+
+    private Context mContext;
+
+    @Before
+    public void setUp() {
+        mContext = getApplicationContext();
+        // Robotests disable the precompiled metadata, so the XMLs are always parsed.
+        PreferenceMetadataIndex.setInstance(new PreferenceMetadataIndex(null /* buffer */));
+    }
+
+    @After
+    public void tearDown() {
+        PreferenceMetadataIndex.setInstance(null);
+    }
+
+    @Test
+    public void extractMetadata_precompiledXmls_matchesParsedXmls() throws Exception {
+        final PreferenceMetadataIndex index = new PreferenceMetadataIndex(loadPrecompiled());
+        final List<String> precompiledScreens = new ArrayList<>();
+
+        for (Field field : R.xml.class.getFields()) {
+            final int xmlResId = field.getInt(null /* obj */);
+            final List<Bundle> precompiled = index.extractMetadata(mContext, xmlResId, ALL_FLAGS);
+            if (precompiled == null) {
+                // Skipped by the generator, or not a preference screen.
+                continue;
+            }
+            final List<Bundle> parsed =
+                    PreferenceXmlParserUtils.extractMetadata(mContext, xmlResId, ALL_FLAGS);
+
+            assertWithMessage(field.getName())
+                    .that(toMaps(precompiled))
+                    .containsExactlyElementsIn(toMaps(parsed))
+                    .inOrder();
+            precompiledScreens.add(field.getName());
+        }
+
+        assertThat(precompiledScreens).isNotEmpty();
+    }
+
+    private static ByteBuffer loadPrecompiled() throws Exception {
+        try (InputStream in = PreferenceMetadataIndex.class.getClassLoader()
+                .getResourceAsStream(PreferenceMetadataIndex.RESOURCE_NAME)) {
+            assertWithMessage(PreferenceMetadataIndex.RESOURCE_NAME).that(in).isNotNull();
+            return ByteBuffer.wrap(in.readAllBytes());
+        }
+    }
+
+    private static List<Map<String, Object>> toMaps(List<Bundle> metadata) {
+        final List<Map<String, Object>> maps = new ArrayList<>(metadata.size());
+        for (Bundle bundle : metadata) {
+            final Map<String, Object> map = new HashMap<>();
+            for (String key : bundle.keySet()) {
+                map.put(key, bundle.get(key));
+            }
+            maps.add(map);
+        }
+        return maps;
+    }
+}
@@ -26,6 +26,7 @@ import com.android.settings.R;
 import com.android.settings.slices.FakePreferenceController;
 import com.android.settingslib.core.AbstractPreferenceController;
 
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -48,6 +49,11 @@ public class PreferenceControllerListHelperTest {
         mPreferenceManager = new PreferenceManager(mContext);
     }
 
+    @After
+    public void tearDown() {
+        PreferenceControllerRegistry.setFactory(null);
+    }
+
     @Test
     @Config(qualifiers = "mcc999")
     public void getControllers_shouldReturnAList() {
@@ -72,6 +78,43 @@ public class PreferenceControllerListHelperTest {
         assertThat(controllers.get(0)).isInstanceOf(FakePreferenceController.class);
     }
 
+    @Test
+    @Config(qualifiers = "mcc999")
+    public void getControllers_generatedFactory_shouldCreateFromFactory() {
+        final FakePreferenceController generated = new FakePreferenceController(mContext, "key");
+        PreferenceControllerRegistry.setFactory(new TestControllerFactory(generated));
+
+        final List<BasePreferenceController> controllers =
+                PreferenceControllerListHelper.getPreferenceControllersFromXml(mContext,
+                        R.xml.location_settings);
+
+        assertThat(controllers).containsExactly(generated);
+    }
+
+    @Test
+    @Config(qualifiers = "mcc999")
+    public void getControllers_notGenerated_shouldFallBackToReflection() {
+        PreferenceControllerRegistry.setFactory(new TestControllerFactory(null));
+
+        final List<BasePreferenceController> controllers =
+                PreferenceControllerListHelper.getPreferenceControllersFromXml(mContext,
+                        R.xml.location_settings);
+
+        assertThat(controllers).isNotEmpty();
+        for (BasePreferenceController controller : controllers) {
+            assertThat(controller).isInstanceOf(FakePreferenceController.class);
+        }
+    }
+
+    @Test
+    public void getFactory_notGenerated_shouldReturnEmptyFactory() {
+        final PreferenceControllerFactory factory = PreferenceControllerRegistry.getFactory();
+
+        assertThat(factory.create(mContext, FakePreferenceController.class.getName())).isNull();
+        assertThat(factory.create(mContext, FakePreferenceController.class.getName(), "key"))
+                .isNull();
+    }
+
     @Test
     @Config(qualifiers = "mcc999")
     public void areAllPreferencesUnavailable_allAvailable() {
@@ -151,4 +194,26 @@ public class PreferenceControllerListHelperTest {
                 .filterControllers(controllers, filter);
         assertThat(result).isEmpty();
     }
+
+    /** Creates the given controller for the keyed FakePreferenceController, like the generator. */
+    private static class TestControllerFactory implements PreferenceControllerFactory {
+
+        private final BasePreferenceController mController;
+
+        TestControllerFactory(BasePreferenceController controller) {
+            mController = controller;
+        }
+
+        @Override
+        public BasePreferenceController create(Context context, String controllerName) {
+            return null;
+        }
+
+        @Override
+        public BasePreferenceController create(Context context, String controllerName,
+                String key) {
+            return FakePreferenceController.class.getName().equals(controllerName)
+                    ? mController : null;
+        }
+    }
 }
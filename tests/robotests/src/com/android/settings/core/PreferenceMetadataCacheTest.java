@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.core;
+
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_KEY;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_TITLE;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.junit.Assert.assertThrows;
+
+import android.content.Context;
+import android.os.Bundle;
+
+import com.android.settings.R;
+import com.android.settings.core.PreferenceXmlParserUtils.MetadataFlag;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+public class PreferenceMetadataCacheTest {
+
+    private static final int FLAGS = MetadataFlag.FLAG_INCLUDE_PREF_SCREEN
+            | MetadataFlag.FLAG_NEED_KEY | MetadataFlag.FLAG_NEED_PREF_TITLE
+            | MetadataFlag.FLAG_NEED_PREF_CONTROLLER;
+
+    private Context mContext;
+    private PreferenceMetadataCache mCache;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        mCache = PreferenceMetadataCache.getInstance(mContext);
+    }
+
+    @Test
+    public void getInstance_sameApplication_returnsSameCache() {
+        assertThat(PreferenceMetadataCache.getInstance(mContext)).isSameInstanceAs(mCache);
+    }
+
+    @Test
+    public void extractMetadata_secondCall_hitsCache() throws Exception {
+        final List<Bundle> parsed = PreferenceXmlParserUtils.extractMetadata(mContext,
+                R.xml.display_settings, FLAGS);
+        final List<Bundle> cached = PreferenceXmlParserUtils.extractMetadata(mContext,
+                R.xml.display_settings, FLAGS);
+
+        assertThat(mCache.getMissCount()).isEqualTo(1);
+        assertThat(mCache.getHitCount()).isEqualTo(1);
+        assertThat(cached).hasSize(parsed.size());
+        for (int i = 0; i < parsed.size(); i++) {
+            assertThat(cached.get(i).keySet()).isEqualTo(parsed.get(i).keySet());
+            for (String key : parsed.get(i).keySet()) {
+                assertThat(cached.get(i).get(key)).isEqualTo(parsed.get(i).get(key));
+            }
+        }
+    }
+
+    @Test
+    public void extractMetadata_cached_returnsNewBundles() throws Exception {
+        final List<Bundle> first = PreferenceXmlParserUtils.extractMetadata(mContext,
+                R.xml.display_settings, FLAGS);
+        final String key = first.get(0).getString(METADATA_KEY);
+        first.get(0).putString(METADATA_KEY, "modified");
+
+        final List<Bundle> second = PreferenceXmlParserUtils.extractMetadata(mContext,
+                R.xml.display_settings, FLAGS);
+
+        assertThat(second.get(0).getString(METADATA_KEY)).isEqualTo(key);
+        assertThat(second.get(0)).isNotSameInstanceAs(first.get(0));
+    }
+
+    @Test
+    public void getMetadata_returnsSharedImmutableRecords() throws Exception {
+        final List<PreferenceMetadata> first = PreferenceXmlParserUtils.getMetadata(mContext,
+                R.xml.display_settings, FLAGS);
+        final List<PreferenceMetadata> second = PreferenceXmlParserUtils.getMetadata(mContext,
+                R.xml.display_settings, FLAGS);
+
+        assertThat(second).isSameInstanceAs(first);
+        assertThrows(UnsupportedOperationException.class, () -> first.remove(0));
+    }
+
+    @Test
+    public void getMetadata_differentFlags_missesCache() throws Exception {
+        PreferenceXmlParserUtils.getMetadata(mContext, R.xml.display_settings, FLAGS);
+        final List<PreferenceMetadata> metadata = PreferenceXmlParserUtils.getMetadata(mContext,
+                R.xml.display_settings, MetadataFlag.FLAG_NEED_KEY);
+
+        assertThat(mCache.getMissCount()).isEqualTo(2);
+        assertThat(metadata.get(0).toBundle().containsKey(METADATA_TITLE)).isFalse();
+    }
+
+    @Test
+    public void getMetadata_localeChanged_missesCache() throws Exception {
+        PreferenceXmlParserUtils.getMetadata(mContext, R.xml.display_settings, FLAGS);
+
+        RuntimeEnvironment.setQualifiers("fr");
+        PreferenceXmlParserUtils.getMetadata(mContext, R.xml.display_settings, FLAGS);
+
+        assertThat(mCache.getMissCount()).isEqualTo(2);
+        assertThat(mCache.getHitCount()).isEqualTo(0);
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.core;
+
+import static androidx.test.core.app.ApplicationProvider.getApplicationContext;
+
+import static com.android.settings.core.PreferenceMetadataFormat.ATTR_CONTROLLER;
+import static com.android.settings.core.PreferenceMetadataFormat.ATTR_ICON;
+import static com.android.settings.core.PreferenceMetadataFormat.ATTR_KEY;
+import static com.android.settings.core.PreferenceMetadataFormat.ATTR_KEYWORDS;
+import static com.android.settings.core.PreferenceMetadataFormat.ATTR_SEARCHABLE;
+import static com.android.settings.core.PreferenceMetadataFormat.ATTR_TITLE;
+import static com.android.settings.core.PreferenceMetadataFormat.VALUE_LITERAL;
+import static com.android.settings.core.PreferenceMetadataFormat.VALUE_REFERENCE;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_CONTROLLER;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_ICON;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_KEY;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_KEYWORDS;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_PREF_TYPE;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_SEARCHABLE;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_SUMMARY;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_TITLE;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Context;
+import android.os.Bundle;
+
+import com.android.settings.R;
+import com.android.settings.core.PreferenceMetadataFormat.Element;
+import com.android.settings.core.PreferenceXmlParserUtils.MetadataFlag;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+public class PreferenceMetadataIndexTest {
+
+    private static final String SCREEN_NAME = "display_settings";
+    private static final String CONTROLLER = "com.android.settings.FakeController";
+    private static final int ALL_FLAGS = MetadataFlag.FLAG_INCLUDE_PREF_SCREEN
+            | MetadataFlag.FLAG_NEED_KEY
+            | MetadataFlag.FLAG_NEED_PREF_TYPE
+            | MetadataFlag.FLAG_NEED_PREF_CONTROLLER
+            | MetadataFlag.FLAG_NEED_PREF_TITLE
+            | MetadataFlag.FLAG_NEED_PREF_SUMMARY
+            | MetadataFlag.FLAG_NEED_PREF_ICON
+            | MetadataFlag.FLAG_NEED_KEYWORDS
+            | MetadataFlag.FLAG_NEED_SEARCHABLE;
+
+    private Context mContext;
+
+    @Before
+    public void setUp() {
+        mContext = getApplicationContext();
+    }
+
+    @After
+    public void tearDown() {
+        PreferenceMetadataIndex.setInstance(null);
+    }
+
+    @Test
+    public void extractMetadata_resolvesReferences() throws Exception {
+        final PreferenceMetadataIndex index = createIndex(SCREEN_NAME, "string/brightness");
+
+        final List<Bundle> metadata = index.extractMetadata(mContext, R.xml.display_settings,
+                ALL_FLAGS);
+
+        assertThat(metadata).hasSize(2);
+        final Bundle screen = metadata.get(0);
+        assertThat(screen.getString(METADATA_PREF_TYPE))
+                .isEqualTo(PreferenceXmlParserUtils.PREF_SCREEN_TAG);
+        assertThat(screen.getString(METADATA_TITLE))
+                .isEqualTo(mContext.getString(R.string.display_settings));
+        assertThat(screen.getString(METADATA_KEYWORDS))
+                .isEqualTo(mContext.getString(R.string.keywords_display));
+        final Bundle preference = metadata.get(1);
+        assertThat(preference.getString(METADATA_KEY)).isEqualTo("brightness");
+        assertThat(preference.getString(METADATA_TITLE))
+                .isEqualTo(mContext.getString(R.string.brightness));
+        assertThat(preference.getString(METADATA_SUMMARY)).isNull();
+        assertThat(preference.getString(METADATA_CONTROLLER)).isEqualTo(CONTROLLER);
+        assertThat(preference.getInt(METADATA_ICON)).isEqualTo(R.drawable.ic_settings_display);
+        assertThat(preference.getBoolean(METADATA_SEARCHABLE)).isFalse();
+        assertThat(screen.getBoolean(METADATA_SEARCHABLE)).isTrue();
+    }
+
+    @Test
+    public void extractMetadata_withoutPrefScreenFlag_skipsPreferenceScreen() throws Exception {
+        final PreferenceMetadataIndex index = createIndex(SCREEN_NAME, "string/brightness");
+
+        final List<Bundle> metadata = index.extractMetadata(mContext, R.xml.display_settings,
+                MetadataFlag.FLAG_NEED_KEY);
+
+        assertThat(metadata).hasSize(1);
+        assertThat(metadata.get(0).getString(METADATA_KEY)).isEqualTo("brightness");
+    }
+
+    @Test
+    public void extractMetadata_notPrecompiled_returnsNull() throws Exception {
+        final PreferenceMetadataIndex index = createIndex("other_settings", "string/brightness");
+
+        assertThat(index.extractMetadata(mContext, R.xml.display_settings, ALL_FLAGS)).isNull();
+    }
+
+    @Test
+    public void extractMetadata_unknownReference_returnsNull() throws Exception {
+        final PreferenceMetadataIndex index = createIndex(SCREEN_NAME, "string/no_such_string");
+
+        assertThat(index.extractMetadata(mContext, R.xml.display_settings, ALL_FLAGS)).isNull();
+    }
+
+    @Test
+    public void extractMetadata_precompiled_usedByParserUtils() throws Exception {
+        PreferenceMetadataIndex.setInstance(createIndex(SCREEN_NAME, "string/brightness"));
+
+        final List<Bundle> metadata = PreferenceXmlParserUtils.extractMetadata(mContext,
+                R.xml.display_settings, MetadataFlag.FLAG_NEED_PREF_CONTROLLER);
+
+        assertThat(metadata).hasSize(1);
+        assertThat(metadata.get(0).getString(METADATA_CONTROLLER)).isEqualTo(CONTROLLER);
+    }
+
+    private static PreferenceMetadataIndex createIndex(String screenName, String titleReference)
+            throws Exception {
+        final Element screen = new Element(PreferenceXmlParserUtils.PREF_SCREEN_TAG);
+        screen.setValue(ATTR_TITLE, VALUE_REFERENCE, "string/display_settings");
+        screen.setValue(ATTR_KEYWORDS, VALUE_REFERENCE, "string/keywords_display");
+        final Element preference = new Element("SwitchPreferenceCompat");
+        preference.setValue(ATTR_KEY, VALUE_LITERAL, "brightness");
+        preference.setValue(ATTR_TITLE, VALUE_REFERENCE, titleReference);
+        preference.setValue(ATTR_CONTROLLER, VALUE_LITERAL, CONTROLLER);
+        preference.setValue(ATTR_ICON, VALUE_REFERENCE, "drawable/ic_settings_display");
+        preference.setValue(ATTR_SEARCHABLE, VALUE_LITERAL, "false");
+
+        final PreferenceMetadataFormat.Writer writer = new PreferenceMetadataFormat.Writer();
+        writer.addScreen(screenName, List.of(screen, preference));
+        return new PreferenceMetadataIndex(ByteBuffer.wrap(writer.toByteArray()));
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.dashboard;
+
+import static com.android.settings.core.BasePreferenceController.AVAILABLE;
+import static com.android.settings.core.BasePreferenceController.UNSUPPORTED_ON_DEVICE;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.junit.Assert.assertThrows;
+
+import android.content.Context;
+
+import com.android.settings.core.BasePreferenceController;
+import com.android.settingslib.core.AbstractPreferenceController;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+@RunWith(RobolectricTestRunner.class)
+public class ControllerAvailabilityEvaluatorTest {
+
+    private Context mContext;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+    }
+
+    @Test
+    public void evaluate_ioBoundControllers_evaluatesOnWorkerThreads() {
+        final TestIoBoundController available = new TestIoBoundController(mContext, "key1",
+                AVAILABLE);
+        final TestIoBoundController unavailable = new TestIoBoundController(mContext, "key2",
+                UNSUPPORTED_ON_DEVICE);
+        final TestPureController pure = new TestPureController(mContext, "key3");
+
+        final Map<AbstractPreferenceController, Boolean> availability =
+                ControllerAvailabilityEvaluator.evaluate(Arrays.asList(available, pure,
+                        unavailable));
+
+        assertThat(availability.get(available)).isTrue();
+        assertThat(availability.get(unavailable)).isFalse();
+        assertThat(availability.get(pure)).isTrue();
+        assertThat(available.mThread).isNotSameInstanceAs(Thread.currentThread());
+        assertThat(unavailable.mThread).isNotSameInstanceAs(Thread.currentThread());
+        assertThat(pure.mThread).isSameInstanceAs(Thread.currentThread());
+    }
+
+    @Test
+    public void evaluate_singleIoBoundController_evaluatesOnCallingThread() {
+        final TestIoBoundController controller = new TestIoBoundController(mContext, "key",
+                AVAILABLE);
+
+        final Map<AbstractPreferenceController, Boolean> availability =
+                ControllerAvailabilityEvaluator.evaluate(Collections.singletonList(controller));
+
+        assertThat(availability.get(controller)).isTrue();
+        assertThat(controller.mThread).isSameInstanceAs(Thread.currentThread());
+    }
+
+    @Test
+    public void evaluate_ioBoundControllerThrows_rethrows() {
+        final TestIoBoundController controller = new TestIoBoundController(mContext, "key1",
+                AVAILABLE) {
+            @Override
+            public int getAvailabilityStatus() {
+                throw new IllegalStateException("failed");
+            }
+        };
+
+        assertThrows(IllegalStateException.class,
+                () -> ControllerAvailabilityEvaluator.evaluate(Arrays.asList(controller,
+                        new TestIoBoundController(mContext, "key2", AVAILABLE))));
+    }
+
+    private static class TestPureController extends BasePreferenceController {
+
+        volatile Thread mThread;
+
+        TestPureController(Context context, String key) {
+            super(context, key);
+        }
+
+        @Override
+        public int getAvailabilityStatus() {
+            mThread = Thread.currentThread();
+            return AVAILABLE;
+        }
+    }
+
+    private static class TestIoBoundController extends BasePreferenceController
+            implements BasePreferenceController.IoBoundAvailability {
+
+        private final int mAvailabilityStatus;
+        volatile Thread mThread;
+
+        TestIoBoundController(Context context, String key, int availabilityStatus) {
+            super(context, key);
+            mAvailabilityStatus = availabilityStatus;
+        }
+
+        @Override
+        public int getAvailabilityStatus() {
+            mThread = Thread.currentThread();
+            return mAvailabilityStatus;
+        }
+    }
+}
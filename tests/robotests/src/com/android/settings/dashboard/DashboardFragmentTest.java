@@ -24,6 +24,9 @@ import static com.android.settingslib.drawer.TileUtils.META_DATA_PREFERENCE_SWIT
 import static com.google.common.truth.Truth.assertThat;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.nullable;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
@@ -31,6 +34,7 @@ import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
 
 import android.app.PendingIntent;
 import android.app.settings.SettingsEnums;
@@ -54,6 +58,7 @@ import androidx.test.core.app.ApplicationProvider;
 
 import com.android.internal.logging.nano.MetricsProto.MetricsEvent;
 import com.android.settings.R;
+import com.android.settings.core.BasePreferenceController;
 import com.android.settings.core.PreferenceControllerMixin;
 import com.android.settings.slices.BlockingSlicePrefController;
 import com.android.settings.testutils.FakeFeatureFactory;
@@ -77,6 +82,7 @@ import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
 import org.robolectric.annotation.Implementation;
 import org.robolectric.annotation.Implements;
+import org.robolectric.shadows.ShadowLooper;
 import org.robolectric.util.ReflectionHelpers;
 
 import java.util.ArrayList;
@@ -84,6 +90,7 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 @RunWith(RobolectricTestRunner.class)
 public class DashboardFragmentTest {
@@ -288,6 +295,45 @@ public class DashboardFragmentTest {
         verify(mTestFragment.getContentResolver()).unregisterContentObserver(observer);
     }
 
+    @Test
+    public void displayTilesAsPreference_dataLoadedBeforeBinding_appliesData() {
+        final TestDynamicDataObserver observer = new TestDynamicDataObserver();
+        final boolean[] applied = new boolean[1];
+        observer.load(() -> applied[0] = true);
+        bindObserverToProviderTile(observer);
+        final DashboardTileBindingStats stats = DashboardTileBindingStats.getInstance();
+        final long missedTileCount = stats.getMissedDeadlineTileCount();
+
+        mTestFragment.onCreatePreferences(new Bundle(), "rootKey");
+        ShadowLooper.idleMainLooper(DashboardFragment.FIRST_FRAME_DEADLINE_MILLIS,
+                TimeUnit.MILLISECONDS);
+
+        assertThat(applied[0]).isTrue();
+        assertThat(stats.getMissedDeadlineTileCount()).isEqualTo(missedTileCount);
+    }
+
+    @Test
+    public void displayTilesAsPreference_dataLoadedAfterDeadline_appliesDataWhenLoaded() {
+        final TestDynamicDataObserver observer = new TestDynamicDataObserver();
+        bindObserverToProviderTile(observer);
+        final DashboardTileBindingStats stats = DashboardTileBindingStats.getInstance();
+        final long boundTileCount = stats.getBoundTileCount();
+        final long missedTileCount = stats.getMissedDeadlineTileCount();
+
+        mTestFragment.onCreatePreferences(new Bundle(), "rootKey");
+        ShadowLooper.idleMainLooper(DashboardFragment.FIRST_FRAME_DEADLINE_MILLIS,
+                TimeUnit.MILLISECONDS);
+
+        assertThat(stats.getBoundTileCount()).isEqualTo(boundTileCount + 1);
+        assertThat(stats.getMissedDeadlineTileCount()).isEqualTo(missedTileCount + 1);
+
+        final boolean[] applied = new boolean[1];
+        observer.load(() -> applied[0] = true);
+        ShadowLooper.idleMainLooper();
+
+        assertThat(applied[0]).isTrue();
+    }
+
     @Test
     public void updateState_skipUnavailablePrefs() {
         final List<AbstractPreferenceController> preferenceControllers = mTestFragment.mControllers;
@@ -325,6 +371,29 @@ public class DashboardFragmentTest {
         verify(mockController2).getPreferenceKey();
     }
 
+    @Test
+    public void updateState_ioBoundControllers_updatesAvailableOnes() {
+        final AbstractPreferenceController availableController = mock(
+                AbstractPreferenceController.class,
+                withSettings().extraInterfaces(BasePreferenceController.IoBoundAvailability.class));
+        final AbstractPreferenceController unavailableController = mock(
+                AbstractPreferenceController.class,
+                withSettings().extraInterfaces(BasePreferenceController.IoBoundAvailability.class));
+        final Preference preference = new Preference(mContext);
+        when(availableController.isAvailable()).thenReturn(true);
+        when(availableController.getPreferenceKey()).thenReturn("key1");
+        when(unavailableController.isAvailable()).thenReturn(false);
+        when(unavailableController.getPreferenceKey()).thenReturn("key2");
+        when(mTestFragment.mScreen.findPreference("key1")).thenReturn(preference);
+        mTestFragment.addPreferenceController(availableController);
+        mTestFragment.addPreferenceController(unavailableController);
+
+        mTestFragment.updatePreferenceStates();
+
+        verify(availableController).updateState(preference);
+        verify(unavailableController, never()).updateState(any());
+    }
+
     @Test
     public void onExpandButtonClick_shouldLogAdvancedButtonExpand() {
         final MetricsFeatureProvider metricsFeatureProvider
@@ -598,6 +667,15 @@ public class DashboardFragmentTest {
 
     }
 
+    private void bindObserverToProviderTile(DynamicDataObserver observer) {
+        when(mFakeFeatureFactory.dashboardFeatureProvider
+                .getDashboardKeyForTile(any(ProviderTile.class)))
+                .thenReturn("test_key2");
+        when(mFakeFeatureFactory.dashboardFeatureProvider.bindPreferenceToTileAndGetObservers(
+                any(), any(), anyBoolean(), any(), any(), eq("test_key2"), anyInt()))
+                .thenReturn(Arrays.asList(observer));
+    }
+
     private static class TestDynamicDataObserver extends DynamicDataObserver {
 
         @Override
@@ -608,6 +686,10 @@ public class DashboardFragmentTest {
         @Override
         public void onDataChanged() {
         }
+
+        void load(Runnable updateRunnable) {
+            post(updateRunnable);
+        }
     }
 
     @Implements(PreferenceFragmentCompat.class)
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.dashboard;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.IContentProvider;
+import android.net.Uri;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+@RunWith(RobolectricTestRunner.class)
+public class DynamicTileDataLoaderTest {
+
+    private static final Uri TITLE_URI =
+            Uri.parse("content://com.android.settings.test.tiles/getDynamicTitle/key1");
+    private static final Uri SUMMARY_URI =
+            Uri.parse("content://com.android.settings.test.tiles/getDynamicSummary/key2");
+    private static final Uri OTHER_AUTHORITY_URI =
+            Uri.parse("content://com.android.settings.test.other/getDynamicTitle/key3");
+
+    private List<Runnable> mFlushes;
+    private DynamicTileDataLoader mLoader;
+    private List<Map<String, IContentProvider>> mProviderMaps;
+
+    @Before
+    public void setUp() {
+        mFlushes = new ArrayList<>();
+        mLoader = new DynamicTileDataLoader(mFlushes::add);
+        mProviderMaps = new ArrayList<>();
+    }
+
+    @Test
+    public void load_sameMainThreadPass_flushesOnce() {
+        load(TITLE_URI);
+        load(SUMMARY_URI);
+
+        assertThat(mFlushes).hasSize(1);
+        assertThat(mProviderMaps).isEmpty();
+    }
+
+    @Test
+    public void load_sameAuthority_sharesProviders() {
+        load(TITLE_URI);
+        load(SUMMARY_URI);
+        flush();
+
+        assertThat(mProviderMaps).hasSize(2);
+        assertThat(mProviderMaps.get(1)).isSameInstanceAs(mProviderMaps.get(0));
+    }
+
+    @Test
+    public void load_differentAuthorities_loadsSeparately() {
+        load(TITLE_URI);
+        load(OTHER_AUTHORITY_URI);
+        flush();
+
+        assertThat(mProviderMaps).hasSize(2);
+        assertThat(mProviderMaps.get(1)).isNotSameInstanceAs(mProviderMaps.get(0));
+    }
+
+    private void load(Uri uri) {
+        mLoader.load(uri, mProviderMaps::add);
+    }
+
+    private void flush() {
+        final List<Runnable> flushes = new ArrayList<>(mFlushes);
+        mFlushes.clear();
+        flushes.forEach(Runnable::run);
+    }
+}
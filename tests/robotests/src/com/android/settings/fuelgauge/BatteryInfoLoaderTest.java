@@ -30,6 +30,7 @@ import android.os.BatteryStatsManager;
 import android.os.BatteryUsageStats;
 import android.os.BatteryUsageStatsQuery;
 
+import com.android.settings.fuelgauge.batteryusage.BatteryUsageStatsCache;
 import com.android.settings.testutils.BatteryTestUtils;
 import com.android.settings.testutils.FakeFeatureFactory;
 
@@ -53,6 +54,7 @@ public class BatteryInfoLoaderTest {
 
     @Before
     public void setUp() {
+        BatteryUsageStatsCache.invalidate();
         MockitoAnnotations.initMocks(this);
         mContext = spy(RuntimeEnvironment.application);
         FakeFeatureFactory.setupForTest().getPowerUsageFeatureProvider();
@@ -51,6 +51,7 @@ import android.os.SystemClock;
 
 import com.android.settings.fuelgauge.batterytip.AnomalyDatabaseHelper;
 import com.android.settings.fuelgauge.batterytip.BatteryDatabaseManager;
+import com.android.settings.fuelgauge.batteryusage.BatteryUsageStatsCache;
 import com.android.settings.testutils.FakeFeatureFactory;
 import com.android.settings.testutils.shadow.ShadowThreadUtils;
 import com.android.settingslib.fuelgauge.Estimate;
@@ -122,6 +123,7 @@ public class BatteryUtilsTest {
 
     @Before
     public void setUp() throws PackageManager.NameNotFoundException {
+        BatteryUsageStatsCache.invalidate();
         MockitoAnnotations.initMocks(this);
 
         mFeatureFactory = FakeFeatureFactory.setupForTest();
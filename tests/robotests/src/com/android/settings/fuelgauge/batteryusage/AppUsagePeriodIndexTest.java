@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.fuelgauge.batteryusage;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.List;
+import java.util.Map;
+
+@RunWith(RobolectricTestRunner.class)
+public final class AppUsagePeriodIndexTest {
+    private static final long USER_ID1 = 0L;
+    private static final long USER_ID2 = 10L;
+    private static final String PACKAGE_NAME1 = "com.android.settings";
+    private static final String PACKAGE_NAME2 = "com.android.systemui";
+
+    @Test
+    public void create_nullAppUsageMap_returnsZeroTime() {
+        final AppUsagePeriodIndex index = AppUsagePeriodIndex.create(/* appUsageMap= */ null);
+
+        assertThat(index.getForegroundTime(USER_ID1, PACKAGE_NAME1)).isEqualTo(0);
+        assertThat(index.getForegroundTimeOfUsers(userId -> true)).isEqualTo(0);
+    }
+
+    @Test
+    public void getForegroundTime_overlappedPeriods_returnsMergedTime() {
+        final AppUsagePeriodIndex index = createIndex();
+
+        // [0, 7], [10, 12], [15, 20], [25, 30] and [35, 40].
+        assertThat(index.getForegroundTime(USER_ID1, PACKAGE_NAME1)).isEqualTo(24);
+        assertThat(index.getForegroundTime(USER_ID1, PACKAGE_NAME2)).isEqualTo(10);
+        assertThat(index.getForegroundTime(USER_ID2, PACKAGE_NAME1)).isEqualTo(20);
+        assertThat(index.getForegroundTime(USER_ID2, PACKAGE_NAME2)).isEqualTo(0);
+    }
+
+    @Test
+    public void getForegroundTimeOfUsers_mergesPeriodsOfMatchedUsers() {
+        final AppUsagePeriodIndex index = createIndex();
+
+        // [0, 12], [15, 20], [25, 30] and [35, 40].
+        assertThat(index.getForegroundTimeOfUsers(userId -> userId == USER_ID1)).isEqualTo(27);
+        // [0, 30] and [35, 40].
+        assertThat(index.getForegroundTimeOfUsers(userId -> true)).isEqualTo(35);
+    }
+
+    @Test
+    public void getMergedDuration_returnsExpectedResult() {
+        assertThat(AppUsagePeriodIndex.getMergedDuration(null)).isEqualTo(0);
+        assertThat(
+                        AppUsagePeriodIndex.getMergedDuration(
+                                List.of(buildAppUsagePeriod(5, 9), buildAppUsagePeriod(2, 7))))
+                .isEqualTo(7);
+    }
+
+    private static AppUsagePeriodIndex createIndex() {
+        return AppUsagePeriodIndex.create(
+                Map.of(
+                        USER_ID1,
+                        Map.of(
+                                PACKAGE_NAME1,
+                                List.of(
+                                        buildAppUsagePeriod(0, 5),
+                                        buildAppUsagePeriod(2, 3),
+                                        buildAppUsagePeriod(5, 7),
+                                        buildAppUsagePeriod(10, 12),
+                                        buildAppUsagePeriod(10, 12),
+                                        buildAppUsagePeriod(15, 20),
+                                        buildAppUsagePeriod(35, 40),
+                                        buildAppUsagePeriod(25, 30)),
+                                PACKAGE_NAME2,
+                                List.of(buildAppUsagePeriod(0, 10))),
+                        USER_ID2,
+                        Map.of(
+                                PACKAGE_NAME1,
+                                List.of(buildAppUsagePeriod(10, 30)),
+                                PACKAGE_NAME2,
+                                List.of())));
+    }
+
+    private static AppUsagePeriod buildAppUsagePeriod(long start, long end) {
+        return AppUsagePeriod.newBuilder().setStartTime(start).setEndTime(end).build();
+    }
+}
@@ -20,9 +20,12 @@ import static com.google.common.truth.Truth.assertThat;
 
 import static org.junit.Assert.assertThrows;
 
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.Context;
+import android.content.OperationApplicationException;
 import android.database.Cursor;
 import android.net.Uri;
 
@@ -293,8 +296,7 @@ public final class BatteryUsageContentProviderTest {
                         .setForegroundServiceUsageTimeInMs(1500)
                         .setDrainType(1)
                         .build();
-        final String expectedBatteryInformationString =
-                ConvertUtils.convertBatteryInformationToString(batteryInformation);
+        final byte[] expectedBatteryInformation = batteryInformation.toByteArray();
         ContentValues values = new ContentValues();
         values.put(BatteryHistEntry.KEY_UID, Long.valueOf(101L));
         values.put(BatteryHistEntry.KEY_USER_ID, Long.valueOf(1001L));
@@ -302,7 +304,7 @@ public final class BatteryUsageContentProviderTest {
         values.put(BatteryHistEntry.KEY_TIMESTAMP, Long.valueOf(2100021L));
         values.put(BatteryHistEntry.KEY_CONSUMER_TYPE, Integer.valueOf(2));
         values.put(BatteryHistEntry.KEY_IS_FULL_CHARGE_CYCLE_START, true);
-        values.put(BatteryHistEntry.KEY_BATTERY_INFORMATION, expectedBatteryInformationString);
+        values.put(BatteryHistEntry.KEY_BATTERY_INFORMATION, expectedBatteryInformation);
 
         final Uri uri = mProvider.insert(VALID_BATTERY_STATE_CONTENT_URI, values);
 
@@ -317,7 +319,7 @@ public final class BatteryUsageContentProviderTest {
         assertThat(states.get(0).timestamp).isEqualTo(2100021L);
         assertThat(states.get(0).consumerType).isEqualTo(2);
         assertThat(states.get(0).isFullChargeCycleStart).isTrue();
-        assertThat(states.get(0).batteryInformation).isEqualTo(expectedBatteryInformationString);
+        assertThat(states.get(0).batteryInformation).isEqualTo(expectedBatteryInformation);
     }
 
     @Test
@@ -331,12 +333,11 @@ public final class BatteryUsageContentProviderTest {
                         .build();
         final BatteryInformation batteryInformation =
                 BatteryInformation.newBuilder().setDeviceBatteryState(deviceBatteryState).build();
-        final String expectedBatteryInformationString =
-                ConvertUtils.convertBatteryInformationToString(batteryInformation);
+        final byte[] expectedBatteryInformation = batteryInformation.toByteArray();
         final ContentValues values = new ContentValues();
         values.put(BatteryHistEntry.KEY_PACKAGE_NAME, new String("fake_data"));
         values.put(BatteryHistEntry.KEY_TIMESTAMP, Long.valueOf(2100022L));
-        values.put(BatteryHistEntry.KEY_BATTERY_INFORMATION, expectedBatteryInformationString);
+        values.put(BatteryHistEntry.KEY_BATTERY_INFORMATION, expectedBatteryInformation);
 
         final Uri uri = mProvider.insert(VALID_BATTERY_STATE_CONTENT_URI, values);
 
@@ -347,7 +348,7 @@ public final class BatteryUsageContentProviderTest {
         assertThat(states).hasSize(1);
         assertThat(states.get(0).packageName).isEqualTo("fake_data");
         assertThat(states.get(0).timestamp).isEqualTo(2100022L);
-        assertThat(states.get(0).batteryInformation).isEqualTo(expectedBatteryInformationString);
+        assertThat(states.get(0).batteryInformation).isEqualTo(expectedBatteryInformation);
     }
 
     @Test
@@ -424,7 +425,7 @@ public final class BatteryUsageContentProviderTest {
         mProvider.onCreate();
         ContentValues values = new ContentValues();
         values.put(BatteryUsageSlotEntity.KEY_TIMESTAMP, 10001L);
-        values.put(BatteryUsageSlotEntity.KEY_BATTERY_USAGE_SLOT, "TEST_STRING");
+        values.put(BatteryUsageSlotEntity.KEY_BATTERY_USAGE_SLOT, "TEST_BYTES".getBytes());
 
         final Uri uri = mProvider.insert(DatabaseUtils.BATTERY_USAGE_SLOT_URI, values);
         // Verifies the BatteryUsageSlotEntity content.
@@ -433,7 +434,7 @@ public final class BatteryUsageContentProviderTest {
                 BatteryStateDatabase.getInstance(mContext).batteryUsageSlotDao().getAll();
         assertThat(entities).hasSize(1);
         assertThat(entities.get(0).timestamp).isEqualTo(10001L);
-        assertThat(entities.get(0).batteryUsageSlot).isEqualTo("TEST_STRING");
+        assertThat(entities.get(0).batteryUsageSlot).isEqualTo("TEST_BYTES".getBytes());
 
         final Cursor cursor1 = getCursorOfBatteryUsageSlots(10001L);
         assertThat(cursor1.getCount()).isEqualTo(1);
@@ -441,15 +442,108 @@ public final class BatteryUsageContentProviderTest {
         assertThat(cursor1.getLong(cursor1.getColumnIndex(BatteryUsageSlotEntity.KEY_TIMESTAMP)))
                 .isEqualTo(10001L);
         assertThat(
-                        cursor1.getString(
+                        cursor1.getBlob(
                                 cursor1.getColumnIndex(
                                         BatteryUsageSlotEntity.KEY_BATTERY_USAGE_SLOT)))
-                .isEqualTo("TEST_STRING");
+                .isEqualTo("TEST_BYTES".getBytes());
 
         final Cursor cursor2 = getCursorOfBatteryUsageSlots(10002L);
         assertThat(cursor2.getCount()).isEqualTo(0);
     }
 
+    @Test
+    public void bulkInsert_batteryEvents_insertsAllRows() {
+        mProvider.onCreate();
+        final ContentValues[] valuesArray = new ContentValues[3];
+        for (int index = 0; index < valuesArray.length; index++) {
+            valuesArray[index] = createBatteryEventValues(10001L + index, 60 + index);
+        }
+
+        final int size = mProvider.bulkInsert(DatabaseUtils.BATTERY_EVENT_URI, valuesArray);
+
+        assertThat(size).isEqualTo(3);
+        final List<BatteryEventEntity> entities =
+                BatteryStateDatabase.getInstance(mContext).batteryEventDao().getAll();
+        assertThat(entities).hasSize(3);
+        assertThat(entities.get(0).timestamp).isEqualTo(10003L);
+        assertThat(entities.get(0).batteryLevel).isEqualTo(62);
+        assertThat(entities.get(2).timestamp).isEqualTo(10001L);
+        assertThat(entities.get(2).batteryLevel).isEqualTo(60);
+    }
+
+    @Test
+    public void bulkInsert_incorrectContentUri_throwsIllegalArgumentException() {
+        mProvider.onCreate();
+        final Uri uri =
+                new Uri.Builder()
+                        .scheme(ContentResolver.SCHEME_CONTENT)
+                        .authority(DatabaseUtils.AUTHORITY)
+                        .appendPath(DatabaseUtils.BATTERY_STATE_TABLE + "/0")
+                        .build();
+
+        assertThrows(
+                IllegalArgumentException.class,
+                () ->
+                        mProvider.bulkInsert(
+                                uri,
+                                new ContentValues[] {createBatteryEventValues(10001L, 60)}));
+    }
+
+    @Test
+    public void applyBatch_differentTables_insertsAllRows() throws Exception {
+        mProvider.onCreate();
+        final ContentValues slotValues = new ContentValues();
+        slotValues.put(BatteryUsageSlotEntity.KEY_TIMESTAMP, 10001L);
+        slotValues.put(BatteryUsageSlotEntity.KEY_BATTERY_USAGE_SLOT, "TEST_BYTES".getBytes());
+        final ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        operations.add(
+                ContentProviderOperation.newInsert(DatabaseUtils.BATTERY_EVENT_URI)
+                        .withValues(createBatteryEventValues(10001L, 60))
+                        .build());
+        operations.add(
+                ContentProviderOperation.newInsert(DatabaseUtils.BATTERY_USAGE_SLOT_URI)
+                        .withValues(slotValues)
+                        .build());
+
+        final ContentProviderResult[] results = mProvider.applyBatch(operations);
+
+        assertThat(results).hasLength(2);
+        final BatteryStateDatabase database = BatteryStateDatabase.getInstance(mContext);
+        assertThat(database.batteryEventDao().getAll()).hasSize(1);
+        assertThat(database.batteryUsageSlotDao().getAll()).hasSize(1);
+    }
+
+    @Test
+    public void applyBatch_insertFails_rollsBackAllRows() {
+        mProvider.onCreate();
+        final ContentValues invalidValues = createBatteryEventValues(10002L, 61);
+        invalidValues.put(BatteryEventEntity.KEY_TIMESTAMP, "invalid");
+        final ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        operations.add(
+                ContentProviderOperation.newInsert(DatabaseUtils.BATTERY_EVENT_URI)
+                        .withValues(createBatteryEventValues(10001L, 60))
+                        .build());
+        operations.add(
+                ContentProviderOperation.newInsert(DatabaseUtils.BATTERY_EVENT_URI)
+                        .withValues(invalidValues)
+                        .build());
+
+        assertThrows(RuntimeException.class, () -> mProvider.applyBatch(operations));
+
+        assertThat(BatteryStateDatabase.getInstance(mContext).batteryEventDao().getAll())
+                .isEmpty();
+    }
+
+    @Test
+    public void applyBatch_notInsertOperation_throwsOperationApplicationException() {
+        mProvider.onCreate();
+        final ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        operations.add(ContentProviderOperation.newDelete(DatabaseUtils.BATTERY_EVENT_URI).build());
+
+        assertThrows(
+                OperationApplicationException.class, () -> mProvider.applyBatch(operations));
+    }
+
     @Test
     public void delete_throwsUnsupportedOperationException() {
         assertThrows(
@@ -598,4 +692,14 @@ public final class BatteryUsageContentProviderTest {
         return mProvider.query(
                 uri, /* strings= */ null, /* s= */ null, /* strings1= */ null, /* s1= */ null);
     }
+
+    private static ContentValues createBatteryEventValues(long timestamp, int batteryLevel) {
+        final ContentValues values = new ContentValues();
+        values.put(BatteryEventEntity.KEY_TIMESTAMP, timestamp);
+        values.put(
+                BatteryEventEntity.KEY_BATTERY_EVENT_TYPE,
+                BatteryEventType.POWER_CONNECTED.getNumber());
+        values.put(BatteryEventEntity.KEY_BATTERY_LEVEL, batteryLevel);
+        return values;
+    }
 }
@@ -19,6 +19,7 @@ package com.android.settings.fuelgauge.batteryusage;
 import static com.google.common.truth.Truth.assertThat;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.verify;
@@ -76,7 +77,7 @@ public final class BatteryUsageDataLoaderTest {
     }
 
     @Test
-    public void loadUsageData_loadUsageDataWithHistory() {
+    public void loadUsageData_loadUsageDataWithHistory() throws Exception {
         final List<BatteryEntry> batteryEntryList = new ArrayList<>();
         batteryEntryList.add(mMockBatteryEntry);
         when(mBatteryStatsManager.getBatteryUsageStats(mStatsQueryCaptor.capture()))
@@ -88,29 +89,29 @@ public final class BatteryUsageDataLoaderTest {
         final int queryFlags = mStatsQueryCaptor.getValue().getFlags();
         assertThat(queryFlags & BatteryUsageStatsQuery.FLAG_BATTERY_USAGE_STATS_INCLUDE_HISTORY)
                 .isNotEqualTo(0);
-        verify(mMockContentResolver).insert(any(), any());
+        verify(mMockContentResolver).applyBatch(eq(DatabaseUtils.AUTHORITY), any());
     }
 
     @Test
-    public void loadUsageData_nullBatteryEntryList_insertFakeDataIntoProvider() {
+    public void loadUsageData_nullBatteryEntryList_insertFakeDataIntoProvider() throws Exception {
         when(mBatteryStatsManager.getBatteryUsageStats(mStatsQueryCaptor.capture()))
                 .thenReturn(mBatteryUsageStats);
         BatteryUsageDataLoader.sFakeBatteryEntryListSupplier = () -> null;
 
         BatteryUsageDataLoader.loadBatteryStatsData(mContext, /* isFullChargeStart= */ false);
 
-        verify(mMockContentResolver).insert(any(), any());
+        verify(mMockContentResolver).applyBatch(eq(DatabaseUtils.AUTHORITY), any());
     }
 
     @Test
-    public void loadUsageData_emptyBatteryEntryList_insertFakeDataIntoProvider() {
+    public void loadUsageData_emptyBatteryEntryList_insertFakeDataIntoProvider() throws Exception {
         when(mBatteryStatsManager.getBatteryUsageStats(mStatsQueryCaptor.capture()))
                 .thenReturn(mBatteryUsageStats);
         BatteryUsageDataLoader.sFakeBatteryEntryListSupplier = () -> new ArrayList<>();
 
         BatteryUsageDataLoader.loadBatteryStatsData(mContext, /* isFullChargeStart= */ false);
 
-        verify(mMockContentResolver).insert(any(), any());
+        verify(mMockContentResolver).applyBatch(eq(DatabaseUtils.AUTHORITY), any());
     }
 
     @Test
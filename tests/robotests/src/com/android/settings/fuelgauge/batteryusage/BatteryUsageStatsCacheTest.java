@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.fuelgauge.batteryusage;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.content.Context;
+import android.os.BatteryStatsManager;
+import android.os.BatteryUsageStats;
+import android.os.BatteryUsageStatsQuery;
+import android.os.SystemClock;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.concurrent.TimeUnit;
+
+@RunWith(RobolectricTestRunner.class)
+public final class BatteryUsageStatsCacheTest {
+    private Context mContext;
+    private long mElapsedRealtime;
+
+    @Mock private BatteryStatsManager mBatteryStatsManager;
+    @Mock private BatteryUsageStats mBatteryUsageStats1;
+    @Mock private BatteryUsageStats mBatteryUsageStats2;
+    @Captor private ArgumentCaptor<BatteryUsageStatsQuery> mQueryCaptor;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        mContext = spy(RuntimeEnvironment.application);
+        doReturn(mBatteryStatsManager)
+                .when(mContext)
+                .getSystemService(Context.BATTERY_STATS_SERVICE);
+        when(mBatteryStatsManager.getBatteryUsageStats(mQueryCaptor.capture()))
+                .thenReturn(mBatteryUsageStats1, mBatteryUsageStats2);
+        BatteryUsageStatsCache.invalidate();
+        BatteryUsageStatsCache.sElapsedRealtimeSupplier = () -> mElapsedRealtime;
+    }
+
+    @After
+    public void tearDown() {
+        BatteryUsageStatsCache.invalidate();
+        BatteryUsageStatsCache.sElapsedRealtimeSupplier = SystemClock::elapsedRealtime;
+    }
+
+    @Test
+    public void acquire_withinExpiration_sharesSnapshot() {
+        final BatteryUsageStatsCache.Snapshot snapshot1 =
+                BatteryUsageStatsCache.acquire(mContext, /* queryFlags= */ 0);
+        mElapsedRealtime += BatteryUsageStatsCache.CACHE_EXPIRATION_MS - 1;
+        final BatteryUsageStatsCache.Snapshot snapshot2 =
+                BatteryUsageStatsCache.acquire(mContext, /* queryFlags= */ 0);
+
+        assertThat(snapshot1.getBatteryUsageStats()).isSameInstanceAs(mBatteryUsageStats1);
+        assertThat(snapshot2.getBatteryUsageStats()).isSameInstanceAs(mBatteryUsageStats1);
+        verify(mBatteryStatsManager).getBatteryUsageStats(any(BatteryUsageStatsQuery.class));
+    }
+
+    @Test
+    public void acquire_expired_loadsNewSnapshot() throws Exception {
+        BatteryUsageStatsCache.acquire(mContext, /* queryFlags= */ 0).close();
+        mElapsedRealtime += BatteryUsageStatsCache.CACHE_EXPIRATION_MS;
+
+        final BatteryUsageStatsCache.Snapshot snapshot =
+                BatteryUsageStatsCache.acquire(mContext, /* queryFlags= */ 0);
+
+        assertThat(snapshot.getBatteryUsageStats()).isSameInstanceAs(mBatteryUsageStats2);
+        verify(mBatteryUsageStats1).close();
+    }
+
+    @Test
+    public void acquire_differentQueryFlags_doesNotShareSnapshot() {
+        BatteryUsageStatsCache.acquire(mContext, /* queryFlags= */ 0).close();
+        final BatteryUsageStatsCache.Snapshot snapshot =
+                BatteryUsageStatsCache.acquire(
+                        mContext, BatteryUsageStatsCache.FLAG_INCLUDE_PROCESS_STATE_DATA);
+
+        assertThat(snapshot.getBatteryUsageStats()).isSameInstanceAs(mBatteryUsageStats2);
+        assertThat(mQueryCaptor.getValue().getFlags())
+                .isEqualTo(BatteryUsageStatsCache.FLAG_INCLUDE_PROCESS_STATE_DATA);
+    }
+
+    @Test
+    public void acquire_includeHistory_loadsOwnSnapshot() throws Exception {
+        final BatteryUsageStatsCache.Snapshot snapshot1 =
+                BatteryUsageStatsCache.acquire(
+                        mContext, BatteryUsageStatsCache.FLAG_INCLUDE_HISTORY);
+        final BatteryUsageStatsCache.Snapshot snapshot2 =
+                BatteryUsageStatsCache.acquire(
+                        mContext, BatteryUsageStatsCache.FLAG_INCLUDE_HISTORY);
+
+        assertThat(snapshot1.getBatteryUsageStats()).isSameInstanceAs(mBatteryUsageStats1);
+        assertThat(snapshot2.getBatteryUsageStats()).isSameInstanceAs(mBatteryUsageStats2);
+        snapshot1.close();
+        verify(mBatteryUsageStats1).close();
+    }
+
+    @Test
+    public void acquire_notQueriedAgain_evictsAfterExpiration() throws Exception {
+        BatteryUsageStatsCache.acquire(mContext, /* queryFlags= */ 0).close();
+        verify(mBatteryUsageStats1, never()).close();
+
+        ShadowLooper.idleMainLooper(
+                BatteryUsageStatsCache.CACHE_EXPIRATION_MS, TimeUnit.MILLISECONDS);
+
+        verify(mBatteryUsageStats1).close();
+    }
+
+    @Test
+    public void invalidate_closesDataAfterAllSnapshotsClosed() throws Exception {
+        final BatteryUsageStatsCache.Snapshot snapshot1 =
+                BatteryUsageStatsCache.acquire(mContext, /* queryFlags= */ 0);
+        final BatteryUsageStatsCache.Snapshot snapshot2 =
+                BatteryUsageStatsCache.acquire(mContext, /* queryFlags= */ 0);
+
+        BatteryUsageStatsCache.invalidate();
+        snapshot1.close();
+        snapshot1.close();
+        verify(mBatteryUsageStats1, never()).close();
+
+        snapshot2.close();
+        verify(mBatteryUsageStats1).close();
+        assertThat(
+                        BatteryUsageStatsCache.acquire(mContext, /* queryFlags= */ 0)
+                                .getBatteryUsageStats())
+                .isSameInstanceAs(mBatteryUsageStats2);
+    }
+
+    @Test
+    public void close_notInvalidated_keepsDataOpen() throws Exception {
+        BatteryUsageStatsCache.acquire(mContext, /* queryFlags= */ 0).close();
+
+        verify(mBatteryUsageStats1, never()).close();
+        BatteryUsageStatsCache.invalidate();
+        verify(mBatteryUsageStats1, times(1)).close();
+    }
+
+    @Test
+    public void createUncached_close_closesData() throws Exception {
+        BatteryUsageStatsCache.Snapshot.createUncached(mBatteryUsageStats1).close();
+
+        verify(mBatteryUsageStats1).close();
+        verify(mBatteryStatsManager, never())
+                .getBatteryUsageStats(any(BatteryUsageStatsQuery.class));
+    }
+}
@@ -19,6 +19,7 @@ import static com.google.common.truth.Truth.assertThat;
 
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import android.content.Context;
@@ -45,6 +46,7 @@ public class BatteryUsageStatsLoaderTest {
 
     @Before
     public void setUp() {
+        BatteryUsageStatsCache.invalidate();
         MockitoAnnotations.initMocks(this);
         mContext = spy(RuntimeEnvironment.application);
         doReturn(mBatteryStatsManager)
@@ -81,4 +83,31 @@ public class BatteryUsageStatsLoaderTest {
         assertThat(queryFlags & BatteryUsageStatsQuery.FLAG_BATTERY_USAGE_STATS_INCLUDE_HISTORY)
                 .isNotEqualTo(0);
     }
+
+    @Test
+    public void onDiscardResult_closesSnapshot() throws Exception {
+        BatteryUsageStatsLoader loader =
+                new BatteryUsageStatsLoader(mContext, /* includeBatteryHistory */ true);
+        when(mBatteryStatsManager.getBatteryUsageStats(mUsageStatsQueryCaptor.capture()))
+                .thenReturn(mBatteryUsageStats);
+
+        loader.onDiscardResult(loader.loadInBackground());
+
+        verify(mBatteryUsageStats).close();
+    }
+
+    @Test
+    public void deliverResult_restartedBeforeDelivery_closesSnapshot() throws Exception {
+        BatteryUsageStatsLoader loader =
+                new BatteryUsageStatsLoader(mContext, /* includeBatteryHistory */ true);
+        when(mBatteryStatsManager.getBatteryUsageStats(mUsageStatsQueryCaptor.capture()))
+                .thenReturn(mBatteryUsageStats);
+        final BatteryUsageStatsCache.Snapshot snapshot = loader.loadInBackground();
+
+        // A restarted loader which hasn't delivered anything is reset before its result arrives.
+        loader.reset();
+        loader.deliverResult(snapshot);
+
+        verify(mBatteryUsageStats).close();
+    }
 }
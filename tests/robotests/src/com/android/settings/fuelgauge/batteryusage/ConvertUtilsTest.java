@@ -292,7 +292,26 @@ public final class ConvertUtilsTest {
         final ContentValues values =
                 ConvertUtils.convertBatteryUsageSlotToContentValues(batteryUsageSlot);
         assertThat(values.getAsLong(BatteryUsageSlotEntity.KEY_TIMESTAMP)).isEqualTo(10001L);
-        assertThat(BatteryUsageSlotEntity.KEY_BATTERY_USAGE_SLOT).isNotEmpty();
+        assertThat(values.getAsByteArray(BatteryUsageSlotEntity.KEY_BATTERY_USAGE_SLOT))
+                .isEqualTo(batteryUsageSlot.toByteArray());
+    }
+
+    @Test
+    public void getBatteryInformation_legacyEncodedString_returnsExpectedResult() {
+        final BatteryInformation batteryInformation =
+                BatteryInformation.newBuilder()
+                        .setAppLabel("Settings")
+                        .setBootTimestamp(101L)
+                        .build();
+        final ContentValues values = new ContentValues();
+        values.put(
+                BatteryHistEntry.KEY_BATTERY_INFORMATION,
+                ConvertUtils.convertBatteryInformationToString(batteryInformation));
+
+        assertThat(
+                        ConvertUtils.getBatteryInformation(
+                                values, BatteryHistEntry.KEY_BATTERY_INFORMATION))
+                .isEqualTo(batteryInformation);
     }
 
     @Test
@@ -89,6 +89,7 @@ public final class DataProcessManagerTest {
 
     @Before
     public void setUp() {
+        BatteryUsageStatsCache.invalidate();
         mExecutorService = new PausedExecutorService();
         ShadowPausedAsyncTask.overrideExecutor(mExecutorService);
         mContext = spy(ApplicationProvider.getApplicationContext());
@@ -21,6 +21,8 @@ import static com.android.settingslib.fuelgauge.BatteryStatus.BATTERY_LEVEL_UNKN
 
 import static com.google.common.truth.Truth.assertThat;
 
+import static org.junit.Assert.assertThrows;
+
 import static org.mockito.Mockito.anyInt;
 import static org.mockito.Mockito.anyLong;
 import static org.mockito.Mockito.anyString;
@@ -129,6 +131,53 @@ public final class DataProcessorTest {
         assertThat(resultMap.get(Long.valueOf(userInfo.id))).isEqualTo(mUsageEvents1);
     }
 
+    @Test
+    public void getAppUsageEvents_multipleUsers_returnExpectedResult() throws RemoteException {
+        doReturn(mUsageEvents1)
+                .when(mUsageStatsManager)
+                .queryEventsForUser(anyLong(), anyLong(), anyInt(), anyString());
+        doReturn(new ArrayList<>(List.of(0, 10, 11))).when(mUserIdsSeries).getVisibleUserIds();
+
+        final Map<Long, UsageEvents> resultMap =
+                DataProcessor.getAppUsageEvents(mContext, mUserIdsSeries);
+
+        assertThat(resultMap.keySet()).containsExactly(0L, 10L, 11L);
+        assertThat(resultMap.get(10L)).isEqualTo(mUsageEvents1);
+    }
+
+    @Test
+    public void loadPerUserConcurrently_keepsOrderOfUserIds() {
+        final List<Integer> userIds = List.of(11, 0, 10, 12, 13);
+
+        final List<String> results =
+                DataProcessor.loadPerUserConcurrently(userIds, userId -> "user_" + userId);
+
+        assertThat(results)
+                .containsExactly("user_11", "user_0", "user_10", "user_12", "user_13")
+                .inOrder();
+    }
+
+    @Test
+    public void loadPerUserConcurrently_loaderFails_rethrowsFailure() {
+        final List<Integer> userIds = List.of(11, 0, 10, 12, 13);
+
+        final IllegalStateException exception =
+                assertThrows(
+                        IllegalStateException.class,
+                        () ->
+                                DataProcessor.loadPerUserConcurrently(
+                                        userIds,
+                                        userId -> {
+                                            if (userId == 10) {
+                                                throw new IllegalStateException(
+                                                        "fail to load user 10");
+                                            }
+                                            return "user_" + userId;
+                                        }));
+
+        assertThat(exception).hasMessageThat().isEqualTo("fail to load user 10");
+    }
+
     @Test
     public void getAppUsageEvents_lockedUser_returnNull() {
         UserInfo userInfo = new UserInfo(/* id= */ 0, "user_0", /* flags= */ 0);
@@ -968,6 +1017,124 @@ public final class DataProcessorTest {
         assertThat(batteryDiffData.getEndTimestamp()).isEqualTo(batteryHistoryKeys[2]);
     }
 
+    @Test
+    public void getBatteryDiffDataMap_cachedSlot_reusesCachedSlot() {
+        final long[] batteryHistoryKeys =
+                new long[] {
+                    1641045600000L, // 2022-01-01 22:00:00
+                    1641049200000L, // 2022-01-01 23:00:00
+                    1641052800000L, // 2022-01-02 00:00:00
+                };
+        final BatteryLevelData batteryLevelData = generateBatteryLevelData(batteryHistoryKeys);
+        final BatteryUsageSlot cachedBatteryUsageSlot =
+                BatteryUsageSlot.newBuilder()
+                        .setStartTimestamp(batteryHistoryKeys[0])
+                        .setEndTimestamp(batteryHistoryKeys[2])
+                        .setStartBatteryLevel(100)
+                        .setEndBatteryLevel(90)
+                        .setScreenOnTime(123L)
+                        .build();
+
+        final Map<Long, BatteryDiffData> batteryDiffDataMap =
+                DataProcessor.getBatteryDiffDataMap(
+                        mContext,
+                        mUserIdsSeries,
+                        batteryLevelData.getHourlyBatteryLevelsPerDay(),
+                        /* batteryHistoryMap= */ new HashMap<>(),
+                        /* appUsagePeriodMap= */ null,
+                        Map.of(batteryHistoryKeys[0], cachedBatteryUsageSlot),
+                        Set.of(),
+                        Set.of());
+
+        assertThat(batteryDiffDataMap).hasSize(1);
+        final BatteryDiffData batteryDiffData = batteryDiffDataMap.get(batteryHistoryKeys[0]);
+        assertThat(batteryDiffData.getEndTimestamp()).isEqualTo(batteryHistoryKeys[2]);
+        assertThat(batteryDiffData.getEndBatteryLevel()).isEqualTo(90);
+        assertThat(batteryDiffData.getScreenOnTime()).isEqualTo(123L);
+    }
+
+    @Test
+    public void getBatteryDiffDataMap_cachedSlotWithDifferentEnd_computesSlot() {
+        final long[] batteryHistoryKeys =
+                new long[] {
+                    1641045600000L, // 2022-01-01 22:00:00
+                    1641049200000L, // 2022-01-01 23:00:00
+                    1641052800000L, // 2022-01-02 00:00:00
+                };
+        final BatteryLevelData batteryLevelData = generateBatteryLevelData(batteryHistoryKeys);
+        final BatteryUsageSlot cachedBatteryUsageSlot =
+                BatteryUsageSlot.newBuilder()
+                        .setStartTimestamp(batteryHistoryKeys[0])
+                        .setEndTimestamp(batteryHistoryKeys[1])
+                        .setScreenOnTime(123L)
+                        .build();
+
+        final Map<Long, BatteryDiffData> batteryDiffDataMap =
+                DataProcessor.getBatteryDiffDataMap(
+                        mContext,
+                        mUserIdsSeries,
+                        batteryLevelData.getHourlyBatteryLevelsPerDay(),
+                        /* batteryHistoryMap= */ new HashMap<>(),
+                        /* appUsagePeriodMap= */ null,
+                        Map.of(batteryHistoryKeys[0], cachedBatteryUsageSlot),
+                        Set.of(),
+                        Set.of());
+
+        assertThat(batteryDiffDataMap).hasSize(1);
+        final BatteryDiffData batteryDiffData = batteryDiffDataMap.get(batteryHistoryKeys[0]);
+        assertThat(batteryDiffData.getEndTimestamp()).isEqualTo(batteryHistoryKeys[2]);
+        assertThat(batteryDiffData.getScreenOnTime()).isEqualTo(0L);
+    }
+
+    @Test
+    public void getFirstUncachedSlotTimestamp_allSlotsCached_returnsNull() {
+        final long[] batteryHistoryKeys =
+                new long[] {
+                    1641045600000L, // 2022-01-01 22:00:00
+                    1641049200000L, // 2022-01-01 23:00:00
+                    1641052800000L, // 2022-01-02 00:00:00
+                };
+        final BatteryLevelData batteryLevelData = generateBatteryLevelData(batteryHistoryKeys);
+        final BatteryUsageSlot cachedBatteryUsageSlot =
+                BatteryUsageSlot.newBuilder()
+                        .setStartTimestamp(batteryHistoryKeys[0])
+                        .setEndTimestamp(batteryHistoryKeys[2])
+                        .build();
+
+        assertThat(
+                        DataProcessor.getFirstUncachedSlotTimestamp(
+                                batteryLevelData.getHourlyBatteryLevelsPerDay(),
+                                Map.of(batteryHistoryKeys[0], cachedBatteryUsageSlot)))
+                .isNull();
+    }
+
+    @Test
+    public void getFirstUncachedSlotTimestamp_slotNotCached_returnsSlotStart() {
+        final long[] batteryHistoryKeys =
+                new long[] {
+                    1641045600000L, // 2022-01-01 22:00:00
+                    1641049200000L, // 2022-01-01 23:00:00
+                    1641052800000L, // 2022-01-02 00:00:00
+                };
+        final BatteryLevelData batteryLevelData = generateBatteryLevelData(batteryHistoryKeys);
+        final BatteryUsageSlot cachedBatteryUsageSlot =
+                BatteryUsageSlot.newBuilder()
+                        .setStartTimestamp(batteryHistoryKeys[0])
+                        .setEndTimestamp(batteryHistoryKeys[1])
+                        .build();
+
+        assertThat(
+                        DataProcessor.getFirstUncachedSlotTimestamp(
+                                batteryLevelData.getHourlyBatteryLevelsPerDay(),
+                                Map.of(batteryHistoryKeys[0], cachedBatteryUsageSlot)))
+                .isEqualTo(batteryHistoryKeys[0]);
+        assertThat(
+                        DataProcessor.getFirstUncachedSlotTimestamp(
+                                batteryLevelData.getHourlyBatteryLevelsPerDay(),
+                                /* cachedBatteryUsageSlotMap= */ null))
+                .isEqualTo(batteryHistoryKeys[0]);
+    }
+
     @Test
     public void generateBatteryUsageMap_returnsExpectedResult() {
         final long[] batteryHistoryKeys =
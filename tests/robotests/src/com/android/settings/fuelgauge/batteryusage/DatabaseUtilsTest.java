@@ -24,6 +24,7 @@ import static com.google.common.truth.Truth.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.verify;
@@ -31,6 +32,7 @@ import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
 import android.app.usage.IUsageStatsManager;
+import android.content.ContentProviderOperation;
 import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.Context;
@@ -44,14 +46,22 @@ import android.os.BatteryUsageStats;
 import android.os.RemoteException;
 import android.os.UserHandle;
 import android.os.UserManager;
+import android.util.Base64;
+
+import androidx.sqlite.db.SupportSQLiteDatabase;
 
 import com.android.settings.fuelgauge.batteryusage.db.AppUsageEventEntity;
 import com.android.settings.fuelgauge.batteryusage.db.BatteryEventEntity;
+import com.android.settings.fuelgauge.batteryusage.db.BatteryState;
+import com.android.settings.fuelgauge.batteryusage.db.BatteryStateDatabase;
+import com.android.settings.fuelgauge.batteryusage.db.BatteryUsageSlotEntity;
 import com.android.settings.testutils.BatteryTestUtils;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.robolectric.RobolectricTestRunner;
@@ -78,6 +88,7 @@ public final class DatabaseUtilsTest {
     @Mock private BatteryEntry mMockBatteryEntry3;
     @Mock private Context mMockContext;
     @Mock private IUsageStatsManager mUsageStatsManager;
+    @Captor private ArgumentCaptor<ArrayList<ContentProviderOperation>> mOperationsCaptor;
 
     @Before
     public void setUp() {
@@ -169,7 +180,7 @@ public final class DatabaseUtilsTest {
     }
 
     @Test
-    public void sendBatteryEntryData_returnsExpectedList() {
+    public void sendBatteryEntryData_returnsExpectedList() throws Exception {
         doReturn(getBatteryIntent()).when(mContext).registerReceiver(any(), any());
         // Configures the testing BatteryEntry data.
         final List<BatteryEntry> batteryEntryList = new ArrayList<>();
@@ -194,15 +205,21 @@ public final class DatabaseUtilsTest {
         verifyBatteryEntryContentValues(0.5, valuesList.get(0));
         verifyBatteryEntryContentValues(0.0, valuesList.get(1));
         // Verifies the inserted ContentValues into content provider.
-        final ContentValues[] valuesArray =
-                new ContentValues[] {valuesList.get(0), valuesList.get(1)};
-        verify(mMockContentResolver).bulkInsert(DatabaseUtils.BATTERY_CONTENT_URI, valuesArray);
+        verify(mMockContentResolver)
+                .applyBatch(eq(DatabaseUtils.AUTHORITY), mOperationsCaptor.capture());
+        final List<ContentProviderOperation> operations = mOperationsCaptor.getValue();
+        assertThat(operations).hasSize(2);
+        for (ContentProviderOperation operation : operations) {
+            assertThat(operation.isInsert()).isTrue();
+            assertThat(operation.getUri()).isEqualTo(DatabaseUtils.BATTERY_CONTENT_URI);
+        }
         verify(mMockContentResolver)
                 .notifyChange(DatabaseUtils.BATTERY_CONTENT_URI, /* observer= */ null);
     }
 
     @Test
-    public void sendBatteryEntryData_emptyBatteryEntryList_sendFakeDataIntoProvider() {
+    public void sendBatteryEntryData_emptyBatteryEntryList_sendFakeDataIntoProvider()
+            throws Exception {
         doReturn(getBatteryIntent()).when(mContext).registerReceiver(any(), any());
 
         final List<ContentValues> valuesList =
@@ -216,13 +233,14 @@ public final class DatabaseUtilsTest {
         assertThat(valuesList).hasSize(1);
         verifyFakeBatteryEntryContentValues(valuesList.get(0));
         // Verifies the inserted ContentValues into content provider.
-        verify(mMockContentResolver).insert(any(), any());
+        verify(mMockContentResolver).applyBatch(eq(DatabaseUtils.AUTHORITY), any());
         verify(mMockContentResolver)
                 .notifyChange(DatabaseUtils.BATTERY_CONTENT_URI, /* observer= */ null);
     }
 
     @Test
-    public void sendBatteryEntryData_nullBatteryEntryList_sendFakeDataIntoProvider() {
+    public void sendBatteryEntryData_nullBatteryEntryList_sendFakeDataIntoProvider()
+            throws Exception {
         doReturn(getBatteryIntent()).when(mContext).registerReceiver(any(), any());
 
         final List<ContentValues> valuesList =
@@ -236,13 +254,14 @@ public final class DatabaseUtilsTest {
         assertThat(valuesList).hasSize(1);
         verifyFakeBatteryEntryContentValues(valuesList.get(0));
         // Verifies the inserted ContentValues into content provider.
-        verify(mMockContentResolver).insert(any(), any());
+        verify(mMockContentResolver).applyBatch(eq(DatabaseUtils.AUTHORITY), any());
         verify(mMockContentResolver)
                 .notifyChange(DatabaseUtils.BATTERY_CONTENT_URI, /* observer= */ null);
     }
 
     @Test
-    public void sendBatteryEntryData_nullBatteryUsageStats_sendFakeDataIntoProvider() {
+    public void sendBatteryEntryData_nullBatteryUsageStats_sendFakeDataIntoProvider()
+            throws Exception {
         doReturn(getBatteryIntent()).when(mContext).registerReceiver(any(), any());
 
         final List<ContentValues> valuesList =
@@ -256,7 +275,37 @@ public final class DatabaseUtilsTest {
         assertThat(valuesList).hasSize(1);
         verifyFakeBatteryEntryContentValues(valuesList.get(0));
         // Verifies the inserted ContentValues into content provider.
-        verify(mMockContentResolver).insert(any(), any());
+        verify(mMockContentResolver).applyBatch(eq(DatabaseUtils.AUTHORITY), any());
+        verify(mMockContentResolver)
+                .notifyChange(DatabaseUtils.BATTERY_CONTENT_URI, /* observer= */ null);
+    }
+
+    @Test
+    public void sendBatteryEntryData_withBatteryEvent_insertsEventInSameBatch() throws Exception {
+        doReturn(getBatteryIntent()).when(mContext).registerReceiver(any(), any());
+        final BatteryEvent batteryEvent =
+                BatteryEvent.newBuilder()
+                        .setTimestamp(10001L)
+                        .setType(BatteryEventType.FULL_CHARGED)
+                        .setBatteryLevel(100)
+                        .build();
+
+        DatabaseUtils.sendBatteryEntryData(
+                mContext,
+                System.currentTimeMillis(),
+                /* batteryEntryList= */ null,
+                mBatteryUsageStats,
+                /* isFullChargeStart= */ true,
+                batteryEvent);
+
+        verify(mMockContentResolver)
+                .applyBatch(eq(DatabaseUtils.AUTHORITY), mOperationsCaptor.capture());
+        final List<ContentProviderOperation> operations = mOperationsCaptor.getValue();
+        assertThat(operations).hasSize(2);
+        assertThat(operations.get(0).getUri()).isEqualTo(DatabaseUtils.BATTERY_EVENT_URI);
+        assertThat(operations.get(1).getUri()).isEqualTo(DatabaseUtils.BATTERY_CONTENT_URI);
+        verify(mMockContentResolver)
+                .notifyChange(DatabaseUtils.BATTERY_EVENT_URI, /* observer= */ null);
         verify(mMockContentResolver)
                 .notifyChange(DatabaseUtils.BATTERY_CONTENT_URI, /* observer= */ null);
     }
@@ -305,6 +354,46 @@ public final class DatabaseUtilsTest {
                 .isEqualTo(earliestTimestamp2);
     }
 
+    @Test
+    public void visitRowsFromContentProvider_visitsEachRowInOrder() {
+        final MatrixCursor cursor =
+                new MatrixCursor(
+                        new String[] {
+                            AppUsageEventEntity.KEY_UID, AppUsageEventEntity.KEY_TIMESTAMP
+                        });
+        cursor.addRow(new Object[] {101L, 1001L});
+        cursor.addRow(new Object[] {102L, 1002L});
+        DatabaseUtils.sFakeSupplier = () -> cursor;
+        final List<Long> timestamps = new ArrayList<>();
+
+        final int size =
+                DatabaseUtils.visitRowsFromContentProvider(
+                        mContext,
+                        DatabaseUtils.APP_USAGE_EVENT_URI,
+                        row ->
+                                timestamps.add(
+                                        row.getLong(
+                                                row.getColumnIndex(
+                                                        AppUsageEventEntity.KEY_TIMESTAMP))));
+
+        assertThat(size).isEqualTo(2);
+        assertThat(timestamps).containsExactly(1001L, 1002L).inOrder();
+    }
+
+    @Test
+    public void visitRowsFromContentProvider_nullCursor_visitsNothing() {
+        DatabaseUtils.sFakeSupplier = () -> null;
+
+        assertThat(
+                        DatabaseUtils.visitRowsFromContentProvider(
+                                mContext,
+                                DatabaseUtils.APP_USAGE_EVENT_URI,
+                                row -> {
+                                    throw new AssertionError("unexpected row");
+                                }))
+                .isEqualTo(0);
+    }
+
     @Test
     public void getAppUsageEventForUsers_emptyCursorContent_returnEmptyMap() {
         final MatrixCursor cursor =
@@ -556,6 +645,162 @@ public final class DatabaseUtilsTest {
         verify(mContext).createPackageContextAsUser(anyString(), anyInt(), any());
     }
 
+    @Test
+    public void convertLegacyEncodedData_legacyRows_convertedIntoRawBytes() {
+        final BatteryStateDatabase database = BatteryTestUtils.setUpBatteryStateDatabase(mContext);
+        final BatteryInformation batteryInformation =
+                BatteryInformation.newBuilder().setAppLabel("Settings").build();
+        final BatteryUsageSlot batteryUsageSlot =
+                BatteryUsageSlot.newBuilder().setStartTimestamp(100L).build();
+        final SupportSQLiteDatabase sqliteDatabase =
+                database.getOpenHelper().getWritableDatabase();
+        sqliteDatabase.execSQL(
+                "INSERT INTO BatteryState (uid, userId, packageName, timestamp, consumerType,"
+                        + " isFullChargeCycleStart, batteryInformation) VALUES"
+                        + " (1001, 0, 'com.android.settings', 100, 1, 0, ?)",
+                new Object[] {ConvertUtils.convertBatteryInformationToString(batteryInformation)});
+        sqliteDatabase.execSQL(
+                "INSERT INTO BatteryUsageSlotEntity (timestamp, batteryUsageSlot) VALUES (100, ?)",
+                new Object[] {
+                    Base64.encodeToString(batteryUsageSlot.toByteArray(), Base64.DEFAULT)
+                });
+
+        assertThat(DatabaseUtils.convertLegacyEncodedData(database)).isEqualTo(2);
+
+        assertThat(database.batteryStateDao().getAllAfter(0).get(0).batteryInformation)
+                .isEqualTo(batteryInformation.toByteArray());
+        assertThat(database.batteryUsageSlotDao().getAll().get(0).batteryUsageSlot)
+                .isEqualTo(batteryUsageSlot.toByteArray());
+        assertThat(DatabaseUtils.convertLegacyEncodedData(database)).isEqualTo(0);
+        database.close();
+        BatteryStateDatabase.setBatteryStateDatabase(/* database= */ null);
+    }
+
+    @Test
+    public void ensureLegacyEncodedDataConverted_legacyRows_parsedFromEntities() {
+        final BatteryStateDatabase database = BatteryTestUtils.setUpBatteryStateDatabase(mContext);
+        final BatteryInformation batteryInformation =
+                BatteryInformation.newBuilder().setAppLabel("Settings").build();
+        database.getOpenHelper()
+                .getWritableDatabase()
+                .execSQL(
+                        "INSERT INTO BatteryState (uid, userId, packageName, timestamp,"
+                                + " consumerType, isFullChargeCycleStart, batteryInformation)"
+                                + " VALUES (1001, 0, 'com.android.settings', 100, 1, 0, ?)",
+                        new Object[] {
+                            ConvertUtils.convertBatteryInformationToString(batteryInformation)
+                        });
+
+        assertThat(DatabaseUtils.ensureLegacyEncodedDataConverted(mContext)).isTrue();
+
+        assertThat(database.batteryStateDao().getAllAfter(0).get(0).toString())
+                .contains("Settings");
+        assertThat(
+                        DatabaseUtils.getSharedPreferences(mContext)
+                                .getBoolean(DatabaseUtils.KEY_LEGACY_ENCODED_DATA_CONVERTED, false))
+                .isTrue();
+        database.close();
+        BatteryStateDatabase.setBatteryStateDatabase(/* database= */ null);
+    }
+
+    @Test
+    public void compactBatteryStates_aggregatedSlots_compactsInnerTimestamps() throws Exception {
+        final BatteryStateDatabase database = BatteryTestUtils.setUpBatteryStateDatabase(mContext);
+        insertBatteryUsageSlot(database, /* startTimestamp= */ 100L, /* endTimestamp= */ 200L);
+        insertBatteryUsageSlot(database, /* startTimestamp= */ 200L, /* endTimestamp= */ 300L);
+        for (long timestamp = 100L; timestamp <= 300L; timestamp += 50L) {
+            insertBatteryStates(database, timestamp);
+        }
+
+        assertThat(DatabaseUtils.compactBatteryStates(database, /* horizonTimestamp= */ 1000L))
+                .isEqualTo(3);
+
+        final List<BatteryState> batteryStates = database.batteryStateDao().getAllAfter(0L);
+        assertThat(batteryStates).hasSize(7);
+        for (BatteryState batteryState : batteryStates) {
+            if (batteryState.timestamp == 100L || batteryState.timestamp == 300L) {
+                assertThat(batteryState.packageName).isNotEqualTo(ConvertUtils.FAKE_PACKAGE_NAME);
+                continue;
+            }
+            final BatteryInformation batteryInformation =
+                    BatteryInformation.parseFrom(batteryState.batteryInformation);
+            assertThat(batteryState.packageName).isEqualTo(ConvertUtils.FAKE_PACKAGE_NAME);
+            assertThat(batteryInformation.getDeviceBatteryState().getBatteryLevel())
+                    .isEqualTo((int) (batteryState.timestamp / 10));
+            assertThat(batteryInformation.getConsumePower()).isEqualTo(0.0);
+        }
+        // The compacted timestamps are not compacted again.
+        assertThat(DatabaseUtils.compactBatteryStates(database, /* horizonTimestamp= */ 1000L))
+                .isEqualTo(0);
+        database.close();
+        BatteryStateDatabase.setBatteryStateDatabase(/* database= */ null);
+    }
+
+    @Test
+    public void compactBatteryStates_slotAfterHorizon_keepsBatteryStates() {
+        final BatteryStateDatabase database = BatteryTestUtils.setUpBatteryStateDatabase(mContext);
+        insertBatteryUsageSlot(database, /* startTimestamp= */ 100L, /* endTimestamp= */ 200L);
+        insertBatteryUsageSlot(database, /* startTimestamp= */ 200L, /* endTimestamp= */ 300L);
+        for (long timestamp = 100L; timestamp <= 300L; timestamp += 50L) {
+            insertBatteryStates(database, timestamp);
+        }
+
+        assertThat(DatabaseUtils.compactBatteryStates(database, /* horizonTimestamp= */ 250L))
+                .isEqualTo(1);
+
+        assertThat(database.batteryStateDao().getAllAfter(0L)).hasSize(9);
+        database.close();
+        BatteryStateDatabase.setBatteryStateDatabase(/* database= */ null);
+    }
+
+    @Test
+    public void compactBatteryStates_noSlots_keepsBatteryStates() {
+        final BatteryStateDatabase database = BatteryTestUtils.setUpBatteryStateDatabase(mContext);
+        for (long timestamp = 100L; timestamp <= 300L; timestamp += 50L) {
+            insertBatteryStates(database, timestamp);
+        }
+
+        assertThat(DatabaseUtils.compactBatteryStates(database, /* horizonTimestamp= */ 1000L))
+                .isEqualTo(0);
+
+        assertThat(database.batteryStateDao().getAllAfter(0L)).hasSize(10);
+        database.close();
+        BatteryStateDatabase.setBatteryStateDatabase(/* database= */ null);
+    }
+
+    private static void insertBatteryUsageSlot(
+            BatteryStateDatabase database, long startTimestamp, long endTimestamp) {
+        database.batteryUsageSlotDao()
+                .insert(
+                        new BatteryUsageSlotEntity(
+                                startTimestamp,
+                                BatteryUsageSlot.newBuilder()
+                                        .setStartTimestamp(startTimestamp)
+                                        .setEndTimestamp(endTimestamp)
+                                        .build()
+                                        .toByteArray()));
+    }
+
+    private static void insertBatteryStates(BatteryStateDatabase database, long timestamp) {
+        for (String packageName : List.of("com.android.settings", "com.android.systemui")) {
+            database.batteryStateDao()
+                    .insert(
+                            BatteryState.newBuilder()
+                                    .setPackageName(packageName)
+                                    .setTimestamp(timestamp)
+                                    .setBatteryInformation(
+                                            BatteryInformation.newBuilder()
+                                                    .setDeviceBatteryState(
+                                                            DeviceBatteryState.newBuilder()
+                                                                    .setBatteryLevel(
+                                                                            (int) (timestamp / 10)))
+                                                    .setConsumePower(1.5)
+                                                    .build()
+                                                    .toByteArray())
+                                    .build());
+        }
+    }
+
     private static void verifyBatteryEntryContentValues(
             double consumedPower, ContentValues values) {
         final BatteryInformation batteryInformation =
@@ -18,6 +18,8 @@ package com.android.settings.fuelgauge.batteryusage;
 import static com.android.settings.fuelgauge.batteryusage.PowerUsageBase.KEY_INCLUDE_HISTORY;
 import static com.android.settings.fuelgauge.batteryusage.PowerUsageBase.KEY_REFRESH_TYPE;
 
+import static com.google.common.truth.Truth.assertThat;
+
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.eq;
@@ -53,7 +55,9 @@ import java.util.List;
 public class PowerUsageBaseTest {
 
     @Mock private LoaderManager mLoaderManager;
-    @Mock private Loader<BatteryUsageStats> mBatteryUsageStatsLoader;
+    @Mock private Loader<BatteryUsageStatsCache.Snapshot> mBatteryUsageStatsLoader;
+    @Mock private BatteryUsageStats mBatteryUsageStats;
+    @Mock private BatteryUsageStats mNewBatteryUsageStats;
     private TestFragment mFragment;
 
     @Before
@@ -129,6 +133,50 @@ public class PowerUsageBaseTest {
                         any());
     }
 
+    @Test
+    public void restartBatteryStatsLoader_beforeDelivery_keepsLoadedStatsOpen() throws Exception {
+        final TestFragment fragment = new TestFragment(mLoaderManager);
+        doReturn(mBatteryUsageStatsLoader)
+                .when(mLoaderManager)
+                .getLoader(PowerUsageBase.LoaderIndex.BATTERY_USAGE_STATS_LOADER);
+        fragment.mBatteryUsageStatsLoaderCallbacks.onLoadFinished(
+                mBatteryUsageStatsLoader,
+                BatteryUsageStatsCache.Snapshot.createUncached(mBatteryUsageStats));
+
+        fragment.restartBatteryStatsLoader(
+                BatteryBroadcastReceiver.BatteryUpdateType.BATTERY_STATUS);
+
+        assertThat(fragment.mBatteryUsageStats).isSameInstanceAs(mBatteryUsageStats);
+        verify(mBatteryUsageStats, never()).close();
+    }
+
+    @Test
+    public void onLoadFinished_newSnapshot_leavesPreviousSnapshotToLoader() throws Exception {
+        final TestFragment fragment = new TestFragment(mLoaderManager);
+        fragment.mBatteryUsageStatsLoaderCallbacks.onLoadFinished(
+                mBatteryUsageStatsLoader,
+                BatteryUsageStatsCache.Snapshot.createUncached(mBatteryUsageStats));
+
+        fragment.mBatteryUsageStatsLoaderCallbacks.onLoadFinished(
+                mBatteryUsageStatsLoader,
+                BatteryUsageStatsCache.Snapshot.createUncached(mNewBatteryUsageStats));
+
+        assertThat(fragment.mBatteryUsageStats).isSameInstanceAs(mNewBatteryUsageStats);
+        verify(mBatteryUsageStats, never()).close();
+    }
+
+    @Test
+    public void onLoaderReset_clearsLoadedStats() {
+        final TestFragment fragment = new TestFragment(mLoaderManager);
+        fragment.mBatteryUsageStatsLoaderCallbacks.onLoadFinished(
+                mBatteryUsageStatsLoader,
+                BatteryUsageStatsCache.Snapshot.createUncached(mBatteryUsageStats));
+
+        fragment.mBatteryUsageStatsLoaderCallbacks.onLoaderReset(mBatteryUsageStatsLoader);
+
+        assertThat(fragment.mBatteryUsageStats).isNull();
+    }
+
     private static class TestFragment extends PowerUsageBase {
 
         private LoaderManager mLoaderManager;
@@ -0,0 +1,262 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.fuelgauge.batteryusage.db;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth.assertWithMessage;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.text.format.DateUtils;
+
+import androidx.room.Room;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.test.core.app.ApplicationProvider;
+
+import com.android.settings.fuelgauge.batteryusage.BatteryInformation;
+import com.android.settings.testutils.BatteryTestUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Verifies the query plans of {@link BatteryStateDatabase} use the declared indices over a
+ * synthetic 7-day dataset, and that databases of version 3 are migrated to them.
+ */
+@RunWith(RobolectricTestRunner.class)
+public final class BatteryStateDatabaseIndexTest {
+    private static final int DATASET_DAYS = 7;
+    private static final int PACKAGE_SIZE = 30;
+    private static final int USER_SIZE = 2;
+    private static final long START_TIMESTAMP = 1700000000000L;
+    private static final long END_TIMESTAMP =
+            START_TIMESTAMP + DATASET_DAYS * DateUtils.DAY_IN_MILLIS;
+    private static final long QUERY_TIMESTAMP = END_TIMESTAMP - DateUtils.DAY_IN_MILLIS;
+    private static final String MIGRATION_DB_NAME = "battery-usage-migration-test";
+    private static final String[] INDEX_NAMES = {
+        "index_AppUsageEventEntity_timestamp",
+        "index_AppUsageEventEntity_userId_timestamp",
+        "index_BatteryEventEntity_timestamp",
+        "index_BatteryEventEntity_batteryEventType_timestamp",
+        "index_BatteryState_timestamp",
+        "index_BatteryUsageSlotEntity_timestamp"
+    };
+    /** The tables of version 3, as created by Room before the indices were declared. */
+    private static final String[] VERSION_3_TABLES = {
+        "CREATE TABLE IF NOT EXISTS `AppUsageEventEntity` (`mId` INTEGER PRIMARY KEY"
+                + " AUTOINCREMENT NOT NULL, `uid` INTEGER NOT NULL, `userId` INTEGER NOT NULL,"
+                + " `timestamp` INTEGER NOT NULL, `appUsageEventType` INTEGER NOT NULL,"
+                + " `packageName` TEXT, `instanceId` INTEGER NOT NULL,"
+                + " `taskRootPackageName` TEXT)",
+        "CREATE TABLE IF NOT EXISTS `BatteryEventEntity` (`mId` INTEGER PRIMARY KEY"
+                + " AUTOINCREMENT NOT NULL, `timestamp` INTEGER NOT NULL,"
+                + " `batteryEventType` INTEGER NOT NULL, `batteryLevel` INTEGER NOT NULL)",
+        "CREATE TABLE IF NOT EXISTS `BatteryState` (`mId` INTEGER PRIMARY KEY AUTOINCREMENT"
+                + " NOT NULL, `uid` INTEGER NOT NULL, `userId` INTEGER NOT NULL,"
+                + " `packageName` TEXT, `timestamp` INTEGER NOT NULL, `consumerType` INTEGER"
+                + " NOT NULL, `isFullChargeCycleStart` INTEGER NOT NULL,"
+                + " `batteryInformation` BLOB, `batteryInformationDebug` TEXT)",
+        "CREATE TABLE IF NOT EXISTS `BatteryUsageSlotEntity` (`mId` INTEGER PRIMARY KEY"
+                + " AUTOINCREMENT NOT NULL, `timestamp` INTEGER NOT NULL,"
+                + " `batteryUsageSlot` BLOB)",
+        "CREATE TABLE IF NOT EXISTS `BatteryReattributeEntity` (`timestampStart` INTEGER NOT"
+                + " NULL, `timestampEnd` INTEGER NOT NULL, `reattributeData` TEXT,"
+                + " PRIMARY KEY(`timestampStart`))"
+    };
+
+    private Context mContext;
+    private BatteryStateDatabase mDatabase;
+    private SupportSQLiteDatabase mSqliteDatabase;
+
+    @Before
+    public void setUp() {
+        mContext = ApplicationProvider.getApplicationContext();
+        mDatabase = BatteryTestUtils.setUpBatteryStateDatabase(mContext);
+        mSqliteDatabase = mDatabase.getOpenHelper().getWritableDatabase();
+        mDatabase.runInTransaction(this::insertSyntheticDataset);
+    }
+
+    @After
+    public void closeDb() {
+        mDatabase.close();
+        BatteryStateDatabase.setBatteryStateDatabase(/* database= */ null);
+        mContext.deleteDatabase(MIGRATION_DB_NAME);
+    }
+
+    @Test
+    public void batteryStateQueries_useTimestampIndex() {
+        assertUsingIndex(
+                "SELECT * FROM BatteryState WHERE timestamp >= ? ORDER BY timestamp ASC",
+                "index_BatteryState_timestamp");
+        assertUsingIndex(
+                "SELECT MAX(timestamp) FROM BatteryState WHERE timestamp <= ?",
+                "index_BatteryState_timestamp");
+        assertUsingIndex(
+                "SELECT DISTINCT timestamp FROM BatteryState WHERE timestamp > ?",
+                "index_BatteryState_timestamp");
+    }
+
+    @Test
+    public void appUsageEventQueries_useUserIdTimestampIndex() {
+        assertUsingIndex(
+                "SELECT * FROM AppUsageEventEntity WHERE timestamp >= ?"
+                        + " AND userId IN (0, 10) ORDER BY timestamp ASC",
+                "index_AppUsageEventEntity_");
+        assertUsingIndex(
+                "SELECT MAX(timestamp) as timestamp FROM AppUsageEventEntity WHERE userId = 0",
+                "index_AppUsageEventEntity_userId_timestamp");
+    }
+
+    @Test
+    public void batteryEventQueries_useEventTypeTimestampIndex() {
+        assertUsingIndex(
+                "SELECT MAX(timestamp) FROM BatteryEventEntity WHERE batteryEventType = 3",
+                "index_BatteryEventEntity_batteryEventType_timestamp");
+        assertUsingIndex(
+                "SELECT * FROM BatteryEventEntity WHERE timestamp >= ?"
+                        + " AND batteryEventType IN (3, 4) ORDER BY timestamp DESC",
+                "index_BatteryEventEntity_");
+    }
+
+    @Test
+    public void batteryUsageSlotQueries_useTimestampIndex() {
+        assertUsingIndex(
+                "SELECT * FROM BatteryUsageSlotEntity WHERE timestamp >= ?"
+                        + " ORDER BY timestamp ASC",
+                "index_BatteryUsageSlotEntity_timestamp");
+    }
+
+    @Test
+    public void migration_3_4_createsAllIndices() {
+        final SQLiteDatabase version3Database =
+                mContext.openOrCreateDatabase(
+                        MIGRATION_DB_NAME, Context.MODE_PRIVATE, /* factory= */ null);
+        for (String table : VERSION_3_TABLES) {
+            version3Database.execSQL(table);
+        }
+        version3Database.execSQL(
+                "INSERT INTO `BatteryState` (`uid`, `userId`, `packageName`, `timestamp`,"
+                        + " `consumerType`, `isFullChargeCycleStart`) VALUES"
+                        + " (10001, 0, 'com.android.settings', 1000, 1, 0)");
+        version3Database.setVersion(3);
+        version3Database.close();
+
+        // Opening runs the migration, then Room fails the open if the schema doesn't match
+        // the entities, including their declared indices.
+        final BatteryStateDatabase migratedDatabase =
+                Room.databaseBuilder(mContext, BatteryStateDatabase.class, MIGRATION_DB_NAME)
+                        .allowMainThreadQueries()
+                        .addMigrations(BatteryStateDatabase.MIGRATION_3_4)
+                        .build();
+        try {
+            final SupportSQLiteDatabase database =
+                    migratedDatabase.getOpenHelper().getWritableDatabase();
+
+            assertThat(database.getVersion()).isEqualTo(4);
+            assertThat(getIndexNames(database)).containsAtLeastElementsIn(INDEX_NAMES);
+            assertThat(migratedDatabase.batteryStateDao().getAllAfter(/* timestamp= */ 0))
+                    .hasSize(1);
+        } finally {
+            migratedDatabase.close();
+        }
+    }
+
+    private void insertSyntheticDataset() {
+        final byte[] batteryInformation =
+                BatteryInformation.newBuilder()
+                        .setAppLabel("Settings")
+                        .setConsumePower(0.3)
+                        .setForegroundUsageTimeInMs(60000)
+                        .build()
+                        .toByteArray();
+        final List<BatteryState> states = new ArrayList<>();
+        final List<AppUsageEventEntity> events = new ArrayList<>();
+        for (long timestamp = START_TIMESTAMP;
+                timestamp < END_TIMESTAMP;
+                timestamp += DateUtils.HOUR_IN_MILLIS) {
+            for (int index = 0; index < PACKAGE_SIZE; index++) {
+                final String packageName = "com.android.package" + index;
+                final long userId = (index % USER_SIZE) * 10L;
+                states.add(
+                        new BatteryState(
+                                /* uid= */ 10000L + index,
+                                userId,
+                                packageName,
+                                timestamp,
+                                /* consumerType= */ 1,
+                                /* isFullChargeCycleStart= */ false,
+                                batteryInformation,
+                                /* batteryInformationDebug= */ ""));
+                events.add(
+                        new AppUsageEventEntity(
+                                /* uid= */ 10000L + index,
+                                userId,
+                                timestamp + index * DateUtils.MINUTE_IN_MILLIS,
+                                /* appUsageEventType= */ 1,
+                                packageName,
+                                /* instanceId= */ index,
+                                packageName));
+            }
+            mDatabase
+                    .batteryEventDao()
+                    .insert(
+                            new BatteryEventEntity(
+                                    timestamp, /* batteryEventType= */ 4, /* batteryLevel= */ 50));
+            mDatabase
+                    .batteryUsageSlotDao()
+                    .insert(new BatteryUsageSlotEntity(timestamp, new byte[0]));
+        }
+        mDatabase.batteryStateDao().insertAll(states);
+        mDatabase.appUsageEventDao().insertAll(events);
+    }
+
+    private void assertUsingIndex(String query, String expectedIndexName) {
+        final StringBuilder queryPlan = new StringBuilder();
+        try (Cursor cursor =
+                mSqliteDatabase.query("EXPLAIN QUERY PLAN " + query, bindArgs(query))) {
+            final int detailIndex = cursor.getColumnIndex("detail");
+            while (cursor.moveToNext()) {
+                queryPlan.append(cursor.getString(detailIndex)).append('\n');
+            }
+        }
+        assertWithMessage(query).that(queryPlan.toString()).contains(expectedIndexName);
+    }
+
+    private static List<String> getIndexNames(SupportSQLiteDatabase database) {
+        final List<String> indexNames = new ArrayList<>();
+        try (Cursor cursor =
+                database.query(
+                        "SELECT name FROM sqlite_master WHERE type = 'index'"
+                                + " AND name LIKE 'index_%'")) {
+            while (cursor.moveToNext()) {
+                indexNames.add(cursor.getString(/* columnIndex= */ 0));
+            }
+        }
+        return indexNames;
+    }
+
+    private static Object[] bindArgs(String query) {
+        return query.contains("?") ? new Object[] {QUERY_TIMESTAMP} : new Object[0];
+    }
+}
@@ -29,16 +29,16 @@ public final class BatteryUsageSlotEntityTest {
     @Test
     public void testBuilder_returnsExpectedResult() {
         final long timestamp = 10001L;
-        final String batteryUsageSlotString = "batteryUsageSlotString";
+        final byte[] batteryUsageSlotBytes = "batteryUsageSlotBytes".getBytes();
 
         BatteryUsageSlotEntity entity =
                 BatteryUsageSlotEntity.newBuilder()
                         .setTimestamp(timestamp)
-                        .setBatteryUsageSlot(batteryUsageSlotString)
+                        .setBatteryUsageSlot(batteryUsageSlotBytes)
                         .build();
 
         // Verifies the app relative information.
         assertThat(entity.timestamp).isEqualTo(timestamp);
-        assertThat(entity.batteryUsageSlot).isEqualTo(batteryUsageSlotString);
+        assertThat(entity.batteryUsageSlot).isEqualTo(batteryUsageSlotBytes);
     }
 }
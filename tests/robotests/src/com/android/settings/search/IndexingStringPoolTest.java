@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.search;
+
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_CONTROLLER;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_ICON;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_TITLE;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Context;
+import android.os.Bundle;
+
+import com.android.settingslib.search.SearchIndexableRaw;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+@RunWith(RobolectricTestRunner.class)
+public class IndexingStringPoolTest {
+
+    private static final int PROVIDER_SIZE = 150;
+    private static final int RAWS_PER_PROVIDER = 30;
+
+    private Context mContext;
+    private IndexingStringPool mPool;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        mPool = new IndexingStringPool();
+    }
+
+    @Test
+    public void intern_equalStrings_returnsFirstInstance() {
+        final String first = new String("com.android.settings.DisplaySettings");
+        final String second = new String("com.android.settings.DisplaySettings");
+
+        assertThat(mPool.intern(first)).isSameInstanceAs(first);
+        assertThat(mPool.intern(second)).isSameInstanceAs(first);
+        assertThat(mPool.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void intern_null_returnsNull() {
+        assertThat(mPool.intern(null)).isNull();
+        assertThat(mPool.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void internMetadata_sharesRepeatedValues() {
+        final Bundle first = createMetadata(new String("title"), new String("controller"));
+        final Bundle second = createMetadata(new String("title"), new String("controller"));
+
+        mPool.internMetadata(Arrays.asList(first, second));
+
+        assertThat(second.getString(METADATA_CONTROLLER))
+                .isSameInstanceAs(first.getString(METADATA_CONTROLLER));
+        assertThat(second.getString(METADATA_TITLE))
+                .isNotSameInstanceAs(first.getString(METADATA_TITLE));
+        assertThat(second.getInt(METADATA_ICON)).isEqualTo(1);
+        assertThat(mPool.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void internRaw_sharesRepeatedFields() {
+        final SearchIndexableRaw first = createRaw(0, 0);
+        final SearchIndexableRaw second = createRaw(0, 1);
+
+        mPool.internRaw(first);
+        mPool.internRaw(second);
+
+        assertThat(second.screenTitle).isSameInstanceAs(first.screenTitle);
+        assertThat(second.className).isSameInstanceAs(first.className);
+        assertThat(second.intentTargetPackage).isSameInstanceAs(first.intentTargetPackage);
+        assertThat(second.title).isNotSameInstanceAs(first.title);
+    }
+
+    @Test
+    public void internRaw_fullIndex_keepsOneInstanceOfEachRepeatedValue() {
+        final List<SearchIndexableRaw> raws = new ArrayList<>();
+        for (int i = 0; i < PROVIDER_SIZE; i++) {
+            for (int j = 0; j < RAWS_PER_PROVIDER; j++) {
+                final SearchIndexableRaw raw = createRaw(i, j);
+                mPool.internRaw(raw);
+                raws.add(raw);
+            }
+        }
+
+        final Set<String> screenTitles = Collections.newSetFromMap(new IdentityHashMap<>());
+        final Set<String> summaries = Collections.newSetFromMap(new IdentityHashMap<>());
+        final Set<String> packages = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (SearchIndexableRaw raw : raws) {
+            screenTitles.add(raw.screenTitle);
+            summaries.add(raw.summaryOn);
+            packages.add(raw.intentTargetPackage);
+        }
+        assertThat(screenTitles).hasSize(PROVIDER_SIZE);
+        assertThat(summaries).hasSize(RAWS_PER_PROVIDER);
+        assertThat(packages).hasSize(1);
+        // The screen title, class name, intent action and target class of each provider, the
+        // summary and keywords of each index, and the package are pooled once.
+        assertThat(mPool.size()).isEqualTo(PROVIDER_SIZE * 4 + RAWS_PER_PROVIDER * 2 + 1);
+    }
+
+    /**
+     * Creates a raw data like the providers do, which loads the repeated strings of each raw
+     * again from the resources.
+     */
+    private SearchIndexableRaw createRaw(int provider, int index) {
+        final SearchIndexableRaw raw = new SearchIndexableRaw(mContext);
+        raw.key = "key_" + provider + "_" + index;
+        raw.title = "Title " + provider + "_" + index;
+        raw.summaryOn = new StringBuilder("Summary ").append(index).toString();
+        raw.keywords = new StringBuilder("keyword ").append(index).toString();
+        raw.screenTitle = new StringBuilder("Screen ").append(provider).toString();
+        raw.className = new StringBuilder("com.android.settings.FakeSettings").append(provider)
+                .toString();
+        raw.intentAction = new StringBuilder("android.settings.FAKE_").append(provider)
+                .toString();
+        raw.intentTargetPackage = new String(mContext.getPackageName());
+        raw.intentTargetClass = new StringBuilder(raw.className).append("Activity").toString();
+        return raw;
+    }
+
+    private static Bundle createMetadata(String title, String controller) {
+        final Bundle bundle = new Bundle();
+        bundle.putString(METADATA_TITLE, title);
+        bundle.putString(METADATA_CONTROLLER, controller);
+        bundle.putInt(METADATA_ICON, 1);
+        return bundle;
+    }
+}
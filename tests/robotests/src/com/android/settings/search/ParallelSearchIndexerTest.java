@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.search;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.android.settingslib.search.SearchIndexableData;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@RunWith(RobolectricTestRunner.class)
+public class ParallelSearchIndexerTest {
+    private static final int BUNDLE_SIZE = 8;
+
+    private final long mDefaultTimeoutMs = ParallelSearchIndexer.sProviderTimeoutMs;
+
+    @After
+    public void tearDown() {
+        ParallelSearchIndexer.sProviderTimeoutMs = mDefaultTimeoutMs;
+    }
+
+    @Test
+    public void collect_keepsOrderOfBundles() {
+        final List<SearchIndexableData> bundles = createBundles();
+
+        final List<Integer> results =
+                ParallelSearchIndexer.collect(
+                        "test",
+                        bundles,
+                        bundle -> {
+                            final int index = indexOf(bundles, bundle);
+                            // Finishes the later bundles first.
+                            sleep(BUNDLE_SIZE - index);
+                            return index % 3 == 0 ? null : List.of(index, index);
+                        });
+
+        assertThat(results).containsExactly(1, 1, 2, 2, 4, 4, 5, 5, 7, 7).inOrder();
+    }
+
+    @Test
+    public void collect_providerTimedOut_skipsProvider() {
+        ParallelSearchIndexer.sProviderTimeoutMs = 100;
+        final CountDownLatch latch = new CountDownLatch(1);
+        final List<SearchIndexableData> bundles = createBundles();
+
+        final List<Integer> results =
+                ParallelSearchIndexer.collect(
+                        "test",
+                        bundles,
+                        bundle -> {
+                            final int index = indexOf(bundles, bundle);
+                            if (index == 1) {
+                                try {
+                                    latch.await(
+                                            Duration.ofMinutes(1).toMillis(),
+                                            TimeUnit.MILLISECONDS);
+                                } catch (InterruptedException e) {
+                                    Thread.currentThread().interrupt();
+                                }
+                            }
+                            return List.of(index);
+                        });
+        latch.countDown();
+
+        assertThat(results).containsExactly(0, 2, 3, 4, 5, 6, 7).inOrder();
+    }
+
+    @Test
+    public void collect_poolSaturated_timesOutFromProviderStart() {
+        ParallelSearchIndexer.sProviderTimeoutMs = 500;
+        final List<SearchIndexableData> bundles = createBundles();
+
+        final List<Integer> results =
+                ParallelSearchIndexer.collect(
+                        "test",
+                        bundles,
+                        bundle -> {
+                            // Keeps the workers busy, so the queued providers start after the
+                            // timeout of the first ones, but each returns within its own.
+                            sleep(300);
+                            return List.of(indexOf(bundles, bundle));
+                        });
+
+        assertThat(results).containsExactly(0, 1, 2, 3, 4, 5, 6, 7).inOrder();
+    }
+
+    @Test
+    public void collectAll_providerPastTimeout_waitsForProvider() {
+        ParallelSearchIndexer.sProviderTimeoutMs = 100;
+        final List<SearchIndexableData> bundles = createBundles();
+
+        final List<Integer> results =
+                ParallelSearchIndexer.collectAll(
+                        "test",
+                        bundles,
+                        bundle -> {
+                            final int index = indexOf(bundles, bundle);
+                            if (index % 2 == 0) {
+                                sleep(300);
+                            }
+                            return List.of(index);
+                        });
+
+        assertThat(results).containsExactly(0, 1, 2, 3, 4, 5, 6, 7).inOrder();
+    }
+
+    @Test
+    public void collect_providerRunOnce() {
+        final List<SearchIndexableData> bundles = createBundles();
+        final AtomicInteger calls = new AtomicInteger();
+
+        ParallelSearchIndexer.collect(
+                "test",
+                bundles,
+                bundle -> {
+                    calls.incrementAndGet();
+                    sleep(50);
+                    return List.of();
+                });
+
+        assertThat(calls.get()).isEqualTo(BUNDLE_SIZE);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void collect_providerThrowsException_rethrowsException() {
+        final List<SearchIndexableData> bundles = createBundles();
+
+        ParallelSearchIndexer.collect(
+                "test",
+                bundles,
+                bundle -> {
+                    if (indexOf(bundles, bundle) == 2) {
+                        throw new IllegalStateException();
+                    }
+                    return List.of();
+                });
+    }
+
+    private static List<SearchIndexableData> createBundles() {
+        final List<SearchIndexableData> bundles = new ArrayList<>();
+        for (int i = 0; i < BUNDLE_SIZE; i++) {
+            bundles.add(
+                    new SearchIndexableData(
+                            FakeSettingsFragment.class,
+                            FakeSettingsFragment.SEARCH_INDEX_DATA_PROVIDER));
+        }
+        return bundles;
+    }
+
+    private static int indexOf(List<SearchIndexableData> bundles, SearchIndexableData bundle) {
+        for (int i = 0; i < bundles.size(); i++) {
+            if (bundles.get(i) == bundle) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
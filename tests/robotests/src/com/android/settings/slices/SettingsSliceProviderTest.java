@@ -28,6 +28,7 @@ import static com.google.common.truth.Truth.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
@@ -39,9 +40,11 @@ import static org.mockito.Mockito.when;
 import android.app.PendingIntent;
 import android.app.slice.SliceManager;
 import android.content.ContentResolver;
+import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
 import android.content.res.Resources.Theme;
+import android.database.ContentObserver;
 import android.net.Uri;
 import android.os.StrictMode;
 import android.provider.Settings;
@@ -86,7 +89,6 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -149,7 +151,7 @@ public class SettingsSliceProviderTest {
 
         mProvider = spy(new SettingsSliceProvider());
         ShadowStrictMode.reset();
-        mProvider.mSliceWeakDataCache = new HashMap<>();
+        mProvider.mSliceDataCache = new SliceDataCache(SliceDataCache.MAX_SIZE_BYTES);
         mProvider.mSlicesDatabaseAccessor = new SlicesDatabaseAccessor(mContext);
         when(mProvider.getContext()).thenReturn(mContext);
 
@@ -185,12 +187,75 @@ public class SettingsSliceProviderTest {
         SliceTestUtils.insertSliceToDb(mContext, KEY);
 
         mProvider.loadSlice(INTENT_SLICE_URI);
-        SliceData data = mProvider.mSliceWeakDataCache.get(INTENT_SLICE_URI);
+        SliceData data = mProvider.mSliceDataCache.get(INTENT_SLICE_URI);
 
         assertThat(data.getKey()).isEqualTo(KEY);
         assertThat(data.getTitle()).isEqualTo(SliceTestUtils.FAKE_TITLE);
     }
 
+    @Test
+    public void loadSlices_multipleUris_queriesDatabaseOnce() {
+        SliceTestUtils.insertSliceToDb(mContext, KEY);
+        final Uri unknownUri = new Uri.Builder().scheme(SCHEME_CONTENT)
+                .authority(SettingsSliceProvider.SLICE_AUTHORITY)
+                .appendPath(SettingsSlicesContract.PATH_SETTING_ACTION)
+                .appendPath("unknown_key")
+                .build();
+        mProvider.mSlicesDatabaseAccessor = spy(mProvider.mSlicesDatabaseAccessor);
+
+        mProvider.loadSlices(Arrays.asList(INTENT_SLICE_URI, ACTION_SLICE_URI, unknownUri));
+
+        verify(mProvider.mSlicesDatabaseAccessor).getSliceDataFromUris(any());
+        final SliceData intentData = mProvider.mSliceDataCache.get(INTENT_SLICE_URI);
+        final SliceData actionData = mProvider.mSliceDataCache.get(ACTION_SLICE_URI);
+        assertThat(intentData.getKey()).isEqualTo(KEY);
+        assertThat(intentData.getSliceType()).isEqualTo(SliceData.SliceType.INTENT);
+        assertThat(actionData.getKey()).isEqualTo(KEY);
+        assertThat(actionData.getUri()).isEqualTo(ACTION_SLICE_URI);
+        assertThat(mProvider.mSliceDataCache.get(unknownUri)).isNull();
+    }
+
+    @Test
+    public void loadSlices_invalidSliceData_loadsOtherUris() {
+        SliceTestUtils.insertSliceToDb(mContext, KEY);
+        SliceTestUtils.insertSliceToDb(mContext, "invalid_key");
+        final ContentValues values = new ContentValues();
+        values.put(SlicesDatabaseHelper.IndexColumns.TITLE, "");
+        SlicesDatabaseHelper.getInstance(mContext).getWritableDatabase().update(
+                SlicesDatabaseHelper.Tables.TABLE_SLICES_INDEX, values,
+                SlicesDatabaseHelper.IndexColumns.KEY + " = ?", new String[]{"invalid_key"});
+        final Uri invalidUri = new Uri.Builder().scheme(SCHEME_CONTENT)
+                .authority(SettingsSlicesContract.AUTHORITY)
+                .appendPath(SettingsSlicesContract.PATH_SETTING_ACTION)
+                .appendPath("invalid_key")
+                .build();
+
+        mProvider.loadSlices(Arrays.asList(invalidUri, ACTION_SLICE_URI));
+
+        assertThat(mProvider.mSliceDataCache.get(invalidUri)).isNull();
+        assertThat(mProvider.mSliceDataCache.get(ACTION_SLICE_URI).getKey()).isEqualTo(KEY);
+    }
+
+    @Test
+    public void loadSliceInBackground_severalUris_loadsInOneQuery() {
+        SliceTestUtils.insertSliceToDb(mContext, KEY);
+        final List<Runnable> backgroundTasks = new ArrayList<>();
+        mProvider.mBackgroundExecutor = backgroundTasks::add;
+        mProvider.mSlicesDatabaseAccessor = spy(mProvider.mSlicesDatabaseAccessor);
+
+        mProvider.loadSliceInBackground(INTENT_SLICE_URI);
+        mProvider.loadSliceInBackground(ACTION_SLICE_URI);
+        mProvider.loadSliceInBackground(INTENT_SLICE_URI);
+
+        assertThat(backgroundTasks).hasSize(1);
+        backgroundTasks.get(0).run();
+        verify(mProvider.mSlicesDatabaseAccessor).getSliceDataFromUris(argThat(uris ->
+                uris.size() == 2 && uris.containsAll(
+                        Arrays.asList(INTENT_SLICE_URI, ACTION_SLICE_URI))));
+        assertThat(mProvider.mSliceDataCache.get(INTENT_SLICE_URI).getKey()).isEqualTo(KEY);
+        assertThat(mProvider.mSliceDataCache.get(ACTION_SLICE_URI).getKey()).isEqualTo(KEY);
+    }
+
     @Test
     public void loadSlice_registersIntentFilter() {
         SliceTestUtils.insertSliceToDb(mContext, KEY);
@@ -218,11 +283,11 @@ public class SettingsSliceProviderTest {
     @Test
     public void testLoadSlice_cachedEntryRemovedOnUnpinned() {
         SliceData data = getMockData();
-        mProvider.mSliceWeakDataCache.put(data.getUri(), data);
+        cacheSliceData(data);
         mProvider.onSliceUnpinned(data.getUri());
         SliceTestUtils.insertSliceToDb(mContext, data.getKey());
 
-        SliceData cachedData = mProvider.mSliceWeakDataCache.get(data.getUri());
+        SliceData cachedData = mProvider.mSliceDataCache.get(data.getUri());
 
         assertThat(cachedData).isNull();
     }
@@ -232,7 +297,7 @@ public class SettingsSliceProviderTest {
         ShadowThreadUtils.setIsMainThread(true);
         final StrictMode.ThreadPolicy oldThreadPolicy = StrictMode.getThreadPolicy();
         SliceData data = getMockData();
-        mProvider.mSliceWeakDataCache.put(data.getUri(), data);
+        cacheSliceData(data);
         mProvider.onBindSlice(data.getUri());
 
         final StrictMode.ThreadPolicy newThreadPolicy = StrictMode.getThreadPolicy();
@@ -246,7 +311,7 @@ public class SettingsSliceProviderTest {
         ShadowThreadUtils.setIsMainThread(false);
 
         SliceData data = getMockData();
-        mProvider.mSliceWeakDataCache.put(data.getUri(), data);
+        cacheSliceData(data);
         mProvider.onBindSlice(data.getUri());
 
         assertThat(ShadowStrictMode.isThreadPolicyOverridden()).isTrue();
@@ -270,11 +335,38 @@ public class SettingsSliceProviderTest {
         assertThat(slice).isNull();
     }
 
+    @Test
+    public void getBlockedKeys_settingUnchanged_returnsCachedKeys() {
+        Settings.Global.putString(mContext.getContentResolver(), Settings.Global.BLOCKED_SLICES,
+                "key1:key2");
+
+        final Set<String> blockedKeys = mProvider.getBlockedKeys();
+
+        assertThat(blockedKeys).containsExactly("key1", "key2");
+        assertThat(mProvider.getBlockedKeys()).isSameInstanceAs(blockedKeys);
+    }
+
+    @Test
+    public void getBlockedKeys_settingChanged_returnsNewKeys() {
+        final ContentResolver resolver = mContext.getContentResolver();
+        final Uri settingUri = Settings.Global.getUriFor(Settings.Global.BLOCKED_SLICES);
+        Settings.Global.putString(resolver, Settings.Global.BLOCKED_SLICES, "key1");
+        assertThat(mProvider.getBlockedKeys()).containsExactly("key1");
+
+        Settings.Global.putString(resolver, Settings.Global.BLOCKED_SLICES, "key1:key2");
+        for (ContentObserver observer
+                : Shadows.shadowOf(resolver).getContentObservers(settingUri)) {
+            observer.onChange(false /* selfChange */);
+        }
+
+        assertThat(mProvider.getBlockedKeys()).containsExactly("key1", "key2");
+    }
+
     @Test
     public void onBindSlice_nightModeChanged_shouldReloadTheme() {
         mContext.getResources().getConfiguration().uiMode = UI_MODE_NIGHT_NO;
         final SliceData data = getMockData();
-        mProvider.mSliceWeakDataCache.put(data.getUri(), data);
+        cacheSliceData(data);
         mProvider.onBindSlice(data.getUri());
 
         mContext.getResources().getConfiguration().uiMode = UI_MODE_NIGHT_YES;
@@ -287,7 +379,7 @@ public class SettingsSliceProviderTest {
     public void onBindSlice_nightModeNotChanged_shouldNotReloadTheme() {
         mContext.getResources().getConfiguration().uiMode = UI_MODE_NIGHT_NO;
         SliceData data = getMockData();
-        mProvider.mSliceWeakDataCache.put(data.getUri(), data);
+        cacheSliceData(data);
         mProvider.onBindSlice(data.getUri());
 
         mContext.getResources().getConfiguration().uiMode = UI_MODE_NIGHT_NO;
@@ -700,6 +792,11 @@ public class SettingsSliceProviderTest {
         assertThat(mProvider.isPrivateSlicesNeeded(uri)).isFalse();
     }
 
+    private void cacheSliceData(SliceData data) {
+        final SliceDataCache cache = mProvider.mSliceDataCache;
+        cache.put(data.getUri(), data, cache.getGeneration(), 0 /* loadTimeMs */);
+    }
+
     private static SliceData getMockData() {
         return new SliceData.Builder()
                 .setKey(KEY)
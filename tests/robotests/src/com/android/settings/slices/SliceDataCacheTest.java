@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.settings.slices;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+import android.provider.SettingsSlicesContract;
+
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class SliceDataCacheTest {
+
+    private SliceDataCache mCache;
+
+    @Before
+    public void setUp() {
+        mCache = new SliceDataCache(SliceDataCache.MAX_SIZE_BYTES);
+    }
+
+    @Test
+    public void get_countsHitsAndMisses() {
+        final SliceData data = getSliceData("key");
+        mCache.put(data.getUri(), data, mCache.getGeneration(), 0 /* loadTimeMs */);
+
+        assertThat(mCache.get(data.getUri())).isEqualTo(data);
+        assertThat(mCache.get(getSliceData("other_key").getUri())).isNull();
+        assertThat(mCache.getHitCount()).isEqualTo(1);
+        assertThat(mCache.getMissCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void contains_doesNotCountHits() {
+        final SliceData data = getSliceData("key");
+        mCache.put(data.getUri(), data, mCache.getGeneration(), 0 /* loadTimeMs */);
+
+        assertThat(mCache.contains(data.getUri())).isTrue();
+        assertThat(mCache.getHitCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void put_overMaxSize_evictsLeastRecentlyUsed() {
+        final SliceData first = getSliceData("first");
+        final SliceData second = getSliceData("second");
+        final SliceData third = getSliceData("third");
+        // Each entry is estimated at about 600 bytes, so only two entries fit.
+        mCache = new SliceDataCache(1500);
+
+        mCache.put(first.getUri(), first, mCache.getGeneration(), 0 /* loadTimeMs */);
+        mCache.put(second.getUri(), second, mCache.getGeneration(), 0 /* loadTimeMs */);
+        mCache.get(first.getUri());
+        mCache.put(third.getUri(), third, mCache.getGeneration(), 0 /* loadTimeMs */);
+
+        assertThat(mCache.contains(first.getUri())).isTrue();
+        assertThat(mCache.contains(second.getUri())).isFalse();
+        assertThat(mCache.contains(third.getUri())).isTrue();
+    }
+
+    @Test
+    public void invalidate_evictsAllData() {
+        final SliceData data = getSliceData("key");
+        mCache.put(data.getUri(), data, mCache.getGeneration(), 0 /* loadTimeMs */);
+
+        mCache.invalidate();
+
+        assertThat(mCache.contains(data.getUri())).isFalse();
+    }
+
+    @Test
+    public void put_loadedBeforeInvalidate_isNotCached() {
+        final SliceData data = getSliceData("key");
+        final int generation = mCache.getGeneration();
+
+        mCache.invalidate();
+        mCache.put(data.getUri(), data, generation, 0 /* loadTimeMs */);
+
+        assertThat(mCache.contains(data.getUri())).isFalse();
+    }
+
+    @Test
+    public void dumpStats_containsCounters() throws Exception {
+        final SliceData data = getSliceData("key");
+        mCache.put(data.getUri(), data, mCache.getGeneration(), 12 /* loadTimeMs */);
+        mCache.get(data.getUri());
+
+        final JSONObject stats = mCache.dumpStats();
+
+        assertThat(stats.getLong("hit")).isEqualTo(1);
+        assertThat(stats.getLong("miss")).isEqualTo(0);
+        assertThat(stats.getLong("load")).isEqualTo(1);
+        assertThat(stats.getLong("loadTimeMs")).isEqualTo(12);
+    }
+
+    private static SliceData getSliceData(String key) {
+        return new SliceData.Builder()
+                .setKey(key)
+                .setUri(new Uri.Builder()
+                        .scheme(ContentResolver.SCHEME_CONTENT)
+                        .authority(SettingsSliceProvider.SLICE_AUTHORITY)
+                        .appendPath(SettingsSlicesContract.PATH_SETTING_ACTION)
+                        .appendPath(key)
+                        .build())
+                .setTitle(SliceTestUtils.FAKE_TITLE)
+                .setSummary(SliceTestUtils.FAKE_SUMMARY)
+                .setScreenTitle(SliceTestUtils.FAKE_SCREEN_TITLE)
+                .setFragmentName(SliceTestUtils.FAKE_FRAGMENT_NAME)
+                .setPreferenceControllerClassName(SliceTestUtils.FAKE_CONTROLLER_NAME)
+                .build();
+    }
+}
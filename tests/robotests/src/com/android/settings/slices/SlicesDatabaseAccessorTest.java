@@ -21,7 +21,10 @@ import static android.content.ContentResolver.SCHEME_CONTENT;
 
 import static com.google.common.truth.Truth.assertThat;
 
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
 
 import android.app.ApplicationPackageManager;
 import android.content.ComponentName;
@@ -264,6 +267,34 @@ public class SlicesDatabaseAccessorTest {
         assertThat(uri).containsExactly(expectedUri);
     }
 
+    @Test
+    public void getSliceUris_localeChanged_indexesInBackground() {
+        final FakeFeatureFactory factory = FakeFeatureFactory.setupForTest();
+        final Locale defaultLocale = Locale.getDefault();
+        Locale.setDefault(new Locale("ca"));
+        try {
+            mAccessor.getSliceUris(SettingsSliceProvider.SLICE_AUTHORITY, true /* isPublicSlice */);
+        } finally {
+            Locale.setDefault(defaultLocale);
+        }
+
+        verify(factory.slicesFeatureProvider).indexSliceDataAsync(mContext);
+        verify(factory.slicesFeatureProvider, never()).indexSliceData(any());
+    }
+
+    @Test
+    public void getSliceUris_buildChanged_indexesSynchronously() {
+        final FakeFeatureFactory factory = FakeFeatureFactory.setupForTest();
+        // Clears the indexed state.
+        final SlicesDatabaseHelper helper = SlicesDatabaseHelper.getInstance(mContext);
+        helper.reconstruct(helper.getWritableDatabase());
+
+        mAccessor.getSliceUris(SettingsSliceProvider.SLICE_AUTHORITY, true /* isPublicSlice */);
+
+        verify(factory.slicesFeatureProvider).indexSliceData(mContext);
+        verify(factory.slicesFeatureProvider, never()).indexSliceDataAsync(any());
+    }
+
     @Test
     @Config(qualifiers = "mcc999")
     @Ignore
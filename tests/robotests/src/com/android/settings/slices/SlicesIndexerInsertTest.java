@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.settings.slices;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.net.Uri;
+
+import com.android.settings.slices.SlicesDatabaseHelper.IndexColumns;
+import com.android.settings.slices.SlicesDatabaseHelper.Tables;
+import com.android.settings.testutils.DatabaseTestUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Verifies the bulk insert of {@link SlicesIndexer} goes through one compiled statement, and stores
+ * the same rows as inserting each row with {@link ContentValues}, over a synthetic dataset the size
+ * of the full settings tree.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class SlicesIndexerInsertTest {
+
+    private static final int FRAGMENT_SIZE = 150;
+    private static final int SLICES_PER_FRAGMENT = 10;
+
+    private Context mContext;
+    private SlicesDatabaseHelper mHelper;
+    private SlicesIndexer mIndexer;
+    private List<SliceData> mSliceData;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        mHelper = SlicesDatabaseHelper.getInstance(mContext);
+        mIndexer = new SlicesIndexer(mContext);
+        mSliceData = createSyntheticSliceData();
+    }
+
+    @After
+    public void cleanUp() {
+        DatabaseTestUtils.clearDb(mContext);
+    }
+
+    @Test
+    public void insertSliceData_sameRowsAsContentValues() {
+        final SQLiteDatabase database = mHelper.getWritableDatabase();
+
+        rebuild(database, /* bulkInsert= */ false);
+        final List<String> expectedRows = getRows(database);
+        rebuild(database, /* bulkInsert= */ true);
+
+        assertThat(expectedRows).hasSize(mSliceData.size());
+        assertThat(getRows(database)).containsExactlyElementsIn(expectedRows).inOrder();
+    }
+
+    @Test
+    public void insertSliceData_compilesOneInsertOrReplaceStatement() {
+        final SQLiteDatabase database = mock(SQLiteDatabase.class);
+        final SQLiteStatement statement = mock(SQLiteStatement.class);
+        when(database.compileStatement(anyString())).thenReturn(statement);
+
+        mIndexer.insertSliceData(database, mSliceData);
+
+        verify(database).compileStatement(startsWith(
+                "INSERT OR REPLACE INTO " + Tables.TABLE_SLICES_INDEX));
+        verify(statement, times(mSliceData.size())).executeInsert();
+        verify(statement).close();
+        // Rows are never inserted one by one through ContentValues.
+        verify(database, never()).replaceOrThrow(anyString(), any(), any(ContentValues.class));
+        verify(database, never()).replace(anyString(), any(), any(ContentValues.class));
+        verify(database, never()).insert(anyString(), any(), any(ContentValues.class));
+        verify(database, never()).insertWithOnConflict(
+                anyString(), any(), any(ContentValues.class), anyInt());
+        // Runs in the single transaction of the caller, without opening its own.
+        verify(database, never()).beginTransaction();
+    }
+
+    private void rebuild(SQLiteDatabase database, boolean bulkInsert) {
+        database.beginTransaction();
+        try {
+            mHelper.reconstruct(database);
+            if (bulkInsert) {
+                mIndexer.insertSliceData(database, mSliceData);
+            } else {
+                insertWithContentValues(database, mSliceData);
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+    }
+
+    /** The previous insert path, which compiles the statement again for every row. */
+    private static void insertWithContentValues(SQLiteDatabase database,
+            List<SliceData> indexData) {
+        for (SliceData dataRow : indexData) {
+            final ContentValues values = new ContentValues();
+            values.put(IndexColumns.KEY, dataRow.getKey());
+            values.put(IndexColumns.SLICE_URI, dataRow.getUri().toString());
+            values.put(IndexColumns.TITLE, dataRow.getTitle());
+            values.put(IndexColumns.SUMMARY, dataRow.getSummary());
+            values.put(IndexColumns.SCREENTITLE, dataRow.getScreenTitle().toString());
+            values.put(IndexColumns.KEYWORDS, dataRow.getKeywords());
+            values.put(IndexColumns.ICON_RESOURCE, dataRow.getIconResource());
+            values.put(IndexColumns.FRAGMENT, dataRow.getFragmentClassName());
+            values.put(IndexColumns.CONTROLLER, dataRow.getPreferenceController());
+            values.put(IndexColumns.SLICE_TYPE, dataRow.getSliceType());
+            values.put(IndexColumns.UNAVAILABLE_SLICE_SUBTITLE,
+                    dataRow.getUnavailableSliceSubtitle());
+            values.put(IndexColumns.PUBLIC_SLICE, dataRow.isPublicSlice());
+            values.put(IndexColumns.HIGHLIGHT_MENU_RESOURCE, dataRow.getHighlightMenuRes());
+            values.put(IndexColumns.USER_RESTRICTION, dataRow.getUserRestriction());
+            database.replaceOrThrow(Tables.TABLE_SLICES_INDEX, null, values);
+        }
+    }
+
+    private static List<String> getRows(SQLiteDatabase database) {
+        final List<String> rows = new ArrayList<>();
+        try (Cursor cursor = database.rawQuery("SELECT * FROM slices_index", null)) {
+            while (cursor.moveToNext()) {
+                final StringBuilder row = new StringBuilder();
+                for (int i = 0; i < cursor.getColumnCount(); i++) {
+                    row.append(cursor.getString(i)).append('|');
+                }
+                rows.add(row.toString());
+            }
+        }
+        return rows;
+    }
+
+    private static List<SliceData> createSyntheticSliceData() {
+        final List<SliceData> sliceData = new ArrayList<>();
+        for (int i = 0; i < FRAGMENT_SIZE; i++) {
+            final String fragmentName = "com.android.settings.FakeFragment" + i;
+            for (int j = 0; j < SLICES_PER_FRAGMENT; j++) {
+                final String key = "key_" + i + "_" + j;
+                sliceData.add(new SliceData.Builder()
+                        .setKey(key)
+                        .setUri(Uri.parse("content://com.android.settings.slices/action/" + key))
+                        .setTitle("Title " + key)
+                        .setSummary(j % 2 == 0 ? "Summary " + key : null)
+                        .setScreenTitle("Screen " + i)
+                        .setIcon(1000 + j)
+                        .setFragmentName(fragmentName)
+                        .setPreferenceControllerClassName(
+                                "com.android.settings.FakeController" + j)
+                        .setSliceType(SliceData.SliceType.SWITCH)
+                        .setUnavailableSliceSubtitle(j % 3 == 0 ? "Unavailable" : null)
+                        .setIsPublicSlice(j % 2 == 1)
+                        .setHighlightMenuRes(2000 + i)
+                        .build());
+            }
+        }
+        return sliceData;
+    }
+}
@@ -16,16 +16,28 @@
 
 package com.android.settings.slices;
 
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_CONTROLLER;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_ICON;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_KEY;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_PREF_TYPE;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_SUMMARY;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_TITLE;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_UNAVAILABLE_SLICE_SUBTITLE;
+import static com.android.settings.core.PreferenceXmlParserUtils.PREF_SCREEN_TAG;
+
 import static com.google.common.truth.Truth.assertThat;
 
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
 
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
+import android.os.Bundle;
 
 import com.android.settings.slices.SlicesDatabaseHelper.IndexColumns;
 import com.android.settings.testutils.DatabaseTestUtils;
@@ -40,6 +52,7 @@ import org.robolectric.RuntimeEnvironment;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 
 @RunWith(RobolectricTestRunner.class)
 public class SlicesIndexerTest {
@@ -56,20 +69,26 @@ public class SlicesIndexerTest {
     private static final int SLICE_TYPE = SliceData.SliceType.SLIDER;
     private static final String UNAVAILABLE_SLICE_SUBTITLE = "subtitleOfUnavailableSlice";
     private static final int HIGHLIGHT_MENU_KEY = 5678; // I declare a thumb war
+    private static final int XML_RES_ID = 42;
 
     private Context mContext;
 
     private SlicesIndexer mManager;
 
+    private Locale mDefaultLocale;
+
 
     @Before
     public void setUp() {
         mContext = RuntimeEnvironment.application;
         mManager = spy(new SlicesIndexer(mContext));
+        mDefaultLocale = Locale.getDefault();
+        doReturn(new ArrayList<SliceData>()).when(mManager).getAccessibilitySliceData();
     }
 
     @After
     public void cleanUp() {
+        Locale.setDefault(mDefaultLocale);
         DatabaseTestUtils.clearDb(mContext);
     }
 
@@ -100,7 +119,7 @@ public class SlicesIndexerTest {
     public void testInsertSliceData_indexedStateSet() {
         final SlicesDatabaseHelper helper = SlicesDatabaseHelper.getInstance(mContext);
         helper.setIndexedState();
-        doReturn(new ArrayList<SliceData>()).when(mManager).getSliceData();
+        doReturn(new ArrayList<SliceDataSource>()).when(mManager).getSliceDataSources();
 
         mManager.run();
 
@@ -111,7 +130,7 @@ public class SlicesIndexerTest {
     @Ignore
     public void testInsertSliceData_nonPublicSlice_mockDataInserted() {
         final List<SliceData> sliceData = getMockIndexableData(false);
-        doReturn(sliceData).when(mManager).getSliceData();
+        stubSliceData(getMockSource(TITLES), sliceData);
 
         mManager.run();
 
@@ -160,7 +179,7 @@ public class SlicesIndexerTest {
     @Ignore
     public void insertSliceData_publicSlice_mockDataInserted() {
         final List<SliceData> sliceData = getMockIndexableData(true);
-        doReturn(sliceData).when(mManager).getSliceData();
+        stubSliceData(getMockSource(TITLES), sliceData);
 
         mManager.run();
 
@@ -205,6 +224,119 @@ public class SlicesIndexerTest {
         }
     }
 
+    @Test
+    public void indexSliceData_localeChanged_reindexesWithControllers() {
+        stubSliceData(getMockSource(TITLES), getMockIndexableData(false));
+        mManager.run();
+
+        final String[] newTitles = new String[]{"titre1", "titre2", "titre3"};
+        final SliceDataSource newSource = getMockSource(newTitles);
+        stubSliceData(newSource, getMockIndexableData(true, newTitles));
+        Locale.setDefault(Locale.FRENCH);
+        mManager.run();
+
+        verify(mManager).getSliceData(newSource);
+        final SQLiteDatabase db = SlicesDatabaseHelper.getInstance(mContext).getWritableDatabase();
+        try (Cursor cursor = db.rawQuery("SELECT * FROM slices_index", null)) {
+            assertThat(cursor.getCount()).isEqualTo(KEYS.length);
+            while (cursor.moveToNext()) {
+                final String key = cursor.getString(cursor.getColumnIndex(IndexColumns.KEY));
+                assertThat(cursor.getString(cursor.getColumnIndex(IndexColumns.TITLE)))
+                        .isEqualTo(newTitles[List.of(KEYS).indexOf(key)]);
+                assertThat(cursor.getInt(cursor.getColumnIndex(IndexColumns.PUBLIC_SLICE)))
+                        .isEqualTo(1);
+            }
+        }
+        assertThat(SlicesDatabaseHelper.getInstance(mContext).isSliceDataIndexed()).isTrue();
+    }
+
+    @Test
+    public void indexSliceData_localeChangedAndMetadataUnchanged_keepsSlices() {
+        final SliceDataSource source = getMockSource(TITLES);
+        stubSliceData(source, getMockIndexableData(false));
+        mManager.run();
+
+        final SliceDataSource sameSource = getMockSource(TITLES);
+        doReturn(List.of(sameSource)).when(mManager).getSliceDataSources();
+        Locale.setDefault(Locale.FRENCH);
+        mManager.run();
+
+        verify(mManager, never()).getSliceData(sameSource);
+        final SQLiteDatabase db = SlicesDatabaseHelper.getInstance(mContext).getWritableDatabase();
+        try (Cursor cursor = db.rawQuery("SELECT * FROM slices_index", null)) {
+            assertThat(cursor.getCount()).isEqualTo(KEYS.length);
+        }
+    }
+
+    @Test
+    public void indexSliceData_localeChangedAndKeyInTwoXmls_replacesBothSlices() {
+        stubSliceData(getMockSource(TITLES, TITLES), getMockIndexableData(false, TITLES, TITLES));
+        mManager.run();
+
+        final String[] newTitles = new String[]{"titre1", "titre2", "titre3"};
+        final String[] otherNewTitles = new String[]{"autre1", "autre2", "autre3"};
+        stubSliceData(getMockSource(newTitles, otherNewTitles),
+                getMockIndexableData(false, newTitles, otherNewTitles));
+        Locale.setDefault(Locale.FRENCH);
+        mManager.run();
+
+        final List<String> titles = new ArrayList<>();
+        final SQLiteDatabase db = SlicesDatabaseHelper.getInstance(mContext).getWritableDatabase();
+        try (Cursor cursor = db.rawQuery("SELECT * FROM slices_index", null)) {
+            while (cursor.moveToNext()) {
+                titles.add(cursor.getString(cursor.getColumnIndex(IndexColumns.TITLE)));
+            }
+        }
+        assertThat(titles).containsExactly("titre1", "titre2", "titre3", "autre1", "autre2",
+                "autre3");
+    }
+
+    @Test
+    public void indexSliceData_localeChangedAndFragmentRemoved_deletesSlices() {
+        stubSliceData(getMockSource(TITLES), getMockIndexableData(false));
+        mManager.run();
+
+        doReturn(new ArrayList<SliceDataSource>()).when(mManager).getSliceDataSources();
+        Locale.setDefault(Locale.FRENCH);
+        mManager.run();
+
+        final SQLiteDatabase db = SlicesDatabaseHelper.getInstance(mContext).getWritableDatabase();
+        try (Cursor cursor = db.rawQuery("SELECT * FROM slices_index", null)) {
+            assertThat(cursor.getCount()).isEqualTo(0);
+        }
+        try (Cursor cursor = db.rawQuery("SELECT * FROM slices_index_sources", null)) {
+            assertThat(cursor.getCount()).isEqualTo(0);
+        }
+    }
+
+    private void stubSliceData(SliceDataSource source, List<SliceData> sliceData) {
+        doReturn(List.of(source)).when(mManager).getSliceDataSources();
+        doReturn(sliceData).when(mManager).getSliceData(source);
+    }
+
+    private SliceDataSource getMockSource(String[]... titlesPerXml) {
+        final SliceDataSource source = new SliceDataSource(FRAGMENT_NAME);
+        for (int xml = 0; xml < titlesPerXml.length; xml++) {
+            final List<Bundle> metadata = new ArrayList<>();
+            final Bundle screen = new Bundle();
+            screen.putString(METADATA_PREF_TYPE, PREF_SCREEN_TAG);
+            screen.putString(METADATA_TITLE, SCREEN_TITLE);
+            metadata.add(screen);
+            for (int i = 0; i < KEYS.length; i++) {
+                final Bundle bundle = new Bundle();
+                bundle.putString(METADATA_KEY, KEYS[i]);
+                bundle.putString(METADATA_TITLE, titlesPerXml[xml][i]);
+                bundle.putString(METADATA_SUMMARY, SUMMARY);
+                bundle.putString(METADATA_CONTROLLER, PREF_CONTROLLER);
+                bundle.putInt(METADATA_ICON, ICON);
+                bundle.putString(METADATA_UNAVAILABLE_SLICE_SUBTITLE, UNAVAILABLE_SLICE_SUBTITLE);
+                metadata.add(bundle);
+            }
+            source.addMetadata(XML_RES_ID + xml, metadata);
+        }
+        return source;
+    }
+
     private void insertSpecialCase(String key, String title) {
         final ContentValues values = new ContentValues();
         values.put(IndexColumns.KEY, key);
@@ -221,6 +353,11 @@ public class SlicesIndexerTest {
     }
 
     private List<SliceData> getMockIndexableData(boolean isPublicSlice) {
+        return getMockIndexableData(isPublicSlice, TITLES);
+    }
+
+    private List<SliceData> getMockIndexableData(boolean isPublicSlice,
+            String[]... titlesPerXml) {
         final List<SliceData> sliceData = new ArrayList<>();
         final SliceData.Builder builder = new SliceData.Builder()
                 .setSummary(SUMMARY)
@@ -238,11 +375,13 @@ public class SlicesIndexerTest {
             builder.setIsPublicSlice(true);
         }
 
-        for (int i = 0; i < KEYS.length; i++) {
-            builder.setKey(KEYS[i]).setTitle(TITLES[i]);
-            sliceData.add(builder.build());
+        for (String[] titles : titlesPerXml) {
+            for (int i = 0; i < KEYS.length; i++) {
+                builder.setKey(KEYS[i]).setTitle(titles[i]);
+                sliceData.add(builder.build());
+            }
         }
 
         return sliceData;
     }
-}
\ No newline at end of file
+}
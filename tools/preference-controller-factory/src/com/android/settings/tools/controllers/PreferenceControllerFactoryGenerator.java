@@ -0,0 +1,382 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.tools.controllers;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import javax.lang.model.SourceVersion;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Generates GeneratedPreferenceControllerFactory, which creates the controllers named by the
+ * settings:controller attribute of the preference XMLs with their constructors, so
+ * BasePreferenceController.createInstance doesn't need reflection.
+ *
+ * The constructors are read from the compiled classes, and a controller is only generated when
+ * it's a public, concrete and top level subclass of BasePreferenceController with a public
+ * (Context) or (Context, String) constructor. Any other controller is left to the reflection.
+ *
+ * Usage: PreferenceControllerFactoryGenerator OUTPUT_JAVA (CLASSES_JAR | XML_FILE)...
+ */
+public final class PreferenceControllerFactoryGenerator {
+
+    private static final String AUTO_NAMESPACE = "http://schemas.android.com/apk/res-auto";
+    private static final String SETTINGS_NAMESPACE =
+            "http://schemas.android.com/apk/res/com.android.settings";
+
+    private static final String BASE_CONTROLLER =
+            "com/android/settings/core/BasePreferenceController";
+    private static final String CONTEXT_CONSTRUCTOR = "(Landroid/content/Context;)V";
+    private static final String CONTEXT_KEY_CONSTRUCTOR =
+            "(Landroid/content/Context;Ljava/lang/String;)V";
+
+    private static final String PACKAGE_NAME = "com.android.settings.core";
+    private static final String CLASS_NAME = "GeneratedPreferenceControllerFactory";
+
+    /**
+     * The controllers are split by the hash of their names into this many methods, to keep each
+     * method small enough to be compiled ahead of time.
+     */
+    private static final int BUCKET_COUNT = 8;
+
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_INTERFACE = 0x0200;
+    private static final int ACC_ABSTRACT = 0x0400;
+
+    private PreferenceControllerFactoryGenerator() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: PreferenceControllerFactoryGenerator OUTPUT_JAVA "
+                    + "(CLASSES_JAR | XML_FILE)...");
+            System.exit(1);
+        }
+
+        final Set<String> controllerNames = new TreeSet<>();
+        final Map<String, ClassInfo> classes = new HashMap<>();
+        for (int i = 1; i < args.length; i++) {
+            final File file = new File(args[i]);
+            if (file.getName().endsWith(".jar")) {
+                readClasses(file, classes);
+            } else if (file.getName().endsWith(".xml")) {
+                try (InputStream in = new FileInputStream(file)) {
+                    readControllerNames(in, controllerNames);
+                } catch (XMLStreamException e) {
+                    throw new IOException("Failed to parse " + file, e);
+                }
+            }
+        }
+
+        final List<String> contextControllers = new ArrayList<>();
+        final List<String> contextKeyControllers = new ArrayList<>();
+        collectControllers(controllerNames, classes, contextControllers, contextKeyControllers);
+
+        try (PrintWriter out = new PrintWriter(args[0], StandardCharsets.UTF_8.name())) {
+            writeFactory(out, contextControllers, contextKeyControllers);
+        }
+        System.out.println("Generated " + contextControllers.size() + " (Context) and "
+                + contextKeyControllers.size() + " (Context, String) constructors of "
+                + controllerNames.size() + " controllers");
+    }
+
+    /**
+     * Splits the generatable controllers by their public constructors, a controller with both
+     * constructors is added to both lists.
+     */
+    static void collectControllers(Set<String> controllerNames, Map<String, ClassInfo> classes,
+            List<String> contextControllers, List<String> contextKeyControllers) {
+        for (String controllerName : controllerNames) {
+            final ClassInfo info = classes.get(controllerName.replace('.', '/'));
+            if (info == null || !isGeneratable(info, classes)) {
+                System.err.println("Skipping " + controllerName);
+                continue;
+            }
+            if (info.mConstructors.contains(CONTEXT_CONSTRUCTOR)) {
+                contextControllers.add(controllerName);
+            }
+            if (info.mConstructors.contains(CONTEXT_KEY_CONSTRUCTOR)) {
+                contextKeyControllers.add(controllerName);
+            }
+        }
+    }
+
+    /** Collects the values of the settings:controller attribute of a preference XML. */
+    static void readControllerNames(InputStream in, Set<String> controllerNames)
+            throws XMLStreamException {
+        final XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        final XMLStreamReader reader = factory.createXMLStreamReader(in);
+        try {
+            while (reader.hasNext()) {
+                if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                for (int i = 0; i < reader.getAttributeCount(); i++) {
+                    final String namespace = reader.getAttributeNamespace(i);
+                    if ((AUTO_NAMESPACE.equals(namespace) || SETTINGS_NAMESPACE.equals(namespace))
+                            && "controller".equals(reader.getAttributeLocalName(i))) {
+                        controllerNames.add(reader.getAttributeValue(i).trim());
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static void readClasses(File jar, Map<String, ClassInfo> classes) throws IOException {
+        try (ZipInputStream in = new ZipInputStream(new FileInputStream(jar))) {
+            ZipEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+                if (!entry.isDirectory() && entry.getName().endsWith(".class")) {
+                    final ClassInfo info = ClassInfo.read(new DataInputStream(in));
+                    classes.put(info.mName, info);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return whether the generated code can create the controller, which requires it to be
+     * accessible from another package
+     */
+    static boolean isGeneratable(ClassInfo info, Map<String, ClassInfo> classes) {
+        if ((info.mAccessFlags & ACC_PUBLIC) == 0
+                || (info.mAccessFlags & (ACC_ABSTRACT | ACC_INTERFACE)) != 0
+                || info.mName.indexOf('$') >= 0
+                || !SourceVersion.isName(info.mName.replace('/', '.'))) {
+            return false;
+        }
+        ClassInfo current = info;
+        while (current != null) {
+            if (BASE_CONTROLLER.equals(current.mSuperName)) {
+                return true;
+            }
+            current = classes.get(current.mSuperName);
+        }
+        return false;
+    }
+
+    static void writeFactory(PrintWriter out, List<String> contextControllers,
+            List<String> contextKeyControllers) {
+        out.println("/*");
+        out.println(" * This file is generated by PreferenceControllerFactoryGenerator, "
+                + "do not edit.");
+        out.println(" */");
+        out.println();
+        out.println("package " + PACKAGE_NAME + ";");
+        out.println();
+        out.println("import android.content.Context;");
+        out.println();
+        out.println("/** Creates the preference controllers without reflection. */");
+        out.println("public final class " + CLASS_NAME
+                + " implements PreferenceControllerFactory {");
+        writeCreateMethods(out, "createWithContext", "Context context, String controllerName",
+                "context, controllerName", "context", contextControllers);
+        writeCreateMethods(out, "createWithContextAndKey",
+                "Context context, String controllerName, String key",
+                "context, controllerName, key", "context, key", contextKeyControllers);
+        out.println("}");
+    }
+
+    private static void writeCreateMethods(PrintWriter out, String methodName, String params,
+            String args, String constructorArgs, List<String> controllers) {
+        final List<List<String>> buckets = new ArrayList<>();
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.add(new ArrayList<>());
+        }
+        for (String controller : controllers) {
+            buckets.get(controller.hashCode() & (BUCKET_COUNT - 1)).add(controller);
+        }
+
+        out.println();
+        out.println("    @Override");
+        out.println("    public BasePreferenceController create(" + params + ") {");
+        out.println("        switch (controllerName.hashCode() & " + (BUCKET_COUNT - 1) + ") {");
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            if (!buckets.get(i).isEmpty()) {
+                out.println("            case " + i + ":");
+                out.println("                return " + methodName + i + "(" + args + ");");
+            }
+        }
+        out.println("            default:");
+        out.println("                return null;");
+        out.println("        }");
+        out.println("    }");
+
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            if (buckets.get(i).isEmpty()) {
+                continue;
+            }
+            out.println();
+            out.println("    private static BasePreferenceController " + methodName + i + "("
+                    + params + ") {");
+            out.println("        switch (controllerName) {");
+            for (String controller : buckets.get(i)) {
+                out.println("            case \"" + controller + "\":");
+                out.println("                return new " + controller + "(" + constructorArgs
+                        + ");");
+            }
+            out.println("            default:");
+            out.println("                return null;");
+            out.println("        }");
+            out.println("    }");
+        }
+    }
+
+    /** The parts of a class file needed to generate its constructor calls. */
+    static final class ClassInfo {
+        private static final int CONSTANT_UTF8 = 1;
+        private static final int CONSTANT_INTEGER = 3;
+        private static final int CONSTANT_FLOAT = 4;
+        private static final int CONSTANT_LONG = 5;
+        private static final int CONSTANT_DOUBLE = 6;
+        private static final int CONSTANT_CLASS = 7;
+        private static final int CONSTANT_STRING = 8;
+        private static final int CONSTANT_FIELD_REF = 9;
+        private static final int CONSTANT_METHOD_REF = 10;
+        private static final int CONSTANT_INTERFACE_METHOD_REF = 11;
+        private static final int CONSTANT_NAME_AND_TYPE = 12;
+        private static final int CONSTANT_METHOD_HANDLE = 15;
+        private static final int CONSTANT_METHOD_TYPE = 16;
+        private static final int CONSTANT_DYNAMIC = 17;
+        private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+        private static final int CONSTANT_MODULE = 19;
+        private static final int CONSTANT_PACKAGE = 20;
+
+        final String mName;
+        final String mSuperName;
+        final int mAccessFlags;
+        /** The descriptors of the public constructors. */
+        final Set<String> mConstructors = new TreeSet<>();
+
+        ClassInfo(String name, String superName, int accessFlags) {
+            mName = name;
+            mSuperName = superName;
+            mAccessFlags = accessFlags;
+        }
+
+        static ClassInfo read(DataInputStream in) throws IOException {
+            if (in.readInt() != 0xCAFEBABE) {
+                throw new IOException("Not a class file");
+            }
+            in.readUnsignedShort(); // minor_version
+            in.readUnsignedShort(); // major_version
+
+            final int constantCount = in.readUnsignedShort();
+            final String[] utf8s = new String[constantCount];
+            final int[] classNameIndexes = new int[constantCount];
+            for (int i = 1; i < constantCount; i++) {
+                final int tag = in.readUnsignedByte();
+                switch (tag) {
+                    case CONSTANT_UTF8:
+                        utf8s[i] = in.readUTF();
+                        break;
+                    case CONSTANT_CLASS:
+                        classNameIndexes[i] = in.readUnsignedShort();
+                        break;
+                    case CONSTANT_STRING:
+                    case CONSTANT_METHOD_TYPE:
+                    case CONSTANT_MODULE:
+                    case CONSTANT_PACKAGE:
+                        skip(in, 2);
+                        break;
+                    case CONSTANT_METHOD_HANDLE:
+                        skip(in, 3);
+                        break;
+                    case CONSTANT_INTEGER:
+                    case CONSTANT_FLOAT:
+                    case CONSTANT_FIELD_REF:
+                    case CONSTANT_METHOD_REF:
+                    case CONSTANT_INTERFACE_METHOD_REF:
+                    case CONSTANT_NAME_AND_TYPE:
+                    case CONSTANT_DYNAMIC:
+                    case CONSTANT_INVOKE_DYNAMIC:
+                        skip(in, 4);
+                        break;
+                    case CONSTANT_LONG:
+                    case CONSTANT_DOUBLE:
+                        skip(in, 8);
+                        // Takes two entries of the constant pool.
+                        i++;
+                        break;
+                    default:
+                        throw new IOException("Unknown constant pool tag " + tag);
+                }
+            }
+
+            final int accessFlags = in.readUnsignedShort();
+            final String name = utf8s[classNameIndexes[in.readUnsignedShort()]];
+            final int superIndex = in.readUnsignedShort();
+            final String superName = superIndex == 0 ? null : utf8s[classNameIndexes[superIndex]];
+            final ClassInfo info = new ClassInfo(name, superName, accessFlags);
+
+            skip(in, 2 * in.readUnsignedShort()); // interfaces
+            skipMembers(in); // fields
+            final int methodCount = in.readUnsignedShort();
+            for (int i = 0; i < methodCount; i++) {
+                final int methodAccessFlags = in.readUnsignedShort();
+                final String methodName = utf8s[in.readUnsignedShort()];
+                final String descriptor = utf8s[in.readUnsignedShort()];
+                skipAttributes(in);
+                if ("<init>".equals(methodName) && (methodAccessFlags & ACC_PUBLIC) != 0) {
+                    info.mConstructors.add(descriptor);
+                }
+            }
+            return info;
+        }
+
+        private static void skipMembers(DataInputStream in) throws IOException {
+            final int count = in.readUnsignedShort();
+            for (int i = 0; i < count; i++) {
+                skip(in, 6); // access_flags, name_index, descriptor_index
+                skipAttributes(in);
+            }
+        }
+
+        private static void skipAttributes(DataInputStream in) throws IOException {
+            final int count = in.readUnsignedShort();
+            for (int i = 0; i < count; i++) {
+                skip(in, 2); // attribute_name_index
+                skip(in, in.readInt());
+            }
+        }
+
+        /** Skips the bytes fully, unlike skipBytes which may skip less of a zip entry. */
+        private static void skip(DataInputStream in, int length) throws IOException {
+            in.readFully(new byte[length]);
+        }
+    }
+}
@@ -0,0 +1,313 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.tools.controllers;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.junit.Assert.assertThrows;
+
+import com.android.settings.tools.controllers.PreferenceControllerFactoryGenerator.ClassInfo;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.LongSupplier;
+
+@RunWith(JUnit4.class)
+public class PreferenceControllerFactoryGeneratorTest {
+
+    private static final String BASE_CONTROLLER =
+            "com/android/settings/core/BasePreferenceController";
+    private static final String CONTEXT_CONSTRUCTOR = "(Landroid/content/Context;)V";
+    private static final String CONTEXT_KEY_CONSTRUCTOR =
+            "(Landroid/content/Context;Ljava/lang/String;)V";
+    private static final String BOTH_CONTROLLER = "com.example.BothController";
+    private static final String KEY_CONTROLLER = "com.example.KeyController";
+    private static final String HIDDEN_CONTROLLER = "com.example.HiddenController";
+
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_PRIVATE = 0x0002;
+    private static final int ACC_INTERFACE = 0x0200;
+    private static final int ACC_ABSTRACT = 0x0400;
+
+    @Test
+    public void read_compiledClass_readsNameSuperAndPublicConstructors() throws Exception {
+        final ClassInfo info = readCompiledClass(FixtureList.class);
+
+        assertThat(info.mName).isEqualTo(
+                "com/android/settings/tools/controllers/PreferenceControllerFactoryGeneratorTest"
+                        + "$FixtureList");
+        assertThat(info.mSuperName).isEqualTo("java/util/ArrayList");
+        assertThat(info.mAccessFlags & ACC_PUBLIC).isNotEqualTo(0);
+        assertThat(info.mConstructors).containsExactly("(Ljava/lang/String;)V");
+    }
+
+    @Test
+    public void read_wideConstants_readsEntriesAfterThem() throws Exception {
+        final ClassInfo info = ClassInfo.read(classFile(BOTH_CONTROLLER, BASE_CONTROLLER,
+                ACC_PUBLIC, Map.of(CONTEXT_CONSTRUCTOR, ACC_PUBLIC)));
+
+        assertThat(info.mName).isEqualTo("com/example/BothController");
+        assertThat(info.mSuperName).isEqualTo(BASE_CONTROLLER);
+        assertThat(info.mConstructors).containsExactly(CONTEXT_CONSTRUCTOR);
+    }
+
+    @Test
+    public void read_notClassFile_throwsIOException() {
+        final DataInputStream in =
+                new DataInputStream(new ByteArrayInputStream(new byte[]{0, 1, 2, 3}));
+
+        assertThrows(IOException.class, () -> ClassInfo.read(in));
+    }
+
+    @Test
+    public void isGeneratable_publicController_returnsTrue() {
+        final ClassInfo info = new ClassInfo("com/example/Controller", BASE_CONTROLLER,
+                ACC_PUBLIC);
+
+        assertThat(PreferenceControllerFactoryGenerator.isGeneratable(info, new HashMap<>()))
+                .isTrue();
+    }
+
+    @Test
+    public void isGeneratable_indirectController_returnsTrue() {
+        final Map<String, ClassInfo> classes = new HashMap<>();
+        classes.put("com/example/Parent",
+                new ClassInfo("com/example/Parent", BASE_CONTROLLER, ACC_PUBLIC | ACC_ABSTRACT));
+        final ClassInfo info = new ClassInfo("com/example/Child", "com/example/Parent",
+                ACC_PUBLIC);
+
+        assertThat(PreferenceControllerFactoryGenerator.isGeneratable(info, classes)).isTrue();
+    }
+
+    @Test
+    public void isGeneratable_notPublic_returnsFalse() {
+        final ClassInfo info = new ClassInfo("com/example/Controller", BASE_CONTROLLER, 0);
+
+        assertThat(PreferenceControllerFactoryGenerator.isGeneratable(info, new HashMap<>()))
+                .isFalse();
+    }
+
+    @Test
+    public void isGeneratable_abstractOrInterface_returnsFalse() {
+        final ClassInfo abstractInfo = new ClassInfo("com/example/Controller", BASE_CONTROLLER,
+                ACC_PUBLIC | ACC_ABSTRACT);
+        final ClassInfo interfaceInfo = new ClassInfo("com/example/Controller", BASE_CONTROLLER,
+                ACC_PUBLIC | ACC_INTERFACE | ACC_ABSTRACT);
+
+        assertThat(PreferenceControllerFactoryGenerator.isGeneratable(abstractInfo,
+                new HashMap<>())).isFalse();
+        assertThat(PreferenceControllerFactoryGenerator.isGeneratable(interfaceInfo,
+                new HashMap<>())).isFalse();
+    }
+
+    @Test
+    public void isGeneratable_nestedClass_returnsFalse() {
+        final ClassInfo info = new ClassInfo("com/example/Outer$Controller", BASE_CONTROLLER,
+                ACC_PUBLIC);
+
+        assertThat(PreferenceControllerFactoryGenerator.isGeneratable(info, new HashMap<>()))
+                .isFalse();
+    }
+
+    @Test
+    public void isGeneratable_notController_returnsFalse() {
+        final ClassInfo info = new ClassInfo("com/example/Controller", "java/lang/Object",
+                ACC_PUBLIC);
+
+        assertThat(PreferenceControllerFactoryGenerator.isGeneratable(info, new HashMap<>()))
+                .isFalse();
+    }
+
+    @Test
+    public void collectControllers_bothConstructors_addsToBothLists() throws Exception {
+        final Map<String, ClassInfo> classes = readClasses(
+                classFile(BOTH_CONTROLLER, BASE_CONTROLLER, ACC_PUBLIC,
+                        Map.of(CONTEXT_CONSTRUCTOR, ACC_PUBLIC,
+                                CONTEXT_KEY_CONSTRUCTOR, ACC_PUBLIC)),
+                classFile(KEY_CONTROLLER, BASE_CONTROLLER, ACC_PUBLIC,
+                        Map.of(CONTEXT_CONSTRUCTOR, ACC_PRIVATE,
+                                CONTEXT_KEY_CONSTRUCTOR, ACC_PUBLIC)));
+        final List<String> contextControllers = new ArrayList<>();
+        final List<String> contextKeyControllers = new ArrayList<>();
+
+        PreferenceControllerFactoryGenerator.collectControllers(
+                new TreeSet<>(Set.of(BOTH_CONTROLLER, KEY_CONTROLLER)), classes,
+                contextControllers, contextKeyControllers);
+
+        assertThat(contextControllers).containsExactly(BOTH_CONTROLLER);
+        assertThat(contextKeyControllers).containsExactly(BOTH_CONTROLLER, KEY_CONTROLLER);
+    }
+
+    @Test
+    public void collectControllers_notPublicOrUnknown_skipsController() throws Exception {
+        final Map<String, ClassInfo> classes = readClasses(
+                classFile(HIDDEN_CONTROLLER, BASE_CONTROLLER, 0 /* accessFlags */,
+                        Map.of(CONTEXT_CONSTRUCTOR, ACC_PUBLIC)));
+        final List<String> contextControllers = new ArrayList<>();
+        final List<String> contextKeyControllers = new ArrayList<>();
+
+        PreferenceControllerFactoryGenerator.collectControllers(
+                new TreeSet<>(Set.of(HIDDEN_CONTROLLER, "com.example.MissingController")),
+                classes, contextControllers, contextKeyControllers);
+
+        assertThat(contextControllers).isEmpty();
+        assertThat(contextKeyControllers).isEmpty();
+    }
+
+    @Test
+    public void writeFactory_createsControllersWithTheirConstructors() {
+        final StringWriter writer = new StringWriter();
+
+        try (PrintWriter out = new PrintWriter(writer)) {
+            PreferenceControllerFactoryGenerator.writeFactory(out, List.of(BOTH_CONTROLLER),
+                    List.of(BOTH_CONTROLLER, KEY_CONTROLLER));
+        }
+
+        final String output = writer.toString();
+        assertThat(output).contains("package com.android.settings.core;");
+        assertThat(output).contains("public final class GeneratedPreferenceControllerFactory"
+                + " implements PreferenceControllerFactory {");
+        assertThat(output).contains(
+                "public BasePreferenceController create(Context context, String controllerName)");
+        assertThat(output).contains("public BasePreferenceController create(Context context, "
+                + "String controllerName, String key)");
+        assertThat(output).contains("case \"" + BOTH_CONTROLLER + "\":\n"
+                + "                return new " + BOTH_CONTROLLER + "(context);");
+        assertThat(output).contains("case \"" + BOTH_CONTROLLER + "\":\n"
+                + "                return new " + BOTH_CONTROLLER + "(context, key);");
+        assertThat(output).contains("case \"" + KEY_CONTROLLER + "\":\n"
+                + "                return new " + KEY_CONTROLLER + "(context, key);");
+        assertThat(output).doesNotContain("new " + KEY_CONTROLLER + "(context);");
+    }
+
+    @Test
+    public void writeFactory_noControllers_returnsNull() {
+        final StringWriter writer = new StringWriter();
+
+        try (PrintWriter out = new PrintWriter(writer)) {
+            PreferenceControllerFactoryGenerator.writeFactory(out, List.of(), List.of());
+        }
+
+        assertThat(writer.toString()).doesNotContain("case ");
+        assertThat(writer.toString()).contains("default:\n                return null;");
+    }
+
+    private static ClassInfo readCompiledClass(Class<?> clazz) throws IOException {
+        final String resource = clazz.getName().replace('.', '/') + ".class";
+        try (InputStream in = clazz.getClassLoader().getResourceAsStream(resource)) {
+            return ClassInfo.read(new DataInputStream(in));
+        }
+    }
+
+    private static Map<String, ClassInfo> readClasses(DataInputStream... classFiles)
+            throws IOException {
+        final Map<String, ClassInfo> classes = new HashMap<>();
+        for (DataInputStream classFile : classFiles) {
+            final ClassInfo info = ClassInfo.read(classFile);
+            classes.put(info.mName, info);
+        }
+        return classes;
+    }
+
+    /**
+     * @return a minimal class file with the constructors, whose constant pool has a long constant
+     * taking two entries before the constructor descriptors
+     */
+    private static DataInputStream classFile(String className, String superName,
+            int accessFlags, Map<String, Integer> constructors) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0); // minor_version
+        out.writeShort(52); // major_version
+
+        final List<String> descriptors = new ArrayList<>(constructors.keySet());
+        out.writeShort(8 + descriptors.size()); // constant_pool_count
+        writeUtf8(out, className.replace('.', '/')); // #1
+        out.writeByte(7); // #2 CONSTANT_Class
+        out.writeShort(1);
+        writeUtf8(out, superName); // #3
+        out.writeByte(7); // #4 CONSTANT_Class
+        out.writeShort(3);
+        writeUtf8(out, "<init>"); // #5
+        out.writeByte(5); // #6 and #7 CONSTANT_Long
+        out.writeLong(Long.MAX_VALUE);
+        for (String descriptor : descriptors) {
+            writeUtf8(out, descriptor); // #8...
+        }
+
+        out.writeShort(accessFlags);
+        out.writeShort(2); // this_class
+        out.writeShort(4); // super_class
+        out.writeShort(0); // interfaces_count
+        out.writeShort(0); // fields_count
+        out.writeShort(descriptors.size()); // methods_count
+        for (int i = 0; i < descriptors.size(); i++) {
+            out.writeShort(constructors.get(descriptors.get(i)));
+            out.writeShort(5); // name_index
+            out.writeShort(8 + i); // descriptor_index
+            out.writeShort(0); // attributes_count
+        }
+        out.writeShort(0); // attributes_count
+        return new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+
+    private static void writeUtf8(DataOutputStream out, String value) throws IOException {
+        out.writeByte(1); // CONSTANT_Utf8
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * A compiled class with long and double constants, a lambda and a private constructor, so
+     * its constant pool has wide entries, method handles and invoke dynamic entries.
+     */
+    public static class FixtureList extends ArrayList<String> {
+        private final LongSupplier mSupplier;
+
+        public FixtureList(String value) {
+            this(value.length());
+        }
+
+        private FixtureList(int value) {
+            final double factor = 1.5e300;
+            mSupplier = () -> (long) (value * factor) + 0x123456789L;
+        }
+
+        long get() {
+            return mSupplier.getAsLong();
+        }
+    }
+}
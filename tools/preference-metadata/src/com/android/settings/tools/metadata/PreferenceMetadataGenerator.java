@@ -0,0 +1,273 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.tools.metadata;
+
+import static com.android.settings.core.PreferenceMetadataFormat.ATTR_CONTROLLER;
+import static com.android.settings.core.PreferenceMetadataFormat.ATTR_FOR_WORK;
+import static com.android.settings.core.PreferenceMetadataFormat.ATTR_HIGHLIGHTABLE_MENU_KEY;
+import static com.android.settings.core.PreferenceMetadataFormat.ATTR_ICON;
+import static com.android.settings.core.PreferenceMetadataFormat.ATTR_KEY;
+import static com.android.settings.core.PreferenceMetadataFormat.ATTR_KEYWORDS;
+import static com.android.settings.core.PreferenceMetadataFormat.ATTR_SEARCHABLE;
+import static com.android.settings.core.PreferenceMetadataFormat.ATTR_STATIC_PREFERENCE_LOCATION;
+import static com.android.settings.core.PreferenceMetadataFormat.ATTR_SUMMARY;
+import static com.android.settings.core.PreferenceMetadataFormat.ATTR_TITLE;
+import static com.android.settings.core.PreferenceMetadataFormat.ATTR_UNAVAILABLE_SLICE_SUBTITLE;
+import static com.android.settings.core.PreferenceMetadataFormat.ATTR_USER_RESTRICTION;
+import static com.android.settings.core.PreferenceMetadataFormat.VALUE_LITERAL;
+import static com.android.settings.core.PreferenceMetadataFormat.VALUE_REFERENCE;
+
+import com.android.settings.core.PreferenceMetadataFormat;
+import com.android.settings.core.PreferenceMetadataFormat.Element;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Precompiles the metadata extracted by PreferenceXmlParserUtils from the preference XMLs into
+ * the binary format of {@link PreferenceMetadataFormat}.
+ *
+ * The values are kept raw, resource references are resolved at runtime so the localized strings
+ * are only loaded when they are needed. A screen using any value which can't be resolved without
+ * the resource table, such as a style or a theme attribute, is skipped so the runtime falls back
+ * to parsing its XML.
+ *
+ * Usage: PreferenceMetadataGenerator OUTPUT_FILE XML_FILE...
+ */
+public final class PreferenceMetadataGenerator {
+
+    private static final String ANDROID_NAMESPACE = "http://schemas.android.com/apk/res/android";
+    private static final String AUTO_NAMESPACE = "http://schemas.android.com/apk/res-auto";
+    private static final String SETTINGS_NAMESPACE =
+            "http://schemas.android.com/apk/res/com.android.settings";
+    private static final String PREF_SCREEN_TAG = "PreferenceScreen";
+
+    private static final Map<String, Integer> ANDROID_ATTRS = new HashMap<>();
+    private static final Map<String, Integer> SETTINGS_ATTRS = new HashMap<>();
+
+    static {
+        ANDROID_ATTRS.put("key", ATTR_KEY);
+        ANDROID_ATTRS.put("title", ATTR_TITLE);
+        ANDROID_ATTRS.put("summary", ATTR_SUMMARY);
+        ANDROID_ATTRS.put("icon", ATTR_ICON);
+        SETTINGS_ATTRS.put("controller", ATTR_CONTROLLER);
+        SETTINGS_ATTRS.put("keywords", ATTR_KEYWORDS);
+        SETTINGS_ATTRS.put("searchable", ATTR_SEARCHABLE);
+        SETTINGS_ATTRS.put("staticPreferenceLocation", ATTR_STATIC_PREFERENCE_LOCATION);
+        SETTINGS_ATTRS.put("unavailableSliceSubtitle", ATTR_UNAVAILABLE_SLICE_SUBTITLE);
+        SETTINGS_ATTRS.put("forWork", ATTR_FOR_WORK);
+        SETTINGS_ATTRS.put("highlightableMenuKey", ATTR_HIGHLIGHTABLE_MENU_KEY);
+        SETTINGS_ATTRS.put("userRestriction", ATTR_USER_RESTRICTION);
+    }
+
+    private PreferenceMetadataGenerator() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: PreferenceMetadataGenerator OUTPUT_FILE XML_FILE...");
+            System.exit(1);
+        }
+
+        final PreferenceMetadataFormat.Writer writer = new PreferenceMetadataFormat.Writer();
+        int screenCount = 0;
+        for (int i = 1; i < args.length; i++) {
+            final File file = new File(args[i]);
+            final String name = file.getName().replaceFirst("\\.xml$", "");
+            try (InputStream in = new FileInputStream(file)) {
+                final List<Element> elements = parse(in);
+                if (elements != null) {
+                    writer.addScreen(name, elements);
+                    screenCount++;
+                }
+            } catch (UnsupportedValueException e) {
+                System.err.println("Skipping " + file + ": " + e.getMessage());
+            } catch (XMLStreamException e) {
+                throw new IOException("Failed to parse " + file, e);
+            }
+        }
+
+        try (OutputStream out = new FileOutputStream(args[0])) {
+            out.write(writer.toByteArray());
+        }
+        System.out.println("Precompiled " + screenCount + " of " + (args.length - 1)
+                + " preference XMLs");
+    }
+
+    /**
+     * @return the preference elements of the XML in document order, or {@code null} if it's not
+     * a preference screen
+     */
+    static List<Element> parse(InputStream in)
+            throws XMLStreamException, UnsupportedValueException {
+        final XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        final XMLStreamReader reader = factory.createXMLStreamReader(in);
+        final List<Element> elements = new ArrayList<>();
+        boolean isRoot = true;
+        try {
+            while (reader.hasNext()) {
+                if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                final String nodeName = reader.getLocalName();
+                if (isRoot && !PREF_SCREEN_TAG.equals(nodeName)) {
+                    return null;
+                }
+                isRoot = false;
+                if (!PreferenceMetadataFormat.isPreferenceElement(nodeName)) {
+                    continue;
+                }
+                elements.add(parseElement(reader, nodeName));
+            }
+        } finally {
+            reader.close();
+        }
+        return elements;
+    }
+
+    private static Element parseElement(XMLStreamReader reader, String nodeName)
+            throws UnsupportedValueException {
+        final Element element = new Element(nodeName);
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            final String namespace = reader.getAttributeNamespace(i);
+            final String name = reader.getAttributeLocalName(i);
+            if ((namespace == null || namespace.isEmpty()) && "style".equals(name)) {
+                throw new UnsupportedValueException(nodeName + " has a style");
+            }
+            final Integer attr;
+            if (ANDROID_NAMESPACE.equals(namespace)) {
+                attr = ANDROID_ATTRS.get(name);
+            } else if (AUTO_NAMESPACE.equals(namespace) || SETTINGS_NAMESPACE.equals(namespace)) {
+                attr = SETTINGS_ATTRS.get(name);
+            } else {
+                attr = null;
+            }
+            if (attr != null) {
+                parseValue(element, attr, reader.getAttributeValue(i));
+            }
+        }
+        return element;
+    }
+
+    private static void parseValue(Element element, int attr, String value)
+            throws UnsupportedValueException {
+        if ("@null".equals(value)) {
+            return;
+        }
+        if (value.startsWith("?")) {
+            throw new UnsupportedValueException("theme attribute " + value);
+        }
+        if (value.startsWith("@")) {
+            element.setValue(attr, VALUE_REFERENCE, parseReference(attr, value));
+            return;
+        }
+
+        switch (attr) {
+            case ATTR_ICON:
+                throw new UnsupportedValueException("icon " + value);
+            case ATTR_SEARCHABLE:
+            case ATTR_FOR_WORK:
+                if (!value.equals("true") && !value.equals("false")) {
+                    throw new UnsupportedValueException("boolean " + value);
+                }
+                break;
+            case ATTR_STATIC_PREFERENCE_LOCATION:
+                if (!value.equals("append") && !value.equals("prepend")) {
+                    throw new UnsupportedValueException("location " + value);
+                }
+                break;
+            default:
+                // The escaping and the white spaces of the string are processed by aapt2.
+                if (value.indexOf('\\') >= 0 || value.indexOf('"') >= 0
+                        || value.indexOf('\'') >= 0 || value.indexOf('\n') >= 0
+                        || !value.trim().equals(value)) {
+                    throw new UnsupportedValueException("string " + value);
+                }
+                break;
+        }
+        element.setValue(attr, VALUE_LITERAL, value);
+    }
+
+    /** @return the reference in the form of "type/name" or "android:type/name" */
+    private static String parseReference(int attr, String value)
+            throws UnsupportedValueException {
+        String reference = value.substring(1);
+        if (reference.startsWith("*")) {
+            reference = reference.substring(1);
+        }
+        String packageName = null;
+        final int colon = reference.indexOf(':');
+        if (colon >= 0) {
+            packageName = reference.substring(0, colon);
+            reference = reference.substring(colon + 1);
+        }
+        final int slash = reference.indexOf('/');
+        if (slash <= 0 || reference.startsWith("+")) {
+            throw new UnsupportedValueException("reference " + value);
+        }
+
+        final String type = reference.substring(0, slash);
+        final Set<String> supportedTypes;
+        switch (attr) {
+            case ATTR_ICON:
+                supportedTypes = Set.of("drawable", "mipmap");
+                break;
+            case ATTR_SEARCHABLE:
+            case ATTR_FOR_WORK:
+                supportedTypes = Set.of("bool");
+                break;
+            case ATTR_STATIC_PREFERENCE_LOCATION:
+                supportedTypes = Set.of();
+                break;
+            default:
+                supportedTypes = Set.of("string");
+                break;
+        }
+        if (!supportedTypes.contains(type)) {
+            throw new UnsupportedValueException("reference " + value);
+        }
+
+        if (packageName == null || packageName.equals("com.android.settings")) {
+            return reference;
+        }
+        if (packageName.equals("android")) {
+            return "android:" + reference;
+        }
+        throw new UnsupportedValueException("reference " + value);
+    }
+
+    static final class UnsupportedValueException extends Exception {
+        UnsupportedValueException(String message) {
+            super(message);
+        }
+    }
+}